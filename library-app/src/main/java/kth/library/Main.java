@@ -0,0 +1,138 @@
+package kth.library;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import kth.library.model.BatchWriter;
+import kth.library.model.BooksDbProvider;
+import kth.library.model.ChangeFeed;
+import kth.library.model.IBooksDb;
+import kth.library.model.CoalescingBooksDb;
+import kth.library.model.ConnectingBooksDb;
+import kth.library.model.CostAccounting;
+import kth.library.model.CostAccountingBooksDb;
+import kth.library.model.FlightRecorderBooksDb;
+import kth.library.model.OutboxBooksDb;
+import kth.library.model.ReplicaBooksDb;
+import kth.library.model.SnapshotBooksDb;
+import kth.library.view.BooksPane;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+public class Main extends Application {
+    @Override
+    public void start(Stage primaryStage) throws IOException {
+        // the backend packaged with the application, chosen with -Dlibrary.backend=mongo|mysql|memory
+        BooksDbProvider backend = BooksDbProvider.configured();
+        // identical searches running at the same time share one database call,
+        // the cost of every call is recorded and shown in the status bar, and
+        // every call is a flight recorder event when recording; calls made
+        // before the database is connected wait for it, unless answered from
+        // the snapshot of the last launch
+        CostAccounting costs = new CostAccounting();
+        IBooksDb backendDb = backend.create();
+        ConnectingBooksDb connectingDb = new ConnectingBooksDb(new FlightRecorderBooksDb(new CoalescingBooksDb(
+            new CostAccountingBooksDb(backendDb, costs))));
+        // with -Dlibrary.replica=true, searches are answered from a local copy of the
+        // catalog kept up to date in the background, also while the database is not
+        // reachable; only for backends that can tell what changed
+        ReplicaBooksDb replica = null;
+        IBooksDb searchedDb = connectingDb;
+        if (ReplicaBooksDb.isEnabled() && backendDb instanceof ChangeFeed feed) {
+            replica = new ReplicaBooksDb(connectingDb, feed, ReplicaBooksDb.configuredFile(backend), backend.getUrl());
+            replica.load();
+            searchedDb = replica;
+        }
+        // with -Dlibrary.outbox=true, books and reviews added are queued in a local log
+        // and written in the background, also once the database is reachable again;
+        // only for backends that can write them in batches
+        OutboxBooksDb outbox = null;
+        if (OutboxBooksDb.isEnabled() && backendDb instanceof BatchWriter writer) {
+            outbox = new OutboxBooksDb(searchedDb, writer, OutboxBooksDb.configuredFile(backend));
+            try {
+                outbox.open();
+                searchedDb = outbox;
+            } catch (IOException e) {
+                System.err.println("Could not open the outbox, adding to the database directly: " + e.getMessage());
+                outbox = null;
+            }
+        }
+        SnapshotBooksDb booksDb = new SnapshotBooksDb(searchedDb, SnapshotBooksDb.configuredFile(backend),
+                                                      backend.getUrl());
+        booksDb.load();
+
+        BooksPane booksPane = new BooksPane(booksDb); // also creates a controller
+        booksPane.showOperationCosts(costs);
+
+        if (replica != null) {
+            booksPane.showReplica(replica);
+        }
+        if (outbox != null) {
+            booksPane.showOutbox(outbox);
+            if (replica != null) {
+                // the books and reviews written are read into the copy without waiting for the next sync
+                outbox.addWriteListener(replica::syncSoon);
+            }
+        }
+        connectInBackground(backend, connectingDb, booksPane, booksDb, replica, outbox);
+
+        Scene scene = new Scene(booksPane, 800, 600);
+        primaryStage.setTitle("Books Database Client (" + backend.getDisplayName() + ")");
+        // add an exit handler to the stage (X)
+        primaryStage.setOnCloseRequest(event -> {
+            try {
+                booksDb.save();
+            } catch (IOException e) {
+                System.err.println("Could not save the snapshot: " + e.getMessage());
+            }
+            try {
+                booksDb.disconnect();
+            } catch (Exception e) {
+            }
+        });
+        primaryStage.setScene(scene);
+        primaryStage.show();
+        if (StartupRun.isEnabled()) {
+            new StartupRun(booksPane).start();
+        }
+    }
+
+    /**
+     * Connect to the db and warm it up in the background, the window is shown meanwhile;
+     * the connect string is the backend's default unless -Dlibrary.url is given,
+     * BooksDbMongoImpl uses its internal credentials for this lab. If connecting fails,
+     * the user can try again from the connection label.
+     */
+    private static void connectInBackground(BooksDbProvider backend, ConnectingBooksDb connectingDb,
+                                            BooksPane booksPane, SnapshotBooksDb booksDb,
+                                            ReplicaBooksDb replica, OutboxBooksDb outbox) {
+        booksPane.showConnecting(backend.getDisplayName());
+        CompletableFuture<Void> ready = connectingDb.connectInBackground(backend.getUrl());
+        ready.whenComplete((ignored, failure) -> Platform.runLater(() -> {
+            if (failure == null) {
+                booksPane.showConnected();
+            } else {
+                booksPane.showConnectionFailed(failure.getMessage(), () ->
+                    connectInBackground(backend, connectingDb, booksPane, booksDb, replica, outbox));
+            }
+        }));
+        if (replica != null) {
+            replica.startSync(ready);
+        }
+        if (outbox != null) {
+            outbox.startDraining(ready);
+        }
+        // what was shown from the snapshot is searched again once read from the database
+        ready.thenRun(() -> booksDb.revalidateInBackground().thenAccept(servedFromSnapshot -> {
+            if (servedFromSnapshot) {
+                Platform.runLater(booksPane::refreshResults);
+            }
+        }));
+    }
+
+    public static void main(String[] args) {
+        launch();
+    }
+}
@@ -0,0 +1,92 @@
+package kth.library;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import kth.library.model.SearchMode;
+import kth.library.view.BooksPane;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A scripted run of the client, enabled with -Dlibrary.startupRun=true: as soon
+ * as the window is shown it searches once in every SearchMode, one after the
+ * other, then prints how long after the start of the JVM the first frame was
+ * drawn and the first search was shown, and exits. The first search is made
+ * while the database is still connecting, so it includes connect and warm-up.
+ * <p>
+ * The cds profile runs it against the memory backend to record the classes
+ * loaded at startup for the class data sharing archive of the jlink image, and
+ * startup-benchmark.sh runs it to compare startup with and without the archive.
+ * The search terms find books in the memory backend.
+ */
+class StartupRun {
+
+    static final String PROPERTY = "library.startupRun";
+
+    private static final Map<SearchMode, String> SEARCHES = new EnumMap<>(SearchMode.class);
+    static {
+        SEARCHES.put(SearchMode.Title, "data");
+        SEARCHES.put(SearchMode.ISBN, "123456789");
+        SEARCHES.put(SearchMode.Author, "martin");
+        SEARCHES.put(SearchMode.Genre, "Drama");
+        SEARCHES.put(SearchMode.Rating, "0");
+        SEARCHES.put(SearchMode.Any, "data");
+    }
+
+    private final BooksPane booksPane;
+    private final Iterator<Map.Entry<SearchMode, String>> searches = SEARCHES.entrySet().iterator();
+    private long firstFrameMillis = -1;
+    private long firstSearchMillis = -1;
+
+    StartupRun(BooksPane booksPane) {
+        this.booksPane = booksPane;
+    }
+
+    static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * Start the searches, right after the stage has been shown.
+     */
+    void start() {
+        // the first pulse after the stage is shown draws the first frame
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                firstFrameMillis = sinceJvmStart();
+                stop();
+            }
+        }.start();
+        booksPane.setOnResultsShown(this::resultsShown);
+        searchNext();
+    }
+
+    private void resultsShown() {
+        if (firstSearchMillis < 0) {
+            firstSearchMillis = sinceJvmStart();
+        }
+        // not from within the table update that reported the result
+        Platform.runLater(this::searchNext);
+    }
+
+    private void searchNext() {
+        if (searches.hasNext()) {
+            Map.Entry<SearchMode, String> search = searches.next();
+            booksPane.search(search.getKey(), search.getValue());
+            return;
+        }
+        System.out.println("Startup: first frame " + firstFrameMillis + " ms, first search " + firstSearchMillis + " ms");
+        Platform.exit();
+    }
+
+    private static long sinceJvmStart() {
+        return ProcessHandle.current().info().startInstant()
+            .map(start -> Duration.between(start, Instant.now()).toMillis())
+            .orElse(-1L);
+    }
+}
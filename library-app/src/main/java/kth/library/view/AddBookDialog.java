@@ -3,23 +3,25 @@ package kth.library.view;
 import javafx.geometry.Insets;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
-import javafx.util.Callback;
 import kth.library.model.Author;
 import kth.library.model.Book;
 import kth.library.model.Genre;
 
-import java.util.ArrayList;
-import java.util.List;
 
 public class AddBookDialog extends Dialog<Book> {
 
     private final TextField isbnField;
     private final TextField titleField;
     private final TextField publisherField;
-    private final ListView<Author> authorsListView;
-    private final ListView<Genre> genresListView;
+    private final TypeAheadSelector<Author> authorsSelector;
+    private final TypeAheadSelector<Genre> genresSelector;
 
-    public AddBookDialog(List<Author> availableAuthors, List<Genre> availableGenres) {
+    /**
+     * @param findAuthors finds the authors to offer as the user types, see IBooksDb.findAuthorsByPrefix
+     * @param findGenres finds the genres to offer as the user types
+     */
+    public AddBookDialog(TypeAheadSelector.PrefixSearch<Author> findAuthors,
+                         TypeAheadSelector.PrefixSearch<Genre> findGenres) {
         this.setTitle("Add New Book");
         this.setHeaderText("Enter book details and select authors/genres.");
 
@@ -40,15 +42,10 @@ public class AddBookDialog extends Dialog<Book> {
         publisherField = new TextField();
         publisherField.setPromptText("Publisher");
 
-        authorsListView = new ListView<>();
-        authorsListView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
-        authorsListView.getItems().addAll(availableAuthors);
-        authorsListView.setPrefHeight(150);
-
-        genresListView = new ListView<>();
-        genresListView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
-        genresListView.getItems().addAll(availableGenres);
-        genresListView.setPrefHeight(150);
+        // only the authors and genres matching what the user types are read
+        authorsSelector = new TypeAheadSelector<>("Type the start of an author's name", findAuthors,
+                                                  Author::getAuthorId);
+        genresSelector = new TypeAheadSelector<>("Type the start of a genre", findGenres, Genre::getGenreId);
 
         grid.add(new Label("ISBN:"), 0, 0);
         grid.add(isbnField, 1, 0);
@@ -58,10 +55,10 @@ public class AddBookDialog extends Dialog<Book> {
         grid.add(publisherField, 1, 2);
         
         grid.add(new Label("Authors:"), 0, 3);
-        grid.add(authorsListView, 1, 3);
+        grid.add(authorsSelector, 1, 3);
         
         grid.add(new Label("Genres:"), 0, 4);
-        grid.add(genresListView, 1, 4);
+        grid.add(genresSelector, 1, 4);
 
         this.getDialogPane().setContent(grid);
 
@@ -77,8 +74,8 @@ public class AddBookDialog extends Dialog<Book> {
                 }
                 
                 Book newBook = new Book(isbn, title, publisher);
-                newBook.setAuthors(new ArrayList<>(authorsListView.getSelectionModel().getSelectedItems()));
-                newBook.setGenres(new ArrayList<>(genresListView.getSelectionModel().getSelectedItems()));
+                newBook.setAuthors(authorsSelector.getSelectedItems());
+                newBook.setGenres(genresSelector.getSelectedItems());
                 return newBook;
             }
             return null;
@@ -0,0 +1,123 @@
+package kth.library.view;
+
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.BorderPane;
+import kth.library.model.Author;
+import kth.library.model.Book;
+import kth.library.model.Genre;
+import kth.library.model.Review;
+import kth.library.model.ReviewCursor;
+import kth.library.model.ReviewPage;
+
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Shows the details of a book and its reviews. The reviews are shown in a
+ * ListView, which only creates cells for the visible rows, and are read one page
+ * at a time: the next page is asked for when the last review read is scrolled
+ * into view, so a book with many reviews opens as fast as one with a few.
+ */
+public class BookDetailsDialog extends Dialog<Void> {
+
+    private final ListView<Review> reviewList = new ListView<>();
+    private Consumer<ReviewCursor> loadPage = cursor -> { };
+    private ReviewCursor next; // where the next page starts, null if all are read
+    private boolean loading = true; // the caller reads the first page when it creates the dialog
+
+    public BookDetailsDialog(Book book) {
+        this.setTitle("Book Details");
+        this.setHeaderText(formatHeader(book));
+        this.setResizable(true);
+        this.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        reviewList.setPlaceholder(new Label("Loading reviews..."));
+        reviewList.setPrefSize(500, 300);
+        reviewList.setCellFactory(list -> new ReviewCell());
+
+        BorderPane content = new BorderPane(reviewList);
+        content.setTop(new Label("Reviews (" + book.getReviewCount() + "):"));
+        BorderPane.setMargin(reviewList, new Insets(5, 0, 0, 0));
+        this.getDialogPane().setContent(content);
+    }
+
+    private static String formatHeader(Book book) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Title: ").append(book.getTitle()).append("\n");
+        sb.append("ISBN: ").append(book.getIsbn()).append("\n");
+        sb.append("Publisher: ").append(book.getPublisher()).append("\n");
+        sb.append("Added by: ").append(book.getAddedBy() != null ? book.getAddedBy().getUsername() : "Unknown").append("\n");
+        sb.append("Authors: ").append(book.getAuthors().isEmpty() ? "(None listed)"
+            : book.getAuthors().stream().map(BookDetailsDialog::formatAuthor).collect(Collectors.joining(", "))).append("\n");
+        sb.append("Genres: ").append(book.getGenres().isEmpty() ? "(None listed)"
+            : book.getGenres().stream().map(Genre::getName).collect(Collectors.joining(", "))).append("\n");
+        sb.append("Rating: ").append(String.format("%.1f", book.getRating()))
+          .append(" (").append(book.getReviewCount()).append(" reviews)");
+        return sb.toString();
+    }
+
+    private static String formatAuthor(Author author) {
+        return author.getAddedBy() != null
+            ? author.getName() + " (Added by: " + author.getAddedBy().getUsername() + ")"
+            : author.getName();
+    }
+
+    /**
+     * Set what reads the page starting at a cursor when the user scrolls to the end;
+     * called on the JavaFX thread, it should hand the page to appendReviews.
+     */
+    public void setOnLoadPage(Consumer<ReviewCursor> loadPage) {
+        this.loadPage = loadPage;
+    }
+
+    /**
+     * Add a page read after the dialog was created or scrolled to its end.
+     * Must be called on the JavaFX thread.
+     */
+    public void appendReviews(ReviewPage page) {
+        loading = false;
+        next = page.getNext();
+        reviewList.getItems().addAll(page.getReviews());
+        if (reviewList.getItems().isEmpty()) {
+            reviewList.setPlaceholder(new Label("No reviews yet."));
+        }
+    }
+
+    /**
+     * Show that a page could not be read; scrolling to the end again retries it.
+     * Must be called on the JavaFX thread.
+     */
+    public void showLoadError(String message) {
+        loading = false;
+        reviewList.setPlaceholder(new Label("Could not read the reviews: " + message));
+    }
+
+    // reads the next page when the last review read is shown
+    private void loadNextPageIfAt(int index) {
+        if (!loading && next != null && index == reviewList.getItems().size() - 1) {
+            loading = true;
+            loadPage.accept(next);
+        }
+    }
+
+    private class ReviewCell extends ListCell<Review> {
+
+        ReviewCell() {
+            setWrapText(true);
+            setPrefWidth(0); // wrap at the width of the list instead of widening it
+        }
+
+        @Override
+        protected void updateItem(Review review, boolean empty) {
+            super.updateItem(review, empty);
+            if (empty || review == null) {
+                setText(null);
+                return;
+            }
+            String text = review.getReviewText();
+            setText(text != null && !text.isEmpty() ? review + "\n\"" + text + "\"" : review.toString());
+            loadNextPageIfAt(getIndex());
+        }
+    }
+}
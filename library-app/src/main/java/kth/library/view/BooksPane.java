@@ -0,0 +1,669 @@
+package kth.library.view;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.value.ObservableValue;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.FlowPane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+import javafx.util.Pair;
+import kth.library.model.Book;
+import kth.library.model.BookFacets;
+import kth.library.model.BookSortField;
+import kth.library.model.CostAccounting;
+import kth.library.model.IBooksDb;
+import kth.library.model.OutboxBooksDb;
+import kth.library.model.QueuedWrite;
+import kth.library.model.ReplicaBooksDb;
+import kth.library.model.SearchMode;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The main pane for the view, extending VBox and including the menus. An
+ * internal BorderPane holds the TableView for books and a search utility.
+ *
+ * @author anderslm@kth.se
+ */
+public class BooksPane extends VBox {
+
+    private final Controller controller;
+    private TableView<Book> booksTable;
+    private ObservableList<Book> booksInTable; // the data backing the table view
+    private SortedList<Book> sortedBooks; // booksInTable in the order chosen in the table
+    private PagedBooksList pagedBooks; // backs the table instead for large results, null otherwise
+    private Label resultCountLabel;
+    private Label facetsLabel; // the most common genres of the result, all facets as tooltip
+    private Label statusBar; // the cost of the last database call, if shown
+    private Label connectionLabel; // shown until the database is connected
+    private Label replicaLabel; // how old the local copy is, if searches are answered from one
+    private Label outboxLabel; // books and reviews added but not written to the database yet
+    private Runnable onResultsShown; // told when a search result is complete, null if nobody listens
+    private SearchMode searchedMode; // the last search made, null if none
+    private String searchedFor;
+
+    // Batches of books pushed from search threads, drained into booksInTable once per frame
+    private final ConcurrentLinkedQueue<ResultBatch> pendingBatches = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private AnimationTimer batchDrainer;
+    private volatile int resultGeneration; // id of the search whose rows are shown
+    private boolean resultsLoading;
+
+    private ComboBox<SearchMode> searchModeBox;
+    private TextField searchField;
+    private Button searchButton;
+
+    private MenuBar menuBar;
+    
+    private MenuItem addItem;
+    private MenuItem removeItem; // Not implemented but present in menu
+    private MenuItem updateItem; // Rate book
+    private MenuItem loginItem;
+    private MenuItem logoutItem;
+
+    public BooksPane(IBooksDb booksDb) {
+        controller = new Controller(booksDb, this);
+        this.init(controller);
+    }
+
+    /**
+     * Display a new set of books, e.g. from a database select, in the
+     * booksTable table view. The rows are added on the next frame, recorded
+     * as a TableUpdateEvent.
+     *
+     * @param books the books to display
+     */
+    public void displayBooks(List<Book> books) {
+        int generation = beginResults();
+        appendBooks(generation, books);
+        endResults(generation);
+    }
+
+    /**
+     * Clear the table before a new, possibly incremental, result is shown.
+     * Must be called on the JavaFX application thread.
+     *
+     * @return the id of the new result, passed to appendBooks and endResults
+     */
+    public int beginResults() {
+        int generation = resultGeneration + 1;
+        resultGeneration = generation;
+        pendingBatches.clear();
+        booksInTable.clear();
+        if (pagedBooks != null) {
+            pagedBooks = null;
+            booksTable.setItems(sortedBooks);
+        }
+        resultsLoading = true;
+        updateResultCount();
+        facetsLabel.setText("");
+        facetsLabel.setTooltip(null);
+        return generation;
+    }
+
+    /**
+     * Queue a batch of books for the result with the given id. May be called
+     * from any thread; queued batches are added to the table at most once per
+     * frame, and batches of an outdated result are dropped.
+     *
+     * @param generation the id returned by beginResults
+     * @param books the books to append
+     */
+    public void appendBooks(int generation, List<Book> books) {
+        pendingBatches.add(new ResultBatch(generation, books));
+        if (drainScheduled.compareAndSet(false, true)) {
+            Platform.runLater(batchDrainer::start);
+        }
+    }
+
+    /**
+     * Mark the result with the given id as complete. May be called from any thread.
+     *
+     * @param generation the id returned by beginResults
+     */
+    public void endResults(int generation) {
+        appendBooks(generation, null);
+    }
+
+    /**
+     * Search as if the user had entered the term and pressed Search.
+     * Must be called on the JavaFX application thread.
+     */
+    public void search(SearchMode mode, String searchFor) {
+        searchModeBox.setValue(mode);
+        searchField.setText(searchFor);
+        searchButton.fire();
+    }
+
+    /**
+     * Run the last search again, e.g. when its result may have been out of date.
+     * Must be called on the JavaFX application thread.
+     */
+    public void refreshResults() {
+        if (searchedMode != null && searchedFor != null && !searchedFor.isEmpty()) {
+            controller.onSearchSelected(searchedFor, searchedMode);
+        }
+    }
+
+    /**
+     * Set what to do each time a search result is complete: all its rows are in
+     * the table, or its paged list is shown. Run on the JavaFX application thread.
+     */
+    public void setOnResultsShown(Runnable onResultsShown) {
+        this.onResultsShown = onResultsShown;
+    }
+
+    /**
+     * Show a large result through a paged list that loads rows on demand,
+     * instead of appending every book to the table.
+     * Must be called on the JavaFX application thread.
+     *
+     * @param generation the id returned by beginResults
+     * @param books the paged result
+     */
+    public void displayPagedBooks(int generation, PagedBooksList books) {
+        if (generation != resultGeneration) {
+            return;
+        }
+        pagedBooks = books;
+        booksTable.setItems(books);
+        resultsLoading = false;
+        updateResultCount();
+        booksTable.sort(); // push a sort order chosen earlier down to the database
+        if (onResultsShown != null) {
+            onResultsShown.run();
+        }
+    }
+
+    /**
+     * Sort policy of the books table. A paged result is re-queried in the new
+     * order from the database, anything else is sorted in memory.
+     */
+    private boolean sortBooksTable(TableView<Book> table) {
+        if (pagedBooks == null) {
+            return TableView.DEFAULT_SORT_POLICY.call(table);
+        }
+        BookSortField sortBy = BookSortField.Title;
+        boolean descending = false;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<Book, ?> column = table.getSortOrder().get(0);
+            sortBy = (BookSortField) column.getUserData();
+            descending = column.getSortType() == TableColumn.SortType.DESCENDING;
+        }
+        if (sortBy != pagedBooks.getSortBy() || descending != pagedBooks.isDescending()) {
+            pagedBooks = pagedBooks.sortedBy(sortBy, descending);
+            table.setItems(pagedBooks);
+        }
+        return true;
+    }
+
+    private void drainPendingBatches() {
+        TableUpdateEvent event = new TableUpdateEvent();
+        event.begin();
+        List<Book> arrived = new ArrayList<>();
+        boolean finished = false;
+        ResultBatch batch;
+        while ((batch = pendingBatches.poll()) != null) {
+            if (batch.generation != resultGeneration) {
+                continue; // left over from an earlier search
+            }
+            if (batch.books == null) {
+                finished = true;
+            } else {
+                arrived.addAll(batch.books);
+            }
+        }
+        if (!arrived.isEmpty()) {
+            booksInTable.addAll(arrived);
+        }
+        if (finished) {
+            resultsLoading = false;
+        }
+        updateResultCount();
+        if (event.shouldCommit()) {
+            event.rowsAdded = arrived.size();
+            event.rowsShown = booksInTable.size();
+            event.finished = finished;
+            event.commit();
+        }
+
+        batchDrainer.stop();
+        drainScheduled.set(false);
+        // a batch may have been queued after the loop above but before the flag was reset
+        if (!pendingBatches.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            batchDrainer.start();
+        }
+        if (finished && onResultsShown != null) {
+            onResultsShown.run();
+        }
+    }
+
+    /**
+     * Show the facet counts of the result with the given id.
+     * Must be called on the JavaFX application thread.
+     *
+     * @param generation the id returned by beginResults
+     * @param facets the counts of the search
+     */
+    public void displayFacets(int generation, BookFacets facets) {
+        if (generation != resultGeneration) {
+            return;
+        }
+        facetsLabel.setText(formatFacetCounts(facets.getGenres(), 3));
+        facetsLabel.setTooltip(new Tooltip(
+            "Genres: " + formatFacetCounts(facets.getGenres(), BookFacets.MAX_VALUES) + "\n" +
+            "Authors: " + formatFacetCounts(facets.getAuthors(), BookFacets.MAX_VALUES) + "\n" +
+            "Publishers: " + formatFacetCounts(facets.getPublishers(), BookFacets.MAX_VALUES) + "\n" +
+            "Ratings: " + formatFacetCounts(facets.getRatings(), BookFacets.RATING_BUCKETS.length)));
+    }
+
+    /**
+     * Show in the facet area that the facet counts of the result with the given id
+     * could not be read; the result itself is not affected.
+     * Must be called on the JavaFX application thread.
+     *
+     * @param generation the id returned by beginResults
+     * @param msg the error, shown as tooltip
+     */
+    public void displayFacetsFailed(int generation, String msg) {
+        if (generation != resultGeneration) {
+            return;
+        }
+        facetsLabel.setText("Facets not available");
+        facetsLabel.setTooltip(new Tooltip("Could not count facets: " + msg));
+    }
+
+    /**
+     * Show the cost of each database call in a status bar below the search field,
+     * with the averages per operation as tooltip.
+     *
+     * @param costs the accounting of the database used by this view
+     */
+    public void showOperationCosts(CostAccounting costs) {
+        statusBar.setVisible(true);
+        statusBar.setManaged(true);
+        costs.addListener(cost -> Platform.runLater(() -> {
+            statusBar.setText(cost.toString());
+            statusBar.setTooltip(new Tooltip(costs.getSummaries().values().stream()
+                .map(CostAccounting.Summary::toString)
+                .collect(Collectors.joining("\n"))));
+        }));
+    }
+
+    /**
+     * Show that the database is being connected to. Searches and other calls can be
+     * made meanwhile, they wait until the database is ready.
+     *
+     * @param database the name of the database for the user
+     */
+    public void showConnecting(String database) {
+        connectionLabel.setText("Connecting to " + database + "...");
+        connectionLabel.setTooltip(null);
+        connectionLabel.setOnMouseClicked(null);
+        connectionLabel.setVisible(true);
+        connectionLabel.setManaged(true);
+    }
+
+    public void showConnected() {
+        connectionLabel.setVisible(false);
+        connectionLabel.setManaged(false);
+    }
+
+    /**
+     * Show that the database could not be connected to, and tell the user why.
+     *
+     * @param retry connects again, run when the user clicks the connection label
+     */
+    public void showConnectionFailed(String msg, Runnable retry) {
+        connectionLabel.setText("Not connected (click to try again)");
+        connectionLabel.setTooltip(new Tooltip(msg));
+        connectionLabel.setOnMouseClicked(event -> retry.run());
+        connectionLabel.setVisible(true);
+        connectionLabel.setManaged(true);
+        showAlertAndWait("Could not connect to the database: " + msg, Alert.AlertType.ERROR);
+    }
+
+    /**
+     * Show how long ago the local copy that answers searches was brought up to date,
+     * and why it could not be, if it could not.
+     *
+     * @param replica the local copy used by this view
+     */
+    public void showReplica(ReplicaBooksDb replica) {
+        replicaLabel.setVisible(true);
+        replicaLabel.setManaged(true);
+        updateReplicaLabel(replica);
+        replica.addSyncListener(() -> Platform.runLater(() -> updateReplicaLabel(replica)));
+        // the age shown grows between syncs
+        Timeline ageTimer = new Timeline(new KeyFrame(Duration.seconds(10), event -> updateReplicaLabel(replica)));
+        ageTimer.setCycleCount(Timeline.INDEFINITE);
+        ageTimer.play();
+    }
+
+    private void updateReplicaLabel(ReplicaBooksDb replica) {
+        Instant lastSynced = replica.getLastSynced();
+        String text;
+        if (!replica.hasCopy()) {
+            text = "Copying the catalog...";
+        } else if (lastSynced == null) {
+            text = "Local copy";
+        } else {
+            long seconds = java.time.Duration.between(lastSynced, Instant.now()).toSeconds();
+            text = "Local copy, " + (seconds < 60 ? "up to date"
+                : seconds < 3600 ? (seconds / 60) + " min old"
+                : seconds < 86400 ? (seconds / 3600) + " h old"
+                : (seconds / 86400) + " days old");
+        }
+        String error = replica.getSyncError();
+        replicaLabel.setText(error != null ? text + " (offline)" : text);
+        replicaLabel.setTooltip(new Tooltip(
+            (lastSynced != null ? "Last synced " + lastSynced : "Not synced yet")
+            + (error != null ? "\n" + error : "")));
+    }
+
+    /**
+     * Show how many of the books and reviews added are not written to the database
+     * yet, and why they could not be, if they could not, and which ones the database
+     * refused.
+     *
+     * @param outbox the queue of the books and reviews added in this view
+     */
+    public void showOutbox(OutboxBooksDb outbox) {
+        updateOutboxLabel(outbox);
+        outbox.addWriteListener(() -> Platform.runLater(() -> updateOutboxLabel(outbox)));
+        // books and reviews are queued while the database is not reachable too
+        Timeline queueTimer = new Timeline(new KeyFrame(Duration.seconds(2), event -> updateOutboxLabel(outbox)));
+        queueTimer.setCycleCount(Timeline.INDEFINITE);
+        queueTimer.play();
+    }
+
+    private void updateOutboxLabel(OutboxBooksDb outbox) {
+        int count = outbox.getQueuedCount();
+        List<QueuedWrite> rejected = outbox.getRejected();
+        outboxLabel.setVisible(count > 0 || !rejected.isEmpty());
+        outboxLabel.setManaged(count > 0 || !rejected.isEmpty());
+        if (count == 0 && rejected.isEmpty()) {
+            return;
+        }
+        List<String> parts = new ArrayList<>();
+        if (count > 0) {
+            parts.add(count + (count == 1 ? " addition" : " additions") + " not saved yet");
+        }
+        if (!rejected.isEmpty()) {
+            parts.add(rejected.size() + " refused by the database");
+        }
+        outboxLabel.setText(String.join(", ", parts));
+        String error = outbox.getWriteError();
+        String tooltip = count == 0 ? "" : error != null ? error : "Being written to the database";
+        if (!rejected.isEmpty()) {
+            tooltip += (tooltip.isEmpty() ? "" : "\n") + "Not saved: " + rejected.stream()
+                .map(QueuedWrite::toString)
+                .collect(Collectors.joining(", "));
+        }
+        outboxLabel.setTooltip(new Tooltip(tooltip));
+    }
+
+    private static String formatFacetCounts(Map<String, Integer> counts, int max) {
+        return counts.entrySet().stream()
+            .limit(max)
+            .map(entry -> entry.getKey() + " (" + entry.getValue() + ")")
+            .collect(Collectors.joining(", "));
+    }
+
+    private void updateResultCount() {
+        int rows = pagedBooks != null ? pagedBooks.size() : booksInTable.size();
+        resultCountLabel.setText(resultsLoading ? "Searching... " + rows + " books" : rows + " books");
+    }
+
+    /**
+     * Notify user on input error or exceptions.
+     *
+     * @param msg  the message
+     * @param type types: INFORMATION, WARNING et c.
+     */
+    public void showAlertAndWait(String msg, Alert.AlertType type) {
+        // types: INFORMATION, WARNING et c.
+        Alert alert = new Alert(type, msg);
+        alert.showAndWait();
+    }
+    
+    public void updateMenuState(boolean isLoggedIn) {
+        addItem.setDisable(!isLoggedIn);
+        removeItem.setDisable(!isLoggedIn);
+        updateItem.setDisable(!isLoggedIn); // Cannot rate if not logged in
+        
+        loginItem.setVisible(!isLoggedIn);
+        logoutItem.setVisible(isLoggedIn);
+    }
+
+    void init(Controller controller) {
+
+        booksInTable = FXCollections.observableArrayList();
+        resultCountLabel = new Label();
+        facetsLabel = new Label();
+        statusBar = new Label();
+        statusBar.setPadding(new Insets(0, 10, 0, 10));
+        statusBar.setVisible(false);
+        statusBar.setManaged(false);
+        connectionLabel = new Label();
+        connectionLabel.setVisible(false);
+        connectionLabel.setManaged(false);
+        replicaLabel = new Label();
+        replicaLabel.setVisible(false);
+        replicaLabel.setManaged(false);
+        outboxLabel = new Label();
+        outboxLabel.setVisible(false);
+        outboxLabel.setManaged(false);
+        batchDrainer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                drainPendingBatches();
+            }
+        };
+
+        // init views and event handlers
+        initBooksTable();
+        initSearchView(controller);
+        initMenus(controller);
+
+        FlowPane bottomPane = new FlowPane();
+        bottomPane.setHgap(10);
+        bottomPane.setPadding(new Insets(10, 10, 10, 10));
+        bottomPane.getChildren().addAll(searchModeBox, searchField, searchButton, resultCountLabel, facetsLabel,
+                                       connectionLabel, replicaLabel, outboxLabel);
+
+        BorderPane mainPane = new BorderPane();
+        mainPane.setCenter(booksTable);
+        mainPane.setBottom(bottomPane);
+        mainPane.setPadding(new Insets(10, 10, 10, 10));
+
+        this.getChildren().addAll(menuBar, mainPane, statusBar);
+        VBox.setVgrow(mainPane, Priority.ALWAYS);
+    }
+
+    private void initBooksTable() {
+        booksTable = new TableView<>();
+        booksTable.setEditable(false); // don't allow user updates (yet)
+        booksTable.setPlaceholder(new Label("No rows to display"));
+
+        // define columns
+        TableColumn<Book, String> titleCol = new TableColumn<>("Title");
+        TableColumn<Book, String> isbnCol = new TableColumn<>("ISBN");
+        TableColumn<Book, String> publisherCol = new TableColumn<>("Publisher");
+        TableColumn<Book, Double> ratingCol = new TableColumn<>("Rating"); 
+        
+        booksTable.getColumns().addAll(titleCol, isbnCol, publisherCol, ratingCol);
+        // give title column some extra space
+        titleCol.prefWidthProperty().bind(booksTable.widthProperty().multiply(0.5));
+
+        // define how to fill data for each cell, with typed getters rather than
+        // reflection; a row of a paged result that is not loaded yet has no book
+        titleCol.setCellValueFactory(cd -> cellValue(cd.getValue(), Book::getTitle));
+        isbnCol.setCellValueFactory(cd -> cellValue(cd.getValue(), Book::getIsbn));
+        publisherCol.setCellValueFactory(cd -> cellValue(cd.getValue(), Book::getPublisher));
+        ratingCol.setCellValueFactory(cd -> cellValue(cd.getValue(), Book::getRating));
+
+        // the attribute each column sorts by when sorting is done by the database
+        titleCol.setUserData(BookSortField.Title);
+        isbnCol.setUserData(BookSortField.ISBN);
+        publisherCol.setUserData(BookSortField.Publisher);
+        ratingCol.setUserData(BookSortField.Rating);
+        
+        // Format rating to 1 decimal
+        ratingCol.setCellFactory(tc -> new TableCell<Book, Double>() {
+            @Override
+            protected void updateItem(Double rating, boolean empty) {
+                super.updateItem(rating, empty);
+                if (empty || rating == null) {
+                    setText(null);
+                } else {
+                    setText(String.format("%.1f", rating));
+                }
+            }
+        });
+
+        // associate the table view with the data, through a sorted view so that
+        // a column sort also applies to rows arriving while a search is running
+        sortedBooks = new SortedList<>(booksInTable);
+        sortedBooks.comparatorProperty().bind(booksTable.comparatorProperty());
+        booksTable.setItems(sortedBooks);
+        booksTable.setSortPolicy(this::sortBooksTable);
+    }
+
+    private static <T> ObservableValue<T> cellValue(Book book, Function<Book, T> getter) {
+        return new ReadOnlyObjectWrapper<>(book != null ? getter.apply(book) : null);
+    }
+
+    private void initSearchView(Controller controller) {
+        searchField = new TextField();
+        searchField.setPromptText("Search for...");
+        searchModeBox = new ComboBox<>();
+        searchModeBox.getItems().addAll(SearchMode.values());
+        searchModeBox.setValue(SearchMode.Title);
+        searchButton = new Button("Search");
+
+        // event handling (dispatch to controller)
+        searchButton.setOnAction(event -> {
+            String searchFor = searchField.getText();
+            SearchMode mode = searchModeBox.getValue();
+            searchedMode = mode;
+            searchedFor = searchFor;
+            controller.onSearchSelected(searchFor, mode);
+        });
+    }
+
+    private void initMenus(Controller controller) {
+
+        Menu fileMenu = new Menu("File");
+        MenuItem exitItem = new MenuItem("Exit");
+        MenuItem connectItem = new MenuItem("Connect to Db"); // Not hooked up yet
+        MenuItem disconnectItem = new MenuItem("Disconnect"); // Not hooked up yet
+        loginItem = new MenuItem("Log in");
+        logoutItem = new MenuItem("Log out");
+        
+        fileMenu.getItems().addAll(loginItem, logoutItem, new SeparatorMenuItem(), exitItem);
+        
+        exitItem.setOnAction(e -> System.exit(0));
+        
+        loginItem.setOnAction(e -> {
+            LoginDialog dialog = new LoginDialog();
+            Optional<Pair<String, String>> result = dialog.showAndWait();
+            result.ifPresent(creds -> controller.onLogin(creds.getKey(), creds.getValue()));
+        });
+        
+        logoutItem.setOnAction(e -> controller.onLogout());
+        logoutItem.setVisible(false); // Default hidden
+
+        Menu searchMenu = new Menu("Search");
+        MenuItem titleItem = new MenuItem("Title");
+        MenuItem isbnItem = new MenuItem("ISBN");
+        MenuItem authorItem = new MenuItem("Author");
+        MenuItem genreItem = new MenuItem("Genre");
+        MenuItem ratingItem = new MenuItem("Rating");
+        MenuItem anyItem = new MenuItem("Any");
+        searchMenu.getItems().addAll(titleItem, isbnItem, authorItem, genreItem, ratingItem, anyItem);
+        
+        // Bind menu items to change the combo box selection
+        titleItem.setOnAction(e -> searchModeBox.setValue(SearchMode.Title));
+        isbnItem.setOnAction(e -> searchModeBox.setValue(SearchMode.ISBN));
+        authorItem.setOnAction(e -> searchModeBox.setValue(SearchMode.Author));
+        genreItem.setOnAction(e -> searchModeBox.setValue(SearchMode.Genre));
+        ratingItem.setOnAction(e -> searchModeBox.setValue(SearchMode.Rating));
+        anyItem.setOnAction(e -> searchModeBox.setValue(SearchMode.Any));
+
+        Menu manageMenu = new Menu("Manage");
+        addItem = new MenuItem("Add Book");
+        removeItem = new MenuItem("Remove Book");
+        updateItem = new MenuItem("Rate & Review");
+        MenuItem detailsItem = new MenuItem("Show Details"); 
+        manageMenu.getItems().addAll(addItem, removeItem, updateItem, new SeparatorMenuItem(), detailsItem);
+        
+        // Initial state: Disabled until login
+        addItem.setDisable(true);
+        removeItem.setDisable(true);
+        updateItem.setDisable(true);
+
+        menuBar = new MenuBar();
+        menuBar.getMenus().addAll(fileMenu, searchMenu, manageMenu);
+
+        // Event handlers
+        updateItem.setOnAction(e -> {
+            Book selected = booksTable.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                controller.onRateBookSelected(selected);
+            } else {
+                showAlertAndWait("No book selected", Alert.AlertType.WARNING);
+            }
+        });
+        
+        detailsItem.setOnAction(e -> {
+            Book selected = booksTable.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                controller.onShowDetailsSelected(selected);
+            } else {
+                showAlertAndWait("No book selected", Alert.AlertType.WARNING);
+            }
+        });
+        
+        addItem.setOnAction(e -> {
+            controller.onAddBookSelected();
+        });
+        
+        removeItem.setOnAction(e -> {
+            controller.onRemoveBookSelected();
+        });
+    }
+    
+    public Book getSelectedBook() {
+        return booksTable.getSelectionModel().getSelectedItem();
+    }
+
+    // A batch of books for a given search, books == null marks the end of the result
+    private static class ResultBatch {
+        final int generation;
+        final List<Book> books;
+
+        ResultBatch(int generation, List<Book> books) {
+            this.generation = generation;
+            this.books = books;
+        }
+    }
+}
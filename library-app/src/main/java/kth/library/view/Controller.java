@@ -0,0 +1,248 @@
+package kth.library.view;
+
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+import javafx.util.Pair;
+import kth.library.model.Book;
+import kth.library.model.BookFacets;
+import kth.library.model.BookQuery;
+import kth.library.model.IBooksDb;
+import kth.library.model.ReviewCursor;
+import kth.library.model.ReviewPage;
+import kth.library.model.SearchMode;
+import kth.library.model.User;
+import kth.library.model.exceptions.QueryTimeoutException;
+import kth.library.model.exceptions.SelectException;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static javafx.scene.control.Alert.AlertType.*;
+
+/**
+ * The controller is responsible for handling user requests and update the view
+ * (and in some cases the model).
+ *
+ * @author anderslm@kth.se
+ */
+public class Controller {
+
+    private final BooksPane booksView; // view
+    private final IBooksDb booksDb; // model
+    private User currentUser; // The currently logged in user (null if anonymous)
+
+    // Results larger than this are shown through a paged list instead of being streamed in full
+    private static final int PAGED_RESULT_THRESHOLD = 2000;
+    // Reviews shown in the details dialog are read this many at a time
+    private static final int REVIEW_PAGE_SIZE = 50;
+
+    public Controller(IBooksDb booksDb, BooksPane booksView) {
+        this.booksDb = booksDb;
+        this.booksView = booksView;
+    }
+    
+    public boolean isLoggedIn() {
+        return currentUser != null;
+    }
+    
+    public User getCurrentUser() {
+        return currentUser;
+    }
+
+    protected void onLogin(String username, String password) {
+        new Thread(() -> {
+            try {
+                User user = booksDb.login(username, password);
+                Platform.runLater(() -> {
+                    if (user != null) {
+                        currentUser = user;
+                        booksView.showAlertAndWait("Welcome " + user.getUsername(), INFORMATION);
+                        booksView.updateMenuState(true);
+                    } else {
+                        booksView.showAlertAndWait("Login failed. Wrong username or password.", ERROR);
+                    }
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> booksView.showAlertAndWait("Login error: " + e.getMessage(), ERROR));
+            }
+        }).start();
+    }
+    
+    protected void onLogout() {
+        currentUser = null;
+        booksView.updateMenuState(false);
+        booksView.showAlertAndWait("You have been logged out.", INFORMATION);
+    }
+
+    protected void onSearchSelected(String searchFor, SearchMode mode) {
+        if (searchFor == null || searchFor.isEmpty()) {
+            booksView.showAlertAndWait("Enter a search string!", WARNING);
+            return;
+        }
+        if (mode == SearchMode.Rating) {
+            // For rating, we expect an integer
+            try {
+                Integer.parseInt(searchFor.trim());
+            } catch (NumberFormatException e) {
+                booksView.showAlertAndWait("Rating must be a number", WARNING);
+                return;
+            }
+        }
+
+        // rows are pushed to the table batch by batch as the backend decodes them,
+        // or loaded page by page on demand if the result is large
+        final int generation = booksView.beginResults();
+        new Thread(() -> {
+            try {
+                if (mode == SearchMode.Any) {
+                    // ranked and merged from several lookups, so shown as one batch
+                    List<Book> books = booksDb.findBooksByAny(searchFor);
+                    booksView.appendBooks(generation, books);
+                    booksView.endResults(generation);
+                    if (books.isEmpty()) {
+                        Platform.runLater(() -> booksView.showAlertAndWait("No results found.", INFORMATION));
+                    }
+                    return;
+                }
+                BookQuery query = BookQuery.forSearch(mode, searchFor);
+                int total = booksDb.countBooks(query);
+                if (total > PAGED_RESULT_THRESHOLD) {
+                    PagedBooksList pagedBooks = new PagedBooksList(booksDb, query, total,
+                        e -> booksView.showAlertAndWait("Some rows could not be loaded, they are tried again in a while: "
+                                                        + e.getMessage(), ERROR));
+                    Platform.runLater(() -> booksView.displayPagedBooks(generation, pagedBooks));
+                    showFacets(generation, query);
+                    return;
+                }
+
+                AtomicInteger found = new AtomicInteger();
+                booksDb.searchBooks(query, batch -> {
+                    found.addAndGet(batch.size());
+                    booksView.appendBooks(generation, batch);
+                });
+                booksView.endResults(generation);
+                if (found.get() == 0) {
+                    Platform.runLater(() -> booksView.showAlertAndWait("No results found.", INFORMATION));
+                } else {
+                    showFacets(generation, query);
+                }
+            } catch (QueryTimeoutException e) {
+                booksView.endResults(generation);
+                Platform.runLater(() -> booksView.showAlertAndWait(
+                    "The search took too long and was stopped. Try a more specific search.", WARNING));
+            } catch (Exception e) {
+                booksView.endResults(generation);
+                Platform.runLater(() -> booksView.showAlertAndWait("Database error: " + e.getMessage(), ERROR));
+            }
+        }).start();
+    }
+    
+    // facets are a summary only, a failure does not affect the result already shown
+    private void showFacets(int generation, BookQuery query) {
+        try {
+            BookFacets facets = booksDb.findFacets(query);
+            Platform.runLater(() -> booksView.displayFacets(generation, facets));
+        } catch (SelectException e) {
+            Platform.runLater(() -> booksView.displayFacetsFailed(generation, e.getMessage()));
+        }
+    }
+
+    protected void onRateBookSelected(Book book) {
+        if (currentUser == null) {
+            booksView.showAlertAndWait("You must be logged in to rate books.", WARNING);
+            return;
+        }
+
+        ReviewDialog dialog = new ReviewDialog(book.getTitle());
+        Optional<Pair<Integer, String>> result = dialog.showAndWait();
+        
+        result.ifPresent(review -> {
+            new Thread(() -> {
+                try {
+                    booksDb.addReview(book, currentUser, review.getKey(), review.getValue());
+                    Platform.runLater(() -> {
+                        booksView.showAlertAndWait("Review added!", INFORMATION);
+                        // Refresh view if needed?
+                    });
+                } catch (Exception e) {
+                    Platform.runLater(() -> booksView.showAlertAndWait("Error adding review: " + e.getMessage(), ERROR));
+                }
+            }).start();
+        });
+    }
+    
+    protected void onShowDetailsSelected(Book book) {
+        BookDetailsDialog dialog = new BookDetailsDialog(book);
+        dialog.setOnLoadPage(after -> loadReviews(dialog, book, after));
+        loadReviews(dialog, book, null);
+        dialog.show();
+    }
+
+    private void loadReviews(BookDetailsDialog dialog, Book book, ReviewCursor after) {
+        new Thread(() -> {
+            try {
+                ReviewPage page = booksDb.findReviews(book, after, REVIEW_PAGE_SIZE);
+                Platform.runLater(() -> dialog.appendReviews(page));
+            } catch (SelectException e) {
+                Platform.runLater(() -> dialog.showLoadError(e.getMessage()));
+            }
+        }).start();
+    }
+
+    protected void onAddBookSelected() {
+        if (currentUser == null) {
+            booksView.showAlertAndWait("You must be logged in to add books.", WARNING);
+            return;
+        }
+
+        // The dialog searches authors and genres by prefix as the user types,
+        // instead of being given all of them
+        AddBookDialog dialog = new AddBookDialog(booksDb::findAuthorsByPrefix, booksDb::findGenresByPrefix);
+        Optional<Book> result = dialog.showAndWait();
+
+        result.ifPresent(newBook -> {
+            // Set the user who is adding the book
+            newBook.setAddedBy(currentUser);
+
+            // Authors and genres are selected from the ones found in the database,
+            // no new authors are created here.
+            new Thread(() -> {
+                try {
+                    booksDb.addBook(newBook);
+                    Platform.runLater(() -> {
+                        booksView.showAlertAndWait("Book added successfully!", INFORMATION);
+                    });
+                } catch (Exception e) {
+                    Platform.runLater(() -> booksView.showAlertAndWait("Error adding book: " + e.getMessage(), ERROR));
+                }
+            }).start();
+        });
+    }
+
+    protected void onRemoveBookSelected() {
+        if (currentUser == null) {
+            booksView.showAlertAndWait("You must be logged in to remove books.", WARNING);
+            return;
+        }
+
+        Book selected = booksView.getSelectedBook();
+        if (selected == null) {
+            booksView.showAlertAndWait("No book selected", WARNING);
+            return;
+        }
+
+        new Thread(() -> {
+            try {
+                booksDb.removeBook(selected);
+                Platform.runLater(() -> {
+                    booksView.showAlertAndWait("Book removed", INFORMATION);
+                    // Trigger a re-search or refresh (not fully implemented in view yet, but logic is sound)
+                    // For now user has to search again to see it gone
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> booksView.showAlertAndWait("Error: " + e.getMessage(), ERROR));
+            }
+        }).start();
+    }
+}
@@ -0,0 +1,184 @@
+package kth.library.view;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.util.Duration;
+import kth.library.model.Book;
+import kth.library.model.BookQuery;
+import kth.library.model.BookSortField;
+import kth.library.model.IBooksDb;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * A read-only list backing the books table for large search results.
+ * The table asks for rows by index; rows of pages not yet loaded are returned
+ * as null and their page is fetched from the database in the background, after
+ * which the table is notified and redraws them. Only the most recently used
+ * pages are kept in memory.
+ * <p>
+ * Pages are fetched with keyset cursors: the last book of a loaded page is
+ * remembered and the next page is requested as "after this book". A page far
+ * away from any known boundary is reached by skipping rows from the nearest
+ * boundary before it.
+ * <p>
+ * A page that cannot be fetched is not requested again while the table keeps
+ * asking for its rows: they stay null until a retry delay, doubled with every
+ * failure of the page, has passed, then the table is told to redraw them and
+ * the page is fetched again. The first failure is reported to the error handler,
+ * later ones are not; searching again starts a new list.
+ */
+public class PagedBooksList extends ObservableListBase<Book> {
+
+    static final int PAGE_SIZE = 100;
+    private static final int RESIDENT_PAGES = 8;
+    private static final Duration RETRY_DELAY = Duration.seconds(2);
+    private static final Duration MAX_RETRY_DELAY = Duration.minutes(1);
+
+    // one loader for all paged lists, the backends are not used concurrently from here
+    private static final ExecutorService PAGE_LOADER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "page-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final IBooksDb booksDb;
+    private final BookQuery query; // the search with its sort order, limited to one page
+    private final int size;
+    private final Consumer<Exception> errorHandler;
+
+    // least recently used pages are evicted first
+    private final Map<Integer, List<Book>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Book>> eldest) {
+            return size() > RESIDENT_PAGES;
+        }
+    };
+    // the last book of every page loaded so far, kept when the page itself is evicted
+    private final TreeMap<Integer, Book> pageEnds = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private final Map<Integer, Integer> failures = new HashMap<>(); // failed fetches of a page in a row
+    private final Set<Integer> waitingToRetry = new HashSet<>();
+    private boolean errorReported;
+
+    /**
+     * @param booksDb the database to fetch pages from
+     * @param query the search; sorted by title if it has no sort order
+     * @param size the number of books in the result, as counted by the database
+     * @param errorHandler called on the JavaFX thread the first time a page cannot be fetched
+     */
+    public PagedBooksList(IBooksDb booksDb, BookQuery query, int size, Consumer<Exception> errorHandler) {
+        this.booksDb = booksDb;
+        this.query = query.copy().limit(PAGE_SIZE);
+        if (query.getSortBy() == null) {
+            this.query.sortBy(BookSortField.Title, false);
+        }
+        this.size = size;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * @return a list over the same search, sorted by the database in the given order
+     */
+    public PagedBooksList sortedBy(BookSortField sortBy, boolean descending) {
+        return new PagedBooksList(booksDb, query.copy().sortBy(sortBy, descending), size, errorHandler);
+    }
+
+    public BookSortField getSortBy() {
+        return query.getSortBy();
+    }
+
+    public boolean isDescending() {
+        return query.isDescending();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the book at the index, or null if its page is not loaded yet
+     */
+    @Override
+    public Book get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        int page = index / PAGE_SIZE;
+        List<Book> books = pages.get(page);
+        if (books == null) {
+            requestPage(page);
+            return null;
+        }
+        int offset = index % PAGE_SIZE;
+        return offset < books.size() ? books.get(offset) : null;
+    }
+
+    private void requestPage(int page) {
+        if (waitingToRetry.contains(page) || !loading.add(page)) {
+            return;
+        }
+        // start from the closest page boundary we know of before the requested page
+        Map.Entry<Integer, Book> cursor = pageEnds.lowerEntry(page);
+        Book after = cursor != null ? cursor.getValue() : null;
+        int skip = (cursor != null ? page - cursor.getKey() - 1 : page) * PAGE_SIZE;
+
+        PAGE_LOADER.execute(() -> {
+            try {
+                List<Book> books = booksDb.findBooksPage(query, after, skip);
+                Platform.runLater(() -> pageLoaded(page, books));
+            } catch (Exception e) {
+                Platform.runLater(() -> pageFailed(page, e));
+            }
+        });
+    }
+
+    private void pageLoaded(int page, List<Book> books) {
+        loading.remove(page);
+        failures.remove(page);
+        pages.put(page, books);
+        if (!books.isEmpty()) {
+            pageEnds.put(page, books.get(books.size() - 1));
+        }
+        rowsChanged(page);
+    }
+
+    private void pageFailed(int page, Exception e) {
+        loading.remove(page);
+        int failed = failures.merge(page, 1, Integer::sum);
+        waitingToRetry.add(page);
+        Duration delay = RETRY_DELAY.multiply(1 << Math.min(failed - 1, 10));
+        PauseTransition retry = new PauseTransition(delay.lessThan(MAX_RETRY_DELAY) ? delay : MAX_RETRY_DELAY);
+        retry.setOnFinished(event -> {
+            waitingToRetry.remove(page);
+            rowsChanged(page); // the table asks for the rows again if they are shown
+        });
+        retry.play();
+        if (!errorReported) {
+            errorReported = true;
+            errorHandler.accept(e);
+        }
+    }
+
+    // tell the table the rows of this page have changed
+    private void rowsChanged(int page) {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(from + PAGE_SIZE, size);
+        beginChange();
+        for (int i = from; i < to; i++) {
+            nextSet(i, null);
+        }
+        endChange();
+    }
+}
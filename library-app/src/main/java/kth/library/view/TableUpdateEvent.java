@@ -0,0 +1,23 @@
+package kth.library.view;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for adding arrived search results to the books table.
+ */
+@Name("kth.library.TableUpdate")
+@Label("Books Table Update")
+@Category({"Library", "UI"})
+class TableUpdateEvent extends jdk.jfr.Event {
+
+    @Label("Rows Added")
+    int rowsAdded;
+
+    @Label("Rows Shown")
+    int rowsShown;
+
+    @Label("Result Complete")
+    boolean finished;
+}
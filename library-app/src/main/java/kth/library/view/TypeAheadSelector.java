@@ -0,0 +1,126 @@
+package kth.library.view;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.VBox;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Lets the user pick several items by typing the start of their name. The items
+ * matching the text are searched for when the user pauses typing, on a
+ * background thread, and only a limited number of them is shown, so the
+ * selector never holds more than one page of matches however many items exist.
+ * Double-click or Enter adds a match to the selected items, double-click or
+ * Delete removes a selected item.
+ *
+ * @param <T> the type of the items, shown with toString
+ */
+public class TypeAheadSelector<T> extends VBox {
+
+    /**
+     * Finds the items whose name starts with a prefix, at most limit of them.
+     */
+    @FunctionalInterface
+    public interface PrefixSearch<T> {
+        List<T> find(String prefix, int limit) throws Exception;
+    }
+
+    private static final Duration DEBOUNCE = Duration.millis(250);
+    private static final int MAX_MATCHES = 20;
+
+    private final PrefixSearch<T> search;
+    private final Function<T, ?> idOf;
+    private final TextField searchField = new TextField();
+    private final ListView<T> matches = new ListView<>();
+    private final ListView<T> selected = new ListView<>();
+    private final PauseTransition debounce = new PauseTransition(DEBOUNCE);
+    private int generation; // the latest search; answers to older ones are ignored
+
+    /**
+     * @param idOf the id of an item, so that an item found again by a later search
+     *             is recognized as already selected
+     */
+    public TypeAheadSelector(String prompt, PrefixSearch<T> search, Function<T, ?> idOf) {
+        super(5);
+        this.search = search;
+        this.idOf = idOf;
+        searchField.setPromptText(prompt);
+        matches.setPrefHeight(120);
+        matches.setPlaceholder(new Label("No matches"));
+        selected.setPrefHeight(70);
+        selected.setPlaceholder(new Label("None selected"));
+
+        // search when the user pauses typing, not for every key
+        debounce.setOnFinished(e -> startSearch(searchField.getText().trim()));
+        searchField.textProperty().addListener((obs, oldText, newText) -> debounce.playFromStart());
+
+        matches.setOnMouseClicked(e -> {
+            if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2) addSelectedMatch();
+        });
+        matches.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.ENTER) addSelectedMatch();
+        });
+        selected.setOnMouseClicked(e -> {
+            if (e.getButton() == MouseButton.PRIMARY && e.getClickCount() == 2) removeSelected();
+        });
+        selected.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.DELETE || e.getCode() == KeyCode.BACK_SPACE) removeSelected();
+        });
+
+        getChildren().addAll(searchField, matches, new Label("Selected:"), selected);
+        startSearch(""); // the first items by name
+    }
+
+    /**
+     * @return the items the user selected, in the order they were added
+     */
+    public List<T> getSelectedItems() {
+        return new ArrayList<>(selected.getItems());
+    }
+
+    private void startSearch(String prefix) {
+        int searchGeneration = ++generation;
+        matches.setPlaceholder(new Label("Searching..."));
+        new Thread(() -> {
+            try {
+                List<T> found = search.find(prefix, MAX_MATCHES);
+                Platform.runLater(() -> {
+                    if (searchGeneration == generation) {
+                        matches.getItems().setAll(found);
+                        matches.setPlaceholder(new Label("No matches"));
+                    }
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    if (searchGeneration == generation) {
+                        matches.getItems().clear();
+                        matches.setPlaceholder(new Label("Search failed: " + e.getMessage()));
+                    }
+                });
+            }
+        }).start();
+    }
+
+    private void addSelectedMatch() {
+        T match = matches.getSelectionModel().getSelectedItem();
+        if (match != null && selected.getItems().stream().noneMatch(item -> idOf.apply(item).equals(idOf.apply(match)))) {
+            selected.getItems().add(match);
+        }
+    }
+
+    private void removeSelected() {
+        T item = selected.getSelectionModel().getSelectedItem();
+        if (item != null) {
+            selected.getItems().remove(item);
+        }
+    }
+}
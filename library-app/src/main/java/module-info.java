@@ -0,0 +1,10 @@
+module kth.library {
+    requires transitive javafx.controls;  // Main is an Application
+    requires javafx.fxml;
+    requires jdk.jfr;
+    requires kth.library.model;  // the backend is found with ServiceLoader, see BooksDbProvider
+
+    opens kth.library to javafx.fxml;          // FXML får skapa HelloController, main-klass etc
+    
+    exports kth.library;
+}
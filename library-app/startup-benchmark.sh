@@ -0,0 +1,43 @@
+#!/bin/sh
+# Measures the time to the first frame and to the first search of the jlink image,
+# with and without its class data sharing archive, see the cds profile in pom.xml.
+# Each run is a StartupRun against the memory backend, which must be in the image,
+# e.g. built with mvn -Pmemory,cds package or mvn -Pmongo,cds package.
+#
+# Usage: startup-benchmark.sh [runs] [image directory]
+
+RUNS=${1:-10}
+IMAGE=${2:-$(dirname "$0")/target/app}
+
+if [ ! -f "$IMAGE/lib/server/classes.jsa" ]; then
+    echo "No class data sharing archive in $IMAGE, build it with the cds profile" >&2
+    exit 1
+fi
+
+# prints "first frame <ms> first search <ms>" for every run with the given -Xshare mode
+measure() {
+    i=0
+    while [ "$i" -lt "$RUNS" ]; do
+        "$IMAGE/bin/java" -Xshare:"$1" -Dlibrary.backend=memory -Dlibrary.startupRun=true \
+            -m kth.library/kth.library.Main | grep '^Startup:'
+        i=$((i + 1))
+    done
+}
+
+# -Xshare:auto maps the archive of the image, -Xshare:off loads every class from the modules
+for mode in auto off; do
+    measure "$mode" | awk -v mode="$mode" '
+        { frame[NR] = $4; search[NR] = $8 }
+        END {
+            if (NR == 0) { print mode ": no runs completed"; exit 1 }
+            printf "-Xshare:%-4s first frame %s ms, first search %s ms (median of %d runs)\n",
+                mode, median(frame, NR), median(search, NR), NR
+        }
+        function median(values, n,    i, j, t) {
+            for (i = 2; i <= n; i++)
+                for (j = i; j > 1 && values[j - 1] > values[j]; j--) {
+                    t = values[j]; values[j] = values[j - 1]; values[j - 1] = t
+                }
+            return n % 2 ? values[(n + 1) / 2] : (values[n / 2] + values[n / 2 + 1]) / 2
+        }'
+done
@@ -3,8 +3,14 @@
  * To change this template file, choose Tools | Templates
  * and open the template in the editor.
  */
-package kth.library.model;
-
+package kth.library.memory;
+
+import kth.library.model.Author;
+import kth.library.model.Book;
+import kth.library.model.Genre;
+import kth.library.model.IBooksDb;
+import kth.library.model.Review;
+import kth.library.model.User;
 import kth.library.model.exceptions.ConnectionException;
 import kth.library.model.exceptions.InsertException;
 import kth.library.model.exceptions.SelectException;
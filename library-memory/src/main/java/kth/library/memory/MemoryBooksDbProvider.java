@@ -0,0 +1,31 @@
+package kth.library.memory;
+
+import kth.library.model.BooksDbProvider;
+import kth.library.model.IBooksDb;
+
+/**
+ * Registers the in-memory IBooksDbMockImpl with ServiceLoader under the name
+ * "memory", for running the client without a database.
+ */
+public class MemoryBooksDbProvider implements BooksDbProvider {
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "in-memory";
+    }
+
+    @Override
+    public String getDefaultUrl() {
+        return "memory:";
+    }
+
+    @Override
+    public IBooksDb create() {
+        return new IBooksDbMockImpl();
+    }
+}
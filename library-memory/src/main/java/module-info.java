@@ -0,0 +1,7 @@
+module kth.library.memory {
+    requires transitive kth.library.model;
+
+    exports kth.library.memory;
+
+    provides kth.library.model.BooksDbProvider with kth.library.memory.MemoryBooksDbProvider;
+}
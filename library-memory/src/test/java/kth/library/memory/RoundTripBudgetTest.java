@@ -0,0 +1,91 @@
+package kth.library.memory;
+
+import kth.library.model.Book;
+import kth.library.model.BookQuery;
+import kth.library.model.BookSortField;
+import kth.library.model.CostAccounting;
+import kth.library.model.IBooksDb;
+import kth.library.model.RoundTripBudget;
+import kth.library.model.SearchMode;
+import kth.library.model.exceptions.SelectException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The round trips of the search paths that IBooksDb implements on top of the
+ * find-methods, with the memory backend standing in for a database that makes
+ * one round trip per find-call.
+ */
+class RoundTripBudgetTest {
+
+    private final IBooksDb booksDb = new IBooksDbMockImpl() {
+        @Override
+        public List<Book> findBooksByTitle(String title) throws SelectException {
+            CostAccounting.roundTrip();
+            return super.findBooksByTitle(title);
+        }
+
+        @Override
+        public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+            CostAccounting.roundTrip();
+            return super.findBooksByIsbn(isbn);
+        }
+
+        @Override
+        public List<Book> findBooksByAuthor(String author) throws SelectException {
+            CostAccounting.roundTrip();
+            return super.findBooksByAuthor(author);
+        }
+
+        @Override
+        public List<Book> findBooksByGenre(String genre) throws SelectException {
+            CostAccounting.roundTrip();
+            return super.findBooksByGenre(genre);
+        }
+    };
+
+    @Test
+    void anySearchCostsOneRoundTripPerLookup() throws SelectException {
+        // the lookups run on virtual threads, their round trips count for the search
+        List<Book> found = RoundTripBudget.assertAtMost(4, () -> booksDb.findBooksByAny("Drama"));
+        assertEquals(7, found.size());
+
+        assertThrows(AssertionError.class, () -> RoundTripBudget.assertAtMost(3, () -> booksDb.findBooksByAny("Drama")));
+    }
+
+    @Test
+    void searchByModeCostsOneRoundTrip() throws SelectException {
+        List<Book> found = new ArrayList<>();
+        RoundTripBudget.assertAtMost(1, () -> {
+            booksDb.searchBooks(SearchMode.ISBN, "123456789", found::addAll);
+            return null;
+        });
+        assertEquals("Databases Illuminated", found.getFirst().getTitle());
+    }
+
+    @Test
+    void pagingCountingAndFacetsCostOneRoundTripEach() throws SelectException {
+        BookQuery query = new BookQuery().genre("Drama").sortBy(BookSortField.Title, false).limit(3);
+
+        List<Book> page = RoundTripBudget.assertAtMost(1, () -> booksDb.findBooksPage(query, null, 0));
+        List<Book> next = RoundTripBudget.assertAtMost(1, () -> booksDb.findBooksPage(query, page.getLast(), 0));
+        assertEquals(3, page.size());
+        assertTrue(page.getLast().getTitle().compareTo(next.getFirst().getTitle()) <= 0);
+
+        assertEquals(7, (int) RoundTripBudget.assertAtMost(1, () -> booksDb.countBooks(query)));
+        RoundTripBudget.assertAtMost(1, () -> booksDb.findFacets(query));
+        RoundTripBudget.assertAtMost(1, () -> booksDb.findTopBooks(BookSortField.Rating, "Drama", null, 5));
+    }
+
+    @Test
+    void plainMemoryBackendMakesNoRoundTrips() throws SelectException {
+        IBooksDb memory = new IBooksDbMockImpl();
+        assertEquals(7, RoundTripBudget.assertAtMost(0, () -> memory.findBooksByAny("Drama")).size());
+    }
+}
@@ -0,0 +1,24 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.InsertException;
+
+import java.util.List;
+
+/**
+ * Implemented by backends that can write many queued books and reviews in one
+ * round trip, so that the writes queued by OutboxBooksDb while the database was
+ * slow or not reachable are caught up with quickly. The database keeps the key
+ * of every queued write it has written with the book or the review added.
+ */
+public interface BatchWriter {
+
+    /**
+     * Write queued books and reviews, in order. A write whose key is already in
+     * the database is skipped, so that a batch can be written again after a
+     * failure that left it unknown how much of it was written. A review of a book
+     * removed after the review was queued is dropped.
+     *
+     * @param writes the writes, at most a few hundred
+     */
+    void writeBatch(List<QueuedWrite> writes) throws InsertException;
+}
@@ -0,0 +1,297 @@
+package kth.library.model;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a book in the library system.
+ * A book can have multiple authors and genres
+ * and can be reviewed by multiple users.
+ * <p>
+ * Reviews are stored column-wise in primitive arrays (user id, rating, epoch day)
+ * rather than as one Review object each, with no text column until a review has a text.
+ * Review objects are only created as views when the list from getReviews is read.
+ * <p>
+ * Books found by a search hold no reviews, only a rating summary (number of
+ * reviews and their rating sum) set by the backend; their reviews are read page
+ * by page with IBooksDb.findReviews.
+ */
+public class Book {
+
+    private final int bookId;
+    private final String isbn;
+    private final String title;
+    private final String publisher;
+    
+
+    private User addedBy; 
+
+    private static final int[] NO_INTS = new int[0];
+    private static final byte[] NO_BYTES = new byte[0];
+
+    // review columns, the first reviewCount entries are used
+    private int reviewCount;
+    private int[] reviewUserIds = NO_INTS;
+    private byte[] reviewRatings = NO_BYTES;
+    private int[] reviewEpochDays = NO_INTS;
+    private String[] reviewTexts; // null until a text is added
+    private IdentityMap reviewers; // resolves review user ids to User objects
+    private int ratingCount; // number of reviews, held or not, kept up to date by addReview/setReviews
+    private int ratingSum; // sum of their ratings
+    
+    private final List<Author> authors;
+    private final List<Genre> genres;
+
+    public Book(int bookId, String isbn, String title, String publisher) {
+        this.bookId = bookId;
+        this.isbn = isbn;
+        this.title = title;
+        this.publisher = publisher;
+        this.authors = new ArrayList<>();
+        this.genres = new ArrayList<>();
+    }
+
+    public Book(String isbn, String title, String publisher) {
+        this(-1, isbn, title, publisher);
+    }
+
+    public int getBookId() {
+        return bookId;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getPublisher() {
+        return publisher;
+    }
+    
+    public User getAddedBy() {
+        return addedBy;
+    }
+
+    public void setAddedBy(User addedBy) {
+        this.addedBy = addedBy;
+    }
+
+    /**
+     * Average rating from reviews, from a running sum maintained as reviews are added.
+     * @return Average rating or 0.0 if no reviews.
+     */
+    public synchronized double getRating() {
+        if (ratingCount == 0) {
+            return 0.0;
+        }
+        return (double) ratingSum / ratingCount;
+    }
+
+    /**
+     * @return the number of reviews of the book, which may be more than getReviews holds
+     */
+    public synchronized int getReviewCount() {
+        return ratingCount;
+    }
+
+    /**
+     * @return the sum of the ratings of all reviews of the book, see getReviewCount
+     */
+    public synchronized int getRatingSum() {
+        return ratingSum;
+    }
+
+    /**
+     * Set the number of reviews and their rating sum, as stored by the database,
+     * for a book whose reviews are not read.
+     */
+    public synchronized void setRatingSummary(int count, int sum) {
+        this.ratingCount = count;
+        this.ratingSum = sum;
+    }
+
+    /**
+     * @return the reviews held by the book, read-only; use addReview/setReviews to change them.
+     * Each element is created from the review columns when it is read.
+     */
+    public List<Review> getReviews() {
+        return new AbstractList<>() {
+            @Override
+            public Review get(int index) {
+                if (index < 0 || index >= reviewCount) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return reviewAt(index);
+            }
+
+            @Override
+            public int size() {
+                return reviewCount;
+            }
+        };
+    }
+
+    private Review reviewAt(int index) {
+        int userId = reviewUserIds[index];
+        User user = reviewers != null ? reviewers.getUser(userId) : null;
+        if (user == null) {
+            user = new User(userId, "Unknown");
+        }
+        Date date = Date.valueOf(LocalDate.ofEpochDay(reviewEpochDays[index]));
+        return new Review(this, user, reviewRatings[index], reviewText(index), date);
+    }
+
+    private synchronized String reviewText(int index) {
+        return reviewTexts != null ? reviewTexts[index] : null;
+    }
+
+    /**
+     * @return the bytes taken by the review column arrays, without the texts themselves
+     *         and with 4 bytes per text reference, as with compressed references
+     */
+    synchronized long reviewColumnBytes() {
+        long bytes = 4L * reviewUserIds.length + reviewRatings.length + 4L * reviewEpochDays.length;
+        return reviewTexts != null ? bytes + 4L * reviewTexts.length : bytes;
+    }
+
+    /**
+     * Receives the columns of one review, see forEachReview.
+     */
+    @FunctionalInterface
+    public interface ReviewVisitor<E extends Exception> {
+        /**
+         * @param username the name of the user, null if the user is not known to the book
+         */
+        void visit(int userId, String username, int rating, String reviewText, long epochDay) throws E;
+    }
+
+    /**
+     * Pass the reviews held by the book to the visitor column by column, oldest
+     * first, without creating Review objects.
+     */
+    public <E extends Exception> void forEachReview(ReviewVisitor<E> visitor) throws E {
+        int count;
+        int[] userIds;
+        byte[] ratings;
+        int[] epochDays;
+        synchronized (this) {
+            count = reviewCount;
+            userIds = reviewUserIds;
+            ratings = reviewRatings;
+            epochDays = reviewEpochDays;
+        }
+        for (int i = 0; i < count; i++) {
+            User user = reviewers != null ? reviewers.getUser(userIds[i]) : null;
+            visitor.visit(userIds[i], user != null ? user.getUsername() : null,
+                          ratings[i], reviewText(i), epochDays[i]);
+        }
+    }
+
+    /**
+     * Set the map used to resolve the user ids of reviews added by id.
+     * Backends pass the identity map of the search so that users are shared.
+     */
+    public void setReviewers(IdentityMap reviewers) {
+        this.reviewers = reviewers;
+    }
+
+    public void addReview(Review review) {
+        if (reviewers == null) {
+            reviewers = new IdentityMap();
+        }
+        User user = reviewers.putUser(review.getUser());
+        addReview(user.getId(), review.getRating(), review.getReviewText(), review.getDate().toLocalDate().toEpochDay());
+    }
+
+    /**
+     * Add a review by column values, without creating a Review object.
+     *
+     * @param userId id of the reviewing user, resolved through the reviewers map
+     * @param rating the rating, 1-5
+     * @param reviewText the text, or null if the review has none
+     * @param epochDay the day of the review as LocalDate.toEpochDay
+     */
+    public synchronized void addReview(int userId, int rating, String reviewText, long epochDay) {
+        if (reviewCount == reviewUserIds.length) {
+            int capacity = Math.max(4, reviewCount + (reviewCount >> 1));
+            reviewUserIds = Arrays.copyOf(reviewUserIds, capacity);
+            reviewRatings = Arrays.copyOf(reviewRatings, capacity);
+            reviewEpochDays = Arrays.copyOf(reviewEpochDays, capacity);
+            if (reviewTexts != null) {
+                reviewTexts = Arrays.copyOf(reviewTexts, capacity);
+            }
+        }
+        if (reviewText != null && reviewTexts == null) {
+            reviewTexts = new String[reviewUserIds.length];
+        }
+        reviewUserIds[reviewCount] = userId;
+        reviewRatings[reviewCount] = (byte) rating;
+        reviewEpochDays[reviewCount] = (int) epochDay;
+        if (reviewTexts != null) {
+            reviewTexts[reviewCount] = reviewText;
+        }
+        reviewCount++;
+        ratingCount++;
+        ratingSum += rating;
+    }
+    
+    public void setReviews(List<Review> reviews) {
+        List<Review> newReviews = reviews != null ? new ArrayList<>(reviews) : null; // may be a view of this book
+        synchronized (this) {
+            reviewCount = 0;
+            ratingCount = 0;
+            ratingSum = 0;
+            reviewUserIds = NO_INTS;
+            reviewRatings = NO_BYTES;
+            reviewEpochDays = NO_INTS;
+            reviewTexts = null;
+        }
+        if (newReviews != null) {
+            for (Review review : newReviews) {
+                addReview(review);
+            }
+        }
+    }
+
+    public List<Author> getAuthors() {
+        return authors;
+    }
+    
+    public void addAuthor(Author author) {
+        authors.add(author);
+    }
+    
+    public void setAuthors(List<Author> authors) {
+        this.authors.clear();
+        if (authors != null) {
+            this.authors.addAll(authors);
+        }
+    }
+
+    public List<Genre> getGenres() {
+        return genres;
+    }
+    
+    public void addGenre(Genre genre) {
+        genres.add(genre);
+    }
+    
+    public void setGenres(List<Genre> genres) {
+        this.genres.clear();
+        if (genres != null) {
+            this.genres.addAll(genres);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return title + ", " + isbn + ", " + publisher;
+    }
+}
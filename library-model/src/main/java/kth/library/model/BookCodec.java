@@ -0,0 +1,456 @@
+package kth.library.model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact binary encoding of books with their authors, genres, users and the
+ * reviews they hold, for sending books to another process or storing them in a
+ * file. A stream starts with a header naming the format version, followed by
+ * books written one at a time, or lists of authors, genres or reviews:
+ * <ul>
+ * <li>numbers are varints, 7 bits per byte, ids and dates zigzag-encoded so that
+ *     small negative values, e.g. the id -1 of a book not stored yet, stay short</li>
+ * <li>author, genre and user names and publishers are written the first time
+ *     they occur in the stream and referred to by number afterwards</li>
+ * <li>an author, genre or user is written in full the first time its id occurs
+ *     and by id only afterwards</li>
+ * <li>review dates are written as the difference in days to the previous review
+ *     of the book, mostly a byte or two</li>
+ * </ul>
+ * Books are written straight from their fields and review columns and read
+ * straight into new books, without Document, Map or Review objects in between.
+ * A Reader shares authors, genres and users among the books it reads through an
+ * IdentityMap, like a search of a backend does.
+ */
+public final class BookCodec {
+
+    /** The version written in the header, incremented with every change of the format. */
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x424B; // "BK"
+
+    private BookCodec() {
+    }
+
+    /**
+     * Writes books to a stream. Not thread-safe; names and entities written once
+     * are only referred to afterwards, so everything written by one Writer must be
+     * read by one Reader, in order.
+     */
+    public static class Writer {
+
+        private final OutputStream out;
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Set<Integer> authors = new HashSet<>();
+        private final Set<Integer> genres = new HashSet<>();
+        private final Set<Integer> users = new HashSet<>();
+
+        /**
+         * Write the header. The stream should be buffered, single bytes are written to it.
+         */
+        public Writer(OutputStream out) throws IOException {
+            this.out = out;
+            writeVarint(MAGIC);
+            writeVarint(VERSION);
+        }
+
+        public void write(Book book) throws IOException {
+            writeSigned(book.getBookId());
+            writeString(book.getIsbn());
+            writeString(book.getTitle());
+            writeName(book.getPublisher());
+            writeUser(book.getAddedBy());
+            List<Author> bookAuthors = book.getAuthors();
+            writeVarint(bookAuthors.size());
+            for (Author author : bookAuthors) {
+                writeAuthor(author);
+            }
+            List<Genre> bookGenres = book.getGenres();
+            writeVarint(bookGenres.size());
+            for (Genre genre : bookGenres) {
+                writeGenre(genre);
+            }
+            writeReviews(book);
+            writeVarint(book.getReviewCount());
+            writeVarint(book.getRatingSum());
+        }
+
+        /**
+         * Write the number of books, then the books.
+         */
+        public void writeAll(List<Book> books) throws IOException {
+            writeVarint(books.size());
+            for (Book book : books) {
+                write(book);
+            }
+        }
+
+        /**
+         * Write the number of authors, then the authors.
+         */
+        public void writeAuthors(List<Author> authors) throws IOException {
+            writeVarint(authors.size());
+            for (Author author : authors) {
+                writeAuthor(author);
+            }
+        }
+
+        /**
+         * Write the number of genres, then the genres.
+         */
+        public void writeGenres(List<Genre> genres) throws IOException {
+            writeVarint(genres.size());
+            for (Genre genre : genres) {
+                writeGenre(genre);
+            }
+        }
+
+        /**
+         * Write reviews of one book, e.g. a page of them, without the book.
+         */
+        public void writeReviews(List<Review> reviews) throws IOException {
+            writeVarint(reviews.size());
+            long previousDay = 0;
+            for (Review review : reviews) {
+                long epochDay = review.getDate().toLocalDate().toEpochDay();
+                writeUser(review.getUser());
+                out.write(review.getRating());
+                writeString(review.getReviewText());
+                writeSigned(epochDay - previousDay);
+                previousDay = epochDay;
+            }
+        }
+
+        private void writeReviews(Book book) throws IOException {
+            int count = book.getReviews().size();
+            writeVarint(count);
+            int[] left = {count};
+            long[] previousDay = {0};
+            book.forEachReview((userId, username, rating, text, epochDay) -> {
+                if (left[0]-- <= 0) {
+                    return; // added after counting
+                }
+                writeUser(userId, username);
+                out.write(rating);
+                writeString(text);
+                writeSigned(epochDay - previousDay[0]);
+                previousDay[0] = epochDay;
+            });
+        }
+
+        private void writeAuthor(Author author) throws IOException {
+            int id = author.getAuthorId();
+            writeSigned(id);
+            if (id > 0 && !authors.add(id)) {
+                return;
+            }
+            writeName(author.getName());
+            Date birthdate = author.getBirthdate();
+            writeVarint(birthdate != null ? zigzag(birthdate.toLocalDate().toEpochDay()) + 1 : 0);
+            writeUser(author.getAddedBy());
+        }
+
+        private void writeGenre(Genre genre) throws IOException {
+            int id = genre.getGenreId();
+            writeSigned(id);
+            if (id > 0 && !genres.add(id)) {
+                return;
+            }
+            writeName(genre.getName());
+        }
+
+        private void writeUser(User user) throws IOException {
+            if (user == null) {
+                out.write(0);
+                return;
+            }
+            writeUser(user.getId(), user.getUsername());
+        }
+
+        /** A user is written as present, then id, then the name the first time. */
+        private void writeUser(int id, String username) throws IOException {
+            out.write(1);
+            writeSigned(id);
+            if (id > 0 && !users.add(id)) {
+                return;
+            }
+            writeName(username);
+        }
+
+        /**
+         * Write a name through the dictionary: 0 and the string the first time,
+         * its number + 1 afterwards; null is 0 and a null string.
+         */
+        private void writeName(String name) throws IOException {
+            if (name == null) {
+                out.write(0);
+                writeString(null);
+                return;
+            }
+            Integer number = names.get(name);
+            if (number != null) {
+                writeVarint(number + 1L);
+                return;
+            }
+            names.put(name, names.size());
+            out.write(0);
+            writeString(name);
+        }
+
+        /** A string is written as its length in bytes + 1, 0 for null, then UTF-8. */
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.write(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1L);
+            out.write(bytes);
+        }
+
+        private void writeSigned(long value) throws IOException {
+            writeVarint(zigzag(value));
+        }
+
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+    /**
+     * Reads books written by a Writer. Not thread-safe.
+     */
+    public static class Reader {
+
+        private final InputStream in;
+        private final IdentityMap identities;
+        private final List<String> names = new ArrayList<>();
+        // ids whose entity has been read in full from this stream, only the id follows afterwards
+        private final Set<Integer> authors = new HashSet<>();
+        private final Set<Integer> genres = new HashSet<>();
+        private final Set<Integer> users = new HashSet<>();
+
+        /**
+         * Read the header. The stream should be buffered, single bytes are read from it,
+         * and no more than what the Writer wrote is read.
+         *
+         * @param identities shares authors, genres and users among the books read
+         * @throws IOException if the stream does not start with a header of a known version
+         */
+        public Reader(InputStream in, IdentityMap identities) throws IOException {
+            this.in = in;
+            this.identities = identities;
+            if (readVarint() != MAGIC) {
+                throw new IOException("Not a stream of books");
+            }
+            long version = readVarint();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of the book format, expected " + VERSION);
+            }
+        }
+
+        public Book read() throws IOException {
+            int id = readSigned();
+            String isbn = readString();
+            String title = readString();
+            Book book = new Book(id, isbn, title, readName());
+            book.setAddedBy(readUser());
+            int authorCount = (int) readVarint();
+            List<Author> authors = new ArrayList<>(authorCount);
+            for (int i = 0; i < authorCount; i++) {
+                authors.add(readAuthor());
+            }
+            book.setAuthors(authors);
+            int genreCount = (int) readVarint();
+            List<Genre> genres = new ArrayList<>(genreCount);
+            for (int i = 0; i < genreCount; i++) {
+                genres.add(readGenre());
+            }
+            book.setGenres(genres);
+            int reviewCount = (int) readVarint();
+            if (reviewCount > 0) {
+                book.setReviewers(identities);
+            }
+            long epochDay = 0;
+            for (int i = 0; i < reviewCount; i++) {
+                User user = readUser();
+                int rating = readByte();
+                String text = readString();
+                epochDay += readSignedLong();
+                if (user.getId() > 0) {
+                    book.addReview(user.getId(), rating, text, epochDay);
+                } else { // a user not stored yet, only found through the review itself
+                    book.addReview(new Review(book, user, rating, text, Date.valueOf(LocalDate.ofEpochDay(epochDay))));
+                }
+            }
+            int ratingCount = (int) readVarint();
+            book.setRatingSummary(ratingCount, (int) readVarint());
+            return book;
+        }
+
+        /**
+         * Read the number of books, then the books, as written by writeAll.
+         */
+        public List<Book> readAll() throws IOException {
+            int count = (int) readVarint();
+            List<Book> books = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                books.add(read());
+            }
+            return books;
+        }
+
+        /**
+         * Read the number of authors, then the authors, as written by writeAuthors.
+         */
+        public List<Author> readAuthors() throws IOException {
+            int count = (int) readVarint();
+            List<Author> authors = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                authors.add(readAuthor());
+            }
+            return authors;
+        }
+
+        /**
+         * Read the number of genres, then the genres, as written by writeGenres.
+         */
+        public List<Genre> readGenres() throws IOException {
+            int count = (int) readVarint();
+            List<Genre> genres = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                genres.add(readGenre());
+            }
+            return genres;
+        }
+
+        /**
+         * Read reviews written by writeReviews.
+         *
+         * @param book the book the reviews are of
+         */
+        public List<Review> readReviews(Book book) throws IOException {
+            int count = (int) readVarint();
+            List<Review> reviews = new ArrayList<>(count);
+            long epochDay = 0;
+            for (int i = 0; i < count; i++) {
+                User user = readUser();
+                int rating = readByte();
+                String text = readString();
+                epochDay += readSignedLong();
+                reviews.add(new Review(book, user, rating, text, Date.valueOf(LocalDate.ofEpochDay(epochDay))));
+            }
+            return reviews;
+        }
+
+        private Author readAuthor() throws IOException {
+            int id = readSigned();
+            if (id > 0 && !authors.add(id)) {
+                return identities.getAuthor(id);
+            }
+            String name = readName();
+            long birthdate = readVarint();
+            Author author = new Author(id, name,
+                birthdate != 0 ? Date.valueOf(LocalDate.ofEpochDay(unzigzag(birthdate - 1))) : null);
+            author.setAddedBy(readUser());
+            return id > 0 ? identities.putAuthor(author) : author;
+        }
+
+        private Genre readGenre() throws IOException {
+            int id = readSigned();
+            if (id > 0 && !genres.add(id)) {
+                return identities.getGenre(id);
+            }
+            String name = readName();
+            return id > 0 ? identities.putGenre(new Genre(id, name)) : new Genre(id, name);
+        }
+
+        private User readUser() throws IOException {
+            if (readByte() == 0) {
+                return null;
+            }
+            int id = readSigned();
+            if (id > 0 && !users.add(id)) {
+                return identities.getUser(id);
+            }
+            String name = readName();
+            return id > 0 ? identities.putUser(new User(id, name)) : new User(id, name);
+        }
+
+        private String readName() throws IOException {
+            long number = readVarint();
+            if (number > 0) {
+                return names.get((int) (number - 1));
+            }
+            String name = readString();
+            if (name != null) {
+                names.add(identities.canonical(name));
+                return names.get(names.size() - 1);
+            }
+            return null;
+        }
+
+        private String readString() throws IOException {
+            long length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            byte[] bytes = in.readNBytes((int) (length - 1));
+            if (bytes.length != length - 1) {
+                throw new EOFException("Book stream ends inside a string");
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readSigned() throws IOException {
+            return (int) readSignedLong();
+        }
+
+        private long readSignedLong() throws IOException {
+            return unzigzag(readVarint());
+        }
+
+        private long readVarint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint in book stream");
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Book stream ends inside a book");
+            }
+            return b;
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,104 @@
+package kth.library.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of the books matching a search, grouped by genre, author, publisher and
+ * rating bucket, for narrowing down a large result. Each group maps a value to
+ * the number of matching books having it, ordered by descending count and
+ * limited to the MAX_VALUES most common values.
+ */
+public class BookFacets {
+
+    /** The number of values kept per group. */
+    public static final int MAX_VALUES = 20;
+
+    /** Rating buckets, by the whole part of the average rating; a 5.0 rating counts as "4-5". */
+    public static final String[] RATING_BUCKETS = {"0-1", "1-2", "2-3", "3-4", "4-5"};
+
+    private final int total;
+    private final Map<String, Integer> genres;
+    private final Map<String, Integer> authors;
+    private final Map<String, Integer> publishers;
+    private final Map<String, Integer> ratings;
+
+    public BookFacets(int total, Map<String, Integer> genres, Map<String, Integer> authors,
+                      Map<String, Integer> publishers, Map<String, Integer> ratings) {
+        this.total = total;
+        this.genres = topValues(genres);
+        this.authors = topValues(authors);
+        this.publishers = topValues(publishers);
+        this.ratings = Collections.unmodifiableMap(new LinkedHashMap<>(ratings));
+    }
+
+    /**
+     * Count the facets of a result in memory, for backends that cannot let the database group.
+     */
+    public static BookFacets of(List<Book> books) {
+        Map<String, Integer> genres = new LinkedHashMap<>();
+        Map<String, Integer> authors = new LinkedHashMap<>();
+        Map<String, Integer> publishers = new LinkedHashMap<>();
+        Map<String, Integer> ratings = new LinkedHashMap<>();
+        for (Book book : books) {
+            for (Genre genre : book.getGenres()) {
+                genres.merge(genre.getName(), 1, Integer::sum);
+            }
+            for (Author author : book.getAuthors()) {
+                authors.merge(author.getName(), 1, Integer::sum);
+            }
+            publishers.merge(book.getPublisher(), 1, Integer::sum);
+            ratings.merge(ratingBucket(book.getRating()), 1, Integer::sum);
+        }
+        return new BookFacets(books.size(), genres, authors, publishers, ratings);
+    }
+
+    /**
+     * @return the label of the bucket an average rating falls in
+     */
+    public static String ratingBucket(double rating) {
+        int bucket = Math.max(0, Math.min((int) Math.floor(rating), RATING_BUCKETS.length - 1));
+        return RATING_BUCKETS[bucket];
+    }
+
+    private static Map<String, Integer> topValues(Map<String, Integer> counts) {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        Map<String, Integer> top = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : entries.subList(0, Math.min(MAX_VALUES, entries.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return Collections.unmodifiableMap(top);
+    }
+
+    /** @return the number of matching books */
+    public int getTotal() {
+        return total;
+    }
+
+    public Map<String, Integer> getGenres() {
+        return genres;
+    }
+
+    public Map<String, Integer> getAuthors() {
+        return authors;
+    }
+
+    public Map<String, Integer> getPublishers() {
+        return publishers;
+    }
+
+    /** @return book counts per rating bucket label, see RATING_BUCKETS */
+    public Map<String, Integer> getRatings() {
+        return ratings;
+    }
+
+    @Override
+    public String toString() {
+        return total + " books, genres " + genres + ", authors " + authors
+            + ", publishers " + publishers + ", ratings " + ratings;
+    }
+}
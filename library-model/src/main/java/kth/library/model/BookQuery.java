@@ -0,0 +1,225 @@
+package kth.library.model;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * A search for books combining several criteria, e.g. fantasy books by Tolkien
+ * rated 4 or more. Criteria that are not set (null) do not restrict the result.
+ * Backends compile a query into a single database query, so that all criteria,
+ * the sort order and the limit are evaluated by the database.
+ * <p>
+ * The setters return the query itself so that criteria can be chained:
+ * <pre>
+ *     new BookQuery().genre("Fantasy").author("Tolkien").minRating(4)
+ * </pre>
+ */
+public class BookQuery {
+
+    private String titleContains;
+    private String isbn;
+    private String author;
+    private String genre;
+    private Integer minRating;
+    private String publisher;
+    private BookSortField sortBy;
+    private boolean descending;
+    private int limit; // 0 for no limit
+
+    public BookQuery() {
+    }
+
+    /**
+     * @return a query equivalent to a single-criterion search with the given mode
+     * @throws IllegalArgumentException for SearchMode.Any, which is not a single criterion
+     */
+    public static BookQuery forSearch(SearchMode mode, String searchFor) {
+        BookQuery query = new BookQuery();
+        return switch (mode) {
+            case Title -> query.titleContains(searchFor);
+            case ISBN -> query.isbn(searchFor.trim());
+            case Author -> query.author(searchFor);
+            case Genre -> query.genre(searchFor);
+            case Rating -> query.minRating(Integer.parseInt(searchFor.trim()));
+            case Any -> throw new IllegalArgumentException("SearchMode.Any is not a single criterion");
+        };
+    }
+
+    public BookQuery copy() {
+        BookQuery copy = new BookQuery();
+        copy.titleContains = titleContains;
+        copy.isbn = isbn;
+        copy.author = author;
+        copy.genre = genre;
+        copy.minRating = minRating;
+        copy.publisher = publisher;
+        copy.sortBy = sortBy;
+        copy.descending = descending;
+        copy.limit = limit;
+        return copy;
+    }
+
+    /** Title contains the text, case-insensitive. */
+    public BookQuery titleContains(String text) {
+        this.titleContains = text;
+        return this;
+    }
+
+    /** ISBN equals. */
+    public BookQuery isbn(String isbn) {
+        this.isbn = isbn;
+        return this;
+    }
+
+    /** The name of one of the authors contains the text, case-insensitive. */
+    public BookQuery author(String nameContains) {
+        this.author = nameContains;
+        return this;
+    }
+
+    /** One of the genres has the name. */
+    public BookQuery genre(String name) {
+        this.genre = name;
+        return this;
+    }
+
+    /** The average rating is at least the given value. */
+    public BookQuery minRating(Integer rating) {
+        this.minRating = rating;
+        return this;
+    }
+
+    /** Publisher equals. */
+    public BookQuery publisher(String publisher) {
+        this.publisher = publisher;
+        return this;
+    }
+
+    /** Order the result, ties broken by book id. Unordered if not set. */
+    public BookQuery sortBy(BookSortField sortBy, boolean descending) {
+        this.sortBy = sortBy;
+        this.descending = descending;
+        return this;
+    }
+
+    /** Return at most this many books, 0 for all. */
+    public BookQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public String getTitleContains() {
+        return titleContains;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getGenre() {
+        return genre;
+    }
+
+    public Integer getMinRating() {
+        return minRating;
+    }
+
+    public String getPublisher() {
+        return publisher;
+    }
+
+    public BookSortField getSortBy() {
+        return sortBy;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the search mode of a query with a single criterion, as from forSearch,
+     * or null if it has several criteria or none
+     */
+    public SearchMode searchMode() {
+        SearchMode mode = null;
+        int criteria = 0;
+        if (titleContains != null) { mode = SearchMode.Title; criteria++; }
+        if (isbn != null) { mode = SearchMode.ISBN; criteria++; }
+        if (author != null) { mode = SearchMode.Author; criteria++; }
+        if (genre != null) { mode = SearchMode.Genre; criteria++; }
+        if (minRating != null) { mode = SearchMode.Rating; criteria++; }
+        if (publisher != null) { criteria++; }
+        return criteria == 1 ? mode : null;
+    }
+
+    /**
+     * @return the order of the result, null if unordered
+     */
+    public Comparator<Book> comparator() {
+        if (sortBy == null) {
+            return null;
+        }
+        return descending ? sortBy.comparator().reversed() : sortBy.comparator();
+    }
+
+    /**
+     * Evaluate the criteria on a book in memory, for backends that cannot push them down.
+     */
+    public boolean matches(Book book) {
+        if (titleContains != null && !book.getTitle().toLowerCase().contains(titleContains.toLowerCase())) {
+            return false;
+        }
+        if (isbn != null && !book.getIsbn().equalsIgnoreCase(isbn)) {
+            return false;
+        }
+        if (author != null && book.getAuthors().stream()
+                .noneMatch(a -> a.getName().toLowerCase().contains(author.toLowerCase()))) {
+            return false;
+        }
+        if (genre != null && book.getGenres().stream().noneMatch(g -> g.getName().equalsIgnoreCase(genre))) {
+            return false;
+        }
+        if (minRating != null && book.getRating() < minRating) {
+            return false;
+        }
+        return publisher == null || publisher.equals(book.getPublisher());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof BookQuery other)) return false;
+        return descending == other.descending && limit == other.limit
+            && Objects.equals(titleContains, other.titleContains) && Objects.equals(isbn, other.isbn)
+            && Objects.equals(author, other.author) && Objects.equals(genre, other.genre)
+            && Objects.equals(minRating, other.minRating) && Objects.equals(publisher, other.publisher)
+            && sortBy == other.sortBy;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(titleContains, isbn, author, genre, minRating, publisher, sortBy, descending, limit);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (titleContains != null) sb.append("title~").append(titleContains).append(' ');
+        if (isbn != null) sb.append("isbn=").append(isbn).append(' ');
+        if (author != null) sb.append("author~").append(author).append(' ');
+        if (genre != null) sb.append("genre=").append(genre).append(' ');
+        if (minRating != null) sb.append("rating>=").append(minRating).append(' ');
+        if (publisher != null) sb.append("publisher=").append(publisher).append(' ');
+        if (sortBy != null) sb.append("sort=").append(sortBy).append(descending ? " desc " : " ");
+        if (limit > 0) sb.append("limit=").append(limit);
+        return sb.toString().trim();
+    }
+}
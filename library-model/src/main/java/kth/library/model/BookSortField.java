@@ -0,0 +1,45 @@
+package kth.library.model;
+
+import java.util.Comparator;
+
+/**
+ * The book attributes a search result can be ordered by.
+ * Used when sorting is pushed down to the database instead of being done in the view.
+ */
+public enum BookSortField {
+    Title, ISBN, Publisher, Rating, ReviewCount,
+    /** When the book was added, i.e. by book id. */
+    Added;
+
+    /**
+     * @return the value of this attribute for the given book, e.g. the key of the
+     * last row of a page when fetching the next one
+     */
+    public Object valueOf(Book book) {
+        return switch (this) {
+            case Title -> book.getTitle();
+            case ISBN -> book.getIsbn();
+            case Publisher -> book.getPublisher();
+            case Rating -> book.getRating();
+            case ReviewCount -> book.getReviewCount();
+            case Added -> book.getBookId();
+        };
+    }
+
+    /**
+     * @return an ascending comparator on this attribute, ties broken by book id;
+     * a missing title, ISBN or publisher comes first, as in MySQL and MongoDB
+     */
+    public Comparator<Book> comparator() {
+        Comparator<String> text = Comparator.nullsFirst(Comparator.naturalOrder());
+        Comparator<Book> byValue = switch (this) {
+            case Title -> Comparator.comparing(Book::getTitle, text);
+            case ISBN -> Comparator.comparing(Book::getIsbn, text);
+            case Publisher -> Comparator.comparing(Book::getPublisher, text);
+            case Rating -> Comparator.comparingDouble(Book::getRating);
+            case ReviewCount -> Comparator.comparingInt(Book::getReviewCount);
+            case Added -> Comparator.comparingInt(Book::getBookId);
+        };
+        return byValue.thenComparingInt(Book::getBookId);
+    }
+}
@@ -0,0 +1,80 @@
+package kth.library.model;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+/**
+ * Creates one kind of IBooksDb backend. Backends live in their own modules
+ * (library-mongo, library-mysql, library-memory) and register a provider with
+ * ServiceLoader, so the application only depends on this interface, and only
+ * the backend it is packaged with, together with its database driver, is
+ * loaded.
+ */
+public interface BooksDbProvider {
+
+    /** The system property choosing the backend by name, e.g. -Dlibrary.backend=mysql. */
+    String BACKEND_PROPERTY = "library.backend";
+    /** The system property overriding the connect string of the backend. */
+    String URL_PROPERTY = "library.url";
+
+    /**
+     * @return the name the backend is chosen by, e.g. "mongo"
+     */
+    String getName();
+
+    /**
+     * @return a name for the user, e.g. "MongoDB"
+     */
+    String getDisplayName();
+
+    /**
+     * @return the connect string used unless library.url is set
+     */
+    String getDefaultUrl();
+
+    /**
+     * @return a new, unconnected backend
+     */
+    IBooksDb create();
+
+    /**
+     * @return the providers of the backends packaged with the application
+     */
+    static List<BooksDbProvider> available() {
+        return ServiceLoader.load(BooksDbProvider.class).stream()
+            .map(ServiceLoader.Provider::get)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Find the backend chosen by the library.backend system property, or the only
+     * one packaged if the property is not set.
+     *
+     * @throws IllegalStateException if there is no such backend, or the property
+     *                               is not set and several are packaged
+     */
+    static BooksDbProvider configured() {
+        List<BooksDbProvider> providers = available();
+        String names = providers.stream().map(BooksDbProvider::getName).collect(Collectors.joining(", "));
+        String name = System.getProperty(BACKEND_PROPERTY);
+        if (name == null) {
+            if (providers.size() != 1) {
+                throw new IllegalStateException("Set -D" + BACKEND_PROPERTY + " to one of the backends: " + names);
+            }
+            return providers.get(0);
+        }
+        return providers.stream()
+            .filter(provider -> provider.getName().equals(name))
+            .findFirst()
+            .orElseThrow(() -> new IllegalStateException(
+                "No backend named " + name + " is packaged, available: " + names));
+    }
+
+    /**
+     * @return the connect string given by the library.url system property, or the default
+     */
+    default String getUrl() {
+        return System.getProperty(URL_PROPERTY, getDefaultUrl());
+    }
+}
@@ -0,0 +1,38 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.SelectException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Implemented by backends that can tell which books have changed since a point
+ * in time, so that a local copy of the catalog can be kept up to date by reading
+ * only the changes, see ReplicaBooksDb. Every write of a book stamps it with the
+ * time of the database server, and a removed book leaves a tombstone with its id
+ * and the time it was removed, kept for getTombstoneRetention.
+ */
+public interface ChangeFeed {
+
+    /**
+     * Read the books added or changed after a point in time, with all their reviews,
+     * and the ids of the books removed after it.
+     *
+     * @param since the point returned by the previous call, null to read all books
+     * @param changed receives the changed books, in batches, called on the calling thread
+     * @param removed receives the ids of removed books, not called when reading all books
+     * @return the point in time the changes read are complete up to, to pass as since
+     *         to the next call; a little earlier than the time of the read, so that a
+     *         write stamped before the read but not visible to it yet is read again
+     */
+    Instant readChanges(Instant since, Consumer<List<Book>> changed, Consumer<List<Integer>> removed)
+        throws SelectException;
+
+    /**
+     * @return how long tombstones are kept; a copy that has not read the changes for
+     *         longer must read all books again, it may have missed removals
+     */
+    Duration getTombstoneRetention();
+}
@@ -0,0 +1,205 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.QueryTimeoutException;
+import kth.library.model.exceptions.SelectException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps another IBooksDb so that identical read calls made at the same time,
+ * e.g. several clients searching for the same genre, are answered by a single
+ * database call ("single-flight"). The first caller runs the query, callers
+ * arriving with the same method and arguments while it is running wait for it
+ * and get the same result; each caller gets its own copy of a result list, the
+ * books in it are shared. A call arriving after the query has finished runs a
+ * new query, so results are never older than the call.
+ * <p>
+ * An Any search is coalesced as a whole and run by findBooksByAny of the wrapped
+ * database, which may run its lookups at the same time. Streaming searches,
+ * login and all writes are passed on unchanged.
+ */
+public class CoalescingBooksDb extends ForwardingBooksDb {
+
+    private final Map<CallKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executedCalls = new LongAdder();
+    private final LongAdder collapsedCalls = new LongAdder();
+
+    public CoalescingBooksDb(IBooksDb delegate) {
+        super(delegate);
+    }
+
+    /**
+     * @return the number of read calls that went to the wrapped database
+     */
+    public long getExecutedCalls() {
+        return executedCalls.sum();
+    }
+
+    /**
+     * @return the number of read calls answered by joining an identical call in flight
+     */
+    public long getCollapsedCalls() {
+        return collapsedCalls.sum();
+    }
+
+    @FunctionalInterface
+    private interface Read<T> {
+        T run() throws SelectException;
+    }
+
+    // the method name and the arguments identifying a read call
+    private record CallKey(String method, List<Object> args) {
+        static CallKey of(String method, Object... args) {
+            return new CallKey(method, Arrays.asList(args));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(CallKey key, Read<T> read) throws SelectException {
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            collapsedCalls.increment();
+            return (T) shared(await(running, key));
+        }
+        executedCalls.increment();
+        try {
+            T result = read.run();
+            call.complete(result);
+            return result;
+        } catch (SelectException | RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> running, CallKey key) throws SelectException {
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SelectException selectException) {
+                throw copy(selectException);
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw (Error) cause;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SelectException("Interrupted while waiting for " + key.method(), e);
+        }
+    }
+
+    /**
+     * A new exception of the same type, so that each waiter gets its own stack trace
+     * and can still tell e.g. a timeout; one of a type not known here is rethrown as it is.
+     */
+    private static SelectException copy(SelectException e) {
+        if (e.getClass() == QueryTimeoutException.class) {
+            return new QueryTimeoutException(e.getMessage(), e);
+        }
+        if (e.getClass() == SelectException.class) {
+            return new SelectException(e.getMessage(), e);
+        }
+        return e;
+    }
+
+    // lists are copied so that a waiter changing its result does not affect the others
+    private static Object shared(Object result) {
+        return result instanceof List<?> list ? new ArrayList<>(list) : result;
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return coalesce(CallKey.of("findBooksByTitle", title), () -> delegate.findBooksByTitle(title));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return coalesce(CallKey.of("findBooksByIsbn", isbn), () -> delegate.findBooksByIsbn(isbn));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        return coalesce(CallKey.of("findBooksByAuthor", author), () -> delegate.findBooksByAuthor(author));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        return coalesce(CallKey.of("findBooksByGenre", genre), () -> delegate.findBooksByGenre(genre));
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return coalesce(CallKey.of("findBooksByRating", rating), () -> delegate.findBooksByRating(rating));
+    }
+
+    @Override
+    public List<Book> findBooksByAny(String searchFor) throws SelectException {
+        return coalesce(CallKey.of("findBooksByAny", searchFor), () -> delegate.findBooksByAny(searchFor));
+    }
+
+    @Override
+    public List<Book> findBooks(BookQuery query) throws SelectException {
+        BookQuery key = query.copy(); // the caller may change its query afterwards
+        return coalesce(CallKey.of("findBooks", key), () -> delegate.findBooks(key));
+    }
+
+    @Override
+    public List<Book> findTopBooks(BookSortField orderBy, String genre, String author, int n) throws SelectException {
+        return coalesce(CallKey.of("findTopBooks", orderBy, genre, author, n),
+                        () -> delegate.findTopBooks(orderBy, genre, author, n));
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        BookQuery key = query.copy();
+        return coalesce(CallKey.of("countBooks", key), () -> delegate.countBooks(key));
+    }
+
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        BookQuery key = query.copy();
+        return coalesce(CallKey.of("findFacets", key), () -> delegate.findFacets(key));
+    }
+
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        BookQuery key = query.copy();
+        Integer afterId = after != null ? after.getBookId() : null;
+        return coalesce(CallKey.of("findBooksPage", key, afterId, skip),
+                        () -> delegate.findBooksPage(key, after, skip));
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        return coalesce(CallKey.of("getAllAuthors"), delegate::getAllAuthors);
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        return coalesce(CallKey.of("getAllGenres"), delegate::getAllGenres);
+    }
+
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        return coalesce(CallKey.of("findAuthorsByPrefix", prefix, limit),
+                        () -> delegate.findAuthorsByPrefix(prefix, limit));
+    }
+
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        return coalesce(CallKey.of("findGenresByPrefix", prefix, limit),
+                        () -> delegate.findGenresByPrefix(prefix, limit));
+    }
+}
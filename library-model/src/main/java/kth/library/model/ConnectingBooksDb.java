@@ -0,0 +1,276 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wraps another IBooksDb to connect and warm it up in the background, so that
+ * a view can be shown while the server is still being reached. Calls made
+ * before the backend is ready wait for it instead of failing, and fail with
+ * the reason once connecting has failed, until it is tried again. A warm-up
+ * that fails is logged and does not fail the connection, searches are just
+ * slower at first.
+ */
+public class ConnectingBooksDb extends ForwardingBooksDb {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectingBooksDb.class.getName());
+
+    // the current attempt, replaced when connecting is tried again after a failure
+    private volatile CompletableFuture<Void> ready = new CompletableFuture<>();
+    private boolean connecting; // an attempt is running, guarded by this
+
+    public ConnectingBooksDb(IBooksDb delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Connect and warm up the backend on a background thread. Called again after
+     * connecting failed, it tries again; calls waiting from then on wait for the
+     * new attempt. While connecting or once connected, it does nothing.
+     *
+     * @return completes when the backend is ready, or with the ConnectionException
+     *         if it could not connect
+     */
+    public synchronized CompletableFuture<Void> connectInBackground(String database) {
+        if (connecting || ready.isDone() && !ready.isCompletedExceptionally()) {
+            return ready;
+        }
+        if (ready.isCompletedExceptionally()) {
+            ready = new CompletableFuture<>();
+        }
+        connecting = true;
+        Thread thread = new Thread(() -> {
+            try {
+                connect(database);
+            } catch (ConnectionException e) {
+                // already passed on to ready
+            }
+        }, "connect");
+        // an unreachable server must not keep the application from exiting
+        thread.setDaemon(true);
+        thread.start();
+        return ready;
+    }
+
+    /**
+     * @return completes when the backend is connected and warmed up, or with the
+     *         reason the current attempt failed
+     */
+    public CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    @Override
+    public boolean connect(String database) throws ConnectionException {
+        CompletableFuture<Void> attempt = ready;
+        try {
+            boolean connected = delegate.connect(database);
+            try {
+                delegate.warmUp();
+            } catch (ConnectionException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Warm-up failed, the first searches may be slower", e);
+            }
+            attemptDone();
+            attempt.complete(null);
+            return connected;
+        } catch (ConnectionException | RuntimeException e) {
+            try {
+                delegate.disconnect(); // whatever was opened, so that the next attempt starts over
+            } catch (ConnectionException | RuntimeException ignored) {
+            }
+            attemptDone();
+            attempt.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // before the attempt completes, so that its callbacks can try again
+    private synchronized void attemptDone() {
+        connecting = false;
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        if (!ready.isDone()) {
+            // closing while connecting: close the connection once it is made instead of waiting for it
+            ready.thenRun(() -> {
+                try {
+                    delegate.disconnect();
+                } catch (ConnectionException e) {
+                }
+            });
+            return;
+        }
+        delegate.disconnect();
+    }
+
+    @Override
+    public void warmUp() throws ConnectionException {
+        awaitReady(ConnectionException::new);
+    }
+
+    /**
+     * Wait until the backend is ready.
+     *
+     * @param failure makes the exception of the waiting call from a message and a cause
+     * @throws E if connecting failed or the thread was interrupted while waiting
+     */
+    private <E extends Exception> void awaitReady(BiFunction<String, Exception, E> failure) throws E {
+        try {
+            ready.get();
+        } catch (ExecutionException e) {
+            Exception cause = e.getCause() instanceof Exception exception ? exception : e;
+            throw failure.apply("Not connected to the database: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw failure.apply("Interrupted while connecting to the database", e);
+        }
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.login(username, password);
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findBooksByTitle(title);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findBooksByIsbn(isbn);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findBooksByAuthor(author);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findBooksByGenre(genre);
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findBooksByRating(rating);
+    }
+
+    @Override
+    public List<Book> findBooksByAny(String searchFor) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findBooksByAny(searchFor);
+    }
+
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        awaitReady(SelectException::new);
+        delegate.searchBooks(query, batchConsumer);
+    }
+
+    @Override
+    public List<Book> findBooks(BookQuery query) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findBooks(query);
+    }
+
+    @Override
+    public List<Book> findTopBooks(BookSortField orderBy, String genre, String author, int n) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findTopBooks(orderBy, genre, author, n);
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.countBooks(query);
+    }
+
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findFacets(query);
+    }
+
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findBooksPage(query, after, skip);
+    }
+
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findReviews(book, after, limit);
+    }
+
+    @Override
+    public void addBook(Book book) throws InsertException {
+        awaitReady(InsertException::new);
+        delegate.addBook(book);
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+        awaitReady(InsertException::new);
+        delegate.addAuthor(author);
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+        awaitReady(InsertException::new);
+        delegate.addGenre(genre);
+    }
+
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        awaitReady(InsertException::new);
+        delegate.addReview(book, user, rating, reviewText);
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.getAllAuthors();
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.getAllGenres();
+    }
+
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findAuthorsByPrefix(prefix, limit);
+    }
+
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        awaitReady(SelectException::new);
+        return delegate.findGenresByPrefix(prefix, limit);
+    }
+
+    @Override
+    public void removeBook(Book book) throws Exception {
+        awaitReady(SelectException::new);
+        delegate.removeBook(book);
+    }
+}
@@ -0,0 +1,221 @@
+package kth.library.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Records what database calls cost and sums it up per operation, e.g. per
+ * SearchMode. While an operation is measured, the backends report every round
+ * trip, the documents or rows read and the bytes received to the recorder of
+ * the calling thread: the MongoDB backend through a command listener, the
+ * MySQL backend through a proxy around its connection. The heap bytes
+ * allocated by the calling thread are taken from the ThreadMXBean.
+ * <p>
+ * Calls made while an operation is measured, e.g. the lookups of an Any
+ * search, count as part of it. Work handed to other threads is only included
+ * if the task is wrapped with propagate, and then without its allocations.
+ */
+public class CostAccounting {
+
+    private static final ThreadLocal<Recorder> CURRENT = new ThreadLocal<>();
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final Map<String, Summary> summaries = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Consumer<OperationCost>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * A measured call, throwing the exceptions of the IBooksDb method it makes.
+     */
+    @FunctionalInterface
+    public interface Operation<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Run and measure an operation, unless the thread is already measuring one,
+     * in which case the cost is part of that.
+     */
+    public <T, E extends Exception> T measure(String operation, Operation<T, E> call) throws E {
+        if (CURRENT.get() != null) {
+            return call.run();
+        }
+        Recorder recorder = new Recorder();
+        CURRENT.set(recorder);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        try {
+            return call.run();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes();
+            CURRENT.remove();
+            OperationCost cost = new OperationCost(operation, recorder.roundTrips.sum(),
+                recorder.documents.sum(), recorder.bytes.sum(),
+                allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore, elapsed);
+            summaries.computeIfAbsent(operation, Summary::new).add(cost);
+            for (Consumer<OperationCost> listener : listeners) {
+                listener.accept(cost);
+            }
+        }
+    }
+
+    /**
+     * @param listener called with the cost of every operation, on the thread that ran it
+     */
+    public void addListener(Consumer<OperationCost> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return the summary of a search mode, null if no such search has been measured
+     */
+    public Summary getSummary(SearchMode mode) {
+        return summaries.get(mode.name());
+    }
+
+    /**
+     * @return the summaries of all operations measured, by operation name
+     */
+    public Map<String, Summary> getSummaries() {
+        return new TreeMap<>(summaries);
+    }
+
+    // --- reported by the backends ---
+
+    /**
+     * @return true if the calling thread is measuring an operation, so that
+     * backends can skip computing figures nobody records
+     */
+    public static boolean isRecording() {
+        return CURRENT.get() != null;
+    }
+
+    public static void roundTrip() {
+        Recorder recorder = CURRENT.get();
+        if (recorder != null) recorder.roundTrips.increment();
+    }
+
+    public static void documentsRead(long count) {
+        Recorder recorder = CURRENT.get();
+        if (recorder != null) recorder.documents.add(count);
+    }
+
+    public static void bytesReceived(long count) {
+        Recorder recorder = CURRENT.get();
+        if (recorder != null) recorder.bytes.add(count);
+    }
+
+    /**
+     * @return a task that reports to the recorder of the calling thread, wherever it is run
+     */
+    static <T> Callable<T> propagate(Callable<T> task) {
+        Recorder recorder = CURRENT.get();
+        if (recorder == null) {
+            return task;
+        }
+        return () -> {
+            Recorder previous = CURRENT.get();
+            CURRENT.set(recorder);
+            try {
+                return task.call();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    // counters of one operation, possibly reported to from several threads
+    private static class Recorder {
+        final LongAdder roundTrips = new LongAdder();
+        final LongAdder documents = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+    }
+
+    /**
+     * The costs of all measured calls of one operation.
+     */
+    public static class Summary {
+
+        private final String operation;
+        private long calls;
+        private long roundTrips;
+        private long maxRoundTrips;
+        private long documentsRead;
+        private long bytesReceived;
+        private long allocatedBytes;
+        private long elapsedNanos;
+
+        Summary(String operation) {
+            this.operation = operation;
+        }
+
+        synchronized void add(OperationCost cost) {
+            calls++;
+            roundTrips += cost.getRoundTrips();
+            maxRoundTrips = Math.max(maxRoundTrips, cost.getRoundTrips());
+            documentsRead += cost.getDocumentsRead();
+            bytesReceived += cost.getBytesReceived();
+            allocatedBytes += Math.max(0, cost.getAllocatedBytes());
+            elapsedNanos += cost.getElapsedNanos();
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        public synchronized long getMaxRoundTrips() {
+            return maxRoundTrips;
+        }
+
+        public synchronized double getAverageRoundTrips() {
+            return calls == 0 ? 0 : (double) roundTrips / calls;
+        }
+
+        public synchronized double getAverageDocumentsRead() {
+            return calls == 0 ? 0 : (double) documentsRead / calls;
+        }
+
+        public synchronized long getAverageBytesReceived() {
+            return calls == 0 ? 0 : bytesReceived / calls;
+        }
+
+        public synchronized long getAverageAllocatedBytes() {
+            return calls == 0 ? 0 : allocatedBytes / calls;
+        }
+
+        public synchronized long getAverageElapsedMillis() {
+            return calls == 0 ? 0 : elapsedNanos / calls / 1_000_000;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s: %d calls, avg %.1f round trips (max %d), %.0f documents, %s received, "
+                    + "%s allocated, %d ms", operation, calls, getAverageRoundTrips(), maxRoundTrips,
+                getAverageDocumentsRead(), OperationCost.formatBytes(getAverageBytesReceived()),
+                OperationCost.formatBytes(getAverageAllocatedBytes()), getAverageElapsedMillis());
+        }
+    }
+}
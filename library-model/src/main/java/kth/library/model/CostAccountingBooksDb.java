@@ -0,0 +1,164 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Wraps another IBooksDb and measures every call with a CostAccounting.
+ * Searches are recorded under the name of their SearchMode; a query with
+ * several criteria as "Query". Counting, facets and pages of a search are
+ * recorded as e.g. "Title count", other calls under their method name.
+ */
+public class CostAccountingBooksDb extends ForwardingBooksDb {
+
+    private final CostAccounting costs;
+
+    public CostAccountingBooksDb(IBooksDb delegate, CostAccounting costs) {
+        super(delegate);
+        this.costs = costs;
+    }
+
+    public CostAccounting getCosts() {
+        return costs;
+    }
+
+    private static String operation(BookQuery query) {
+        SearchMode mode = query.searchMode();
+        return mode != null ? mode.name() : "Query";
+    }
+
+    @Override
+    public boolean connect(String database) throws ConnectionException {
+        return costs.measure("connect", () -> delegate.connect(database));
+    }
+
+    @Override
+    public void warmUp() throws ConnectionException {
+        costs.measure("warmUp", () -> {
+            delegate.warmUp();
+            return null;
+        });
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return costs.measure("login", () -> delegate.login(username, password));
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return costs.measure(SearchMode.Title.name(), () -> delegate.findBooksByTitle(title));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return costs.measure(SearchMode.ISBN.name(), () -> delegate.findBooksByIsbn(isbn));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        return costs.measure(SearchMode.Author.name(), () -> delegate.findBooksByAuthor(author));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        return costs.measure(SearchMode.Genre.name(), () -> delegate.findBooksByGenre(genre));
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return costs.measure(SearchMode.Rating.name(), () -> delegate.findBooksByRating(rating));
+    }
+
+    @Override
+    public List<Book> findBooksByAny(String searchFor) throws SelectException {
+        // the lookups of the wrapped database report to this operation, see OmniSearch
+        return costs.measure(SearchMode.Any.name(), () -> delegate.findBooksByAny(searchFor));
+    }
+
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        costs.measure(operation(query), () -> {
+            delegate.searchBooks(query, batchConsumer);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Book> findBooks(BookQuery query) throws SelectException {
+        return costs.measure(operation(query), () -> delegate.findBooks(query));
+    }
+
+    @Override
+    public List<Book> findTopBooks(BookSortField orderBy, String genre, String author, int n) throws SelectException {
+        return costs.measure("findTopBooks", () -> delegate.findTopBooks(orderBy, genre, author, n));
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        return costs.measure(operation(query) + " count", () -> delegate.countBooks(query));
+    }
+
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        return costs.measure(operation(query) + " facets", () -> delegate.findFacets(query));
+    }
+
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        return costs.measure(operation(query) + " page", () -> delegate.findBooksPage(query, after, skip));
+    }
+
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        return costs.measure("findReviews", () -> delegate.findReviews(book, after, limit));
+    }
+
+    @Override
+    public void addBook(Book book) throws InsertException {
+        costs.measure("addBook", () -> {
+            delegate.addBook(book);
+            return null;
+        });
+    }
+
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        costs.measure("addReview", () -> {
+            delegate.addReview(book, user, rating, reviewText);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        return costs.measure("getAllAuthors", delegate::getAllAuthors);
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        return costs.measure("getAllGenres", delegate::getAllGenres);
+    }
+
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        return costs.measure("findAuthorsByPrefix", () -> delegate.findAuthorsByPrefix(prefix, limit));
+    }
+
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        return costs.measure("findGenresByPrefix", () -> delegate.findGenresByPrefix(prefix, limit));
+    }
+
+    @Override
+    public void removeBook(Book book) throws Exception {
+        costs.measure("removeBook", () -> {
+            delegate.removeBook(book);
+            return null;
+        });
+    }
+}
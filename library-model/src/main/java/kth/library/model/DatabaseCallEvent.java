@@ -0,0 +1,33 @@
+package kth.library.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one IBooksDb call, see FlightRecorderBooksDb.
+ */
+@Name("kth.library.DatabaseCall")
+@Label("Database Call")
+@Category({"Library", "Database"})
+@Description("An IBooksDb call, from the caller's point of view")
+class DatabaseCallEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Search Mode")
+    @Description("The SearchMode of a search, Query for several criteria, empty for other calls")
+    String mode;
+
+    @Label("Term Length")
+    int termLength;
+
+    @Label("Result Count")
+    @Description("Books, authors or genres returned, -1 if the call does not return any")
+    int resultCount = -1;
+
+    @Label("Failed")
+    boolean failed;
+}
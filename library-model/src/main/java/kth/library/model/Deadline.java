@@ -0,0 +1,38 @@
+package kth.library.model;
+
+import java.time.Duration;
+
+/**
+ * The point in time by which one read, including all the queries it makes to
+ * hydrate its result, must be done. Each query is given the time remaining.
+ */
+public final class Deadline {
+
+    private final Duration timeout;
+    private final long expiresAt; // System.nanoTime
+
+    private Deadline(Duration timeout) {
+        this.timeout = timeout;
+        this.expiresAt = System.nanoTime() + timeout.toNanos();
+    }
+
+    public static Deadline after(Duration timeout) {
+        return new Deadline(timeout);
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the milliseconds left, 0 if the deadline has passed
+     */
+    public long remainingMillis() {
+        return Math.max(0, (expiresAt - System.nanoTime()) / 1_000_000);
+    }
+
+    @Override
+    public String toString() {
+        return timeout.toMillis() + " ms";
+    }
+}
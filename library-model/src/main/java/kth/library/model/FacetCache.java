@@ -0,0 +1,66 @@
+package kth.library.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches facet counts of recent searches for a limited time, so that repeating
+ * a search does not group the whole result again. Backends clear it when books
+ * or reviews are added or removed; changes made by other clients become visible
+ * when an entry expires.
+ */
+public class FacetCache {
+
+    private static final int MAX_ENTRIES = 64;
+
+    private final long ttlMillis;
+    private final Map<BookQuery, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BookQuery, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * @param ttlMillis how long facets are served from the cache, 0 disables caching
+     */
+    public FacetCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the cached facets of the search, or null if not cached or expired
+     */
+    public synchronized BookFacets get(BookQuery query) {
+        Entry entry = entries.get(key(query));
+        if (entry == null || System.currentTimeMillis() - entry.created > ttlMillis) {
+            return null;
+        }
+        return entry.facets;
+    }
+
+    public synchronized void put(BookQuery query, BookFacets facets) {
+        if (ttlMillis > 0) {
+            entries.put(key(query), new Entry(facets, System.currentTimeMillis()));
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    // facets do not depend on the order or limit of a search
+    private static BookQuery key(BookQuery query) {
+        return query.copy().sortBy(null, false).limit(0);
+    }
+
+    private static class Entry {
+        final BookFacets facets;
+        final long created;
+
+        Entry(BookFacets facets, long created) {
+            this.facets = facets;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * Wraps another IBooksDb and emits a DatabaseCallEvent for every call, with
+ * the search mode, the length of the search term and the number of results, so
+ * that a flight recording can tie database and allocation activity to the
+ * searches that caused it. When recording is off the events are not committed
+ * and the JIT removes their allocation, so the wrapper costs next to nothing.
+ */
+public class FlightRecorderBooksDb extends ForwardingBooksDb {
+
+    public FlightRecorderBooksDb(IBooksDb delegate) {
+        super(delegate);
+    }
+
+    @FunctionalInterface
+    private interface Call<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private static <T, E extends Exception> T record(String method, String mode, String term,
+                                                     ToIntFunction<T> resultCount, Call<T, E> call) throws E {
+        DatabaseCallEvent event = new DatabaseCallEvent();
+        event.begin();
+        boolean failed = true;
+        try {
+            T result = call.run();
+            failed = false;
+            if (event.shouldCommit() && result != null) {
+                event.resultCount = resultCount.applyAsInt(result);
+            }
+            return result;
+        } finally {
+            if (event.shouldCommit()) {
+                event.method = method;
+                event.mode = mode;
+                event.termLength = term != null ? term.length() : 0;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+
+    private static <E extends Exception> void record(String method, Call<Void, E> call) throws E {
+        record(method, "", null, result -> -1, call);
+    }
+
+    private static String mode(BookQuery query) {
+        SearchMode mode = query.searchMode();
+        return mode != null ? mode.name() : "Query";
+    }
+
+    // the text searched for, for the term length of the event
+    private static String term(BookQuery query) {
+        if (query.getTitleContains() != null) return query.getTitleContains();
+        if (query.getIsbn() != null) return query.getIsbn();
+        if (query.getAuthor() != null) return query.getAuthor();
+        return query.getGenre();
+    }
+
+    @Override
+    public boolean connect(String database) throws ConnectionException {
+        return record("connect", "", null, result -> -1, () -> delegate.connect(database));
+    }
+
+    @Override
+    public void warmUp() throws ConnectionException {
+        record("warmUp", () -> {
+            delegate.warmUp();
+            return null;
+        });
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return record("login", "", null, result -> 1, () -> delegate.login(username, password));
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return record("findBooksByTitle", SearchMode.Title.name(), title, List::size,
+                      () -> delegate.findBooksByTitle(title));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return record("findBooksByIsbn", SearchMode.ISBN.name(), isbn, List::size,
+                      () -> delegate.findBooksByIsbn(isbn));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        return record("findBooksByAuthor", SearchMode.Author.name(), author, List::size,
+                      () -> delegate.findBooksByAuthor(author));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        return record("findBooksByGenre", SearchMode.Genre.name(), genre, List::size,
+                      () -> delegate.findBooksByGenre(genre));
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return record("findBooksByRating", SearchMode.Rating.name(), String.valueOf(rating), List::size,
+                      () -> delegate.findBooksByRating(rating));
+    }
+
+    @Override
+    public List<Book> findBooksByAny(String searchFor) throws SelectException {
+        return record("findBooksByAny", SearchMode.Any.name(), searchFor, List::size,
+                      () -> delegate.findBooksByAny(searchFor));
+    }
+
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        AtomicInteger found = new AtomicInteger();
+        record("searchBooks", mode(query), term(query), result -> found.get(), () -> {
+            delegate.searchBooks(query, batch -> {
+                found.addAndGet(batch.size());
+                batchConsumer.accept(batch);
+            });
+            return found;
+        });
+    }
+
+    @Override
+    public List<Book> findBooks(BookQuery query) throws SelectException {
+        return record("findBooks", mode(query), term(query), List::size, () -> delegate.findBooks(query));
+    }
+
+    @Override
+    public List<Book> findTopBooks(BookSortField orderBy, String genre, String author, int n) throws SelectException {
+        return record("findTopBooks", "Query", null, List::size,
+                      () -> delegate.findTopBooks(orderBy, genre, author, n));
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        return record("countBooks", mode(query), term(query), Integer::intValue, () -> delegate.countBooks(query));
+    }
+
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        return record("findFacets", mode(query), term(query), BookFacets::getTotal,
+                      () -> delegate.findFacets(query));
+    }
+
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        return record("findBooksPage", mode(query), term(query), List::size,
+                      () -> delegate.findBooksPage(query, after, skip));
+    }
+
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        return record("findReviews", "", null, page -> page.getReviews().size(),
+                      () -> delegate.findReviews(book, after, limit));
+    }
+
+    @Override
+    public void addBook(Book book) throws InsertException {
+        record("addBook", () -> {
+            delegate.addBook(book);
+            return null;
+        });
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+        record("addAuthor", () -> {
+            delegate.addAuthor(author);
+            return null;
+        });
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+        record("addGenre", () -> {
+            delegate.addGenre(genre);
+            return null;
+        });
+    }
+
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        record("addReview", () -> {
+            delegate.addReview(book, user, rating, reviewText);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        return record("getAllAuthors", "", null, List::size, delegate::getAllAuthors);
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        return record("getAllGenres", "", null, List::size, delegate::getAllGenres);
+    }
+
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        return record("findAuthorsByPrefix", "", prefix, List::size, () -> delegate.findAuthorsByPrefix(prefix, limit));
+    }
+
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        return record("findGenresByPrefix", "", prefix, List::size, () -> delegate.findGenresByPrefix(prefix, limit));
+    }
+
+    @Override
+    public void removeBook(Book book) throws Exception {
+        record("removeBook", () -> {
+            delegate.removeBook(book);
+            return null;
+        });
+    }
+}
@@ -0,0 +1,153 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An IBooksDb passing every call on to another one, the base of wrappers that
+ * add behaviour to some of the calls. All methods, including the default ones,
+ * are forwarded, so that the optimized implementations of the wrapped backend
+ * are used.
+ */
+public abstract class ForwardingBooksDb implements IBooksDb {
+
+    protected final IBooksDb delegate;
+
+    protected ForwardingBooksDb(IBooksDb delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public boolean connect(String database) throws ConnectionException {
+        return delegate.connect(database);
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        delegate.disconnect();
+    }
+
+    @Override
+    public void warmUp() throws ConnectionException {
+        delegate.warmUp();
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return delegate.login(username, password);
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return delegate.findBooksByTitle(title);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return delegate.findBooksByIsbn(isbn);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        return delegate.findBooksByAuthor(author);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        return delegate.findBooksByGenre(genre);
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return delegate.findBooksByRating(rating);
+    }
+
+    @Override
+    public List<Book> findBooksByAny(String searchFor) throws SelectException {
+        return delegate.findBooksByAny(searchFor);
+    }
+
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        delegate.searchBooks(query, batchConsumer);
+    }
+
+    @Override
+    public List<Book> findBooks(BookQuery query) throws SelectException {
+        return delegate.findBooks(query);
+    }
+
+    @Override
+    public List<Book> findTopBooks(BookSortField orderBy, String genre, String author, int n) throws SelectException {
+        return delegate.findTopBooks(orderBy, genre, author, n);
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        return delegate.countBooks(query);
+    }
+
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        return delegate.findFacets(query);
+    }
+
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        return delegate.findBooksPage(query, after, skip);
+    }
+
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        return delegate.findReviews(book, after, limit);
+    }
+
+    @Override
+    public void addBook(Book book) throws InsertException {
+        delegate.addBook(book);
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+        delegate.addAuthor(author);
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+        delegate.addGenre(genre);
+    }
+
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        delegate.addReview(book, user, rating, reviewText);
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        return delegate.getAllAuthors();
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        return delegate.getAllGenres();
+    }
+
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        return delegate.findAuthorsByPrefix(prefix, limit);
+    }
+
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        return delegate.findGenresByPrefix(prefix, limit);
+    }
+
+    @Override
+    public void removeBook(Book book) throws Exception {
+        delegate.removeBook(book);
+    }
+}
@@ -0,0 +1,22 @@
+package kth.library.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for mapping one batch of database results to books,
+ * including the queries for their authors, genres and users. Committed by the
+ * backends.
+ */
+@Name("kth.library.Hydration")
+@Label("Book Hydration")
+@Category({"Library", "Database"})
+public class HydrationEvent extends jdk.jfr.Event {
+
+    @Label("Backend")
+    public String backend;
+
+    @Label("Books")
+    public int books;
+}
@@ -0,0 +1,269 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * This interface declares methods for querying a Books database.
+ * Different implementations of this interface handles the connection and
+ * queries to a specific DBMS and database, for example a MySQL or a MongoDB
+ * database.
+ *
+ * NB! The methods in the implementation must catch the SQL/MongoDBExceptions thrown
+ * by the underlying driver, wrap in a Connection/Insert/SelectException and re-throw the
+ * latter exception. This way the interface is the same for both implementations, because the
+ * exception type in the method signatures is the same. More info in the mentioned exception classes.
+ * 
+ * @author anderslm@kth.se
+ */
+public interface IBooksDb {
+    
+    /**
+     * Connect to the database.
+     * @param database url
+     * @return true on successful connection
+     */
+    boolean connect(String database) throws ConnectionException;
+    
+    void disconnect() throws ConnectionException;
+
+    /**
+     * Prepare a connected backend for the first searches, e.g. fill the connection
+     * pool, verify indexes, load reference data and run the mapping code until it
+     * is compiled, so that connect only has to reach the server. Searches work
+     * without it, the first ones are just slower. The default does nothing.
+     */
+    default void warmUp() throws ConnectionException {
+    }
+
+    /**
+     * Login a user.
+     * @return User object if successful, null if not found/wrong password.
+     */
+    User login(String username, String password) throws SelectException;
+    
+    List<Book> findBooksByTitle(String title) throws SelectException;
+
+    List<Book> findBooksByIsbn(String isbn) throws SelectException;
+    
+    List<Book> findBooksByAuthor(String author) throws SelectException;
+    
+    List<Book> findBooksByGenre(String genre) throws SelectException;
+    
+    List<Book> findBooksByRating(int rating) throws SelectException;
+
+    /**
+     * Find books whose ISBN, title, author or genre matches the term, for a search
+     * where the user has not said which it is. The four lookups run concurrently
+     * on virtual threads, so implementations must allow concurrent find-calls, e.g.
+     * with a connection per call; one that cannot overrides this method and runs
+     * the lookups in turn.
+     *
+     * @return the books found by any lookup, once each, ISBN matches first, then
+     * exact and other title matches, then author and genre matches
+     */
+    default List<Book> findBooksByAny(String searchFor) throws SelectException {
+        return OmniSearch.search(this, searchFor);
+    }
+
+    /**
+     * Search books using the given mode and hand the result to the consumer in
+     * one or more batches, so that a view can show the first rows before the
+     * whole result has been read.
+     *
+     * @param mode what to search for
+     * @param searchFor the search term, a number for SearchMode.Rating
+     * @param batchConsumer receives the books, called on the searching thread
+     */
+    default void searchBooks(SearchMode mode, String searchFor, Consumer<List<Book>> batchConsumer)
+            throws SelectException {
+        if (mode == SearchMode.Any) {
+            batchConsumer.accept(findBooksByAny(searchFor));
+            return;
+        }
+        searchBooks(BookQuery.forSearch(mode, searchFor), batchConsumer);
+    }
+
+    /**
+     * Search books matching all criteria of the query and hand the result to the
+     * consumer in one or more batches. Implementations should compile the query
+     * into a single database query and decode the result incrementally; the
+     * default evaluates the criteria in memory on the result of one find-method
+     * and delivers everything as a single batch.
+     *
+     * @param batchConsumer receives the books, called on the searching thread
+     */
+    default void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        List<Book> candidates;
+        if (query.getIsbn() != null) {
+            candidates = findBooksByIsbn(query.getIsbn());
+        } else if (query.getGenre() != null) {
+            candidates = findBooksByGenre(query.getGenre());
+        } else if (query.getAuthor() != null) {
+            candidates = findBooksByAuthor(query.getAuthor());
+        } else {
+            candidates = findBooksByTitle(query.getTitleContains() != null ? query.getTitleContains() : "");
+        }
+        List<Book> result = new ArrayList<>();
+        for (Book book : candidates) {
+            if (query.matches(book)) {
+                result.add(book);
+            }
+        }
+        if (query.comparator() != null) {
+            result.sort(query.comparator());
+        }
+        if (query.getLimit() > 0 && result.size() > query.getLimit()) {
+            result = new ArrayList<>(result.subList(0, query.getLimit()));
+        }
+        batchConsumer.accept(result);
+    }
+
+    /**
+     * Find the books matching all criteria of the query.
+     */
+    default List<Book> findBooks(BookQuery query) throws SelectException {
+        List<Book> result = new ArrayList<>();
+        searchBooks(query, result::addAll);
+        return result;
+    }
+
+    /**
+     * Find the n best books by the given order, e.g. the 20 best-rated books in Drama.
+     * The database sorts and limits the result, using the rating and review count
+     * kept up to date on every book when reviews are added.
+     *
+     * @param orderBy usually Rating, ReviewCount or Added; always descending
+     * @param genre only books in this genre, or null for all genres
+     * @param author only books by an author whose name contains this, or null for all authors
+     * @param n the number of books to return
+     */
+    default List<Book> findTopBooks(BookSortField orderBy, String genre, String author, int n) throws SelectException {
+        return findBooks(new BookQuery().genre(genre).author(author).sortBy(orderBy, true).limit(n));
+    }
+
+    /**
+     * Count the books matching the query, ignoring its limit, without reading them.
+     * The default runs the whole search, implementations should let the database count.
+     */
+    default int countBooks(BookQuery query) throws SelectException {
+        return findBooks(query.copy().limit(0)).size();
+    }
+
+    /**
+     * Count the books matching the query grouped by genre, author, publisher and
+     * rating bucket, ignoring its sort order and limit. Implementations should
+     * compute all groups in one round trip without hydrating the books; the
+     * default counts the full result in memory.
+     */
+    default BookFacets findFacets(BookQuery query) throws SelectException {
+        return BookFacets.of(findBooks(query.copy().limit(0)));
+    }
+
+    /**
+     * Read one page of the reviews of a book, oldest first, so that a book with
+     * many reviews can be shown without reading them all. Searches do not read
+     * reviews, only the rating summary, see Book.getReviewCount.
+     * The default pages through the reviews held by the book.
+     *
+     * @param after the cursor of the previous page, null for the first page
+     * @param limit the maximum number of reviews in the page
+     */
+    default ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        List<Review> reviews = book.getReviews();
+        int from = after != null ? Math.min(after.getPosition(), reviews.size()) : 0;
+        return ReviewPage.of(new ArrayList<>(reviews.subList(from, Math.min(from + limit + 1, reviews.size()))),
+                             from, limit);
+    }
+
+    /**
+     * Fetch one page of a sorted search result, so that a view can load rows on
+     * demand instead of holding the whole result. Pages are addressed with a
+     * keyset cursor: the page starts right after the given book in the sort
+     * order of the query (ties broken by book id), optionally skipping some rows
+     * to reach a page further away than the last known one. The page size is the
+     * limit of the query.
+     * The default sorts the whole result in memory, implementations should push
+     * filtering, sorting and the limit down to the database.
+     *
+     * @param query the search, with sort order and page size set
+     * @param after the last book of the preceding page, null to start from the beginning
+     * @param skip number of rows after the cursor to skip
+     */
+    default List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        Comparator<Book> order = query.comparator();
+        return findBooks(query.copy().limit(0)).stream()
+            .filter(book -> after == null || order.compare(book, after) > 0)
+            .skip(skip)
+            .limit(query.getLimit())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Add a book. The book object should have the addedBy field set if a user is logged in.
+     */
+    void addBook(Book book) throws InsertException;
+    
+    /**
+     * Add an author to the database. 
+     * The author object should have the addedBy field set if a user is logged in.
+     */
+    void addAuthor(Author author) throws InsertException;
+
+    /**
+     * Add a genre to the database.
+     */
+    void addGenre(Genre genre) throws InsertException;
+
+    /**
+     * Add a review (rating + text) for a book by a user.
+     */
+    void addReview(Book book, User user, int rating, String reviewText) throws InsertException;
+    
+    // Helper methods to fetch available authors/genres for the "Add Book" dialog
+    List<Author> getAllAuthors() throws SelectException;
+    List<Genre> getAllGenres() throws SelectException;
+
+    /**
+     * Find the authors whose name starts with a prefix, ignoring case, sorted by name,
+     * so that a type-ahead can offer authors without reading all of them.
+     * The default filters getAllAuthors.
+     *
+     * @param prefix the start of the name, "" for the first authors by name
+     * @param limit the maximum number of authors returned
+     */
+    default List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        return getAllAuthors().stream()
+            .filter(author -> author.getName().regionMatches(true, 0, prefix, 0, prefix.length()))
+            .sorted(Comparator.comparing(Author::getName, String.CASE_INSENSITIVE_ORDER))
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Find the genres whose name starts with a prefix, ignoring case, sorted by name.
+     * The default filters getAllGenres.
+     *
+     * @param prefix the start of the name, "" for the first genres by name
+     * @param limit the maximum number of genres returned
+     */
+    default List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        return getAllGenres().stream()
+            .filter(genre -> genre.getName().regionMatches(true, 0, prefix, 0, prefix.length()))
+            .sorted(Comparator.comparing(Genre::getName, String.CASE_INSENSITIVE_ORDER))
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Remove a book from the database.
+     */
+    void removeBook(Book book) throws Exception;
+}
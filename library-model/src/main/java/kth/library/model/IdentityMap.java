@@ -0,0 +1,113 @@
+package kth.library.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one Author, Genre and User object per id while books are hydrated,
+ * so that books sharing an author, a genre or a reviewer share the same
+ * instance instead of each getting an identical copy. Repeated strings,
+ * such as publisher names, are canonicalized the same way.
+ * <p>
+ * A backend normally uses a new map per search. It can also keep one map for
+ * the whole session, in which case entities read once are never re-created,
+ * but changes made by other clients to already read entities are not seen.
+ */
+public class IdentityMap {
+
+    private final Map<Integer, Author> authors = new ConcurrentHashMap<>();
+    private final Map<Integer, Genre> genres = new ConcurrentHashMap<>();
+    private final Map<Integer, User> users = new ConcurrentHashMap<>();
+    private final Map<String, String> strings = new ConcurrentHashMap<>();
+
+    /**
+     * @return the author with the given id, or null if not read yet
+     */
+    public Author getAuthor(int authorId) {
+        return authors.get(authorId);
+    }
+
+    /**
+     * Register an author read from the database.
+     * @return the shared instance for its id, which is the given one unless another was registered first
+     */
+    public Author putAuthor(Author author) {
+        Author shared = authors.putIfAbsent(author.getAuthorId(), author);
+        return shared != null ? shared : author;
+    }
+
+    /**
+     * @return the genre with the given id, or null if not read yet
+     */
+    public Genre getGenre(int genreId) {
+        return genres.get(genreId);
+    }
+
+    /**
+     * @return the shared genre with the given id, created with the given name if not read yet
+     */
+    public Genre genre(int genreId, String name) {
+        Genre genre = genres.get(genreId);
+        if (genre == null) {
+            genre = putGenre(new Genre(genreId, canonical(name)));
+        }
+        return genre;
+    }
+
+    /**
+     * Register a genre read from the database.
+     * @return the shared instance for its id
+     */
+    public Genre putGenre(Genre genre) {
+        Genre shared = genres.putIfAbsent(genre.getGenreId(), genre);
+        return shared != null ? shared : genre;
+    }
+
+    /**
+     * @return the user with the given id, or null if not read yet
+     */
+    public User getUser(int userId) {
+        return users.get(userId);
+    }
+
+    /**
+     * @return the shared user with the given id, created with the given username if not read yet
+     */
+    public User user(int userId, String username) {
+        User user = users.get(userId);
+        if (user == null) {
+            user = putUser(new User(userId, canonical(username)));
+        }
+        return user;
+    }
+
+    /**
+     * Register a user read from the database.
+     * @return the shared instance for its id
+     */
+    public User putUser(User user) {
+        User shared = users.putIfAbsent(user.getId(), user);
+        return shared != null ? shared : user;
+    }
+
+    /**
+     * @return an equal string, the same instance for every equal string passed to this map
+     */
+    public String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = strings.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    /**
+     * Forget all entities and strings, e.g. after data has been changed.
+     */
+    public void clear() {
+        authors.clear();
+        genres.clear();
+        users.clear();
+        strings.clear();
+    }
+}
@@ -0,0 +1,81 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.SelectException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Search for a term that may be a title, an ISBN, an author or a genre, see
+ * SearchMode.Any. The four lookups run at the same time on virtual threads, so
+ * the search takes about as long as the slowest of them, and their results are
+ * merged into one list without duplicates, best matches first.
+ */
+final class OmniSearch {
+
+    // ranks of a book in the merged result, lower first
+    private static final int ISBN_MATCH = 0;
+    private static final int EXACT_TITLE = 1;
+    private static final int TITLE_MATCH = 2;
+    private static final int AUTHOR_MATCH = 3;
+    private static final int GENRE_MATCH = 4;
+
+    private OmniSearch() {
+    }
+
+    static List<Book> search(IBooksDb booksDb, String searchFor) throws SelectException {
+        String term = searchFor.trim();
+        List<Future<List<Book>>> lookups = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // the costs of the lookups count as costs of this search
+            lookups.add(executor.submit(CostAccounting.propagate(() -> booksDb.findBooksByIsbn(term))));
+            lookups.add(executor.submit(CostAccounting.propagate(() -> booksDb.findBooksByTitle(term))));
+            lookups.add(executor.submit(CostAccounting.propagate(() -> booksDb.findBooksByAuthor(term))));
+            lookups.add(executor.submit(CostAccounting.propagate(() -> booksDb.findBooksByGenre(term))));
+            // close waits for all lookups
+        }
+
+        // the best rank of every book found, in the order the lookups returned them
+        Map<Integer, Book> books = new LinkedHashMap<>();
+        Map<Integer, Integer> ranks = new LinkedHashMap<>();
+        int[] lookupRanks = {ISBN_MATCH, TITLE_MATCH, AUTHOR_MATCH, GENRE_MATCH};
+        for (int i = 0; i < lookups.size(); i++) {
+            for (Book book : result(lookups.get(i), searchFor)) {
+                int rank = lookupRanks[i];
+                if (rank == TITLE_MATCH && book.getTitle().equalsIgnoreCase(term)) {
+                    rank = EXACT_TITLE;
+                }
+                books.putIfAbsent(book.getBookId(), book);
+                ranks.merge(book.getBookId(), rank, Math::min);
+            }
+        }
+
+        List<Book> merged = new ArrayList<>(books.values());
+        merged.sort(Comparator.comparingInt(book -> ranks.get(book.getBookId()))); // stable
+        return merged;
+    }
+
+    private static List<Book> result(Future<List<Book>> lookup, String searchFor) throws SelectException {
+        try {
+            return lookup.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SelectException selectException) {
+                throw selectException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new SelectException("Error searching for: " + searchFor, (Exception) e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SelectException("Search interrupted: " + searchFor, e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package kth.library.model;
+
+/**
+ * What one IBooksDb call cost: database round trips, documents or rows read,
+ * bytes received from the database, bytes allocated on the heap by the calling
+ * thread, and elapsed time. See CostAccounting.
+ */
+public class OperationCost {
+
+    private final String operation;
+    private final long roundTrips;
+    private final long documentsRead;
+    private final long bytesReceived;
+    private final long allocatedBytes;
+    private final long elapsedNanos;
+
+    public OperationCost(String operation, long roundTrips, long documentsRead, long bytesReceived,
+                         long allocatedBytes, long elapsedNanos) {
+        this.operation = operation;
+        this.roundTrips = roundTrips;
+        this.documentsRead = documentsRead;
+        this.bytesReceived = bytesReceived;
+        this.allocatedBytes = allocatedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /** @return the operation the cost is recorded under, e.g. a SearchMode name */
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    /** @return documents (MongoDB) or rows (JDBC) read */
+    public long getDocumentsRead() {
+        return documentsRead;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /** @return heap bytes allocated by the calling thread, -1 if the JVM cannot tell */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 0) return "?";
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    @Override
+    public String toString() {
+        return operation + ": " + roundTrips + " round trips, " + documentsRead + " documents, "
+            + formatBytes(bytesReceived) + " received, " + formatBytes(allocatedBytes) + " allocated, "
+            + elapsedNanos / 1_000_000 + " ms";
+    }
+}
@@ -0,0 +1,482 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.RejectedWritesException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Adds books and reviews by queueing them in a log file and returning as soon as
+ * the log is on disk, instead of waiting for the database; a background thread
+ * writes the queued books and reviews to the database in batches, through a
+ * BatchWriter, and keeps trying while the database is not reachable. The other
+ * writes, and all reads, go to the wrapped database; a queued book or review is
+ * found by searches once it has been written.
+ * <p>
+ * The log is only appended to: a record per queued write, with the key that
+ * makes writing it again harmless, and a record of the keys of every batch
+ * written. Writes queued at the same time share one fsync of the log. A record
+ * that was being appended when the client stopped is detected by its checksum
+ * and dropped. Writes left in the log are written at the next launch; the log
+ * is emptied whenever all of it has been written.
+ * <p>
+ * A write the database refuses for good, see RejectedWritesException, is taken
+ * out of the queue and recorded as rejected, so that it does not hold up the
+ * writes queued after it; the rejected writes are logged and kept for a view to
+ * show, see getRejected, until the client exits.
+ */
+public class OutboxBooksDb extends ForwardingBooksDb {
+
+    /** The system property enabling the outbox, e.g. -Dlibrary.outbox=true. */
+    public static final String OUTBOX_PROPERTY = "library.outbox";
+
+    private static final Logger LOGGER = Logger.getLogger(OutboxBooksDb.class.getName());
+    private static final int MAGIC = 0x4C4F5458; // "LOTX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte QUEUED_BOOK = 1;
+    private static final byte QUEUED_REVIEW = 2;
+    private static final byte WRITTEN = 3;
+    private static final byte REJECTED = 4;
+    private static final int BATCH_SIZE = 200;
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(1);
+    // seconds given to a batch being written to finish when disconnecting
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    private final BatchWriter writer;
+    private final Path file;
+
+    // guards the log's position and the queued writes, in the order queued
+    private final Object appendLock = new Object();
+    private final Map<String, QueuedWrite> queued = new LinkedHashMap<>();
+    private final List<QueuedWrite> rejected = new ArrayList<>();
+    private FileChannel log;
+    private long position;
+    private long appended; // bytes appended since opened, whether or not the log was emptied since
+    // guards the fsync; writers appending meanwhile are forced by the next one
+    private final Object forceLock = new Object();
+    private long forced;
+
+    private final List<Runnable> writeListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "outbox-drain");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean draining;
+    private volatile String writeError; // why the last batch could not be written, null if it could
+    private Duration retryDelay; // only used on the drain thread
+    private volatile ScheduledFuture<?> retry; // the drain scheduled after a failure, null if none
+
+    /**
+     * @param delegate the database all calls but adding books and reviews go to
+     * @param writer writes the queued books and reviews to the same database, usually the
+     *               backend wrapped by delegate
+     * @param file the log, see configuredFile
+     */
+    public OutboxBooksDb(IBooksDb delegate, BatchWriter writer, Path file) {
+        super(delegate);
+        this.writer = writer;
+        this.file = file;
+    }
+
+    /**
+     * @return true if the outbox is enabled with the library.outbox system property
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(OUTBOX_PROPERTY);
+    }
+
+    /**
+     * @return a file named after the backend in the .library directory of the user's home directory
+     */
+    public static Path configuredFile(BooksDbProvider backend) {
+        return Path.of(System.getProperty("user.home"), ".library", backend.getName() + "-outbox.log");
+    }
+
+    /**
+     * Read the writes left in the log by the last launch, and start a new log holding
+     * only them.
+     *
+     * @throws IOException if the log cannot be written, books and reviews cannot be added then
+     */
+    public void open() throws IOException {
+        Map<String, QueuedWrite> left = new LinkedHashMap<>();
+        if (Files.isRegularFile(file)) {
+            try {
+                read(new DataInputStream(MappedFiles.read(file)), left);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not read all of the outbox " + file, e);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        for (QueuedWrite write : left.values()) {
+            out.write(record(encode(write)));
+        }
+        out.flush();
+        MappedFiles.write(file, bytes);
+        synchronized (appendLock) {
+            log = FileChannel.open(file, StandardOpenOption.WRITE);
+            position = log.size();
+            queued.putAll(left);
+        }
+    }
+
+    /**
+     * Start writing the queued books and reviews once the database is connected.
+     *
+     * @param connected completes when the wrapped database is connected
+     */
+    public void startDraining(CompletableFuture<?> connected) {
+        connected.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                writeError = "Not connected to the database: " + failure.getMessage();
+                writeListeners.forEach(Runnable::run);
+                return;
+            }
+            draining = true;
+            drainSoon();
+        });
+    }
+
+    /**
+     * Add a listener told on the drain thread each time a batch has been written, or writing it failed.
+     */
+    public void addWriteListener(Runnable listener) {
+        writeListeners.add(listener);
+    }
+
+    /**
+     * @return the number of books and reviews not written to the database yet
+     */
+    public int getQueuedCount() {
+        synchronized (appendLock) {
+            return queued.size();
+        }
+    }
+
+    /**
+     * @return the books and reviews the database refused in this launch, in the order refused
+     */
+    public List<QueuedWrite> getRejected() {
+        synchronized (appendLock) {
+            return List.copyOf(rejected);
+        }
+    }
+
+    /**
+     * @return why the last batch could not be written, null if it could
+     */
+    public String getWriteError() {
+        return writeError;
+    }
+
+    /**
+     * Queued; the book is found by searches once written to the database.
+     */
+    @Override
+    public void addBook(Book book) throws InsertException {
+        queue(QueuedWrite.ofBook(UUID.randomUUID().toString(), Instant.now(), book));
+    }
+
+    /**
+     * Queued; the review is found with the book once written to the database.
+     */
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        // only what identifies the book is kept, not the reviews it holds
+        Book reviewed = new Book(book.getBookId(), book.getIsbn(), book.getTitle(), book.getPublisher());
+        Review review = new Review(reviewed, user, rating, reviewText, Date.valueOf(LocalDate.now()));
+        queue(QueuedWrite.ofReview(UUID.randomUUID().toString(), Instant.now(), review));
+    }
+
+    /**
+     * Stop writing the queued books and reviews, they are written at the next launch,
+     * and disconnect the wrapped database.
+     */
+    @Override
+    public void disconnect() throws ConnectionException {
+        draining = false;
+        ScheduledFuture<?> pending = retry;
+        if (pending != null) {
+            pending.cancel(false); // not waited for
+        }
+        drainer.shutdown();
+        try {
+            drainer.awaitTermination(STOP_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            try {
+                if (log != null) {
+                    log.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not close the outbox " + file, e);
+            }
+        }
+        delegate.disconnect();
+    }
+
+    private void queue(QueuedWrite write) throws InsertException {
+        try {
+            byte[] record = record(encode(write));
+            long end;
+            synchronized (appendLock) {
+                if (log == null || !log.isOpen()) {
+                    throw new IOException("The outbox is not open");
+                }
+                append(record);
+                appended += record.length;
+                end = appended;
+                queued.put(write.getKey(), write);
+            }
+            force(end);
+        } catch (IOException e) {
+            throw new InsertException("Could not queue the " + write, e);
+        }
+        drainSoon();
+    }
+
+    // called holding appendLock
+    private void append(byte[] record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining()) {
+            position += log.write(buffer, position);
+        }
+    }
+
+    /**
+     * Wait until the log is on disk up to end. The first writer to get here forces
+     * everything appended so far, the writers that appended meanwhile find their
+     * records forced when they get the lock.
+     */
+    private void force(long end) throws IOException {
+        synchronized (forceLock) {
+            if (forced >= end) {
+                return;
+            }
+            long upTo;
+            synchronized (appendLock) {
+                upTo = appended;
+            }
+            log.force(false);
+            forced = upTo;
+        }
+    }
+
+    private void drainSoon() {
+        if (draining) {
+            drainer.execute(this::drain);
+        }
+    }
+
+    /**
+     * Write the oldest batch of queued writes and record that it was written, then
+     * the next one; retried later, waiting longer each time, if it cannot be written.
+     * Writes the database refuses are rejected and the rest of the batch written again
+     * at once. Recording it is not forced to disk: a batch written again is skipped by
+     * the database.
+     */
+    private void drain() {
+        List<QueuedWrite> batch;
+        synchronized (appendLock) {
+            batch = queued.values().stream().limit(BATCH_SIZE).toList();
+        }
+        if (batch.isEmpty() || !draining) {
+            return;
+        }
+        try {
+            writer.writeBatch(batch);
+        } catch (InsertException | RuntimeException e) {
+            if (e instanceof RejectedWritesException refused && reject(refused)) {
+                writeListeners.forEach(Runnable::run);
+                drainSoon();
+                return;
+            }
+            writeError = e.getMessage() != null ? e.getMessage() : e.toString();
+            retryDelay = retryDelay == null ? RETRY_DELAY
+                : retryDelay.multipliedBy(2).compareTo(MAX_RETRY_DELAY) < 0 ? retryDelay.multipliedBy(2)
+                : MAX_RETRY_DELAY;
+            writeListeners.forEach(Runnable::run);
+            retry = drainer.schedule(this::drain, retryDelay.toMillis(), TimeUnit.MILLISECONDS);
+            return;
+        }
+        writeError = null;
+        retryDelay = null;
+        boolean more;
+        synchronized (appendLock) {
+            more = dequeue(WRITTEN, batch.stream().map(QueuedWrite::getKey).toList());
+        }
+        writeListeners.forEach(Runnable::run);
+        if (more) {
+            drainSoon();
+        }
+    }
+
+    /**
+     * Take the writes the database refused out of the queue and keep them as rejected.
+     *
+     * @return false if none of them is queued, the failure is then handled like any other
+     */
+    private boolean reject(RejectedWritesException e) {
+        synchronized (appendLock) {
+            List<String> keys = new ArrayList<>();
+            for (String key : e.getRejectedKeys()) {
+                QueuedWrite write = queued.get(key);
+                if (write != null) {
+                    LOGGER.warning("The database refused the " + write + ", it is not written: " + e.getMessage());
+                    rejected.add(write);
+                    keys.add(key);
+                }
+            }
+            if (keys.isEmpty()) {
+                return false;
+            }
+            dequeue(REJECTED, keys);
+            return true;
+        }
+    }
+
+    /**
+     * Remove writes from the queue and record why in the log, or empty the log if
+     * nothing is queued any more. Called holding appendLock.
+     *
+     * @param kind WRITTEN or REJECTED
+     * @return true if writes are still queued
+     */
+    private boolean dequeue(byte kind, List<String> keys) {
+        for (String key : keys) {
+            queued.remove(key);
+        }
+        try {
+            if (queued.isEmpty()) {
+                log.truncate(HEADER_SIZE);
+                position = HEADER_SIZE;
+            } else {
+                append(record(encodeKeys(kind, keys)));
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not record the writes taken out of the outbox " + file, e);
+        }
+        return !queued.isEmpty();
+    }
+
+    // a record: the length of the payload, its checksum, the payload
+    private static byte[] record(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // a queued write: its kind, key and time, then the book, or the book reviewed and the review
+    private static byte[] encode(QueuedWrite write) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(write.isReview() ? QUEUED_REVIEW : QUEUED_BOOK);
+        out.writeUTF(write.getKey());
+        out.writeLong(write.getQueued().toEpochMilli());
+        BookCodec.Writer codec = new BookCodec.Writer(out);
+        codec.write(write.getBook());
+        if (write.isReview()) {
+            codec.writeReviews(List.of(write.getReview()));
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    // the keys of writes written, or rejected
+    private static byte[] encodeKeys(byte kind, List<String> keys) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(kind);
+        out.writeInt(keys.size());
+        for (String key : keys) {
+            out.writeUTF(key);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read the records up to the end of the log, or up to a record that was not
+     * appended in full, and keep the writes not recorded as written or rejected.
+     */
+    private static void read(DataInputStream in, Map<String, QueuedWrite> left) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not an outbox of this version");
+        }
+        while (true) {
+            byte[] payload;
+            try {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    return; // appended in part
+                }
+            } catch (EOFException | NegativeArraySizeException e) {
+                return;
+            }
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+            byte kind = record.readByte();
+            if (kind == WRITTEN || kind == REJECTED) {
+                int count = record.readInt();
+                for (int i = 0; i < count; i++) {
+                    left.remove(record.readUTF());
+                }
+                continue;
+            }
+            String key = record.readUTF();
+            Instant queuedAt = Instant.ofEpochMilli(record.readLong());
+            BookCodec.Reader codec = new BookCodec.Reader(record, new IdentityMap());
+            Book book = codec.read();
+            left.put(key, kind == QUEUED_REVIEW
+                ? QueuedWrite.ofReview(key, queuedAt, codec.readReviews(book).get(0))
+                : QueuedWrite.ofBook(key, queuedAt, book));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package kth.library.model;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * How long reads may run before the database is told to stop them, per SearchMode.
+ * Backends pass the deadline of each read to the database (maxTime on MongoDB,
+ * the query timeout on JDBC), and report an expired read as a QueryTimeoutException.
+ * Reads that are not searches, such as login or hydrating a result, use the
+ * default deadline.
+ */
+public class QueryDeadlines {
+
+    private final Duration defaultDeadline;
+    private final Map<SearchMode, Duration> deadlines = new EnumMap<>(SearchMode.class);
+
+    /**
+     * @param defaultDeadline the deadline of reads with no deadline of their own
+     */
+    public QueryDeadlines(Duration defaultDeadline) {
+        this.defaultDeadline = defaultDeadline;
+    }
+
+    /**
+     * @return deadlines that stop unanchored pattern searches and full scans
+     * after a few seconds, and exact lookups sooner
+     */
+    public static QueryDeadlines defaults() {
+        return new QueryDeadlines(Duration.ofSeconds(10))
+            .set(SearchMode.ISBN, Duration.ofSeconds(2))
+            .set(SearchMode.Title, Duration.ofSeconds(5))
+            .set(SearchMode.Author, Duration.ofSeconds(5))
+            .set(SearchMode.Genre, Duration.ofSeconds(5))
+            .set(SearchMode.Any, Duration.ofSeconds(5))
+            .set(SearchMode.Rating, Duration.ofSeconds(10));
+    }
+
+    public QueryDeadlines set(SearchMode mode, Duration deadline) {
+        deadlines.put(mode, deadline);
+        return this;
+    }
+
+    public Duration getDefault() {
+        return defaultDeadline;
+    }
+
+    public Duration forMode(SearchMode mode) {
+        return deadlines.getOrDefault(mode, defaultDeadline);
+    }
+
+    /**
+     * @return the longest deadline of the criteria set in the query, since the query
+     * costs at least as much as each of them, or the default if it has none
+     */
+    public Duration forQuery(BookQuery query) {
+        Duration longest = null;
+        if (query.getTitleContains() != null) longest = longer(longest, forMode(SearchMode.Title));
+        if (query.getIsbn() != null) longest = longer(longest, forMode(SearchMode.ISBN));
+        if (query.getAuthor() != null) longest = longer(longest, forMode(SearchMode.Author));
+        if (query.getGenre() != null) longest = longer(longest, forMode(SearchMode.Genre));
+        if (query.getMinRating() != null) longest = longer(longest, forMode(SearchMode.Rating));
+        return longest != null ? longest : defaultDeadline;
+    }
+
+    private static Duration longer(Duration a, Duration b) {
+        return a == null || b.compareTo(a) > 0 ? b : a;
+    }
+}
@@ -0,0 +1,71 @@
+package kth.library.model;
+
+import java.time.Instant;
+
+/**
+ * A book or a review to add, queued by OutboxBooksDb until it is written to the
+ * database by a BatchWriter. The key identifies the write, so that writing it
+ * again after a failure does not add the book or the review twice.
+ */
+public final class QueuedWrite {
+
+    private final String key;
+    private final Instant queued;
+    private final Book book;
+    private final Review review;
+
+    private QueuedWrite(String key, Instant queued, Book book, Review review) {
+        this.key = key;
+        this.queued = queued;
+        this.book = book;
+        this.review = review;
+    }
+
+    /**
+     * @param book the book to add, with its authors and genres
+     */
+    public static QueuedWrite ofBook(String key, Instant queued, Book book) {
+        return new QueuedWrite(key, queued, book, null);
+    }
+
+    /**
+     * @param review the review to add, of the book it refers to
+     */
+    public static QueuedWrite ofReview(String key, Instant queued, Review review) {
+        return new QueuedWrite(key, queued, review.getBook(), review);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return when the write was queued, the time of a review added
+     */
+    public Instant getQueued() {
+        return queued;
+    }
+
+    /**
+     * @return the book to add, or the book reviewed
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * @return the review to add, null if a book is added
+     */
+    public Review getReview() {
+        return review;
+    }
+
+    public boolean isReview() {
+        return review != null;
+    }
+
+    @Override
+    public String toString() {
+        return (review != null ? "review of " : "book ") + book.getTitle() + " (" + key + ")";
+    }
+}
@@ -0,0 +1,199 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.SelectException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps all authors and genres in memory, so that the add book dialog, genre
+ * searches and the hydration of books do not read them again and again. A
+ * backend loads them all when it connects; after that a refresh only reads the
+ * ones with an id above the highest id held (the watermark), which is one
+ * indexed query that usually returns nothing.
+ * <p>
+ * This relies on ids being assigned in increasing order and on authors and
+ * genres never being changed or removed, which holds for this application.
+ * Authors and genres added by this client are put in directly by the backend;
+ * the ones added by other clients are seen at the next refresh.
+ */
+public class ReferenceDataCache {
+
+    /**
+     * Reads the authors and genres added after a watermark, for a backend.
+     */
+    public interface Loader {
+        /** @return the authors with an id above authorId, with the users who added them */
+        List<Author> authorsAfter(int authorId) throws SelectException;
+
+        /** @return the genres with an id above genreId */
+        List<Genre> genresAfter(int genreId) throws SelectException;
+    }
+
+    private static final Comparator<Author> BY_AUTHOR_NAME =
+        Comparator.comparing(Author::getName, String.CASE_INSENSITIVE_ORDER).thenComparingInt(Author::getAuthorId);
+    private static final Comparator<Genre> BY_GENRE_NAME =
+        Comparator.comparing(Genre::getName, String.CASE_INSENSITIVE_ORDER).thenComparingInt(Genre::getGenreId);
+
+    private final Map<Integer, Author> authorsById = new ConcurrentHashMap<>();
+    private final Map<Integer, Genre> genresById = new ConcurrentHashMap<>();
+    private final Map<String, Genre> genresByName = new ConcurrentHashMap<>();
+    // sorted by name, replaced as a whole when authors or genres are added
+    private volatile List<Author> authors = List.of();
+    private volatile List<Genre> genres = List.of();
+    private int authorWatermark; // guarded by this
+    private int genreWatermark;
+    private volatile boolean loaded;
+
+    /**
+     * @return true once the authors and genres have been read, false after clear
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Read the authors and genres added since the last refresh, all of them the first time.
+     */
+    public void refresh(Loader loader) throws SelectException {
+        refreshAuthors(loader);
+        refreshGenres(loader);
+        loaded = true;
+    }
+
+    /**
+     * Read the authors added since the last refresh.
+     */
+    public synchronized void refreshAuthors(Loader loader) throws SelectException {
+        List<Author> added = loader.authorsAfter(authorWatermark);
+        addAuthors(added);
+        for (Author author : added) {
+            authorWatermark = Math.max(authorWatermark, author.getAuthorId());
+        }
+    }
+
+    /**
+     * Read the genres added since the last refresh.
+     */
+    public synchronized void refreshGenres(Loader loader) throws SelectException {
+        List<Genre> added = loader.genresAfter(genreWatermark);
+        addGenres(added);
+        for (Genre genre : added) {
+            genreWatermark = Math.max(genreWatermark, genre.getGenreId());
+        }
+    }
+
+    /**
+     * Forget everything, e.g. when the backend disconnects.
+     */
+    public synchronized void clear() {
+        loaded = false;
+        authorsById.clear();
+        genresById.clear();
+        genresByName.clear();
+        authors = List.of();
+        genres = List.of();
+        authorWatermark = 0;
+        genreWatermark = 0;
+    }
+
+    /**
+     * Add an author stored by this client, with the id it was given. The watermark is
+     * not moved, so that authors stored by other clients with lower ids are still read.
+     */
+    public void addAuthor(Author author) {
+        addAuthors(List.of(author));
+    }
+
+    /**
+     * Add a genre stored by this client, with the id it was given.
+     */
+    public void addGenre(Genre genre) {
+        addGenres(List.of(genre));
+    }
+
+    private synchronized void addAuthors(List<Author> added) {
+        List<Author> newAuthors = new ArrayList<>();
+        for (Author author : added) {
+            if (authorsById.putIfAbsent(author.getAuthorId(), author) == null) {
+                newAuthors.add(author);
+            }
+        }
+        if (!newAuthors.isEmpty()) {
+            List<Author> sorted = new ArrayList<>(authors);
+            sorted.addAll(newAuthors);
+            sorted.sort(BY_AUTHOR_NAME); // mostly sorted already, so close to linear
+            authors = Collections.unmodifiableList(sorted);
+        }
+    }
+
+    private synchronized void addGenres(List<Genre> added) {
+        List<Genre> newGenres = new ArrayList<>();
+        for (Genre genre : added) {
+            if (genresById.putIfAbsent(genre.getGenreId(), genre) == null) {
+                genresByName.putIfAbsent(genre.getName(), genre);
+                newGenres.add(genre);
+            }
+        }
+        if (!newGenres.isEmpty()) {
+            List<Genre> sorted = new ArrayList<>(genres);
+            sorted.addAll(newGenres);
+            sorted.sort(BY_GENRE_NAME);
+            genres = Collections.unmodifiableList(sorted);
+        }
+    }
+
+    /**
+     * @return all authors sorted by name, read-only
+     */
+    public List<Author> getAuthors() {
+        return authors;
+    }
+
+    /**
+     * @return all genres sorted by name, read-only
+     */
+    public List<Genre> getGenres() {
+        return genres;
+    }
+
+    /**
+     * @return the author with the given id, or null if not held
+     */
+    public Author getAuthor(int authorId) {
+        return authorsById.get(authorId);
+    }
+
+    /**
+     * @return the genre with the given id, or null if not held
+     */
+    public Genre getGenre(int genreId) {
+        return genresById.get(genreId);
+    }
+
+    /**
+     * @return the genre with exactly the given name, or null if not held
+     */
+    public Genre getGenre(String name) {
+        return genresByName.get(name);
+    }
+
+    /**
+     * Resolve a genre name, refreshing the genres first if it is not held, so that a
+     * genre added by another client is found too.
+     *
+     * @return the genre, or null if there is none with that name
+     */
+    public Genre resolveGenre(String name, Loader loader) throws SelectException {
+        Genre genre = genresByName.get(name);
+        if (genre == null) {
+            refreshGenres(loader);
+            genre = genresByName.get(name);
+        }
+        return genre;
+    }
+}
@@ -0,0 +1,468 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Wraps another IBooksDb to keep a copy of the whole catalog in memory and in a
+ * file, and answers all reads from the copy, so that searches do not wait for a
+ * distant or unreachable database. The copy is made with one read of all books
+ * from a ChangeFeed, after that only the changes since the last read are read,
+ * every SYNC_INTERVAL and right after this client has written. It is saved to a
+ * file after every read that changed it, and read from the file at the next
+ * launch, so that reads are answered from the copy even before the database is
+ * connected, or if it cannot be.
+ * <p>
+ * Reads are evaluated in memory with BookQuery.matches over all books, which for
+ * a catalog that fits in memory is faster than a round trip to the database.
+ * Login and all writes go to the wrapped database. The copy may be out of date
+ * by up to SYNC_INTERVAL, or longer if the database cannot be reached; a view
+ * shows how old it is, see getLastSynced.
+ */
+public class ReplicaBooksDb extends ForwardingBooksDb {
+
+    /** The system property enabling the local copy, -Dlibrary.replica=true. */
+    public static final String REPLICA_PROPERTY = "library.replica";
+
+    private static final Logger LOGGER = Logger.getLogger(ReplicaBooksDb.class.getName());
+    private static final int MAGIC = 0x4C52504C; // "LRPL"
+    private static final int VERSION = 1;
+    private static final Duration SYNC_INTERVAL = Duration.ofSeconds(30);
+    // time given to a running read of the changes when disconnecting
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    private final ChangeFeed feed;
+    private final Path file;
+    private final String database;
+
+    // the copy, by book id, replaced as a whole when all books are read; null until there is one
+    private volatile Map<Integer, Book> books;
+    private volatile List<Author> authors = List.of();
+    private volatile List<Genre> genres = List.of();
+    // only changed on the sync thread once syncing has started
+    private volatile Instant syncedUpTo; // passed to the feed as since
+    private volatile Instant lastSynced; // when the changes were last read, on this client's clock
+    private volatile String syncError; // why the last read of the changes failed, null if it did not
+
+    private final List<Runnable> syncListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean syncing;
+
+    /**
+     * @param delegate the database written to, and read from until there is a copy
+     * @param feed the changes of the same database, usually the backend wrapped by delegate
+     * @param file the file the copy is kept in, see configuredFile
+     * @param database the connect string of the backend, a copy of another database is ignored
+     */
+    public ReplicaBooksDb(IBooksDb delegate, ChangeFeed feed, Path file, String database) {
+        super(delegate);
+        this.feed = feed;
+        this.file = file;
+        this.database = database;
+    }
+
+    /**
+     * @return true if the local copy is enabled with the library.replica system property
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(REPLICA_PROPERTY);
+    }
+
+    /**
+     * @return a file named after the backend in the .library directory of the user's home directory
+     */
+    public static Path configuredFile(BooksDbProvider backend) {
+        return Path.of(System.getProperty("user.home"), ".library", backend.getName() + "-replica.bin");
+    }
+
+    /**
+     * Read the copy saved by the last launch, if there is one. A copy that cannot
+     * be read is reported and ignored, all books are read again.
+     *
+     * @return true if a copy was read
+     */
+    public boolean load() {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try {
+            return read(new DataInputStream(MappedFiles.read(file)));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not read the local copy " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Start reading the changes once the database is connected, all books first if
+     * there is no copy yet.
+     *
+     * @param connected completes when the wrapped database is connected
+     */
+    public void startSync(CompletableFuture<?> connected) {
+        connected.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                syncError = "Not connected to the database: " + failure.getMessage();
+                syncListeners.forEach(Runnable::run);
+                return;
+            }
+            syncing = true;
+            syncer.scheduleWithFixedDelay(this::sync, 0, SYNC_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Add a listener told on the sync thread each time the changes have been read, or reading them failed.
+     */
+    public void addSyncListener(Runnable listener) {
+        syncListeners.add(listener);
+    }
+
+    /**
+     * @return true if reads are answered from the copy
+     */
+    public boolean hasCopy() {
+        return books != null;
+    }
+
+    /**
+     * @return when the copy was last brought up to date, null if never
+     */
+    public Instant getLastSynced() {
+        return lastSynced;
+    }
+
+    /**
+     * @return why the copy could not be brought up to date the last time, null if it could
+     */
+    public String getSyncError() {
+        return syncError;
+    }
+
+    /**
+     * Read the changes now rather than at the next sync, e.g. after writes made
+     * to the database without going through this copy.
+     */
+    public void syncSoon() {
+        if (syncing) {
+            syncer.execute(this::sync);
+        }
+    }
+
+    /**
+     * Read the changes since the last read, or all books if there is no copy or it
+     * is older than the tombstones, and save the copy if it changed.
+     */
+    private void sync() {
+        try {
+            Instant since = syncedUpTo;
+            Map<Integer, Book> held = books;
+            if (held == null || since == null
+                || since.isBefore(Instant.now().minus(feed.getTombstoneRetention()))) {
+                since = null;
+            }
+            Map<Integer, Book> target = since == null ? new ConcurrentHashMap<>() : held;
+            int[] changes = {0};
+            Instant upTo = feed.readChanges(since, changed -> {
+                for (Book book : changed) {
+                    target.put(book.getBookId(), book);
+                }
+                changes[0] += changed.size();
+            }, removed -> {
+                for (Integer bookId : removed) {
+                    target.remove(bookId);
+                }
+                changes[0] += removed.size();
+            });
+            List<Author> allAuthors = delegate.getAllAuthors();
+            List<Genre> allGenres = delegate.getAllGenres();
+            if (allAuthors.size() != authors.size() || allGenres.size() != genres.size()) {
+                changes[0]++;
+            }
+            authors = List.copyOf(allAuthors);
+            genres = List.copyOf(allGenres);
+            books = target;
+            syncedUpTo = upTo;
+            lastSynced = Instant.now();
+            syncError = null;
+            if (changes[0] > 0 || since == null) {
+                save();
+            }
+        } catch (IOException | RuntimeException e) { // SelectException is an IOException
+            syncError = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        syncListeners.forEach(Runnable::run);
+    }
+
+    /**
+     * Stop reading changes and save the copy before disconnecting the wrapped database.
+     */
+    @Override
+    public void disconnect() throws ConnectionException {
+        syncing = false;
+        syncer.shutdown();
+        try {
+            syncer.awaitTermination(STOP_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (books != null) {
+            try {
+                save();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not save the local copy " + file, e);
+            }
+        }
+        delegate.disconnect();
+    }
+
+    // the books matching the query, in its order or by id, limited
+    private static List<Book> select(Map<Integer, Book> held, BookQuery query) {
+        Comparator<Book> order = query.comparator() != null
+            ? query.comparator() : Comparator.comparingInt(Book::getBookId);
+        Stream<Book> matching = held.values().stream().filter(query::matches).sorted(order);
+        if (query.getLimit() > 0) {
+            matching = matching.limit(query.getLimit());
+        }
+        return matching.collect(Collectors.toList());
+    }
+
+    private List<Book> find(SearchMode mode, String searchFor) {
+        return select(books, BookQuery.forSearch(mode, searchFor));
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return books != null ? find(SearchMode.Title, title.trim()) : delegate.findBooksByTitle(title);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return books != null ? find(SearchMode.ISBN, isbn) : delegate.findBooksByIsbn(isbn);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        return books != null ? find(SearchMode.Author, author.trim()) : delegate.findBooksByAuthor(author);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        return books != null ? find(SearchMode.Genre, genre.trim()) : delegate.findBooksByGenre(genre);
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return books != null ? find(SearchMode.Rating, Integer.toString(rating)) : delegate.findBooksByRating(rating);
+    }
+
+    /**
+     * The lookups are made on the copy, see OmniSearch.
+     */
+    @Override
+    public List<Book> findBooksByAny(String searchFor) throws SelectException {
+        return books != null ? OmniSearch.search(this, searchFor) : delegate.findBooksByAny(searchFor);
+    }
+
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        Map<Integer, Book> held = books;
+        if (held == null) {
+            delegate.searchBooks(query, batchConsumer);
+            return;
+        }
+        batchConsumer.accept(select(held, query));
+    }
+
+    @Override
+    public List<Book> findBooks(BookQuery query) throws SelectException {
+        Map<Integer, Book> held = books;
+        return held != null ? select(held, query) : delegate.findBooks(query);
+    }
+
+    @Override
+    public List<Book> findTopBooks(BookSortField orderBy, String genre, String author, int n) throws SelectException {
+        Map<Integer, Book> held = books;
+        if (held == null) {
+            return delegate.findTopBooks(orderBy, genre, author, n);
+        }
+        return select(held, new BookQuery().genre(genre).author(author).sortBy(orderBy, true).limit(n));
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        Map<Integer, Book> held = books;
+        if (held == null) {
+            return delegate.countBooks(query);
+        }
+        return (int) held.values().stream().filter(query::matches).count();
+    }
+
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        Map<Integer, Book> held = books;
+        return held != null ? BookFacets.of(select(held, query.copy().limit(0))) : delegate.findFacets(query);
+    }
+
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        Map<Integer, Book> held = books;
+        if (held == null) {
+            return delegate.findBooksPage(query, after, skip);
+        }
+        Comparator<Book> order = query.comparator();
+        return select(held, query.copy().limit(0)).stream()
+            .filter(book -> after == null || order.compare(book, after) > 0)
+            .skip(skip)
+            .limit(query.getLimit())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Pages through the reviews of the copy of the book, which holds all of them.
+     */
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        Map<Integer, Book> held = books;
+        Book copy = held != null ? held.get(book.getBookId()) : null;
+        if (copy == null) {
+            return delegate.findReviews(book, after, limit);
+        }
+        List<Review> reviews = copy.getReviews();
+        int from = after != null ? Math.min(after.getPosition(), reviews.size()) : 0;
+        return ReviewPage.of(new ArrayList<>(reviews.subList(from, Math.min(from + limit + 1, reviews.size()))),
+                             from, limit);
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        return books != null ? new ArrayList<>(authors) : delegate.getAllAuthors();
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        return books != null ? new ArrayList<>(genres) : delegate.getAllGenres();
+    }
+
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        if (books == null) {
+            return delegate.findAuthorsByPrefix(prefix, limit);
+        }
+        return authors.stream()
+            .filter(author -> author.getName().regionMatches(true, 0, prefix, 0, prefix.length()))
+            .sorted(Comparator.comparing(Author::getName, String.CASE_INSENSITIVE_ORDER))
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        if (books == null) {
+            return delegate.findGenresByPrefix(prefix, limit);
+        }
+        return genres.stream()
+            .filter(genre -> genre.getName().regionMatches(true, 0, prefix, 0, prefix.length()))
+            .sorted(Comparator.comparing(Genre::getName, String.CASE_INSENSITIVE_ORDER))
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public void addBook(Book book) throws InsertException {
+        delegate.addBook(book);
+        syncSoon();
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+        delegate.addAuthor(author);
+        syncSoon();
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+        delegate.addGenre(genre);
+        syncSoon();
+    }
+
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        delegate.addReview(book, user, rating, reviewText);
+        syncSoon();
+    }
+
+    @Override
+    public void removeBook(Book book) throws Exception {
+        delegate.removeBook(book);
+        syncSoon();
+    }
+
+    // the copy: a header, the points in time of the last read, the authors and genres, the books
+    private void save() throws IOException {
+        Map<Integer, Book> held = books;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(database);
+        out.writeLong(syncedUpTo != null ? syncedUpTo.toEpochMilli() : -1);
+        out.writeLong(lastSynced != null ? lastSynced.toEpochMilli() : -1);
+        BookCodec.Writer codec = new BookCodec.Writer(out);
+        codec.writeAuthors(authors);
+        codec.writeGenres(genres);
+        codec.writeAll(new ArrayList<>(held.values()));
+        out.flush();
+        MappedFiles.write(file, bytes);
+    }
+
+    private boolean read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || !database.equals(in.readUTF())) {
+            return false; // written by another version, or of another database
+        }
+        long upTo = in.readLong();
+        long synced = in.readLong();
+        BookCodec.Reader codec = new BookCodec.Reader(in, new IdentityMap());
+        List<Author> readAuthors = codec.readAuthors();
+        List<Genre> readGenres = codec.readGenres();
+        Map<Integer, Book> readBooks = new ConcurrentHashMap<>();
+        for (Book book : codec.readAll()) {
+            readBooks.put(book.getBookId(), book);
+        }
+        authors = List.copyOf(readAuthors);
+        genres = List.copyOf(readGenres);
+        syncedUpTo = upTo >= 0 ? Instant.ofEpochMilli(upTo) : null;
+        lastSynced = synced >= 0 ? Instant.ofEpochMilli(synced) : null;
+        books = readBooks;
+        return true;
+    }
+}
@@ -0,0 +1,48 @@
+package kth.library.model;
+
+/**
+ * Where the next page of a book's reviews starts, see IBooksDb.findReviews.
+ * Holds both the position of the next review and the key of the last one read,
+ * (date, user id), so that a backend can continue either by position or with a
+ * keyset condition, whichever its storage supports.
+ */
+public final class ReviewCursor {
+
+    private final int position;
+    private final long epochDay;
+    private final int userId;
+
+    /**
+     * @param position the number of reviews read so far
+     * @param last the last review read
+     */
+    ReviewCursor(int position, Review last) {
+        this.position = position;
+        this.epochDay = last.getDate().toLocalDate().toEpochDay();
+        this.userId = last.getUser().getId();
+    }
+
+    /**
+     * Recreate a cursor from its parts, e.g. one passed to another process.
+     */
+    public ReviewCursor(int position, long epochDay, int userId) {
+        this.position = position;
+        this.epochDay = epochDay;
+        this.userId = userId;
+    }
+
+    /** @return the number of reviews before the page */
+    public int getPosition() {
+        return position;
+    }
+
+    /** @return the day of the last review read, as LocalDate.toEpochDay */
+    public long getEpochDay() {
+        return epochDay;
+    }
+
+    /** @return the user of the last review read */
+    public int getUserId() {
+        return userId;
+    }
+}
@@ -0,0 +1,47 @@
+package kth.library.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of the reviews of a book, oldest first, and where the next page starts.
+ */
+public class ReviewPage {
+
+    private final List<Review> reviews;
+    private final ReviewCursor next;
+
+    /**
+     * @param reviews the reviews of the page
+     * @param next where the next page starts, null if this is the last page
+     */
+    public ReviewPage(List<Review> reviews, ReviewCursor next) {
+        this.reviews = Collections.unmodifiableList(reviews);
+        this.next = next;
+    }
+
+    /**
+     * Make a page from up to limit + 1 reviews read after the given position; the
+     * extra review, if read, only tells that there is a next page.
+     */
+    public static ReviewPage of(List<Review> read, int position, int limit) {
+        if (read.size() <= limit) {
+            return new ReviewPage(read, null);
+        }
+        List<Review> page = read.subList(0, limit);
+        return new ReviewPage(page, new ReviewCursor(position + limit, page.get(limit - 1)));
+    }
+
+    public List<Review> getReviews() {
+        return reviews;
+    }
+
+    /** @return the cursor of the next page, null if there is none */
+    public ReviewCursor getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
@@ -0,0 +1,39 @@
+package kth.library.model;
+
+/**
+ * Checks that a call stays within a budget of database round trips, for tests
+ * guarding against N+1 query patterns, e.g. that hydrating a page of books
+ * does not cost one query per book:
+ * <pre>
+ *     List&lt;Book&gt; page = RoundTripBudget.assertAtMost(5, () -&gt; booksDb.findBooksPage(query, null, 0));
+ * </pre>
+ * The backend must be connected and report costs, see CostAccounting.
+ */
+public final class RoundTripBudget {
+
+    private static final String OPERATION = "budget";
+
+    private RoundTripBudget() {
+    }
+
+    /**
+     * Run the call and check its round trips.
+     *
+     * @return the result of the call
+     * @throws AssertionError if the call made more round trips than the budget
+     */
+    public static <T, E extends Exception> T assertAtMost(int maxRoundTrips, CostAccounting.Operation<T, E> call)
+            throws E {
+        CostAccounting costs = new CostAccounting();
+        OperationCost[] measured = new OperationCost[1];
+        costs.addListener(cost -> measured[0] = cost);
+        T result = costs.measure(OPERATION, call);
+        if (measured[0] == null) {
+            throw new IllegalStateException("Already measuring an operation on this thread");
+        }
+        if (measured[0].getRoundTrips() > maxRoundTrips) {
+            throw new AssertionError("Expected at most " + maxRoundTrips + " round trips, was " + measured[0]);
+        }
+        return result;
+    }
+}
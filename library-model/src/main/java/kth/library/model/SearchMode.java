@@ -0,0 +1,7 @@
+package kth.library.model;
+
+public enum SearchMode {
+    Title, ISBN, Author, Genre, Rating,
+    /** Title, ISBN, author or genre, see IBooksDb.findBooksByAny. */
+    Any
+}
@@ -0,0 +1,591 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Wraps another IBooksDb to keep the working set of a client from one launch to
+ * the next: the authors and genres, the results of the most recent searches and
+ * the first page of reviews of the most recently viewed books are saved to a
+ * snapshot file when the client exits, and read back when it starts.
+ * <p>
+ * Until an answer read from the snapshot has been checked against the backend,
+ * calls it answers are served from it at once, without waiting for the database
+ * to be connected; revalidateInBackground reads all of them again from the
+ * backend and replaces them. Other calls, and all calls once revalidated, go to
+ * the backend, and their answers are kept for the next snapshot. Adding or
+ * removing books or reviews drops the search results kept, they may be out of
+ * date.
+ * <p>
+ * The snapshot is read and written through a memory mapping of the file, books
+ * encoded with BookCodec, and replaced as a whole so that a client stopped while
+ * saving leaves the previous one. A snapshot of another database, or of another
+ * version of the format, is ignored.
+ */
+public class SnapshotBooksDb extends ForwardingBooksDb {
+
+    /** The system property overriding the snapshot file. */
+    public static final String SNAPSHOT_PROPERTY = "library.snapshot";
+
+    private static final Logger LOGGER = Logger.getLogger(SnapshotBooksDb.class.getName());
+    private static final int MAGIC = 0x4C534E50; // "LSNP"
+    private static final int VERSION = 1;
+    // what is kept, the most recently used first
+    private static final int MAX_SEARCHES = 20;
+    private static final int MAX_RESULT_BOOKS = 500; // larger results are paged, only their counts are kept
+    private static final int MAX_VIEWED_BOOKS = 50;
+
+    private final Path file;
+    private final String database;
+
+    // all guarded by this
+    private List<Author> authors; // null if not read
+    private List<Genre> genres;
+    private boolean referenceDataStale; // authors and genres were read from the snapshot
+    private final Map<ResultKey, SearchResult> searches = recentlyUsed(MAX_SEARCHES);
+    private final Map<Integer, ViewedBook> viewedBooks = recentlyUsed(MAX_VIEWED_BOOKS);
+
+    private final AtomicBoolean servedFromSnapshot = new AtomicBoolean();
+
+    // a search, by its query, or by its text for a SearchMode.Any search
+    private record ResultKey(BookQuery query, String any) {
+    }
+
+    // what is known of the result of a search; each part may be missing
+    private static class SearchResult {
+        boolean stale; // read from the snapshot and not revalidated yet
+        Integer total;
+        List<Book> books;
+        BookFacets facets;
+    }
+
+    // the first page of reviews of a book viewed
+    private record ViewedBook(Book book, int limit, ReviewPage firstPage, boolean stale) {
+    }
+
+    /**
+     * @param file the snapshot file, see configuredFile
+     * @param database the connect string of the backend, a snapshot of another database is ignored
+     */
+    public SnapshotBooksDb(IBooksDb delegate, Path file, String database) {
+        super(delegate);
+        this.file = file;
+        this.database = database;
+    }
+
+    /**
+     * @return the file given by the library.snapshot system property, or a file named
+     *         after the backend in the .library directory of the user's home directory
+     */
+    public static Path configuredFile(BooksDbProvider backend) {
+        String configured = System.getProperty(SNAPSHOT_PROPERTY);
+        if (configured != null) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("user.home"), ".library", backend.getName() + "-snapshot.bin");
+    }
+
+    private static <K, V> Map<K, V> recentlyUsed(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Read the snapshot saved by the last launch, if there is one. A snapshot
+     * that cannot be read is reported and ignored.
+     *
+     * @return true if a snapshot was read
+     */
+    public boolean load() {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try {
+            return read(new DataInputStream(MappedFiles.read(file)));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not read the snapshot " + file, e);
+            synchronized (this) {
+                authors = null;
+                genres = null;
+                searches.clear();
+                viewedBooks.clear();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Save what is kept to the snapshot file, e.g. when the client exits.
+     */
+    public void save() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        write(out);
+        out.flush();
+        MappedFiles.write(file, bytes);
+    }
+
+    /**
+     * Read everything served from the snapshot again from the backend, on a background
+     * thread; the reads wait for the backend to be connected like any other call.
+     * An answer that cannot be read again is still served from the snapshot.
+     *
+     * @return completes when done, with true if a call has been answered from the
+     *         snapshot, so that what is shown may be out of date
+     */
+    public CompletableFuture<Boolean> revalidateInBackground() {
+        CompletableFuture<Boolean> revalidated = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                revalidate();
+            } catch (SelectException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Could not revalidate the snapshot", e);
+            }
+            revalidated.complete(servedFromSnapshot.get());
+        }, "revalidate");
+        thread.setDaemon(true);
+        thread.start();
+        return revalidated;
+    }
+
+    private void revalidate() throws SelectException {
+        if (isReferenceDataStale()) {
+            List<Author> allAuthors = delegate.getAllAuthors();
+            List<Genre> allGenres = delegate.getAllGenres();
+            synchronized (this) {
+                authors = allAuthors;
+                genres = allGenres;
+                referenceDataStale = false;
+            }
+        }
+        for (Map.Entry<ResultKey, SearchResult> entry : staleSearches()) {
+            ResultKey key = entry.getKey();
+            SearchResult saved = entry.getValue();
+            SearchResult result = new SearchResult();
+            if (key.any() != null) {
+                result.books = delegate.findBooksByAny(key.any());
+            } else {
+                if (saved.total != null) {
+                    result.total = delegate.countBooks(key.query());
+                }
+                if (saved.books != null) {
+                    result.books = delegate.findBooks(key.query());
+                }
+                if (saved.facets != null) {
+                    result.facets = delegate.findFacets(key.query());
+                }
+            }
+            synchronized (this) {
+                searches.replace(key, saved, result);
+            }
+        }
+        for (ViewedBook saved : staleViewedBooks()) {
+            ReviewPage firstPage = delegate.findReviews(saved.book(), null, saved.limit());
+            synchronized (this) {
+                viewedBooks.replace(saved.book().getBookId(), saved,
+                                    new ViewedBook(saved.book(), saved.limit(), firstPage, false));
+            }
+        }
+    }
+
+    private synchronized boolean isReferenceDataStale() {
+        return referenceDataStale;
+    }
+
+    private synchronized List<Map.Entry<ResultKey, SearchResult>> staleSearches() {
+        return searches.entrySet().stream()
+            .filter(entry -> entry.getValue().stale)
+            .map(entry -> Map.entry(entry.getKey(), entry.getValue()))
+            .collect(Collectors.toList());
+    }
+
+    private synchronized List<ViewedBook> staleViewedBooks() {
+        return viewedBooks.values().stream().filter(ViewedBook::stale).collect(Collectors.toList());
+    }
+
+    /** @return the result of the search read from the snapshot, null if there is none or it is revalidated */
+    private synchronized SearchResult staleResult(ResultKey key) {
+        SearchResult result = searches.get(key);
+        return result != null && result.stale ? result : null;
+    }
+
+    /** @return the result kept for the search, a new one if there is none */
+    private synchronized SearchResult result(ResultKey key) {
+        return searches.computeIfAbsent(key, k -> new SearchResult());
+    }
+
+    private <T> T served(T answer) {
+        servedFromSnapshot.set(true);
+        return answer;
+    }
+
+    @Override
+    public List<Book> findBooksByAny(String searchFor) throws SelectException {
+        ResultKey key = new ResultKey(null, searchFor);
+        SearchResult saved = staleResult(key);
+        if (saved != null && saved.books != null) {
+            return served(new ArrayList<>(saved.books));
+        }
+        List<Book> books = delegate.findBooksByAny(searchFor);
+        synchronized (this) {
+            result(key).books = List.copyOf(books);
+        }
+        return books;
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        ResultKey key = new ResultKey(query.copy(), null);
+        SearchResult saved = staleResult(key);
+        if (saved != null && saved.total != null) {
+            return served(saved.total);
+        }
+        int total = delegate.countBooks(query);
+        synchronized (this) {
+            result(key).total = total;
+        }
+        return total;
+    }
+
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        ResultKey key = new ResultKey(query.copy(), null);
+        SearchResult saved = staleResult(key);
+        if (saved != null && saved.books != null) {
+            batchConsumer.accept(served(new ArrayList<>(saved.books)));
+            return;
+        }
+        List<Book> books = new ArrayList<>();
+        delegate.searchBooks(query, batch -> {
+            if (books.size() <= MAX_RESULT_BOOKS) {
+                books.addAll(batch);
+            }
+            batchConsumer.accept(batch);
+        });
+        if (books.size() <= MAX_RESULT_BOOKS) {
+            synchronized (this) {
+                result(key).books = List.copyOf(books);
+            }
+        }
+    }
+
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        ResultKey key = new ResultKey(query.copy(), null);
+        SearchResult saved = staleResult(key);
+        if (saved != null && saved.facets != null) {
+            return served(saved.facets);
+        }
+        BookFacets facets = delegate.findFacets(query);
+        synchronized (this) {
+            result(key).facets = facets;
+        }
+        return facets;
+    }
+
+    /**
+     * The first page of reviews of a book is kept, later pages go to the backend.
+     */
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        if (after != null || book.getBookId() <= 0) {
+            return delegate.findReviews(book, after, limit);
+        }
+        ViewedBook saved;
+        synchronized (this) {
+            saved = viewedBooks.get(book.getBookId());
+        }
+        if (saved != null && saved.stale() && saved.limit() == limit) {
+            return served(saved.firstPage());
+        }
+        ReviewPage firstPage = delegate.findReviews(book, null, limit);
+        synchronized (this) {
+            viewedBooks.put(book.getBookId(), new ViewedBook(book, limit, firstPage, false));
+        }
+        return firstPage;
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        synchronized (this) {
+            if (referenceDataStale && authors != null) {
+                return served(authors);
+            }
+        }
+        List<Author> allAuthors = delegate.getAllAuthors();
+        synchronized (this) {
+            authors = List.copyOf(allAuthors);
+        }
+        return allAuthors;
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        synchronized (this) {
+            if (referenceDataStale && genres != null) {
+                return served(genres);
+            }
+        }
+        List<Genre> allGenres = delegate.getAllGenres();
+        synchronized (this) {
+            genres = List.copyOf(allGenres);
+        }
+        return allGenres;
+    }
+
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        synchronized (this) {
+            if (referenceDataStale && authors != null) {
+                return served(authors.stream()
+                    .filter(author -> author.getName().regionMatches(true, 0, prefix, 0, prefix.length()))
+                    .sorted(Comparator.comparing(Author::getName, String.CASE_INSENSITIVE_ORDER))
+                    .limit(limit)
+                    .collect(Collectors.toList()));
+            }
+        }
+        return delegate.findAuthorsByPrefix(prefix, limit);
+    }
+
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        synchronized (this) {
+            if (referenceDataStale && genres != null) {
+                return served(genres.stream()
+                    .filter(genre -> genre.getName().regionMatches(true, 0, prefix, 0, prefix.length()))
+                    .sorted(Comparator.comparing(Genre::getName, String.CASE_INSENSITIVE_ORDER))
+                    .limit(limit)
+                    .collect(Collectors.toList()));
+            }
+        }
+        return delegate.findGenresByPrefix(prefix, limit);
+    }
+
+    @Override
+    public void addBook(Book book) throws InsertException {
+        delegate.addBook(book);
+        synchronized (this) {
+            searches.clear();
+        }
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+        delegate.addAuthor(author);
+        synchronized (this) {
+            if (authors != null) {
+                List<Author> added = new ArrayList<>(authors);
+                added.add(author);
+                authors = List.copyOf(added);
+            }
+        }
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+        delegate.addGenre(genre);
+        synchronized (this) {
+            if (genres != null) {
+                List<Genre> added = new ArrayList<>(genres);
+                added.add(genre);
+                genres = List.copyOf(added);
+            }
+        }
+    }
+
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        delegate.addReview(book, user, rating, reviewText);
+        synchronized (this) {
+            searches.clear(); // the ratings have changed
+            viewedBooks.remove(book.getBookId());
+        }
+    }
+
+    @Override
+    public void removeBook(Book book) throws Exception {
+        delegate.removeBook(book);
+        synchronized (this) {
+            searches.clear();
+            viewedBooks.remove(book.getBookId());
+        }
+    }
+
+    // the snapshot: a header, the authors and genres, the searches and the viewed books,
+    // the most recently used last so that reading them in order keeps the order of use
+    private synchronized void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(database);
+        BookCodec.Writer codec = new BookCodec.Writer(out);
+        out.writeBoolean(authors != null && genres != null);
+        if (authors != null && genres != null) {
+            codec.writeAuthors(authors);
+            codec.writeGenres(genres);
+        }
+
+        out.writeInt(searches.size());
+        for (Map.Entry<ResultKey, SearchResult> entry : searches.entrySet()) {
+            writeKey(out, entry.getKey());
+            SearchResult result = entry.getValue();
+            out.writeInt(result.total != null ? result.total : -1);
+            out.writeBoolean(result.books != null);
+            if (result.books != null) {
+                codec.writeAll(result.books);
+            }
+            out.writeBoolean(result.facets != null);
+            if (result.facets != null) {
+                writeFacets(out, result.facets);
+            }
+        }
+
+        out.writeInt(viewedBooks.size());
+        for (ViewedBook viewed : viewedBooks.values()) {
+            codec.write(viewed.book());
+            out.writeInt(viewed.limit());
+            codec.writeReviews(viewed.firstPage().getReviews());
+            ReviewCursor next = viewed.firstPage().getNext();
+            out.writeBoolean(next != null);
+            if (next != null) {
+                out.writeInt(next.getPosition());
+                out.writeLong(next.getEpochDay());
+                out.writeInt(next.getUserId());
+            }
+        }
+    }
+
+    private synchronized boolean read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || !database.equals(in.readUTF())) {
+            return false; // written by another version, or of another database
+        }
+        BookCodec.Reader codec = new BookCodec.Reader(in, new IdentityMap());
+        if (in.readBoolean()) {
+            authors = List.copyOf(codec.readAuthors());
+            genres = List.copyOf(codec.readGenres());
+            referenceDataStale = true;
+        }
+
+        int searchCount = in.readInt();
+        for (int i = 0; i < searchCount; i++) {
+            ResultKey key = readKey(in);
+            SearchResult result = new SearchResult();
+            result.stale = true;
+            int total = in.readInt();
+            result.total = total >= 0 ? total : null;
+            if (in.readBoolean()) {
+                result.books = List.copyOf(codec.readAll());
+            }
+            if (in.readBoolean()) {
+                result.facets = readFacets(in);
+            }
+            searches.put(key, result);
+        }
+
+        int viewedCount = in.readInt();
+        for (int i = 0; i < viewedCount; i++) {
+            Book book = codec.read();
+            int limit = in.readInt();
+            List<Review> reviews = codec.readReviews(book);
+            ReviewCursor next = in.readBoolean() ? new ReviewCursor(in.readInt(), in.readLong(), in.readInt()) : null;
+            viewedBooks.put(book.getBookId(), new ViewedBook(book, limit, new ReviewPage(reviews, next), true));
+        }
+        return true;
+    }
+
+    private static void writeKey(DataOutputStream out, ResultKey key) throws IOException {
+        out.writeBoolean(key.any() != null);
+        if (key.any() != null) {
+            out.writeUTF(key.any());
+            return;
+        }
+        BookQuery query = key.query();
+        writeNullable(out, query.getTitleContains());
+        writeNullable(out, query.getIsbn());
+        writeNullable(out, query.getAuthor());
+        writeNullable(out, query.getGenre());
+        out.writeInt(query.getMinRating() != null ? query.getMinRating() : -1);
+        writeNullable(out, query.getPublisher());
+        writeNullable(out, query.getSortBy() != null ? query.getSortBy().name() : null);
+        out.writeBoolean(query.isDescending());
+        out.writeInt(query.getLimit());
+    }
+
+    private static ResultKey readKey(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            return new ResultKey(null, in.readUTF());
+        }
+        BookQuery query = new BookQuery()
+            .titleContains(readNullable(in))
+            .isbn(readNullable(in))
+            .author(readNullable(in))
+            .genre(readNullable(in));
+        int minRating = in.readInt();
+        query.minRating(minRating >= 0 ? minRating : null)
+            .publisher(readNullable(in));
+        String sortBy = readNullable(in);
+        boolean descending = in.readBoolean();
+        if (sortBy != null) {
+            query.sortBy(BookSortField.valueOf(sortBy), descending);
+        }
+        return new ResultKey(query.limit(in.readInt()), null);
+    }
+
+    private static void writeFacets(DataOutputStream out, BookFacets facets) throws IOException {
+        out.writeInt(facets.getTotal());
+        for (Map<String, Integer> group : List.of(facets.getGenres(), facets.getAuthors(),
+                                                  facets.getPublishers(), facets.getRatings())) {
+            out.writeInt(group.size());
+            for (Map.Entry<String, Integer> entry : group.entrySet()) {
+                writeNullable(out, entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    private static BookFacets readFacets(DataInputStream in) throws IOException {
+        int total = in.readInt();
+        List<Map<String, Integer>> groups = new ArrayList<>(4);
+        for (int group = 0; group < 4; group++) {
+            int count = in.readInt();
+            Map<String, Integer> values = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                values.put(readNullable(in), in.readInt());
+            }
+            groups.add(values);
+        }
+        return new BookFacets(total, groups.get(0), groups.get(1), groups.get(2), groups.get(3));
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,69 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The steps a backend takes after connecting to be ready for the first
+ * searches, e.g. filling the connection pool, verifying indexes and loading
+ * reference data. The steps are independent of each other and run
+ * concurrently on virtual threads, so warming up takes as long as the
+ * slowest step rather than all of them together.
+ */
+public class WarmUp {
+
+    /**
+     * One step of the warm-up, throwing whatever the driver throws.
+     */
+    @FunctionalInterface
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+
+    /**
+     * Add a step.
+     *
+     * @param name what the step does, used in the message when it fails
+     */
+    public WarmUp step(String name, Step step) {
+        steps.put(name, step);
+        return this;
+    }
+
+    /**
+     * Run all steps concurrently and wait for them to finish.
+     *
+     * @throws ConnectionException naming the first step that failed, after all have finished
+     */
+    public void run() throws ConnectionException {
+        Map<String, Future<Void>> running = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            steps.forEach((name, step) -> running.put(name, executor.submit(CostAccounting.propagate(() -> {
+                step.run();
+                return null;
+            }))));
+        }
+        for (Map.Entry<String, Future<Void>> entry : running.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new ConnectionException("Warm-up failed at " + entry.getKey() + ": "
+                    + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConnectionException("Warm-up interrupted", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package kth.library.model.exceptions;
+
+/**
+ * Thrown when a query is stopped because it did not finish within its deadline,
+ * see QueryDeadlines. The database has been told to cancel the query, so that
+ * it stops using resources; repeating it with the same deadline is likely to
+ * fail again, a narrower search is more likely to succeed.
+ */
+public class QueryTimeoutException extends SelectException {
+
+    public QueryTimeoutException(String msg, Exception cause) {
+        super(msg, cause);
+    }
+
+    public QueryTimeoutException(String msg) {
+        super(msg);
+    }
+}
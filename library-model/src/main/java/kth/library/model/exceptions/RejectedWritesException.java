@@ -0,0 +1,26 @@
+package kth.library.model.exceptions;
+
+import java.util.List;
+
+/**
+ * Thrown when the database refuses some writes of a batch for good, e.g. because
+ * they break a constraint or hold values the database does not accept, so that
+ * writing them again cannot succeed. The other writes of the batch may or may not
+ * have been written, and are written again.
+ */
+public class RejectedWritesException extends InsertException {
+
+    private final List<String> rejectedKeys;
+
+    /**
+     * @param rejectedKeys the keys of the writes refused, see QueuedWrite.getKey
+     */
+    public RejectedWritesException(String msg, List<String> rejectedKeys, Exception cause) {
+        super(msg, cause);
+        this.rejectedKeys = List.copyOf(rejectedKeys);
+    }
+
+    public List<String> getRejectedKeys() {
+        return rejectedKeys;
+    }
+}
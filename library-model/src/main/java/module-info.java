@@ -0,0 +1,12 @@
+module kth.library.model {
+    requires transitive java.sql;  // java.sql.Date in Author, Book and Review
+    requires java.logging;  // the wrappers log what they cannot read or write back
+    requires java.management;
+    requires jdk.management;
+    requires transitive jdk.jfr;  // the exported events extend jdk.jfr.Event
+
+    exports kth.library.model;
+    exports kth.library.model.exceptions;
+
+    uses kth.library.model.BooksDbProvider;
+}
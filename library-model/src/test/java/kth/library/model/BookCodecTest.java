@@ -0,0 +1,304 @@
+package kth.library.model;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookCodecTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 1);
+
+    private final User admin = new User(1, "admin");
+    private final User reader = new User(2, "reader");
+    private final Author date = author(1, "C. J. Date", LocalDate.of(1941, 1, 18));
+    private final Author ricardo = author(2, "Catherine Ricardo", null);
+    private final Genre drama = new Genre(1, "Drama");
+
+    @Test
+    void bookComesBackWithItsAuthorsGenresAndReviews() throws IOException {
+        Book book = new Book(7, "123456789", "Databases Illuminated", "Jones & Bartlett");
+        book.setAddedBy(admin);
+        book.addAuthor(date);
+        book.addAuthor(ricardo);
+        book.addGenre(drama);
+        book.addGenre(new Genre(2, "Science"));
+        book.addReview(new Review(book, reader, 4, "Good", Date.valueOf(DAY)));
+        book.addReview(new Review(book, admin, 2, null, Date.valueOf(DAY.minusDays(400))));
+        book.addReview(new Review(book, reader, 5, "Still good", Date.valueOf(DAY.plusDays(3))));
+        book.setRatingSummary(10, 37); // more ratings than reviews held
+
+        Book read = roundTrip(List.of(book)).getFirst();
+
+        assertEquals(7, read.getBookId());
+        assertEquals("123456789", read.getIsbn());
+        assertEquals("Databases Illuminated", read.getTitle());
+        assertEquals("Jones & Bartlett", read.getPublisher());
+        assertEquals("admin", read.getAddedBy().getUsername());
+        assertEquals(2, read.getAuthors().size());
+        assertEquals("C. J. Date", read.getAuthors().get(0).getName());
+        assertEquals(Date.valueOf(LocalDate.of(1941, 1, 18)), read.getAuthors().get(0).getBirthdate());
+        assertEquals("admin", read.getAuthors().get(0).getAddedBy().getUsername());
+        assertNull(read.getAuthors().get(1).getBirthdate());
+        assertEquals(List.of("Drama", "Science"), read.getGenres().stream().map(Genre::getName).toList());
+        assertEquals(10, read.getReviewCount());
+        assertEquals(37, read.getRatingSum());
+        List<Review> reviews = read.getReviews();
+        assertEquals(3, reviews.size());
+        assertEquals("reader", reviews.get(0).getUser().getUsername());
+        assertEquals(4, reviews.get(0).getRating());
+        assertEquals("Good", reviews.get(0).getReviewText());
+        assertEquals(Date.valueOf(DAY), reviews.get(0).getDate());
+        assertNull(reviews.get(1).getReviewText());
+        assertEquals(Date.valueOf(DAY.minusDays(400)), reviews.get(1).getDate());
+        assertEquals(Date.valueOf(DAY.plusDays(3)), reviews.get(2).getDate());
+        assertSame(read.getAddedBy(), reviews.get(1).getUser());
+    }
+
+    @Test
+    void bookNotStoredYetComesBackWithoutPublisherOrAddedBy() throws IOException {
+        Book book = new Book("987654321", "Unpublished", null);
+        book.addAuthor(new Author("New Author", null));
+        book.addGenre(new Genre("New Genre"));
+
+        Book read = roundTrip(List.of(book)).getFirst();
+
+        assertEquals(-1, read.getBookId());
+        assertNull(read.getPublisher());
+        assertNull(read.getAddedBy());
+        assertEquals("New Author", read.getAuthors().getFirst().getName());
+        assertEquals(book.getAuthors().getFirst().getAuthorId(), read.getAuthors().getFirst().getAuthorId());
+        assertEquals("New Genre", read.getGenres().getFirst().getName());
+        assertEquals(0, read.getReviewCount());
+        assertTrue(read.getReviews().isEmpty());
+    }
+
+    @Test
+    void authorsAndUsersRepeatedAcrossBooksAreReadAsOneObject() throws IOException {
+        List<Book> books = new ArrayList<>();
+        for (int id = 1; id <= 3; id++) {
+            Book book = new Book(id, "isbn" + id, "Title " + id, "Jones & Bartlett");
+            book.setAddedBy(admin);
+            book.addAuthor(date);
+            book.addGenre(drama);
+            book.addReview(new Review(book, reader, 3, null, Date.valueOf(DAY)));
+            books.add(book);
+        }
+
+        List<Book> read = roundTrip(books);
+
+        for (Book book : read) {
+            assertSame(read.getFirst().getAuthors().getFirst(), book.getAuthors().getFirst());
+            assertSame(read.getFirst().getGenres().getFirst(), book.getGenres().getFirst());
+            assertSame(read.getFirst().getAddedBy(), book.getAddedBy());
+            assertSame(read.getFirst().getReviews().getFirst().getUser(), book.getReviews().getFirst().getUser());
+            assertSame(read.getFirst().getPublisher(), book.getPublisher());
+        }
+        assertSame(read.getFirst().getAddedBy(), read.getFirst().getAuthors().getFirst().getAddedBy());
+    }
+
+    @Test
+    void secondBatchOfOneWriterRefersToWhatTheFirstWrote() throws IOException {
+        List<Book> first = List.of(book(1, date, ricardo), book(2, ricardo));
+        List<Book> second = List.of(book(3, date, ricardo), book(4, ricardo));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BookCodec.Writer writer = new BookCodec.Writer(out);
+        writer.writeAll(first);
+        int firstSize = out.size();
+        writer.writeAll(second);
+        int secondSize = out.size() - firstSize;
+
+        BookCodec.Reader reader = new BookCodec.Reader(new ByteArrayInputStream(out.toByteArray()), new IdentityMap());
+        List<Book> readFirst = reader.readAll();
+        List<Book> readSecond = reader.readAll();
+
+        // names, authors, genres and users of the first batch are only referred to by the second
+        assertTrue(secondSize < firstSize * 3 / 4, secondSize + " bytes after " + firstSize);
+        assertEquals(List.of("Title 3", "Title 4"), readSecond.stream().map(Book::getTitle).toList());
+        assertSame(readFirst.getFirst().getAuthors().get(0), readSecond.getFirst().getAuthors().get(0));
+        assertSame(readFirst.get(1).getAuthors().get(0), readSecond.get(1).getAuthors().get(0));
+        assertEquals("Catherine Ricardo", readSecond.get(1).getAuthors().get(0).getName());
+        assertSame(readFirst.getFirst().getPublisher(), readSecond.getFirst().getPublisher());
+        assertSame(readFirst.getFirst().getReviews().getFirst().getUser(),
+                   readSecond.getFirst().getReviews().getFirst().getUser());
+    }
+
+    @Test
+    void streamOfAnotherFormatOrVersionIsRefused() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BookCodec.Writer(out).write(book(1, date));
+        byte[] bytes = out.toByteArray();
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[3] = (byte) (BookCodec.VERSION + 1); // after the three varint bytes of the magic number
+        IOException versionFailure = assertThrows(IOException.class,
+            () -> new BookCodec.Reader(new ByteArrayInputStream(otherVersion), new IdentityMap()));
+        assertTrue(versionFailure.getMessage().contains("version"), versionFailure.getMessage());
+
+        byte[] otherFormat = bytes.clone();
+        otherFormat[0] = 'x';
+        assertThrows(IOException.class,
+            () -> new BookCodec.Reader(new ByteArrayInputStream(otherFormat), new IdentityMap()));
+    }
+
+    @Test
+    void encodingIsSmallerThanBsonAndFasterThanJavaSerialization() throws Exception {
+        // 1000 books of 3 authors out of 200, 2 genres out of 10 and 5 reviews by users out of 300
+        List<User> users = new ArrayList<>();
+        for (int id = 1; id <= 300; id++) {
+            users.add(new User(id, "user" + id));
+        }
+        List<Author> authors = new ArrayList<>();
+        for (int id = 1; id <= 200; id++) {
+            Author author = author(id, "Author number " + id, LocalDate.of(1900, 1, 1).plusDays(id * 97L));
+            author.setAddedBy(users.get(id % 3));
+            authors.add(author);
+        }
+        List<Genre> genres = new ArrayList<>();
+        for (int id = 1; id <= 10; id++) {
+            genres.add(new Genre(id, "Genre " + id));
+        }
+        List<Book> books = new ArrayList<>();
+        for (int id = 1; id <= 1000; id++) {
+            Book book = new Book(id, String.valueOf(1_000_000_000L + id), "The title of book " + id, "Publisher " + id % 20);
+            book.setAddedBy(users.get(id % 5));
+            for (int i = 0; i < 3; i++) {
+                book.addAuthor(authors.get((id * 7 + i * 31) % authors.size()));
+            }
+            for (int i = 0; i < 2; i++) {
+                book.addGenre(genres.get((id + i * 3) % genres.size()));
+            }
+            for (int i = 0; i < 5; i++) {
+                book.addReview(new Review(book, users.get((id * 13 + i * 17) % users.size()), 1 + (id + i) % 5,
+                                          "Review " + i + " of book " + id, Date.valueOf(DAY.minusDays(id + i * 30L))));
+            }
+            books.add(book);
+        }
+        List<Document> documents = books.stream().map(BookCodecTest::document).toList();
+
+        byte[] codec = encode(books);
+        List<RawBsonDocument> bson = documents.stream().map(document -> new RawBsonDocument(document, new DocumentCodec())).toList();
+        int bsonSize = bson.stream().mapToInt(document -> document.getByteBuffer().remaining()).sum();
+        byte[] serialized = serialize(documents);
+
+        // warm up, then the best of a few rounds
+        long codecNanos = Long.MAX_VALUE;
+        long bsonNanos = Long.MAX_VALUE;
+        long serializationNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 15; round++) {
+            long start = System.nanoTime();
+            BookCodec.Reader reader = new BookCodec.Reader(new ByteArrayInputStream(encode(books)), new IdentityMap());
+            assertEquals(1000, reader.readAll().size());
+            codecNanos = Math.min(codecNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int decoded = 0;
+            for (Document document : documents) {
+                decoded += new RawBsonDocument(document, new DocumentCodec()).decode(new DocumentCodec()).size();
+            }
+            assertTrue(decoded > 0);
+            bsonNanos = Math.min(bsonNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(documents)))) {
+                assertEquals(1000, ((List<?>) in.readObject()).size());
+            }
+            serializationNanos = Math.min(serializationNanos, System.nanoTime() - start);
+        }
+        System.out.printf("1000 books written and read: BookCodec %d bytes in %d us, BSON %d bytes in %d us,"
+                          + " ObjectOutputStream %d bytes in %d us%n",
+                          codec.length, codecNanos / 1000, bsonSize, bsonNanos / 1000,
+                          serialized.length, serializationNanos / 1000);
+
+        assertTrue(codec.length * 3 < bsonSize, codec.length + " bytes against " + bsonSize + " of BSON");
+        assertTrue(codec.length * 3 < serialized.length, codec.length + " bytes against " + serialized.length + " serialized");
+        assertTrue(codecNanos < serializationNanos, codecNanos + " ns against " + serializationNanos + " serializing");
+    }
+
+    private static Author author(int id, String name, LocalDate birthdate) {
+        Author author = new Author(id, name, birthdate != null ? Date.valueOf(birthdate) : null);
+        author.setAddedBy(new User(1, "admin"));
+        return author;
+    }
+
+    private Book book(int id, Author... authors) {
+        Book book = new Book(id, "isbn" + id, "Title " + id, "Jones & Bartlett");
+        book.setAddedBy(admin);
+        for (Author author : authors) {
+            book.addAuthor(author);
+        }
+        book.addGenre(drama);
+        book.addReview(new Review(book, reader, 4, "Good", Date.valueOf(DAY)));
+        return book;
+    }
+
+    private static byte[] encode(List<Book> books) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BookCodec.Writer(out).writeAll(books);
+        return out.toByteArray();
+    }
+
+    private static List<Book> roundTrip(List<Book> books) throws IOException {
+        BookCodec.Reader reader = new BookCodec.Reader(new ByteArrayInputStream(encode(books)), new IdentityMap());
+        return reader.readAll();
+    }
+
+    private static byte[] serialize(List<Document> documents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(documents));
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The book as the Mongo backend stores it, with authors, genres and reviews embedded.
+     */
+    private static Document document(Book book) {
+        List<Document> authors = book.getAuthors().stream().map(author -> new Document("_id", author.getAuthorId())
+            .append("name", author.getName())
+            .append("birthdate", author.getBirthdate() != null ? utc(author.getBirthdate().toLocalDate()) : null)
+            .append("addedBy", user(author.getAddedBy()))).toList();
+        List<Document> genres = book.getGenres().stream()
+            .map(genre -> new Document("_id", genre.getGenreId()).append("name", genre.getName())).toList();
+        List<Document> reviews = book.getReviews().stream().map(review -> new Document("user", user(review.getUser()))
+            .append("rating", review.getRating())
+            .append("text", review.getReviewText())
+            .append("date", utc(review.getDate().toLocalDate()))).toList();
+        return new Document("_id", book.getBookId())
+            .append("isbn", book.getIsbn())
+            .append("title", book.getTitle())
+            .append("publisher", book.getPublisher())
+            .append("addedBy", user(book.getAddedBy()))
+            .append("authors", authors)
+            .append("genres", genres)
+            .append("reviews", reviews)
+            .append("reviewCount", book.getReviewCount())
+            .append("ratingSum", book.getRatingSum());
+    }
+
+    private static Document user(User user) {
+        return user != null ? new Document("_id", user.getId()).append("username", user.getUsername()) : null;
+    }
+
+    private static java.util.Date utc(LocalDate day) {
+        return java.util.Date.from(day.atStartOfDay().toInstant(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,45 @@
+package kth.library.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Paging by publisher across books without one, which sort first ascending and
+ * last descending, as in MySQL and MongoDB.
+ */
+class BookSortFieldTest {
+
+    private final StubBooksDb booksDb = new StubBooksDb();
+
+    private void add(int id, String publisher) {
+        booksDb.books.add(new Book(id, "isbn" + id, "Title " + id, publisher));
+    }
+
+    private List<Integer> allPages(boolean descending) throws Exception {
+        BookQuery query = new BookQuery().sortBy(BookSortField.Publisher, descending).limit(2);
+        List<Integer> ids = new ArrayList<>();
+        Book after = null;
+        List<Book> page;
+        while (!(page = booksDb.findBooksPage(query, after, 0)).isEmpty()) {
+            page.forEach(book -> ids.add(book.getBookId()));
+            after = page.getLast();
+        }
+        return ids;
+    }
+
+    @Test
+    void pagesCrossTheBooksWithoutPublisher() throws Exception {
+        add(1, "Pearson");
+        add(2, null);
+        add(3, "Addison-Wesley");
+        add(4, null);
+        add(5, null);
+
+        assertEquals(List.of(2, 4, 5, 3, 1), allPages(false));
+        assertEquals(List.of(1, 3, 5, 4, 2), allPages(true));
+    }
+}
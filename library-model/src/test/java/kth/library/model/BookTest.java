@@ -0,0 +1,46 @@
+package kth.library.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BookTest {
+
+    private static final long DAY = LocalDate.of(2024, 5, 1).toEpochDay();
+
+    @Test
+    void reviewWithTextAfterReviewsWithoutKeepsTheirsEmpty() {
+        Book book = new Book(1, "123456789", "Databases Illuminated", "Jones");
+        book.addReview(1, 4, null, DAY);
+        book.addReview(2, 5, "Great", DAY);
+
+        assertNull(book.getReviews().get(0).getReviewText());
+        assertEquals("Great", book.getReviews().get(1).getReviewText());
+        assertEquals(4.5, book.getRating());
+        assertEquals(2, book.getReviewCount());
+    }
+
+    /**
+     * A review without text takes 9 bytes in the columns (user id, rating and
+     * epoch day), against some 60 bytes for a Review object with its Date; the
+     * text column is only allocated once a review has a text.
+     */
+    @Test
+    void reviewsWithoutTextTakeNineBytesEachInTheColumns() {
+        int reviews = 1000;
+        Book book = new Book(1, "123456789", "Databases Illuminated", "Jones");
+        for (int r = 0; r < reviews; r++) {
+            book.addReview(1 + r % 100, 1 + r % 5, null, DAY + r % 365);
+        }
+        long withoutTexts = book.reviewColumnBytes();
+        assertTrue(withoutTexts >= 9L * reviews, withoutTexts + " bytes");
+        assertTrue(withoutTexts <= 9L * reviews * 3 / 2, withoutTexts + " bytes"); // grown by half at a time
+
+        book.addReview(1, 5, "Great", DAY);
+        assertEquals(withoutTexts + 4 * (withoutTexts / 9), book.reviewColumnBytes()); // a reference per slot
+    }
+}
@@ -0,0 +1,123 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.QueryTimeoutException;
+import kth.library.model.exceptions.SelectException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescingBooksDbTest {
+
+    private static final int CALLERS = 5;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private SelectException failure;
+
+    // holds the first call until released, so that the others join it
+    private final StubBooksDb backend = new StubBooksDb() {
+        @Override
+        public List<Book> findBooksByGenre(String genre) throws SelectException {
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new SelectException("Interrupted", e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return super.findBooksByGenre(genre);
+        }
+    };
+    private final CoalescingBooksDb booksDb = new CoalescingBooksDb(backend);
+
+    @Test
+    void identicalCallsInFlightShareOneQuery() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Hamlet"));
+
+        List<Future<List<Book>>> calls = callConcurrently();
+        List<List<Book>> results = new ArrayList<>();
+        for (Future<List<Book>> call : calls) {
+            results.add(call.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, backend.reads.get());
+        assertEquals(1, booksDb.getExecutedCalls());
+        assertEquals(CALLERS - 1, booksDb.getCollapsedCalls());
+        for (List<Book> result : results) {
+            assertEquals("Hamlet", result.getFirst().getTitle());
+        }
+        assertNotSame(results.get(0), results.get(1)); // each caller gets its own list
+    }
+
+    @Test
+    void waitersGetAnExceptionOfTheSameType() throws Exception {
+        failure = new QueryTimeoutException("Error finding books: Drama (timed out)");
+
+        for (Future<List<Book>> call : callConcurrently()) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(QueryTimeoutException.class, thrown.getCause());
+            assertEquals(failure.getMessage(), thrown.getCause().getMessage());
+        }
+        assertEquals(1, booksDb.getExecutedCalls());
+    }
+
+    @Test
+    void waitersGetASelectExceptionForASelectException() throws Exception {
+        failure = new SelectException("Error finding books: Drama");
+
+        for (Future<List<Book>> call : callConcurrently()) {
+            ExecutionException thrown = assertThrows(ExecutionException.class, () -> call.get(5, TimeUnit.SECONDS));
+            assertEquals(SelectException.class, thrown.getCause().getClass());
+        }
+    }
+
+    @Test
+    void anySearchGoesToTheBackendAsOneCall() throws Exception {
+        List<String> anySearches = new ArrayList<>();
+        StubBooksDb parallel = new StubBooksDb() {
+            @Override
+            public List<Book> findBooksByAny(String searchFor) throws SelectException {
+                anySearches.add(searchFor); // a backend running its lookups its own way
+                return super.findBooksByAny(searchFor);
+            }
+        };
+        parallel.books.add(StubBooksDb.book(1, "Hamlet"));
+
+        List<Book> found = new CoalescingBooksDb(parallel).findBooksByAny("Hamlet");
+
+        assertEquals(List.of("Hamlet"), anySearches);
+        assertEquals("Hamlet", found.getFirst().getTitle());
+    }
+
+    /**
+     * Starts CALLERS identical calls and releases the query once all but the
+     * first are waiting for it.
+     */
+    private List<Future<List<Book>>> callConcurrently() throws InterruptedException {
+        List<Future<List<Book>>> calls = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CALLERS; i++) {
+                calls.add(executor.submit(() -> booksDb.findBooksByGenre("Drama")));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (booksDb.getCollapsedCalls() < CALLERS - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+        }
+        return calls;
+    }
+}
@@ -0,0 +1,96 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.SelectException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectingBooksDbTest {
+
+    private final AtomicInteger connects = new AtomicInteger();
+    private final AtomicInteger disconnects = new AtomicInteger();
+    private final CountDownLatch secondAttempt = new CountDownLatch(1);
+
+    // the first attempt fails, the second waits until released and succeeds
+    private final StubBooksDb backend = new StubBooksDb() {
+        @Override
+        public boolean connect(String database) throws ConnectionException {
+            if (connects.incrementAndGet() == 1) {
+                throw new ConnectionException("Server not reachable");
+            }
+            try {
+                secondAttempt.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new ConnectionException("Interrupted", e);
+            }
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnects.incrementAndGet();
+        }
+    };
+    private final ConnectingBooksDb booksDb = new ConnectingBooksDb(backend);
+
+    @Test
+    void failedConnectCanBeTriedAgain() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Hamlet"));
+
+        CompletableFuture<Void> first = booksDb.connectInBackground("library");
+        ExecutionException failed = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ConnectionException.class, failed.getCause());
+        assertThrows(SelectException.class, () -> booksDb.findBooksByTitle("Hamlet"));
+        assertEquals(1, disconnects.get()); // what the attempt opened is closed
+
+        CompletableFuture<Void> second = booksDb.connectInBackground("library");
+        assertNotSame(first, second);
+        assertSame(second, booksDb.whenReady());
+        assertSame(second, booksDb.connectInBackground("library")); // already connecting
+        secondAttempt.countDown();
+
+        assertEquals("Hamlet", booksDb.findBooksByTitle("Hamlet").getFirst().getTitle()); // waits for the attempt
+        assertTrue(second.isDone());
+        assertSame(second, booksDb.connectInBackground("library")); // connected, not connected again
+        assertEquals(2, connects.get());
+    }
+
+    @Test
+    void attemptCanBeRetriedFromItsFailureCallback() throws Exception {
+        CompletableFuture<CompletableFuture<Void>> retried = new CompletableFuture<>();
+        booksDb.connectInBackground("library")
+            .whenComplete((ignored, failure) -> retried.complete(booksDb.connectInBackground("library")));
+        secondAttempt.countDown();
+
+        retried.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        assertEquals(2, connects.get());
+    }
+
+    @Test
+    void failedWarmUpDoesNotFailTheConnection() throws Exception {
+        StubBooksDb cold = new StubBooksDb() {
+            @Override
+            public void warmUp() throws ConnectionException {
+                throw new ConnectionException("not authorized to list indexes");
+            }
+        };
+        cold.books.add(StubBooksDb.book(1, "Hamlet"));
+        ConnectingBooksDb connecting = new ConnectingBooksDb(cold);
+
+        connecting.connectInBackground("library").get(5, TimeUnit.SECONDS);
+
+        assertEquals("Hamlet", connecting.findBooksByTitle("Hamlet").getFirst().getTitle());
+    }
+}
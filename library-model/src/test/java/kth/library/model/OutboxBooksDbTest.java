@@ -0,0 +1,260 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.RejectedWritesException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxBooksDbTest {
+
+    @TempDir
+    Path directory;
+
+    private final StubBooksDb backend = new StubBooksDb();
+    private final Writer writer = new Writer();
+    private final Semaphore drained = new Semaphore(0);
+    private final List<OutboxBooksDb> opened = new ArrayList<>();
+
+    @AfterEach
+    void disconnect() throws Exception {
+        for (OutboxBooksDb outbox : opened) {
+            outbox.disconnect();
+        }
+    }
+
+    /**
+     * Writes batches to the backend, skipping the keys written before like a real
+     * database does, or fails with the failures queued by the test, one per batch,
+     * null for a batch written.
+     */
+    private class Writer implements BatchWriter {
+
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+        final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        final List<InsertException> failures = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void writeBatch(List<QueuedWrite> writes) throws InsertException {
+            batches.add(writes.stream().map(QueuedWrite::getKey).toList());
+            if (!failures.isEmpty()) {
+                InsertException failure = failures.removeFirst();
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+            for (QueuedWrite write : writes) {
+                if (!written.contains(write.getKey())) {
+                    written.add(write.getKey());
+                    backend.addBook(write.getBook());
+                }
+            }
+        }
+    }
+
+    private OutboxBooksDb open() throws Exception {
+        OutboxBooksDb outbox = new OutboxBooksDb(backend, writer, directory.resolve("outbox.log"));
+        outbox.open();
+        outbox.addWriteListener(drained::release);
+        opened.add(outbox);
+        return outbox;
+    }
+
+    private void awaitDrain() throws InterruptedException {
+        assertTrue(drained.tryAcquire(5, TimeUnit.SECONDS), "no batch written");
+    }
+
+    /** Stop the outbox as the client does when it exits. */
+    private void close(OutboxBooksDb outbox) throws Exception {
+        opened.remove(outbox);
+        outbox.disconnect();
+    }
+
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).sorted().toList();
+    }
+
+    @Test
+    void writesLeftInTheLogAreWrittenAtTheNextLaunch() throws Exception {
+        OutboxBooksDb outbox = open();
+        outbox.addBook(StubBooksDb.book(-1, "First"));
+        outbox.addBook(StubBooksDb.book(-1, "Second"));
+        close(outbox);
+
+        OutboxBooksDb relaunched = open();
+        assertEquals(2, relaunched.getQueuedCount());
+        relaunched.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain();
+
+        assertEquals(0, relaunched.getQueuedCount());
+        assertEquals(List.of("First", "Second"), titles(backend.books));
+    }
+
+    @Test
+    void recordAppendedInPartIsDroppedAtTheNextLaunch() throws Exception {
+        OutboxBooksDb outbox = open();
+        outbox.addBook(StubBooksDb.book(-1, "First"));
+        outbox.addBook(StubBooksDb.book(-1, "Second"));
+        close(outbox);
+        Path file = directory.resolve("outbox.log");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 5)); // stopped while appending the second
+
+        OutboxBooksDb relaunched = open();
+        assertEquals(1, relaunched.getQueuedCount());
+        relaunched.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain();
+
+        assertEquals(List.of("First"), titles(backend.books));
+    }
+
+    @Test
+    void recordWithABadChecksumEndsTheLog() throws Exception {
+        OutboxBooksDb outbox = open();
+        outbox.addBook(StubBooksDb.book(-1, "First"));
+        long firstEnd = Files.size(directory.resolve("outbox.log"));
+        outbox.addBook(StubBooksDb.book(-1, "Second"));
+        outbox.addBook(StubBooksDb.book(-1, "Third"));
+        close(outbox);
+        Path file = directory.resolve("outbox.log");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[(int) firstEnd + 8 + 3] ^= 0x55; // in the payload of the second, after its length and checksum
+        Files.write(file, bytes);
+
+        OutboxBooksDb relaunched = open();
+        assertEquals(1, relaunched.getQueuedCount());
+    }
+
+    @Test
+    void batchesRecordedAsWrittenAreNotWrittenAgain() throws Exception {
+        OutboxBooksDb outbox = open();
+        for (int i = 1; i <= 201; i++) { // a full batch and one more
+            outbox.addBook(StubBooksDb.book(-1, "Book " + i));
+        }
+        // the first batch is written, the second fails
+        writer.failures.add(null);
+        writer.failures.add(new InsertException("Offline"));
+        outbox.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain();
+        awaitDrain();
+        close(outbox);
+
+        assertEquals(200, backend.books.size());
+        OutboxBooksDb relaunched = open();
+        assertEquals(1, relaunched.getQueuedCount());
+    }
+
+    @Test
+    void batchWhoseOutcomeIsUnknownIsSentAgainWithTheSameKeys() throws Exception {
+        OutboxBooksDb outbox = open();
+        outbox.addBook(StubBooksDb.book(-1, "First"));
+        outbox.addBook(StubBooksDb.book(-1, "Second"));
+        close(outbox);
+        // written, but the client stops before hearing so
+        BatchWriter lostAnswer = writes -> {
+            writer.writeBatch(writes);
+            throw new InsertException("Connection lost");
+        };
+        OutboxBooksDb stopping = new OutboxBooksDb(backend, lostAnswer, directory.resolve("outbox.log"));
+        stopping.open();
+        stopping.addWriteListener(drained::release);
+        stopping.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain();
+        close(stopping);
+
+        OutboxBooksDb relaunched = open();
+        relaunched.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain();
+
+        assertEquals(2, writer.batches.size());
+        assertEquals(writer.batches.get(0), writer.batches.get(1));
+        assertEquals(List.of("First", "Second"), titles(backend.books)); // once each
+        assertEquals(0, relaunched.getQueuedCount());
+    }
+
+    @Test
+    void refusedWriteIsRejectedAndTheRestWritten() throws Exception {
+        OutboxBooksDb outbox = open();
+        outbox.addBook(StubBooksDb.book(-1, "First"));
+        outbox.addBook(StubBooksDb.book(-1, "Refused"));
+        outbox.addBook(StubBooksDb.book(-1, "Third"));
+        close(outbox);
+        BatchWriter refusing = writes -> {
+            writer.batches.add(writes.stream().map(QueuedWrite::getKey).toList());
+            if (writer.batches.size() == 1) {
+                throw new RejectedWritesException("Duplicate ISBN", List.of(writes.get(1).getKey()), null);
+            }
+            for (QueuedWrite write : writes) {
+                backend.addBook(write.getBook());
+            }
+        };
+        OutboxBooksDb draining = new OutboxBooksDb(backend, refusing, directory.resolve("outbox.log"));
+        draining.open();
+        draining.addWriteListener(drained::release);
+        opened.add(draining);
+        draining.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain(); // rejected
+        awaitDrain(); // the rest written at once, without waiting to retry
+
+        assertEquals(0, draining.getQueuedCount());
+        assertEquals(List.of("Refused"), draining.getRejected().stream().map(write -> write.getBook().getTitle()).toList());
+        assertEquals(List.of("First", "Third"), titles(backend.books));
+        assertEquals(2, writer.batches.get(1).size());
+    }
+
+    @Test
+    void rejectedWriteIsNotReadFromTheLogAgain() throws Exception {
+        OutboxBooksDb outbox = open();
+        outbox.addBook(StubBooksDb.book(-1, "First"));
+        outbox.addBook(StubBooksDb.book(-1, "Refused"));
+        close(outbox);
+        BatchWriter refusingThenOffline = writes -> {
+            writer.batches.add(writes.stream().map(QueuedWrite::getKey).toList());
+            if (writer.batches.size() == 1) {
+                throw new RejectedWritesException("Duplicate ISBN", List.of(writes.get(1).getKey()), null);
+            }
+            throw new InsertException("Offline");
+        };
+        OutboxBooksDb draining = new OutboxBooksDb(backend, refusingThenOffline, directory.resolve("outbox.log"));
+        draining.open();
+        draining.addWriteListener(drained::release);
+        draining.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain();
+        awaitDrain();
+        close(draining);
+
+        OutboxBooksDb relaunched = open();
+        assertEquals(1, relaunched.getQueuedCount());
+        relaunched.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain();
+        assertEquals(List.of("First"), titles(backend.books));
+    }
+
+    @Test
+    void logHeaderIsKeptWhenEverythingIsWritten() throws Exception {
+        OutboxBooksDb outbox = open();
+        outbox.addBook(StubBooksDb.book(-1, "First"));
+        outbox.startDraining(CompletableFuture.completedFuture(null));
+        awaitDrain();
+        close(outbox);
+
+        byte[] bytes = Files.readAllBytes(directory.resolve("outbox.log"));
+        assertEquals(8, bytes.length);
+        assertEquals(0x4C4F5458, ByteBuffer.wrap(bytes).getInt()); // "LOTX"
+        assertEquals(0, open().getQueuedCount());
+    }
+}
@@ -0,0 +1,137 @@
+package kth.library.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaBooksDbTest {
+
+    private static final Duration RETENTION = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    private final StubBooksDb backend = new StubBooksDb();
+    private final Feed feed = new Feed();
+    private final Semaphore synced = new Semaphore(0);
+    private ReplicaBooksDb replica;
+
+    @AfterEach
+    void disconnect() throws Exception {
+        if (replica != null) {
+            replica.disconnect();
+        }
+    }
+
+    /**
+     * The changes of the backend: all of its books when read from the start,
+     * otherwise the books and removals queued by the test.
+     */
+    private class Feed implements ChangeFeed {
+
+        final List<Instant> sinces = Collections.synchronizedList(new ArrayList<>());
+        final List<Book> changed = new ArrayList<>();
+        final List<Integer> removed = new ArrayList<>();
+        volatile Instant upTo = Instant.now();
+
+        @Override
+        public synchronized Instant readChanges(Instant since, Consumer<List<Book>> changedConsumer,
+                                                Consumer<List<Integer>> removedConsumer) {
+            sinces.add(since);
+            if (since == null) {
+                synchronized (backend) {
+                    changedConsumer.accept(new ArrayList<>(backend.books));
+                }
+            } else {
+                changedConsumer.accept(new ArrayList<>(changed));
+                removedConsumer.accept(new ArrayList<>(removed));
+            }
+            changed.clear();
+            removed.clear();
+            return upTo;
+        }
+
+        @Override
+        public Duration getTombstoneRetention() {
+            return RETENTION;
+        }
+    }
+
+    private ReplicaBooksDb replica() {
+        ReplicaBooksDb replica = new ReplicaBooksDb(backend, feed, directory.resolve("replica.bin"), "db");
+        replica.addSyncListener(synced::release);
+        return replica;
+    }
+
+    private void awaitSync() throws InterruptedException {
+        assertTrue(synced.tryAcquire(5, TimeUnit.SECONDS), "no sync");
+        assertNull(replica.getSyncError());
+    }
+
+    @Test
+    void removalsReadAreAppliedToTheCopyAndItsFile() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Databases Illuminated"));
+        backend.books.add(StubBooksDb.book(2, "Databases Revisited"));
+        replica = replica();
+        replica.startSync(CompletableFuture.completedFuture(null));
+        awaitSync();
+        assertEquals(2, replica.findBooksByTitle("Databases").size());
+
+        synchronized (feed) {
+            feed.removed.add(1);
+        }
+        replica.syncSoon();
+        awaitSync();
+
+        assertEquals(List.of("Databases Revisited"), titles(replica.findBooksByTitle("Databases")));
+        assertEquals(2, feed.sinces.size());
+        assertEquals(feed.upTo, feed.sinces.get(1)); // the changes since the first read only
+
+        ReplicaBooksDb relaunched = new ReplicaBooksDb(backend, feed, directory.resolve("replica.bin"), "db");
+        assertTrue(relaunched.load());
+        int reads = backend.reads.get();
+        assertEquals(List.of("Databases Revisited"), titles(relaunched.findBooksByTitle("Databases")));
+        assertEquals(reads, backend.reads.get()); // answered from the file
+    }
+
+    @Test
+    void copyOlderThanTheTombstonesIsReadAgainInFull() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Databases Illuminated"));
+        backend.books.add(StubBooksDb.book(2, "Databases Revisited"));
+        feed.upTo = Instant.now().minus(RETENTION).minusSeconds(60); // as if the client had been offline
+        replica = replica();
+        replica.startSync(CompletableFuture.completedFuture(null));
+        awaitSync();
+
+        // removed while its tombstone has been dropped, the feed no longer tells
+        synchronized (backend) {
+            backend.books.removeIf(book -> book.getBookId() == 1);
+        }
+        feed.upTo = Instant.now();
+        replica.syncSoon();
+        awaitSync();
+
+        assertEquals(2, feed.sinces.size());
+        assertNull(feed.sinces.get(1)); // all books read again
+        assertEquals(List.of("Databases Revisited"), titles(replica.findBooksByTitle("Databases")));
+    }
+
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).sorted().toList();
+    }
+}
@@ -0,0 +1,135 @@
+package kth.library.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotBooksDbTest {
+
+    @TempDir
+    Path directory;
+
+    private final StubBooksDb backend = new StubBooksDb();
+
+    @Test
+    void staleAnswerIsServedUntilRevalidatedThenReplaced() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Databases Illuminated"));
+        Path file = saved("db");
+        backend.books.add(StubBooksDb.book(2, "Databases Revisited")); // added since the last launch
+
+        SnapshotBooksDb booksDb = new SnapshotBooksDb(backend, file, "db");
+        assertTrue(booksDb.load());
+        int reads = backend.reads.get();
+
+        assertEquals(List.of("Databases Illuminated"), titles(booksDb.findBooksByAny("Databases")));
+        assertEquals(reads, backend.reads.get()); // served without the backend
+
+        assertTrue(booksDb.revalidateInBackground().get(5, TimeUnit.SECONDS)); // something was served from the snapshot
+        assertTrue(backend.reads.get() > reads);
+        assertEquals(List.of("Databases Illuminated", "Databases Revisited"),
+                     titles(booksDb.findBooksByAny("Databases")));
+    }
+
+    @Test
+    void answerNotServedBeforeRevalidationIsNotReportedAsServed() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Databases Illuminated"));
+        SnapshotBooksDb booksDb = new SnapshotBooksDb(backend, saved("db"), "db");
+        assertTrue(booksDb.load());
+
+        assertFalse(booksDb.revalidateInBackground().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void snapshotOfAnotherDatabaseIsIgnored() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Databases Illuminated"));
+        Path file = saved("other");
+        backend.books.add(StubBooksDb.book(2, "Databases Revisited"));
+
+        SnapshotBooksDb booksDb = new SnapshotBooksDb(backend, file, "db");
+        assertFalse(booksDb.load());
+        assertEquals(2, booksDb.findBooksByAny("Databases").size());
+    }
+
+    @Test
+    void snapshotOfAnotherVersionIsIgnored() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Databases Illuminated"));
+        Path file = saved("db");
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(4, ByteBuffer.wrap(bytes).getInt(4) + 1); // the version follows the magic number
+        Files.write(file, bytes);
+        backend.books.add(StubBooksDb.book(2, "Databases Revisited"));
+
+        SnapshotBooksDb booksDb = new SnapshotBooksDb(backend, file, "db");
+        assertFalse(booksDb.load());
+        assertEquals(2, booksDb.findBooksByAny("Databases").size());
+    }
+
+    @Test
+    void truncatedSnapshotIsLoggedAndIgnored() throws Exception {
+        backend.books.add(StubBooksDb.book(1, "Databases Illuminated"));
+        Path file = saved("db");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+        backend.books.add(StubBooksDb.book(2, "Databases Revisited"));
+
+        List<LogRecord> logged = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                logged.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(SnapshotBooksDb.class.getName());
+        logger.addHandler(handler);
+        SnapshotBooksDb booksDb = new SnapshotBooksDb(backend, file, "db");
+        try {
+            assertFalse(booksDb.load());
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        assertEquals(1, logged.size());
+        assertEquals(Level.WARNING, logged.getFirst().getLevel());
+        assertTrue(logged.getFirst().getThrown() instanceof IOException);
+        assertEquals(2, booksDb.findBooksByAny("Databases").size());
+    }
+
+    /**
+     * @return a snapshot of a search for "Databases" on the backend, saved as a snapshot of database
+     */
+    private Path saved(String database) throws Exception {
+        Path file = directory.resolve("snapshot.bin");
+        SnapshotBooksDb booksDb = new SnapshotBooksDb(backend, file, database);
+        booksDb.findBooksByAny("Databases");
+        booksDb.save();
+        return file;
+    }
+
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).sorted().toList();
+    }
+}
@@ -0,0 +1,125 @@
+package kth.library.model;
+
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * An IBooksDb holding its books in a list, for the tests of the wrappers.
+ * Tests override the methods whose calls they want to hold up or fail.
+ */
+class StubBooksDb implements IBooksDb {
+
+    final List<Book> books = new ArrayList<>();
+    final AtomicInteger reads = new AtomicInteger();
+    private int nextId = 1;
+
+    /**
+     * @return a book with the given title, one author and one genre
+     */
+    static Book book(int id, String title) {
+        Book book = new Book(id, "isbn" + id, title, "Publisher");
+        book.addAuthor(new Author(1, "Author", null));
+        book.addGenre(new Genre(1, "Drama"));
+        return book;
+    }
+
+    @Override
+    public boolean connect(String database) throws ConnectionException {
+        return true;
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return new User(1, username);
+    }
+
+    private synchronized List<Book> find(Predicate<Book> matches) {
+        reads.incrementAndGet();
+        List<Book> found = new ArrayList<>();
+        for (Book book : books) {
+            if (matches.test(book)) {
+                found.add(book);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return find(book -> book.getTitle().toLowerCase().contains(title.toLowerCase()));
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return find(book -> book.getIsbn().equals(isbn));
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        return find(book -> book.getAuthors().stream().anyMatch(a -> a.getName().contains(author)));
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        return find(book -> book.getGenres().stream().anyMatch(g -> g.getName().equals(genre)));
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return find(book -> Math.round(book.getRating()) == rating);
+    }
+
+    @Override
+    public synchronized void addBook(Book book) throws InsertException {
+        Book added = new Book(nextId++, book.getIsbn(), book.getTitle(), book.getPublisher());
+        book.getAuthors().forEach(added::addAuthor);
+        book.getGenres().forEach(added::addGenre);
+        books.add(added);
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+    }
+
+    @Override
+    public synchronized void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        for (Book held : books) {
+            if (held.getBookId() == book.getBookId()) {
+                held.addReview(new Review(held, user, rating, reviewText, Date.valueOf(LocalDate.now())));
+                return;
+            }
+        }
+        throw new InsertException("No book " + book.getBookId(), null);
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        return List.of(new Author(1, "Author", null));
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        return List.of(new Genre(1, "Drama"));
+    }
+
+    @Override
+    public synchronized void removeBook(Book book) throws Exception {
+        books.removeIf(held -> held.getBookId() == book.getBookId());
+    }
+}
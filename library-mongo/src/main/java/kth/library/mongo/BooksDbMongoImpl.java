@@ -0,0 +1,1296 @@
+package kth.library.mongo;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.MongoExecutionTimeoutException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CollationStrength;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import kth.library.model.Author;
+import kth.library.model.BatchWriter;
+import kth.library.model.Book;
+import kth.library.model.BookFacets;
+import kth.library.model.BookQuery;
+import kth.library.model.BookSortField;
+import kth.library.model.ChangeFeed;
+import kth.library.model.Deadline;
+import kth.library.model.FacetCache;
+import kth.library.model.Genre;
+import kth.library.model.HydrationEvent;
+import kth.library.model.IBooksDb;
+import kth.library.model.IdentityMap;
+import kth.library.model.QueryDeadlines;
+import kth.library.model.QueuedWrite;
+import kth.library.model.ReferenceDataCache;
+import kth.library.model.Review;
+import kth.library.model.ReviewCursor;
+import kth.library.model.ReviewPage;
+import kth.library.model.SearchMode;
+import kth.library.model.User;
+import kth.library.model.WarmUp;
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.QueryTimeoutException;
+import kth.library.model.exceptions.RejectedWritesException;
+import kth.library.model.exceptions.SelectException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.mongodb.client.model.Filters.*;
+
+/**
+ * MongoDB implementation of the IBooksDb interface.
+ * Handles connections and CRUD operations against a MongoDB database.
+ * 
+ * @author Student Name
+ */
+public class BooksDbMongoImpl implements IBooksDb, ChangeFeed, BatchWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(BooksDbMongoImpl.class.getName());
+
+    private MongoClient mongoClient;
+    private MongoDatabase database;
+    private IdentityMap sessionIdentities; // shared by all searches if enabled, null otherwise
+    
+    private static final String MONGO_USER = "library_user";
+    private static final String MONGO_PASS = "lib123";
+    private static final String MONGO_HOST = "localhost";
+    private static final int MONGO_PORT = 27017;
+    private static final String DB_NAME = "library_db";
+
+    private static final String BOOKS_COLLECTION = "books";
+    private static final String AUTHORS_COLLECTION = "authors";
+    private static final String GENRES_COLLECTION = "genres";
+    static final String USERS_COLLECTION = "users";
+    private static final String COUNTERS_COLLECTION = "counters";
+    private static final String TOMBSTONES_COLLECTION = "book_tombstones";
+
+    // Number of books decoded before a batch is handed to a streaming search consumer
+    private static final int STREAM_BATCH_SIZE = 50;
+    // compares names ignoring case, like the name_ci indexes
+    private static final Collation NAME_COLLATION = Collation.builder()
+        .locale("en").collationStrength(CollationStrength.SECONDARY).build();
+    // sorts after every character in the collation, so prefix + it bounds the names starting with prefix
+    private static final String COLLATION_MAX_CHAR = "\uFFFF";
+    private static final long FACET_CACHE_TTL_MILLIS = 30_000;
+    // connections opened by warmUp and kept open by the driver
+    private static final int POOL_MIN_SIZE = 4;
+    // mapBook calls made by warmUp, above the invocation count at which HotSpot compiles with C2
+    private static final int MAPPING_WARM_UP_ROUNDS = 20_000;
+    // books read per batch by readChanges, with all their reviews
+    private static final int CHANGES_BATCH_SIZE = 500;
+    // a read of all books may take long, but not forever
+    private static final Duration CHANGES_DEADLINE = Duration.ofMinutes(5);
+    // writes stamped up to this long before a read of the changes are read again by the next one
+    private static final Duration CHANGES_OVERLAP = Duration.ofSeconds(10);
+    private static final Duration TOMBSTONE_RETENTION = Duration.ofDays(30);
+    // the indexes of MONGODB_DESIGN.txt the queries rely on, by collection, checked by warmUp
+    private static final Map<String, List<String>> EXPECTED_INDEXES = Map.of(
+        BOOKS_COLLECTION, List.of("isbn_1", "avg_rating_-1__id_-1", "review_count_-1__id_-1",
+            "genre_ids_1_avg_rating_-1__id_-1", "genre_ids_1_review_count_-1__id_-1", "genre_ids_1__id_-1",
+            "author_ids_1_avg_rating_-1__id_-1", "author_ids_1_review_count_-1__id_-1", "author_ids_1__id_-1",
+            "last_modified_1", "write_id_1"),
+        TOMBSTONES_COLLECTION, List.of("last_modified_1"),
+        AUTHORS_COLLECTION, List.of("name_ci"),
+        GENRES_COLLECTION, List.of("name_1", "name_ci"));
+
+    private final FacetCache facetCache = new FacetCache(FACET_CACHE_TTL_MILLIS);
+    private final ReferenceDataCache referenceData = new ReferenceDataCache();
+    private final ReferenceDataCache.Loader referenceLoader = new ReferenceLoader();
+    private QueryDeadlines deadlines = QueryDeadlines.defaults();
+
+    // commands slower than this are logged, and a sample of them explained
+    private static final Duration SLOW_QUERY_THRESHOLD = Duration.ofMillis(200);
+    private static final double EXPLAIN_SAMPLE_RATE = 0.1;
+    private SlowQueryLog slowQueryLog =
+        new SlowQueryLog(SLOW_QUERY_THRESHOLD, EXPLAIN_SAMPLE_RATE, SlowQueryLog.DEFAULT_FILE_PATTERN);
+
+    public BooksDbMongoImpl() {
+    }
+
+    /**
+     * Connects to the MongoDB database using the specified credentials, with one
+     * round trip to check that the server is reachable. Indexes, reference data and
+     * the connection pool are prepared by warmUp.
+     * 
+     * @param databaseUrl Not used in this implementation (credentials are internal).
+     * @return true if connection is successful.
+     * @throws ConnectionException if connection fails.
+     */
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        String connectionString = String.format("mongodb://%s:%s@%s:%d/%s", 
+                MONGO_USER, MONGO_PASS, MONGO_HOST, MONGO_PORT, DB_NAME);
+        
+        try {
+            MongoClientSettings.Builder settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(connectionString))
+                // the driver keeps this many connections open once warmUp has made them
+                .applyToConnectionPoolSettings(pool -> pool.minSize(POOL_MIN_SIZE));
+            settings.addCommandListener(new MongoCostListener());
+            if (slowQueryLog != null) {
+                settings.addCommandListener(slowQueryLog);
+            }
+            mongoClient = MongoClients.create(settings.build());
+            if (slowQueryLog != null) {
+                slowQueryLog.attach(mongoClient);
+            }
+            database = mongoClient.getDatabase(DB_NAME);
+            ping();
+            return true;
+        } catch (MongoException e) {
+            throw new ConnectionException("Could not connect to MongoDB: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Prepares the connected database for the first searches, all steps at the same time:
+     * opens POOL_MIN_SIZE pooled connections, checks the indexes, loads
+     * the authors and genres, and maps a book until the JIT has compiled mapBook.
+     */
+    @Override
+    public void warmUp() throws ConnectionException {
+        WarmUp warmUp = new WarmUp()
+            .step("indexes", this::verifyIndexes)
+            .step("authors and genres", () -> referenceData.refresh(referenceLoader))
+            .step("mapping", this::warmUpMapping);
+        // concurrent pings need a connection each, which fills the pool
+        for (int i = 1; i <= POOL_MIN_SIZE; i++) {
+            warmUp.step("connection " + i, this::ping);
+        }
+        warmUp.run();
+    }
+
+    private void ping() {
+        database.runCommand(new Document("ping", 1));
+    }
+
+    /**
+     * Maps a made-up book document MAPPING_WARM_UP_ROUNDS times, enough for the JIT
+     * to compile mapBook and the Document getters before the first search needs them.
+     */
+    private void warmUpMapping() {
+        IdentityMap identities = new IdentityMap();
+        identities.putAuthor(new Author(1, "Warm-up", null));
+        identities.putGenre(new Genre(1, "Warm-up"));
+        identities.putUser(new User(1, "warm-up"));
+        Document doc = new Document("_id", 1)
+            .append("isbn", "0000000000")
+            .append("title", "Warm-up")
+            .append("publisher", "Warm-up")
+            .append("added_by", 1)
+            .append("author_ids", List.of(1))
+            .append("genre_ids", List.of(1))
+            .append("review_count", 1)
+            .append("rating_sum", 5);
+        for (int i = 0; i < MAPPING_WARM_UP_ROUNDS; i++) {
+            mapBook(doc, identities);
+        }
+    }
+
+    /**
+     * Sets the log of slow commands, null to disable it. Takes effect on the next connect.
+     */
+    void setSlowQueryLog(SlowQueryLog slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /**
+     * Checks that the indexes of MONGODB_DESIGN.txt the queries rely on exist, and that
+     * no book lacks the rating fields maintained by addReview. Both are created by the
+     * administrator, see MONGODB_DESIGN.txt; what is missing is reported but does not
+     * fail the warm-up, searches only get slower or miss the books not back-filled.
+     */
+    private void verifyIndexes() {
+        List<String> missing = new ArrayList<>();
+        EXPECTED_INDEXES.forEach((collection, names) -> {
+            Set<String> existing = new HashSet<>();
+            for (Document index : database.getCollection(collection).listIndexes()) {
+                existing.add(index.getString("name"));
+            }
+            for (String name : names) {
+                if (!existing.contains(name)) {
+                    missing.add(collection + "." + name);
+                }
+            }
+        });
+        if (!missing.isEmpty()) {
+            LOGGER.warning("Missing indexes, see MONGODB_DESIGN.txt: " + String.join(", ", missing));
+        }
+        if (database.getCollection(BOOKS_COLLECTION).find(exists("avg_rating", false)).limit(1).first() != null) {
+            LOGGER.warning("Books without rating fields, back-fill them as in MONGODB_DESIGN.txt");
+        }
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        try {
+            if (mongoClient != null) {
+                mongoClient.close();
+            }
+            referenceData.clear();
+        } catch (Exception e) {
+            throw new ConnectionException("Could not disconnect from MongoDB.", e);
+        }
+    }
+    
+    /**
+     * Simulates AUTO_INCREMENT by using a counters collection.
+     * Atomically increments and returns the next sequence number for a collection.
+     * 
+     * @param collectionName The name of the sequence (e.g. "books").
+     * @return The next integer ID.
+     * @throws InsertException if generation fails.
+     */
+    private int getNextSequence(String collectionName) throws InsertException {
+        return getNextSequences(collectionName, 1);
+    }
+
+    /**
+     * Reserves count consecutive sequence numbers with one increment.
+     *
+     * @return the first of them
+     */
+    private int getNextSequences(String collectionName, int count) throws InsertException {
+        IdAllocationEvent event = new IdAllocationEvent();
+        event.begin();
+        try {
+            MongoCollection<Document> counters = database.getCollection(COUNTERS_COLLECTION);
+            
+            Bson filter = eq("_id", collectionName + "_id");
+            Bson update = Updates.inc("seq", count);
+            
+            Document result = counters.findOneAndUpdate(filter, update, 
+                new com.mongodb.client.model.FindOneAndUpdateOptions()
+                    .returnDocument(com.mongodb.client.model.ReturnDocument.AFTER)
+                    .upsert(true));
+            
+            if (result != null) {
+                int id = result.getInteger("seq") - count + 1;
+                if (event.shouldCommit()) {
+                    event.collection = collectionName;
+                    event.id = id;
+                    event.commit();
+                }
+                return id;
+            } else {
+                throw new InsertException("Failed to generate ID for " + collectionName);
+            }
+        } catch (MongoException e) {
+            throw new InsertException("Error generating next sequence ID", e);
+        }
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        try {
+            MongoCollection<Document> users = database.getCollection(USERS_COLLECTION);
+            Document userDoc = users.find(Filters.and(eq("username", username), eq("password", password)))
+                .maxTime(maxTimeMillis(defaultDeadline()), TimeUnit.MILLISECONDS)
+                .first();
+            
+            if (userDoc != null) {
+                return new User(userDoc.getInteger("_id"), userDoc.getString("username"));
+            }
+            return null;
+        } catch (MongoException e) {
+            throw selectFailed("Error logging in user: " + username, e);
+        }
+    }
+
+    /**
+     * Sets the deadlines of reads; a read still running at its deadline is stopped
+     * by the server and fails with a QueryTimeoutException.
+     */
+    public void setQueryDeadlines(QueryDeadlines deadlines) {
+        this.deadlines = deadlines;
+    }
+
+    private Deadline defaultDeadline() {
+        return Deadline.after(deadlines.getDefault());
+    }
+
+    /**
+     * @return the time left for the next command of a read, passed to the server as maxTime
+     * @throws MongoExecutionTimeoutException if none is left
+     */
+    private static long maxTimeMillis(Deadline deadline) {
+        long remaining = deadline.remainingMillis();
+        if (remaining == 0) {
+            throw new MongoExecutionTimeoutException("Deadline of " + deadline + " exceeded");
+        }
+        return remaining;
+    }
+
+    /**
+     * Wraps a driver exception of a read, as a QueryTimeoutException if the server
+     * stopped the read at its deadline.
+     */
+    private static SelectException selectFailed(String message, MongoException e) {
+        if (e instanceof MongoExecutionTimeoutException) {
+            return new QueryTimeoutException(message + " (timed out)", e);
+        }
+        return new SelectException(message, e);
+    }
+
+    /**
+     * Enables or disables a session-wide identity map. When enabled, authors, genres
+     * and users read once are shared by all following searches instead of per search.
+     */
+    public void setSessionIdentityMap(boolean enabled) {
+        sessionIdentities = enabled ? new IdentityMap() : null;
+    }
+
+    private IdentityMap newIdentityMap() {
+        return sessionIdentities != null ? sessionIdentities : new IdentityMap();
+    }
+
+    /**
+     * Reads the users with the given ids that are not in the identity map yet, in one query.
+     */
+    private void loadUsers(Set<Integer> userIds, IdentityMap identities, Deadline deadline) {
+        userIds.removeIf(id -> id == 0 || identities.getUser(id) != null);
+        if (userIds.isEmpty()) return;
+        MongoCollection<Document> users = database.getCollection(USERS_COLLECTION);
+        for (Document doc : users.find(in("_id", userIds)).maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)) {
+            identities.user(doc.getInteger("_id"), doc.getString("username"));
+        }
+    }
+
+    /**
+     * Reads the authors with the given ids that are not in the identity map or the reference
+     * data yet, in one query, together with the users who added them.
+     */
+    private void loadAuthors(Set<Integer> authorIds, IdentityMap identities, Deadline deadline) {
+        authorIds.removeIf(id -> identities.getAuthor(id) != null || fromReferenceData(id, identities));
+        if (authorIds.isEmpty()) return;
+        MongoCollection<Document> authorsCol = database.getCollection(AUTHORS_COLLECTION);
+        List<Document> authorDocs = authorsCol.find(in("_id", authorIds))
+            .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+            .into(new ArrayList<>());
+        Set<Integer> addedByIds = new HashSet<>();
+        for (Document aDoc : authorDocs) {
+            Integer addedById = aDoc.getInteger("added_by");
+            if (addedById != null) addedByIds.add(addedById);
+        }
+        loadUsers(addedByIds, identities, deadline);
+        for (Document aDoc : authorDocs) {
+            identities.putAuthor(mapAuthor(aDoc, identities));
+        }
+    }
+
+    // puts the author from the reference data in the identity map, false if it is not held
+    private boolean fromReferenceData(int authorId, IdentityMap identities) {
+        Author author = referenceData.getAuthor(authorId);
+        if (author == null) return false;
+        identities.putAuthor(author);
+        return true;
+    }
+
+    private boolean referenceGenre(int genreId, IdentityMap identities) {
+        Genre genre = referenceData.getGenre(genreId);
+        if (genre == null) return false;
+        identities.putGenre(genre);
+        return true;
+    }
+
+    /**
+     * Reads the genres with the given ids that are not in the identity map or the
+     * reference data yet, in one query.
+     */
+    private void loadGenres(Set<Integer> genreIds, IdentityMap identities, Deadline deadline) {
+        genreIds.removeIf(id -> identities.getGenre(id) != null || referenceGenre(id, identities));
+        if (genreIds.isEmpty()) return;
+        MongoCollection<Document> genresCol = database.getCollection(GENRES_COLLECTION);
+        for (Document gDoc : genresCol.find(in("_id", genreIds)).maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)) {
+            identities.genre(gDoc.getInteger("_id"), gDoc.getString("name"));
+        }
+    }
+
+    /**
+     * Maps a batch of MongoDB Documents to Book objects.
+     * Handles manual joins for Authors, Genres and Users (referenced by ID): the ones not
+     * in the identity map yet are read with one query per collection for the whole batch,
+     * and books referencing the same entity share one object.
+     * Embedded Reviews are not mapped, only their summary, see findReviews.
+     */
+    private List<Book> mapBooks(List<Document> docs, IdentityMap identities, Deadline deadline) {
+        HydrationEvent event = new HydrationEvent();
+        event.begin();
+        Set<Integer> authorIds = new HashSet<>();
+        Set<Integer> genreIds = new HashSet<>();
+        Set<Integer> userIds = new HashSet<>();
+        for (Document doc : docs) {
+            Integer addedById = doc.getInteger("added_by");
+            if (addedById != null) userIds.add(addedById);
+            List<Integer> bookAuthorIds = doc.getList("author_ids", Integer.class);
+            if (bookAuthorIds != null) authorIds.addAll(bookAuthorIds);
+            List<Integer> bookGenreIds = doc.getList("genre_ids", Integer.class);
+            if (bookGenreIds != null) genreIds.addAll(bookGenreIds);
+        }
+        loadAuthors(authorIds, identities, deadline);
+        loadGenres(genreIds, identities, deadline);
+        loadUsers(userIds, identities, deadline);
+
+        List<Book> books = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            books.add(mapBook(doc, identities));
+        }
+        if (event.shouldCommit()) {
+            event.backend = "MongoDB";
+            event.books = books.size();
+            event.commit();
+        }
+        return books;
+    }
+
+    /**
+     * Maps a MongoDB Document to a Book object, taking referenced entities from the identity map.
+     */
+    private Book mapBook(Document doc, IdentityMap identities) {
+        int bookId = doc.getInteger("_id");
+        String isbn = doc.getString("isbn");
+        String title = doc.getString("title");
+        String publisher = identities.canonical(doc.getString("publisher"));
+        
+        Book book = new Book(bookId, isbn, title, publisher);
+        
+        Integer addedById = doc.getInteger("added_by");
+        if (addedById != null) {
+            book.setAddedBy(identities.getUser(addedById));
+        }
+
+        List<Integer> authorIds = doc.getList("author_ids", Integer.class);
+        if (authorIds != null) {
+            for (Integer authorId : authorIds) {
+                Author author = identities.getAuthor(authorId);
+                if (author != null) {
+                    book.addAuthor(author);
+                }
+            }
+        }
+
+        List<Integer> genreIds = doc.getList("genre_ids", Integer.class);
+        if (genreIds != null) {
+            for (Integer genreId : genreIds) {
+                Genre genre = identities.getGenre(genreId);
+                if (genre != null) {
+                    book.addGenre(genre);
+                }
+            }
+        }
+
+        // reviews are not read with the search, only their count and rating sum
+        book.setRatingSummary(doc.getInteger("review_count", 0), ((Number) doc.get("rating_sum", 0)).intValue());
+
+        return book;
+    }
+
+    private Author mapAuthor(Document doc, IdentityMap identities) {
+        int id = doc.getInteger("_id");
+        String name = identities.canonical(doc.getString("name"));
+        java.util.Date birthDateUtil = doc.getDate("birthdate");
+        java.sql.Date birthDateSql = (birthDateUtil != null) ? new java.sql.Date(birthDateUtil.getTime()) : null;
+        
+        Author author = new Author(id, name, birthDateSql);
+        
+        Integer addedById = doc.getInteger("added_by");
+        if (addedById != null) {
+            author.setAddedBy(identities.getUser(addedById));
+        }
+        return author;
+    }
+
+    /**
+     * Runs a books aggregation and hands the mapped books to the consumer in batches
+     * while the cursor is being read, instead of collecting the whole result first.
+     *
+     * @param pipeline the complete pipeline, as built from queryPipeline
+     * @param batchConsumer receives the books, STREAM_BATCH_SIZE at a time
+     * @param deadline the deadline of the search, covering the aggregation and the hydration queries
+     */
+    private void streamBooks(List<Bson> pipeline, Consumer<List<Book>> batchConsumer, Deadline deadline) {
+        MongoCollection<Document> books = database.getCollection(BOOKS_COLLECTION);
+        IdentityMap identities = newIdentityMap();
+        try (MongoCursor<Document> cursor = books.aggregate(pipeline)
+                .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                .batchSize(STREAM_BATCH_SIZE)
+                .iterator()) {
+            List<Document> docs = new ArrayList<>(STREAM_BATCH_SIZE);
+            while (cursor.hasNext()) {
+                docs.add(cursor.next());
+                if (docs.size() == STREAM_BATCH_SIZE || !cursor.hasNext()) {
+                    batchConsumer.accept(mapBooks(docs, identities, deadline));
+                    docs = new ArrayList<>(STREAM_BATCH_SIZE);
+                }
+            }
+        }
+    }
+
+    private static Pattern containsPattern(String text) {
+        return Pattern.compile(".*" + Pattern.quote(text) + ".*", Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * Compiles the criteria of a query into the start of an aggregation pipeline over books.
+     * Genre and author names are first resolved to ids, genres from the reference data, so that all criteria are one $match on
+     * the book documents that, together with a following sort on the stored rating fields, can
+     * be served by the compound indexes of MONGODB_DESIGN.txt.
+     *
+     * @return the pipeline, or null if no book can match
+     */
+    private List<Bson> queryPipeline(BookQuery query, Deadline deadline) throws SelectException {
+        List<Bson> bookFilters = new ArrayList<>();
+        if (query.getGenre() != null) {
+            Genre genre = referenceData.resolveGenre(query.getGenre(), referenceLoader);
+            if (genre == null) {
+                return null;
+            }
+            bookFilters.add(eq("genre_ids", genre.getGenreId()));
+        }
+        if (query.getAuthor() != null) {
+            List<Integer> authorIds = database.getCollection(AUTHORS_COLLECTION)
+                .find(regex("name", containsPattern(query.getAuthor())))
+                .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                .map(doc -> doc.getInteger("_id"))
+                .into(new ArrayList<>());
+            if (authorIds.isEmpty()) {
+                return null;
+            }
+            bookFilters.add(in("author_ids", authorIds));
+        }
+        if (query.getIsbn() != null) {
+            bookFilters.add(eq("isbn", query.getIsbn()));
+        }
+        if (query.getPublisher() != null) {
+            bookFilters.add(eq("publisher", query.getPublisher()));
+        }
+        if (query.getTitleContains() != null) {
+            bookFilters.add(regex("title", containsPattern(query.getTitleContains())));
+        }
+        if (query.getMinRating() != null) {
+            bookFilters.add(gte("avg_rating", query.getMinRating()));
+        }
+        List<Bson> pipeline = new ArrayList<>();
+        if (!bookFilters.isEmpty()) {
+            pipeline.add(Aggregates.match(and(bookFilters)));
+        }
+        return pipeline;
+    }
+
+    /**
+     * Ends a pipeline with the sort order and limit of the query and the projection of the
+     * fields needed to map books.
+     */
+    private void finishPipeline(List<Bson> pipeline, BookQuery query, int skip) {
+        if (query.getSortBy() != null) {
+            String field = sortFieldName(query.getSortBy());
+            pipeline.add(Aggregates.sort(query.isDescending()
+                ? Sorts.descending(field, "_id") : Sorts.ascending(field, "_id")));
+        }
+        if (skip > 0) {
+            pipeline.add(Aggregates.skip(skip));
+        }
+        if (query.getLimit() > 0) {
+            pipeline.add(Aggregates.limit(query.getLimit()));
+        }
+        pipeline.add(Aggregates.project(Projections.exclude("reviews")));
+    }
+
+    private static String sortFieldName(BookSortField sortBy) {
+        return switch (sortBy) {
+            case Title -> "title";
+            case ISBN -> "isbn";
+            case Publisher -> "publisher";
+            case Rating -> "avg_rating";
+            case ReviewCount -> "review_count";
+            case Added -> "_id";
+        };
+    }
+
+    /**
+     * Streams the books matching the query batch by batch as documents are decoded.
+     * All criteria, the sort order and the limit are evaluated by one aggregation.
+     */
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        try {
+            Deadline deadline = Deadline.after(deadlines.forQuery(query));
+            List<Bson> pipeline = queryPipeline(query, deadline);
+            if (pipeline == null) {
+                return;
+            }
+            finishPipeline(pipeline, query, 0);
+            streamBooks(pipeline, batchConsumer, deadline);
+        } catch (MongoException e) {
+            throw selectFailed("Error finding books: " + query, e);
+        }
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        try {
+            Deadline deadline = Deadline.after(deadlines.forQuery(query));
+            List<Bson> pipeline = queryPipeline(query, deadline);
+            if (pipeline == null) {
+                return 0;
+            }
+            pipeline.add(Aggregates.count("n"));
+            Document result = database.getCollection(BOOKS_COLLECTION).aggregate(pipeline)
+                .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                .first();
+            return result != null ? result.getInteger("n") : 0;
+        } catch (MongoException e) {
+            throw selectFailed("Error counting books: " + query, e);
+        }
+    }
+
+    /**
+     * The books after (value, id) in the order of (field, _id). Null and missing values
+     * sort before any other and only match eq(field, null), $gt and $lt never match them.
+     */
+    private static Bson keyset(String field, Object value, int id, boolean descending) {
+        if (value == null) {
+            return descending
+                ? and(eq(field, null), lt("_id", id))
+                : or(and(eq(field, null), gt("_id", id)), ne(field, null));
+        }
+        return descending
+            ? or(lt(field, value), and(eq(field, value), lt("_id", id)), eq(field, null))
+            : or(gt(field, value), and(eq(field, value), gt("_id", id)));
+    }
+
+    /**
+     * Fetches one page with an aggregation: criteria, keyset condition on (sort field, _id),
+     * sort and limit are all evaluated by the server.
+     */
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        try {
+            Deadline deadline = Deadline.after(deadlines.forQuery(query));
+            List<Bson> pipeline = queryPipeline(query, deadline);
+            if (pipeline == null) {
+                return new ArrayList<>();
+            }
+            if (after != null) {
+                String field = sortFieldName(query.getSortBy());
+                Object value = query.getSortBy().valueOf(after);
+                int id = after.getBookId();
+                pipeline.add(Aggregates.match(keyset(field, value, id, query.isDescending())));
+            }
+            finishPipeline(pipeline, query, skip);
+
+            List<Document> found = database.getCollection(BOOKS_COLLECTION).aggregate(pipeline)
+                .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                .into(new ArrayList<>());
+            return mapBooks(found, newIdentityMap(), deadline);
+        } catch (MongoException e) {
+            throw selectFailed("Error fetching page of books: " + query, e);
+        }
+    }
+
+    /**
+     * Reads one page of the reviews embedded in a book with a $slice projection, so only
+     * the page is sent, however many reviews the book has. Reviews are appended to the
+     * array, so a position stays valid while reviews are added.
+     */
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        int position = after != null ? after.getPosition() : 0;
+        try {
+            Deadline deadline = defaultDeadline();
+            Document doc = database.getCollection(BOOKS_COLLECTION)
+                .find(eq("_id", book.getBookId()))
+                .projection(Projections.fields(Projections.include("_id"),
+                    Projections.slice("reviews", position, limit + 1)))
+                .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                .first();
+            List<Document> reviewDocs = doc != null ? doc.getList("reviews", Document.class) : null;
+            if (reviewDocs == null) {
+                return ReviewPage.of(new ArrayList<>(), position, limit);
+            }
+            IdentityMap identities = newIdentityMap();
+            Set<Integer> userIds = new HashSet<>();
+            for (Document rDoc : reviewDocs) {
+                userIds.add(rDoc.getInteger("user_id"));
+            }
+            loadUsers(userIds, identities, deadline);
+
+            List<Review> reviews = new ArrayList<>();
+            for (Document rDoc : reviewDocs) {
+                int userId = rDoc.getInteger("user_id");
+                User user = identities.getUser(userId);
+                if (user == null) {
+                    user = new User(userId, "Unknown");
+                }
+                java.util.Date date = rDoc.getDate("date");
+                reviews.add(new Review(book, user, rDoc.getInteger("rating"), rDoc.getString("text"),
+                    new java.sql.Date(date.getTime())));
+            }
+            return ReviewPage.of(reviews, position, limit);
+        } catch (MongoException e) {
+            throw selectFailed("Error fetching reviews of book: " + book.getTitle(), e);
+        }
+    }
+
+    /**
+     * Counts all facets with one aggregation: the criteria are matched once and a $facet
+     * stage groups the matching books by genre, author, publisher and rating bucket.
+     * Genre and author names are looked up for the most common ids only.
+     * Results are cached for a short time, see FacetCache.
+     */
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        BookFacets cached = facetCache.get(query);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            Deadline deadline = Deadline.after(deadlines.forQuery(query));
+            List<Bson> pipeline = queryPipeline(query, deadline);
+            if (pipeline == null) {
+                return BookFacets.of(new ArrayList<>());
+            }
+            // avg_rating 5.0 falls in the last bucket
+            Document ratingBucket = new Document("$min", Arrays.asList(
+                new Document("$floor", "$avg_rating"), BookFacets.RATING_BUCKETS.length - 1));
+            pipeline.add(new Document("$facet", new Document()
+                .append("genres", namedFacet("genre_ids", GENRES_COLLECTION))
+                .append("authors", namedFacet("author_ids", AUTHORS_COLLECTION))
+                .append("publishers", Arrays.asList(
+                    Aggregates.group("$publisher", Accumulators.sum("n", 1)),
+                    Aggregates.sort(Sorts.descending("n")),
+                    Aggregates.limit(BookFacets.MAX_VALUES)))
+                .append("ratings", Arrays.asList(
+                    Aggregates.group(ratingBucket, Accumulators.sum("n", 1))))
+                .append("total", Arrays.asList(Aggregates.count("n")))));
+
+            Document result = database.getCollection(BOOKS_COLLECTION).aggregate(pipeline)
+                .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                .first();
+            if (result == null) {
+                return BookFacets.of(new ArrayList<>());
+            }
+            Map<String, Integer> ratings = new LinkedHashMap<>();
+            for (Document bucket : result.getList("ratings", Document.class)) {
+                ratings.put(BookFacets.ratingBucket(((Number) bucket.get("_id")).doubleValue()),
+                    bucket.getInteger("n"));
+            }
+            List<Document> total = result.getList("total", Document.class);
+            BookFacets facets = new BookFacets(
+                total.isEmpty() ? 0 : total.get(0).getInteger("n"),
+                facetCounts(result.getList("genres", Document.class), "name"),
+                facetCounts(result.getList("authors", Document.class), "name"),
+                facetCounts(result.getList("publishers", Document.class), "_id"),
+                ratings);
+            facetCache.put(query, facets);
+            return facets;
+        } catch (MongoException e) {
+            throw selectFailed("Error counting facets: " + query, e);
+        }
+    }
+
+    /**
+     * The $facet branch counting books per id in an id array, with the names of the most
+     * common ids looked up in the referenced collection.
+     */
+    private static List<Bson> namedFacet(String idsField, String collection) {
+        return Arrays.asList(
+            Aggregates.unwind("$" + idsField),
+            Aggregates.group("$" + idsField, Accumulators.sum("n", 1)),
+            Aggregates.sort(Sorts.descending("n")),
+            Aggregates.limit(BookFacets.MAX_VALUES),
+            Aggregates.lookup(collection, "_id", "_id", "ref"),
+            Aggregates.project(Projections.fields(
+                Projections.include("n"),
+                Projections.computed("name", new Document("$arrayElemAt", Arrays.asList("$ref.name", 0))))));
+    }
+
+    private static Map<String, Integer> facetCounts(List<Document> groups, String valueField) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Document group : groups) {
+            Object value = group.get(valueField);
+            if (value != null) {
+                counts.merge(value.toString(), group.getInteger("n"), Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private List<Book> collectBooks(SearchMode mode, String searchFor) throws SelectException {
+        List<Book> result = new ArrayList<>();
+        searchBooks(mode, searchFor, result::addAll);
+        return result;
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return collectBooks(SearchMode.Title, title);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return collectBooks(SearchMode.ISBN, isbn);
+    }
+
+    /**
+     * Finds books by author name.
+     * First finds matching authors, then finds books referencing those authors.
+     */
+    @Override
+    public List<Book> findBooksByAuthor(String authorName) throws SelectException {
+        return collectBooks(SearchMode.Author, authorName);
+    }
+
+    /**
+     * Finds books by genre name.
+     * First finds the matching genre, then finds books referencing that genre.
+     */
+    @Override
+    public List<Book> findBooksByGenre(String genreName) throws SelectException {
+        return collectBooks(SearchMode.Genre, genreName);
+    }
+
+    /**
+     * Finds books by rating, using the average rating stored on every book.
+     */
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return collectBooks(SearchMode.Rating, String.valueOf(rating));
+    }
+
+    /**
+     * Adds a new book to the database.
+     * Stores author and genre relations as arrays of IDs in the book document.
+     * The book is inserted by an upsert, so that $currentDate can stamp it with the
+     * time of the server, see readChanges.
+     */
+    @Override
+    public void addBook(Book book) throws InsertException {
+        try {
+            int bookId = getNextSequence(BOOKS_COLLECTION);
+            database.getCollection(BOOKS_COLLECTION).updateOne(eq("_id", bookId),
+                insertBook(book, bookId), new UpdateOptions().upsert(true));
+            facetCache.clear();
+            
+        } catch (MongoException e) {
+            throw new InsertException("Error adding book: " + book.getTitle(), e);
+        }
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+        try {
+            int authorId = getNextSequence(AUTHORS_COLLECTION);
+            
+            Document doc = new Document("_id", authorId)
+                .append("name", author.getName())
+                .append("birthdate", author.getBirthdate())
+                .append("added_by", author.getAddedBy() != null ? author.getAddedBy().getId() : null);
+                
+            database.getCollection(AUTHORS_COLLECTION).insertOne(doc);
+            Author stored = new Author(authorId, author.getName(), author.getBirthdate());
+            stored.setAddedBy(author.getAddedBy());
+            referenceData.addAuthor(stored);
+            
+        } catch (MongoException e) {
+            throw new InsertException("Error adding author: " + author.getName(), e);
+        }
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+        try {
+            int genreId = getNextSequence(GENRES_COLLECTION);
+            
+            Document doc = new Document("_id", genreId)
+                .append("name", genre.getName());
+                
+            database.getCollection(GENRES_COLLECTION).insertOne(doc);
+            referenceData.addGenre(new Genre(genreId, genre.getName()));
+            
+        } catch (MongoException e) {
+            throw new InsertException("Error adding genre: " + genre.getName(), e);
+        }
+    }
+
+    /**
+     * Adds a review to a book.
+     * Reviews are stored as embedded documents within the book document.
+     * The review count, rating sum and average rating stored on the book are updated
+     * in the same atomic update, so that they can be indexed for top-N queries, and
+     * the book is stamped with the time of the server, see readChanges.
+     */
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        try {
+            Document reviewDoc = new Document("rating", rating)
+                .append("text", reviewText)
+                .append("date", new java.util.Date())
+                .append("user_id", user.getId());
+
+            database.getCollection(BOOKS_COLLECTION).updateOne(
+                eq("_id", book.getBookId()), appendReview(reviewDoc, rating));
+            facetCache.clear();
+            
+        } catch (MongoException e) {
+            throw new InsertException("Error adding review for book: " + book.getTitle(), e);
+        }
+    }
+
+    /**
+     * The update inserting a new book document, stamped with the server time.
+     */
+    private Bson insertBook(Book book, int bookId) {
+        List<Integer> authorIds = book.getAuthors().stream()
+            .map(Author::getAuthorId)
+            .collect(Collectors.toList());
+
+        List<Integer> genreIds = book.getGenres().stream()
+            .map(Genre::getGenreId)
+            .collect(Collectors.toList());
+
+        Document doc = new Document("_id", bookId)
+            .append("isbn", book.getIsbn())
+            .append("title", book.getTitle())
+            .append("publisher", book.getPublisher())
+            .append("added_by", book.getAddedBy() != null ? book.getAddedBy().getId() : null)
+            .append("author_ids", authorIds)
+            .append("genre_ids", genreIds)
+            .append("reviews", new ArrayList<>())
+            .append("review_count", 0)
+            .append("rating_sum", 0)
+            .append("avg_rating", 0.0);
+        return Updates.combine(new Document("$setOnInsert", doc), Updates.currentDate("last_modified"));
+    }
+
+    /**
+     * The pipeline update appending a review and maintaining the materialized ratings;
+     * the review is a $literal so that text starting with '$' is not a field path.
+     */
+    private static List<Document> appendReview(Document reviewDoc, int rating) {
+        Document appendReview = new Document("reviews", new Document("$concatArrays", Arrays.asList(
+                new Document("$ifNull", Arrays.asList("$reviews", new ArrayList<>())),
+                Arrays.asList(new Document("$literal", reviewDoc)))))
+            .append("review_count", new Document("$add", Arrays.asList(
+                new Document("$ifNull", Arrays.asList("$review_count", 0)), 1)))
+            .append("rating_sum", new Document("$add", Arrays.asList(
+                new Document("$ifNull", Arrays.asList("$rating_sum", 0)), rating)))
+            .append("last_modified", "$$NOW");
+        Document updateAverage = new Document("avg_rating",
+            new Document("$divide", Arrays.asList("$rating_sum", "$review_count")));
+        return Arrays.asList(new Document("$set", appendReview), new Document("$set", updateAverage));
+    }
+
+    /**
+     * Writes the batch with one unordered bulkWrite, so that a write the server
+     * refuses does not stop the others; the writes do not depend on each other, a
+     * review is only queued for a book that has an id. A queued book is upserted by its
+     * write_id, so a book added before is matched and left as it is; the ids of the
+     * new books are reserved with one increment of the counter, those of books
+     * matched are skipped. A queued review carries its write_id into the reviews
+     * array and only updates a book not holding that write_id yet, which also drops
+     * a review of a book removed since. Writes refused for good are reported by a
+     * RejectedWritesException, see rejectedKeys.
+     */
+    @Override
+    public void writeBatch(List<QueuedWrite> writes) throws InsertException {
+        if (writes.isEmpty()) {
+            return;
+        }
+        try {
+            long books = writes.stream().filter(write -> !write.isReview()).count();
+            int bookId = books > 0 ? getNextSequences(BOOKS_COLLECTION, (int) books) : 0;
+            List<WriteModel<Document>> models = new ArrayList<>(writes.size());
+            for (QueuedWrite write : writes) {
+                if (write.isReview()) {
+                    Review review = write.getReview();
+                    Document reviewDoc = new Document("rating", review.getRating())
+                        .append("text", review.getReviewText())
+                        .append("date", java.util.Date.from(write.getQueued()))
+                        .append("user_id", review.getUser().getId())
+                        .append("write_id", write.getKey());
+                    models.add(new UpdateOneModel<>(
+                        and(eq("_id", write.getBook().getBookId()), ne("reviews.write_id", write.getKey())),
+                        appendReview(reviewDoc, review.getRating())));
+                } else {
+                    models.add(new UpdateOneModel<>(eq("write_id", write.getKey()),
+                        insertBook(write.getBook(), bookId++), new UpdateOptions().upsert(true)));
+                }
+            }
+            try {
+                database.getCollection(BOOKS_COLLECTION).bulkWrite(models, new BulkWriteOptions().ordered(false));
+            } finally {
+                facetCache.clear(); // some writes may have been made
+            }
+        } catch (MongoBulkWriteException e) {
+            List<String> rejected = rejectedKeys(e, writes);
+            if (rejected.isEmpty()) {
+                throw new InsertException("Error writing " + writes.size() + " queued books and reviews", e);
+            }
+            throw new RejectedWritesException("The database refused " + rejected.size() + " of the queued writes: "
+                                              + e.getWriteErrors().getFirst().getMessage(), rejected, e);
+        } catch (MongoException e) {
+            throw new InsertException("Error writing " + writes.size() + " queued books and reviews", e);
+        }
+    }
+
+    /**
+     * @return the keys of the writes refused by the server, told by the index of their
+     *         write errors; a write stopped by a time limit is not refused, and a write
+     *         concern error leaves it unknown whether the writes were made, they are
+     *         written again
+     */
+    static List<String> rejectedKeys(MongoBulkWriteException e, List<QueuedWrite> writes) {
+        List<String> rejected = new ArrayList<>();
+        for (BulkWriteError error : e.getWriteErrors()) {
+            if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.EXECUTION_TIMEOUT
+                && error.getIndex() < writes.size()) {
+                rejected.add(writes.get(error.getIndex()).getKey());
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Reads the books stamped after since, with all their reviews, a batch at a time; the
+     * stamps are set by addBook, addReview and removeBook with the clock of the server,
+     * so that the clocks of the clients do not matter. Books stored before the stamps
+     * were maintained are only read when reading all books.
+     */
+    @Override
+    public Instant readChanges(Instant since, Consumer<List<Book>> changed, Consumer<List<Integer>> removed)
+            throws SelectException {
+        try {
+            Deadline deadline = Deadline.after(CHANGES_DEADLINE);
+            java.util.Date serverTime = database.runCommand(new Document("hello", 1)).getDate("localTime");
+            Bson filter = since != null ? gt("last_modified", java.util.Date.from(since)) : new Document();
+            IdentityMap identities = new IdentityMap();
+            try (MongoCursor<Document> cursor = database.getCollection(BOOKS_COLLECTION).find(filter)
+                    .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                    .batchSize(CHANGES_BATCH_SIZE)
+                    .iterator()) {
+                List<Document> docs = new ArrayList<>(CHANGES_BATCH_SIZE);
+                while (cursor.hasNext()) {
+                    docs.add(cursor.next());
+                    if (docs.size() == CHANGES_BATCH_SIZE || !cursor.hasNext()) {
+                        changed.accept(mapBooksWithReviews(docs, identities, deadline));
+                        docs = new ArrayList<>(CHANGES_BATCH_SIZE);
+                    }
+                }
+            }
+            if (since != null) {
+                List<Integer> removedIds = new ArrayList<>();
+                for (Document doc : database.getCollection(TOMBSTONES_COLLECTION).find(filter)
+                        .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)) {
+                    removedIds.add(doc.getInteger("_id"));
+                }
+                removed.accept(removedIds);
+            }
+            return serverTime.toInstant().minus(CHANGES_OVERLAP);
+        } catch (MongoException e) {
+            throw selectFailed("Error reading changed books", e);
+        }
+    }
+
+    @Override
+    public Duration getTombstoneRetention() {
+        return TOMBSTONE_RETENTION;
+    }
+
+    /**
+     * Maps books like mapBooks, together with their embedded reviews and the users who wrote them.
+     */
+    private List<Book> mapBooksWithReviews(List<Document> docs, IdentityMap identities, Deadline deadline) {
+        Set<Integer> reviewerIds = new HashSet<>();
+        for (Document doc : docs) {
+            for (Document rDoc : doc.getList("reviews", Document.class, List.of())) {
+                reviewerIds.add(rDoc.getInteger("user_id"));
+            }
+        }
+        loadUsers(reviewerIds, identities, deadline);
+
+        List<Book> books = mapBooks(docs, identities, deadline);
+        for (int i = 0; i < books.size(); i++) {
+            Book book = books.get(i);
+            Document doc = docs.get(i);
+            book.setReviewers(identities);
+            for (Document rDoc : doc.getList("reviews", Document.class, List.of())) {
+                long epochDay = new java.sql.Date(rDoc.getDate("date").getTime()).toLocalDate().toEpochDay();
+                book.addReview(rDoc.getInteger("user_id"), rDoc.getInteger("rating"), rDoc.getString("text"), epochDay);
+            }
+            // the stored summary, not the one counted while adding the reviews
+            book.setRatingSummary(doc.getInteger("review_count", 0), ((Number) doc.get("rating_sum", 0)).intValue());
+        }
+        return books;
+    }
+
+    /**
+     * Served from the reference data, after reading the authors added since the last call.
+     */
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        referenceData.refreshAuthors(referenceLoader);
+        return new ArrayList<>(referenceData.getAuthors());
+    }
+
+    /**
+     * Served from the reference data, after reading the genres added since the last call.
+     */
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        referenceData.refreshGenres(referenceLoader);
+        return new ArrayList<>(referenceData.getGenres());
+    }
+
+    /**
+     * Reads the authors in the name range [prefix, prefix + COLLATION_MAX_CHAR) with the
+     * case-insensitive collation of the name_ci index, which serves the range and the sort,
+     * so only the returned authors are read. A regex could not use that index.
+     */
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        try {
+            Deadline deadline = defaultDeadline();
+            List<Document> docs = database.getCollection(AUTHORS_COLLECTION)
+                .find(and(gte("name", prefix), lt("name", prefix + COLLATION_MAX_CHAR)))
+                .collation(NAME_COLLATION)
+                .sort(Sorts.ascending("name"))
+                .limit(limit)
+                .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                .into(new ArrayList<>());
+
+            IdentityMap identities = newIdentityMap();
+            List<Author> result = new ArrayList<>();
+            Set<Integer> addedByIds = new HashSet<>();
+            for (Document doc : docs) {
+                Integer addedById = doc.getInteger("added_by");
+                if (addedById != null && referenceData.getAuthor(doc.getInteger("_id")) == null) {
+                    addedByIds.add(addedById);
+                }
+            }
+            loadUsers(addedByIds, identities, deadline);
+            for (Document doc : docs) {
+                Author held = referenceData.getAuthor(doc.getInteger("_id"));
+                result.add(held != null ? held : mapAuthor(doc, identities));
+            }
+            return result;
+        } catch (MongoException e) {
+            throw selectFailed("Error searching authors: " + prefix, e);
+        }
+    }
+
+    /**
+     * Reads the genres whose name starts with the prefix, like findAuthorsByPrefix.
+     */
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        try {
+            List<Genre> result = new ArrayList<>();
+            for (Document d : database.getCollection(GENRES_COLLECTION)
+                    .find(and(gte("name", prefix), lt("name", prefix + COLLATION_MAX_CHAR)))
+                    .collation(NAME_COLLATION)
+                    .sort(Sorts.ascending("name"))
+                    .limit(limit)
+                    .maxTime(maxTimeMillis(defaultDeadline()), TimeUnit.MILLISECONDS)) {
+                result.add(new Genre(d.getInteger("_id"), d.getString("name")));
+            }
+            return result;
+        } catch (MongoException e) {
+            throw selectFailed("Error searching genres: " + prefix, e);
+        }
+    }
+
+    /**
+     * Reads the authors and genres with an id above the watermark of the reference data.
+     */
+    private class ReferenceLoader implements ReferenceDataCache.Loader {
+
+        @Override
+        public List<Author> authorsAfter(int authorId) throws SelectException {
+            try {
+                Deadline deadline = defaultDeadline();
+                List<Document> docs = database.getCollection(AUTHORS_COLLECTION).find(gt("_id", authorId))
+                    .maxTime(maxTimeMillis(deadline), TimeUnit.MILLISECONDS)
+                    .into(new ArrayList<>());
+
+                IdentityMap identities = newIdentityMap();
+                Set<Integer> addedByIds = new HashSet<>();
+                for (Document doc : docs) {
+                    Integer addedById = doc.getInteger("added_by");
+                    if (addedById != null) addedByIds.add(addedById);
+                }
+                loadUsers(addedByIds, identities, deadline);
+                return docs.stream().map(doc -> mapAuthor(doc, identities)).collect(Collectors.toList());
+            } catch (MongoException e) {
+                throw selectFailed("Error fetching authors", e);
+            }
+        }
+
+        @Override
+        public List<Genre> genresAfter(int genreId) throws SelectException {
+            try {
+                List<Genre> result = new ArrayList<>();
+                for (Document d : database.getCollection(GENRES_COLLECTION).find(gt("_id", genreId))
+                        .maxTime(maxTimeMillis(defaultDeadline()), TimeUnit.MILLISECONDS)) {
+                    result.add(new Genre(d.getInteger("_id"), d.getString("name")));
+                }
+                return result;
+            } catch (MongoException e) {
+                throw selectFailed("Error fetching genres", e);
+            }
+        }
+    }
+
+    /**
+     * Removes a book, leaving a tombstone stamped with the time of the server so that
+     * local copies learn of the removal, see readChanges. The tombstone is written first:
+     * if the book is not removed after all, a copy misses the book rather than keeping a
+     * removed one.
+     */
+    @Override
+    public void removeBook(Book book) throws Exception {
+        try {
+            database.getCollection(TOMBSTONES_COLLECTION).updateOne(eq("_id", book.getBookId()),
+                Updates.currentDate("last_modified"), new UpdateOptions().upsert(true));
+            database.getCollection(BOOKS_COLLECTION).deleteOne(eq("_id", book.getBookId()));
+            facetCache.clear();
+        } catch (MongoException e) {
+            throw new Exception("Could not remove book", e);
+        }
+    }
+}
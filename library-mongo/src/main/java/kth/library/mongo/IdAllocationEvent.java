@@ -0,0 +1,20 @@
+package kth.library.mongo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for allocating the id of a new document from a counter.
+ */
+@Name("kth.library.IdAllocation")
+@Label("Id Allocation")
+@Category({"Library", "Database"})
+class IdAllocationEvent extends jdk.jfr.Event {
+
+    @Label("Collection")
+    String collection;
+
+    @Label("Id")
+    int id;
+}
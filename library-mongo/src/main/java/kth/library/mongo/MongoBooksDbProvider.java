@@ -0,0 +1,30 @@
+package kth.library.mongo;
+
+import kth.library.model.BooksDbProvider;
+import kth.library.model.IBooksDb;
+
+/**
+ * Registers BooksDbMongoImpl with ServiceLoader under the name "mongo".
+ */
+public class MongoBooksDbProvider implements BooksDbProvider {
+
+    @Override
+    public String getName() {
+        return "mongo";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "MongoDB";
+    }
+
+    @Override
+    public String getDefaultUrl() {
+        return "mongodb://localhost:27017/library_db";
+    }
+
+    @Override
+    public IBooksDb create() {
+        return new BooksDbMongoImpl();
+    }
+}
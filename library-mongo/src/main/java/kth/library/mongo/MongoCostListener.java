@@ -0,0 +1,41 @@
+package kth.library.mongo;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import kth.library.model.CostAccounting;
+
+/**
+ * Reports every MongoDB command to CostAccounting: one round trip, the size of
+ * the reply and the documents in it. The sync driver notifies listeners on the
+ * thread running the command, which is the thread measuring the operation.
+ */
+final class MongoCostListener implements CommandListener {
+
+    private static final BsonDocumentCodec CODEC = new BsonDocumentCodec();
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        if (!CostAccounting.isRecording()) {
+            return; // the reply is only encoded when someone records it
+        }
+        CostAccounting.roundTrip();
+        BsonDocument reply = event.getResponse();
+        CostAccounting.bytesReceived(new RawBsonDocument(reply, CODEC).getByteBuffer().remaining());
+        BsonDocument cursor = reply.isDocument("cursor") ? reply.getDocument("cursor") : null;
+        if (cursor != null && cursor.isArray("firstBatch")) {
+            CostAccounting.documentsRead(cursor.getArray("firstBatch").size());
+        } else if (cursor != null && cursor.isArray("nextBatch")) {
+            CostAccounting.documentsRead(cursor.getArray("nextBatch").size());
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        CostAccounting.roundTrip();
+    }
+}
@@ -0,0 +1,266 @@
+package kth.library.mongo;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * Times the MongoDB commands of a client and logs the ones slower than a threshold
+ * together with the shape of their filter or pipeline: the field names and the
+ * types of the values, never the values themselves. Commands on the users
+ * collection, whose filters hold credentials, are not logged at all. For a sample of the slow queries, the
+ * command is run again with explain("executionStats") on a background thread,
+ * and the plan (collection scan or index scan), the number of documents and index
+ * keys examined versus returned, and the server execution time are logged too.
+ * <p>
+ * Entries go to a rotating log file, by default in the user's home directory,
+ * opened once per file pattern and shared by the logs writing to it.
+ * Register the log with the client settings before connecting and attach the
+ * client afterwards, see BooksDbMongoImpl.
+ */
+final class SlowQueryLog implements CommandListener {
+
+    /** Rotating log files in the home directory, 1 MB each, at most 5. */
+    static final String DEFAULT_FILE_PATTERN = "%h/library-slow-queries.%g.log";
+    private static final int FILE_LIMIT_BYTES = 1024 * 1024;
+    private static final int FILE_COUNT = 5;
+
+    // commands that read with a filter or pipeline and can be explained
+    private static final Set<String> EXPLAINABLE = Set.of("find", "aggregate", "count", "distinct");
+    private static final int MAX_PENDING_EXPLAINS = 16;
+
+    private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+    // a logger with a single file handler per file pattern, so that several logs do not repeat each line
+    private static final Map<String, Logger> FILE_LOGGERS = new ConcurrentHashMap<>();
+
+    private final long thresholdNanos;
+    private final double explainSampleRate;
+    private final String filePattern;
+    private final Map<Integer, BsonDocument> startedCommands = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor explainer;
+    private volatile MongoClient client;
+
+    /**
+     * @param threshold commands taking at least this long are logged
+     * @param explainSampleRate the fraction of logged commands that are also explained, 0 to 1
+     * @param filePattern the FileHandler pattern of the log files
+     */
+    SlowQueryLog(Duration threshold, double explainSampleRate, String filePattern) {
+        this.thresholdNanos = threshold.toNanos();
+        this.explainSampleRate = explainSampleRate;
+        this.filePattern = filePattern;
+        // one thread, and explains beyond the queue are dropped rather than delaying anything
+        this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_EXPLAINS), runnable -> {
+                Thread thread = new Thread(runnable, "slow-query-explain");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Set the client used to explain slow commands, once it has been created.
+     */
+    void attach(MongoClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (EXPLAINABLE.contains(event.getCommandName()) && !onUsers(event.getCommandName(), event.getCommand())) {
+            // the event's document is only valid during the callback
+            startedCommands.put(event.getRequestId(), event.getCommand().clone());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        BsonDocument command = startedCommands.remove(event.getRequestId());
+        if (command == null || event.getElapsedTime(TimeUnit.NANOSECONDS) < thresholdNanos) {
+            return;
+        }
+        long millis = event.getElapsedTime(TimeUnit.MILLISECONDS);
+        log(Level.WARNING, "slow " + describe(event.getCommandName(), command) + " took " + millis + " ms");
+        if (client != null && ThreadLocalRandom.current().nextDouble() < explainSampleRate) {
+            String databaseName = event.getDatabaseName();
+            explainer.execute(() -> explain(databaseName, event.getCommandName(), command));
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        startedCommands.remove(event.getRequestId());
+    }
+
+    private void explain(String databaseName, String commandName, BsonDocument command) {
+        try {
+            BsonDocument explain = new BsonDocument("explain", explainableCopy(command))
+                .append("verbosity", new BsonString("executionStats"));
+            Document result = client.getDatabase(databaseName).runCommand(explain);
+            BsonDocument plan = result.toBsonDocument();
+
+            Set<String> stages = new TreeSet<>();
+            collectStages(plan, stages);
+            BsonDocument stats = findDocument(plan, "executionStats");
+            StringBuilder sb = new StringBuilder("explain ").append(describe(commandName, command))
+                .append(": plan ").append(stages.contains("COLLSCAN") ? "COLLSCAN" : stages.contains("IXSCAN") ? "IXSCAN" : "other")
+                .append(' ').append(stages);
+            if (stats != null) {
+                sb.append(", docs examined ").append(number(stats, "totalDocsExamined"))
+                  .append(", keys examined ").append(number(stats, "totalKeysExamined"))
+                  .append(", returned ").append(number(stats, "nReturned"))
+                  .append(", ").append(number(stats, "executionTimeMillis")).append(" ms");
+            }
+            log(Level.INFO, sb.toString());
+        } catch (MongoException e) {
+            log(Level.INFO, "explain " + describe(commandName, command) + " failed: " + e.getMessage());
+        }
+    }
+
+    // the command without the fields the driver adds for the session and the server
+    private static BsonDocument explainableCopy(BsonDocument command) {
+        BsonDocument copy = new BsonDocument();
+        for (Map.Entry<String, BsonValue> field : command.entrySet()) {
+            String name = field.getKey();
+            if (!name.startsWith("$") && !name.equals("lsid") && !name.equals("txnNumber")
+                    && !name.equals("maxTimeMS") && !name.startsWith("apiVersion") && !name.startsWith("apiStrict")
+                    && !name.startsWith("apiDeprecationErrors")) {
+                copy.append(name, field.getValue());
+            }
+        }
+        return copy;
+    }
+
+    private static boolean onUsers(String commandName, BsonDocument command) {
+        BsonValue collection = command.get(commandName);
+        return collection != null && collection.isString()
+            && collection.asString().getValue().equals(BooksDbMongoImpl.USERS_COLLECTION);
+    }
+
+    private static String describe(String commandName, BsonDocument command) {
+        StringBuilder sb = new StringBuilder(commandName);
+        BsonValue collection = command.get(commandName);
+        if (collection != null && collection.isString()) {
+            sb.append(" on ").append(collection.asString().getValue());
+        }
+        for (String part : new String[]{"filter", "query", "pipeline"}) {
+            if (command.containsKey(part)) {
+                sb.append(' ').append(part).append('=');
+                appendShape(command.get(part), sb);
+            }
+        }
+        if (command.containsKey("sort")) { // field names and directions only
+            sb.append(" sort=").append(command.get("sort").toString());
+        }
+        return sb.toString();
+    }
+
+    // the documents and arrays of a filter or pipeline with the type of each value in place of the value
+    private static void appendShape(BsonValue value, StringBuilder sb) {
+        if (value.isDocument()) {
+            sb.append('{');
+            String separator = "";
+            for (Map.Entry<String, BsonValue> field : value.asDocument().entrySet()) {
+                sb.append(separator).append(field.getKey()).append(": ");
+                appendShape(field.getValue(), sb);
+                separator = ", ";
+            }
+            sb.append('}');
+        } else if (value.isArray()) {
+            sb.append('[');
+            String separator = "";
+            for (BsonValue element : value.asArray()) {
+                sb.append(separator);
+                appendShape(element, sb);
+                separator = ", ";
+            }
+            sb.append(']');
+        } else {
+            sb.append(value.getBsonType().name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    // explain output nests plan stages in inputStage/inputStages, and in $cursor for aggregations
+    private static void collectStages(BsonValue value, Set<String> stages) {
+        if (value.isDocument()) {
+            for (Map.Entry<String, BsonValue> field : value.asDocument().entrySet()) {
+                if (field.getKey().equals("stage") && field.getValue().isString()) {
+                    stages.add(field.getValue().asString().getValue());
+                } else {
+                    collectStages(field.getValue(), stages);
+                }
+            }
+        } else if (value.isArray()) {
+            for (BsonValue element : value.asArray()) {
+                collectStages(element, stages);
+            }
+        }
+    }
+
+    private static BsonDocument findDocument(BsonValue value, String name) {
+        if (value.isDocument()) {
+            BsonDocument document = value.asDocument();
+            if (document.isDocument(name)) {
+                return document.getDocument(name);
+            }
+            for (BsonValue field : document.values()) {
+                BsonDocument found = findDocument(field, name);
+                if (found != null) return found;
+            }
+        } else if (value instanceof BsonArray array) {
+            for (BsonValue element : array) {
+                BsonDocument found = findDocument(element, name);
+                if (found != null) return found;
+            }
+        }
+        return null;
+    }
+
+    private static String number(BsonDocument stats, String name) {
+        BsonValue value = stats.get(name);
+        return value != null && value.isNumber() ? String.valueOf(value.asNumber().longValue()) : "?";
+    }
+
+    private void log(Level level, String message) {
+        // only opened once something is logged
+        FILE_LOGGERS.computeIfAbsent(filePattern, SlowQueryLog::openFile).log(level, message);
+    }
+
+    private static Logger openFile(String filePattern) {
+        try {
+            FileHandler handler = new FileHandler(filePattern, FILE_LIMIT_BYTES, FILE_COUNT, true);
+            handler.setFormatter(new SimpleFormatter());
+            Logger logger = Logger.getAnonymousLogger();
+            logger.addHandler(handler);
+            logger.setUseParentHandlers(false);
+            return logger;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not open slow query log " + filePattern + ", logging to the console", e);
+            return LOGGER;
+        }
+    }
+}
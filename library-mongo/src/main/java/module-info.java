@@ -0,0 +1,12 @@
+module kth.library.mongo {
+    requires transitive kth.library.model;
+    requires java.logging;
+    requires jdk.jfr;
+    requires org.mongodb.driver.sync.client;
+    requires org.mongodb.bson;
+    requires org.mongodb.driver.core;
+
+    exports kth.library.mongo;
+
+    provides kth.library.model.BooksDbProvider with kth.library.mongo.MongoBooksDbProvider;
+}
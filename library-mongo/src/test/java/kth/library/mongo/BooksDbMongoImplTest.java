@@ -0,0 +1,58 @@
+package kth.library.mongo;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import kth.library.model.Book;
+import kth.library.model.QueuedWrite;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Which writes of a failed bulkWrite of queued books and reviews are refused for
+ * good, told by the write errors the server returns with their index in the batch.
+ */
+class BooksDbMongoImplTest {
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int DOCUMENT_VALIDATION_FAILURE = 121;
+    private static final int MAX_TIME_MS_EXPIRED = 50;
+
+    private static List<QueuedWrite> queuedBooks(int count) {
+        List<QueuedWrite> writes = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            writes.add(QueuedWrite.ofBook("key" + i, Instant.now(), new Book("isbn" + i, "Title " + i, "Publisher")));
+        }
+        return writes;
+    }
+
+    private static MongoBulkWriteException failed(BulkWriteError... errors) {
+        return new MongoBulkWriteException(BulkWriteResult.unacknowledged(), List.of(errors), null,
+                                           new ServerAddress(), Set.of());
+    }
+
+    @Test
+    void writesWithAWriteErrorAreRefused() {
+        MongoBulkWriteException e = failed(
+            new BulkWriteError(DUPLICATE_KEY, "E11000 duplicate key", new BsonDocument(), 1),
+            new BulkWriteError(DOCUMENT_VALIDATION_FAILURE, "Document failed validation", new BsonDocument(), 3));
+
+        assertEquals(List.of("key2", "key4"), BooksDbMongoImpl.rejectedKeys(e, queuedBooks(4)));
+    }
+
+    @Test
+    void writeStoppedByATimeLimitIsNotRefused() {
+        MongoBulkWriteException e = failed(
+            new BulkWriteError(MAX_TIME_MS_EXPIRED, "operation exceeded time limit", new BsonDocument(), 0));
+
+        assertEquals(List.of(), BooksDbMongoImpl.rejectedKeys(e, queuedBooks(2)));
+    }
+}
@@ -0,0 +1,114 @@
+package kth.library.mongo;
+
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import kth.library.model.CostAccounting;
+import kth.library.model.OperationCost;
+import kth.library.model.RoundTripBudget;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The round trips of the MongoDB search path as reported by MongoCostListener,
+ * fed the command events the driver sends for a search: an aggregate over the
+ * books, a getMore for the rest of them and one find each for the authors and
+ * genres of the batch not in the reference data.
+ */
+class MongoCostListenerTest {
+
+    private static final ConnectionDescription CONNECTION =
+        new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private final CommandListener listener = new MongoCostListener();
+
+    @Test
+    void searchIsWithinItsBudget() {
+        RoundTripBudget.assertAtMost(4, () -> {
+            search(60);
+            return null;
+        });
+    }
+
+    @Test
+    void searchCountsTheDocumentsAndBytesRead() {
+        List<OperationCost> costs = new ArrayList<>();
+        CostAccounting accounting = new CostAccounting();
+        accounting.addListener(costs::add);
+
+        accounting.measure("search", () -> {
+            search(60);
+            return null;
+        });
+
+        assertEquals(4, costs.getFirst().getRoundTrips());
+        assertEquals(60 + 3 + 2, costs.getFirst().getDocumentsRead());
+        assertTrue(costs.getFirst().getBytesReceived() > 0);
+    }
+
+    @Test
+    void searchOverItsBudgetFails() {
+        AssertionError error = assertThrows(AssertionError.class, () -> RoundTripBudget.assertAtMost(3, () -> {
+            search(60);
+            return null;
+        }));
+        assertTrue(error.getMessage().contains("at most 3 round trips"));
+    }
+
+    @Test
+    void failedCommandIsARoundTrip() {
+        assertThrows(AssertionError.class, () -> RoundTripBudget.assertAtMost(0, () -> {
+            listener.commandFailed(new CommandFailedEvent(null, 1, 1, CONNECTION, "library", "find", 1_000,
+                                                          new MongoException("timed out")));
+            return null;
+        }));
+    }
+
+    @Test
+    void commandsOutsideAMeasuredOperationAreNotCounted() {
+        search(60); // no recorder on this thread, nothing to fail
+        assertFalse(CostAccounting.isRecording());
+    }
+
+    private void search(int books) {
+        int first = Math.min(books, 50);
+        succeeded("aggregate", reply("firstBatch", first));
+        if (books > first) {
+            succeeded("getMore", reply("nextBatch", books - first));
+        }
+        succeeded("find", reply("firstBatch", 3)); // authors
+        succeeded("find", reply("firstBatch", 2)); // genres
+    }
+
+    private void succeeded(String command, BsonDocument reply) {
+        listener.commandSucceeded(new CommandSucceededEvent(null, 1, 1, CONNECTION, "library", command, reply, 1_000));
+    }
+
+    private static BsonDocument reply(String batch, int documents) {
+        BsonArray docs = new BsonArray();
+        for (int i = 0; i < documents; i++) {
+            docs.add(new BsonDocument("_id", new BsonInt32(i)).append("title", new BsonString("Title " + i)));
+        }
+        BsonDocument cursor = new BsonDocument("id", new BsonInt64(0))
+            .append("ns", new BsonString("library.books"))
+            .append(batch, docs);
+        return new BsonDocument("cursor", cursor).append("ok", new BsonInt32(1));
+    }
+}
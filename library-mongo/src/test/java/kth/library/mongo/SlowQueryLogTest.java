@@ -0,0 +1,91 @@
+package kth.library.mongo;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What the slow query log writes to its file, fed the events the driver sends
+ * for a command slower than the threshold.
+ */
+class SlowQueryLogTest {
+
+    private static final ConnectionDescription CONNECTION =
+        new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+    private static final Duration THRESHOLD = Duration.ofMillis(100);
+
+    @TempDir
+    Path directory;
+
+    private int requestId;
+
+    private SlowQueryLog slowQueryLog() {
+        return new SlowQueryLog(THRESHOLD, 0, directory.resolve("slow.%g.log").toString());
+    }
+
+    private String logged() throws Exception {
+        return Files.readString(directory.resolve("slow.0.log"));
+    }
+
+    private void slowFind(SlowQueryLog log, String collection, BsonDocument filter) {
+        int id = ++requestId;
+        BsonDocument command = new BsonDocument("find", new BsonString(collection)).append("filter", filter);
+        log.commandStarted(new CommandStartedEvent(null, 1, id, CONNECTION, "library", "find", command));
+        long elapsed = TimeUnit.MILLISECONDS.toNanos(250);
+        log.commandSucceeded(new CommandSucceededEvent(null, 1, id, CONNECTION, "library", "find",
+                                                       new BsonDocument("ok", new BsonInt32(1)), elapsed));
+    }
+
+    @Test
+    void slowLoginDoesNotLogThePassword() throws Exception {
+        SlowQueryLog log = slowQueryLog();
+        slowFind(log, "users", new BsonDocument("username", new BsonString("admin"))
+            .append("password", new BsonString("s3cret-Pa55")));
+        slowFind(log, "books", new BsonDocument("isbn", new BsonString("9780000000001")));
+
+        String logged = logged();
+        assertFalse(logged.contains("s3cret-Pa55"));
+        assertFalse(logged.contains("on users"));
+    }
+
+    @Test
+    void filterIsLoggedWithTheTypesOfItsValues() throws Exception {
+        slowFind(slowQueryLog(), "books", new BsonDocument("title", new BsonString("Databases Illuminated"))
+            .append("rating", new BsonDocument("$gte", new BsonInt32(4)))
+            .append("genres", new BsonDocument("$in", new BsonArray(List.of(new BsonString("Poetry"))))));
+
+        String logged = logged();
+        assertTrue(logged.contains("slow find on books filter={title: string, rating: {$gte: int32}, genres: {$in: [string]}} took 250 ms"), logged);
+        assertFalse(logged.contains("Databases Illuminated"));
+        assertFalse(logged.contains("Poetry"));
+    }
+
+    @Test
+    void logsWritingToTheSameFileWriteEachLineOnce() throws Exception {
+        SlowQueryLog first = slowQueryLog();
+        slowQueryLog(); // a second log, as for another connection
+        slowFind(first, "books", new BsonDocument("isbn", new BsonString("9780000000001")));
+        slowFind(slowQueryLog(), "books", new BsonDocument("isbn", new BsonString("9780000000002")));
+
+        assertEquals(2, logged().split("slow find on books", -1).length - 1);
+    }
+}
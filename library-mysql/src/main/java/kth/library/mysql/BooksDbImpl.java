@@ -0,0 +1,1083 @@
+package kth.library.mysql;
+
+import kth.library.model.Author;
+import kth.library.model.BatchWriter;
+import kth.library.model.Book;
+import kth.library.model.BookFacets;
+import kth.library.model.BookQuery;
+import kth.library.model.BookSortField;
+import kth.library.model.Deadline;
+import kth.library.model.FacetCache;
+import kth.library.model.Genre;
+import kth.library.model.HydrationEvent;
+import kth.library.model.IBooksDb;
+import kth.library.model.IdentityMap;
+import kth.library.model.QueryDeadlines;
+import kth.library.model.QueuedWrite;
+import kth.library.model.ReferenceDataCache;
+import kth.library.model.Review;
+import kth.library.model.ReviewCursor;
+import kth.library.model.ReviewPage;
+import kth.library.model.SearchMode;
+import kth.library.model.User;
+import kth.library.model.WarmUp;
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.QueryTimeoutException;
+import kth.library.model.exceptions.RejectedWritesException;
+import kth.library.model.exceptions.SelectException;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Real implementation of IBooksDB that communicates with a MySQL database.
+ * Handles all SQL queries and transactions.
+ */
+public class BooksDbImpl implements IBooksDb, BatchWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(BooksDbImpl.class.getName());
+
+    private volatile ConnectionPool pool; // null until connected
+    private volatile IdentityMap sessionIdentities; // shared by all searches if enabled, null otherwise
+    private static final String JDBC_DRIVER = "com.mysql.cj.jdbc.Driver";
+    private static final String USER = "library_client";
+    private static final String PASSWORD = "lib123";
+    
+    // Number of books mapped before a batch is handed to a streaming search consumer
+    private static final int STREAM_BATCH_SIZE = 50;
+    private static final long FACET_CACHE_TTL_MILLIS = 30_000;
+    // connections open at most, each used by one call at a time, see ConnectionPool
+    private static final int POOL_MAX_SIZE = 8;
+    // how long a call waits for a connection when they are all in use
+    private static final long POOL_WAIT_MILLIS = 30_000;
+    // connections idle for longer are checked before they are used, see ConnectionPool
+    private static final long POOL_VALIDATE_AFTER_MILLIS = 30_000;
+    // seconds given to the first connection to answer when connecting
+    private static final int CONNECT_CHECK_SECONDS = 5;
+    // the indexes of MYSQL_DESIGN.txt the queries rely on, checked by warmUp
+    private static final List<String> EXPECTED_INDEXES = List.of(
+        "ix_book_avg_rating", "ix_book_review_count", "ix_book_isbn", "ix_book_genre_genre",
+        "ix_book_author_author", "ix_genre_name", "ix_review_book_date", "ix_author_name",
+        "ux_book_write_id", "ux_review_write_id");
+
+    private final FacetCache facetCache = new FacetCache(FACET_CACHE_TTL_MILLIS);
+    private final ReferenceDataCache referenceData = new ReferenceDataCache();
+    private final ReferenceDataCache.Loader referenceLoader = new ReferenceLoader();
+    private volatile QueryDeadlines deadlines = QueryDeadlines.defaults();
+
+    public BooksDbImpl() {
+        try {
+            Class.forName(JDBC_DRIVER);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Could not load JDBC driver: " + JDBC_DRIVER, e);
+        }
+    }
+
+    /**
+     * Opens a pool of connections, see ConnectionPool, and checks that the first one
+     * answers. Every call borrows a connection of its own, so calls may be made from
+     * several threads at the same time.
+     */
+    @Override
+    public boolean connect(String databaseUrl) throws ConnectionException {
+        if (pool != null) {
+            return true; // Already connected
+        }
+        ConnectionPool opened = new ConnectionPool(databaseUrl, USER, PASSWORD, POOL_MAX_SIZE, POOL_WAIT_MILLIS,
+                                                   POOL_VALIDATE_AFTER_MILLIS);
+        try (Connection connection = opened.getConnection()) {
+            if (!connection.isValid(CONNECT_CHECK_SECONDS)) {
+                throw new SQLException("The database did not answer");
+            }
+        } catch (SQLException e) {
+            throw new ConnectionException("Could not connect to database: " + databaseUrl, e);
+        }
+        pool = opened;
+        return true;
+    }
+
+    /**
+     * Borrows a connection from the pool, given back by closing it; a transaction
+     * left unfinished, e.g. by an exception, is rolled back when it is given back.
+     */
+    private Connection getConnection() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            throw new SQLException("Not connected to the database");
+        }
+        return current.getConnection();
+    }
+
+    /**
+     * Loads the authors and genres and checks that the indexes in MYSQL_DESIGN.txt
+     * exist, at the same time. Missing indexes are reported but do not fail the
+     * warm-up, searches only get slower; the client user may not create them.
+     */
+    @Override
+    public void warmUp() throws ConnectionException {
+        new WarmUp()
+            .step("authors and genres", () -> referenceData.refresh(referenceLoader))
+            .step("indexes", this::verifyIndexes)
+            .run();
+    }
+
+    private void verifyIndexes() throws SQLException {
+        List<String> missing = new ArrayList<>(EXPECTED_INDEXES);
+        String sql = "SELECT DISTINCT index_name FROM information_schema.statistics WHERE table_schema = DATABASE()";
+        try (Connection connection = getConnection();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                missing.remove(rs.getString(1));
+            }
+        }
+        if (!missing.isEmpty()) {
+            LOGGER.warning("Missing indexes, see MYSQL_DESIGN.txt: " + String.join(", ", missing));
+        }
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        try {
+            ConnectionPool current = pool;
+            pool = null;
+            if (current != null) {
+                current.close();
+            }
+            referenceData.clear();
+        } catch (SQLException e) {
+            throw new ConnectionException("Could not disconnect from database.", e);
+        }
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        String sql = "SELECT user_id, username FROM T_User WHERE username = ? AND password = ?";
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, defaultDeadline());
+            stmt.setString(1, username);
+            stmt.setString(2, password);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new User(rs.getInt("user_id"), rs.getString("username"));
+                }
+            }
+            return null;
+        } catch (SQLException e) {
+            throw selectFailed("Error logging in user: " + username, e);
+        }
+    }
+    
+    // --- Helper interface and method for executing search queries ---
+    
+    @FunctionalInterface
+    private interface StatementPreparer {
+        void prepare(PreparedStatement stmt) throws SQLException;
+    }
+
+    private void executeSearch(String sql, StatementPreparer preparer, Consumer<List<Book>> batchConsumer,
+                               String errorMessage, Deadline deadline) throws SelectException {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, deadline);
+            preparer.prepare(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                mapBooks(connection, rs, newIdentityMap(), batchConsumer, deadline);
+            }
+        } catch (SQLException e) {
+            throw selectFailed(errorMessage, e);
+        }
+    }
+
+    /**
+     * Sets the deadlines of reads; a statement still running at the deadline of its
+     * read is cancelled by the driver and the read fails with a QueryTimeoutException.
+     */
+    public void setQueryDeadlines(QueryDeadlines deadlines) {
+        this.deadlines = deadlines;
+    }
+
+    private Deadline defaultDeadline() {
+        return Deadline.after(deadlines.getDefault());
+    }
+
+    /**
+     * Gives a statement the time left of its read as query timeout, rounded up to whole
+     * seconds, the resolution of Statement.setQueryTimeout.
+     */
+    private static void applyDeadline(Statement stmt, Deadline deadline) throws SQLException {
+        long remaining = deadline.remainingMillis();
+        if (remaining == 0) {
+            throw new SQLTimeoutException("Deadline of " + deadline + " exceeded");
+        }
+        stmt.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (remaining + 999) / 1000));
+    }
+
+    /**
+     * Wraps a driver exception of a read, as a QueryTimeoutException if the statement
+     * was cancelled at its deadline.
+     */
+    private static SelectException selectFailed(String message, SQLException e) {
+        if (e instanceof SQLTimeoutException) {
+            return new QueryTimeoutException(message + " (timed out)", e);
+        }
+        return new SelectException(message, e);
+    }
+
+    /**
+     * Enables or disables a session-wide identity map. When enabled, authors, genres
+     * and users read once are shared by all following searches instead of per search.
+     */
+    public void setSessionIdentityMap(boolean enabled) {
+        sessionIdentities = enabled ? new IdentityMap() : null;
+    }
+
+    private IdentityMap newIdentityMap() {
+        return sessionIdentities != null ? sessionIdentities : new IdentityMap();
+    }
+
+    // --- Helper method to map ResultSet to Books, handed over STREAM_BATCH_SIZE at a time ---
+    // Authors, genres and users are shared through the identity map, one object per id
+    private void mapBooks(Connection connection, ResultSet rs, IdentityMap identities,
+                          Consumer<List<Book>> batchConsumer, Deadline deadline) throws SQLException {
+        List<Book> books = new ArrayList<>(STREAM_BATCH_SIZE);
+        HydrationEvent event = new HydrationEvent();
+        event.begin();
+        while (rs.next()) {
+            int id = rs.getInt("book_id");
+            String isbn = rs.getString("isbn");
+            String title = rs.getString("title");
+            String publisher = identities.canonical(rs.getString("publisher"));
+            
+            Book book = new Book(id, isbn, title, publisher);
+            
+            // Set Added By User if present
+            int userId = rs.getInt("added_by"); // 0 if null
+            if (!rs.wasNull()) {
+                String username = rs.getString("added_by_username"); // Alias used in queries
+                book.setAddedBy(identities.user(userId, username));
+            }
+            // reviews are not read with the search, only their count and rating sum
+            book.setRatingSummary(rs.getInt("review_count"), rs.getInt("rating_sum"));
+            
+            books.add(book);
+            if (books.size() == STREAM_BATCH_SIZE) {
+                fetchAuthorsAndGenres(connection, books, identities, deadline);
+                commitHydration(event, books);
+                batchConsumer.accept(books);
+                books = new ArrayList<>(STREAM_BATCH_SIZE);
+                event = new HydrationEvent();
+                event.begin();
+            }
+        }
+        if (!books.isEmpty()) {
+            fetchAuthorsAndGenres(connection, books, identities, deadline);
+            commitHydration(event, books);
+            batchConsumer.accept(books);
+        }
+    }
+
+    private static void commitHydration(HydrationEvent event, List<Book> books) {
+        if (event.shouldCommit()) {
+            event.backend = "MySQL";
+            event.books = books.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads the authors and the genres of a batch of books with one query each,
+     * the books selected by their ids with IN (...), instead of two per book.
+     */
+    private void fetchAuthorsAndGenres(Connection connection, List<Book> books, IdentityMap identities,
+                                       Deadline deadline) throws SQLException {
+        Map<Integer, Book> byId = new HashMap<>();
+        for (Book book : books) {
+            byId.put(book.getBookId(), book);
+        }
+        String in = String.join(",", Collections.nCopies(byId.size(), "?"));
+        fetchAuthors(connection, byId, in, identities, deadline);
+        fetchGenres(connection, byId, in, identities, deadline);
+    }
+
+    private void fetchAuthors(Connection connection, Map<Integer, Book> byId, String in, IdentityMap identities,
+                              Deadline deadline) throws SQLException {
+        String sql = "SELECT ba.book_id, a.author_id, a.name, a.birthdate, a.added_by, u.username as added_by_username " +
+                     "FROM T_Author a " +
+                     "JOIN T_Book_Author ba ON a.author_id = ba.author_id " +
+                     "LEFT JOIN T_User u ON a.added_by = u.user_id " +
+                     "WHERE ba.book_id IN (" + in + ") " +
+                     "ORDER BY ba.book_id, a.author_id";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, deadline);
+            bind(stmt, new ArrayList<>(byId.keySet()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt("author_id");
+                    Author author = identities.getAuthor(id);
+                    if (author == null) {
+                        String name = identities.canonical(rs.getString("name"));
+                        Date birthDate = rs.getDate("birthdate");
+                        author = new Author(id, name, birthDate);
+
+                        int userId = rs.getInt("added_by");
+                        if (!rs.wasNull()) {
+                            author.setAddedBy(identities.user(userId, rs.getString("added_by_username")));
+                        }
+                        author = identities.putAuthor(author);
+                    }
+                    
+                    byId.get(rs.getInt("book_id")).addAuthor(author);
+                }
+            }
+        }
+    }
+    
+    private void fetchGenres(Connection connection, Map<Integer, Book> byId, String in, IdentityMap identities,
+                             Deadline deadline) throws SQLException {
+        String sql = "SELECT bg.book_id, g.genre_id, g.name FROM T_Genre g " +
+                     "JOIN T_Book_Genre bg ON g.genre_id = bg.genre_id " +
+                     "WHERE bg.book_id IN (" + in + ") " +
+                     "ORDER BY bg.book_id, g.genre_id";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, deadline);
+            bind(stmt, new ArrayList<>(byId.keySet()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt("genre_id");
+                    String name = rs.getString("name");
+                    byId.get(rs.getInt("book_id")).addGenre(identities.genre(id, name));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads one page of the reviews of a book, continuing after the (date, user id) of the
+     * last review read, so that with an index on T_Review(book_id, review_date, user_id)
+     * a page costs the same however far the user has scrolled.
+     */
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        String sql = "SELECT r.rating, r.review_text, r.review_date, r.user_id, u.username " +
+                     "FROM T_Review r " +
+                     "JOIN T_User u ON r.user_id = u.user_id " +
+                     "WHERE r.book_id = ? " +
+                     (after != null ? "AND (r.review_date > ? OR (r.review_date = ? AND r.user_id > ?)) " : "") +
+                     "ORDER BY r.review_date, r.user_id LIMIT ?";
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, defaultDeadline());
+            int index = 1;
+            stmt.setInt(index++, book.getBookId());
+            if (after != null) {
+                Date day = Date.valueOf(LocalDate.ofEpochDay(after.getEpochDay()));
+                stmt.setDate(index++, day);
+                stmt.setDate(index++, day);
+                stmt.setInt(index++, after.getUserId());
+            }
+            stmt.setInt(index, limit + 1);
+            IdentityMap identities = newIdentityMap();
+            List<Review> reviews = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    User user = identities.user(rs.getInt("user_id"), rs.getString("username"));
+                    reviews.add(new Review(book, user, rs.getInt("rating"), rs.getString("review_text"),
+                                           rs.getDate("review_date")));
+                }
+            }
+            return ReviewPage.of(reviews, after != null ? after.getPosition() : 0, limit);
+        } catch (SQLException e) {
+            throw selectFailed("Error fetching reviews of book: " + book.getTitle(), e);
+        }
+    }
+
+    private List<Book> collectBooks(SearchMode mode, String searchFor) throws SelectException {
+        List<Book> books = new ArrayList<>();
+        searchBooks(mode, searchFor, books::addAll);
+        return books;
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return collectBooks(SearchMode.Title, title);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return collectBooks(SearchMode.ISBN, isbn);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        return collectBooks(SearchMode.Author, author);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        return collectBooks(SearchMode.Genre, genre);
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return collectBooks(SearchMode.Rating, String.valueOf(rating));
+    }
+
+    // --- Multi-criteria, sorted and paged searches ---
+
+    /**
+     * Compiles the criteria of a query into one parameterized statement, a derived table "q"
+     * with one row per matching book including the added_by username. Ratings are filtered
+     * and sorted on the avg_rating and review_count columns that addReview keeps up to date,
+     * see MYSQL_DESIGN.txt for those columns and their indexes.
+     * Callers append further conditions with "AND ...", then ORDER BY/LIMIT.
+     */
+    private String querySql(BookQuery query, List<Object> params) {
+        List<String> conditions = new ArrayList<>();
+        if (query.getTitleContains() != null) {
+            conditions.add("b.title LIKE ?");
+            params.add("%" + query.getTitleContains() + "%");
+        }
+        if (query.getIsbn() != null) {
+            conditions.add("b.isbn = ?");
+            params.add(query.getIsbn());
+        }
+        if (query.getPublisher() != null) {
+            conditions.add("b.publisher = ?");
+            params.add(query.getPublisher());
+        }
+        if (query.getAuthor() != null) {
+            conditions.add("EXISTS (SELECT 1 FROM T_Book_Author ba JOIN T_Author a ON ba.author_id = a.author_id " +
+                           "WHERE ba.book_id = b.book_id AND a.name LIKE ?)");
+            params.add("%" + query.getAuthor() + "%");
+        }
+        if (query.getGenre() != null) {
+            // a genre held by the reference data is matched on its id, without joining T_Genre
+            Genre genre = referenceData.getGenre(query.getGenre());
+            if (genre != null) {
+                conditions.add("EXISTS (SELECT 1 FROM T_Book_Genre bg WHERE bg.book_id = b.book_id AND bg.genre_id = ?)");
+                params.add(genre.getGenreId());
+            } else {
+                conditions.add("EXISTS (SELECT 1 FROM T_Book_Genre bg JOIN T_Genre g ON bg.genre_id = g.genre_id " +
+                               "WHERE bg.book_id = b.book_id AND g.name = ?)");
+                params.add(query.getGenre());
+            }
+        }
+        String sql = "SELECT q.* FROM (SELECT b.*, u.username as added_by_username " +
+                     "FROM T_Book b LEFT JOIN T_User u ON b.added_by = u.user_id " +
+                     (conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions)) +
+                     ") q WHERE TRUE ";
+        if (query.getMinRating() != null) {
+            // books without reviews have no rating, not a rating of 0
+            sql += "AND q.review_count > 0 AND q.avg_rating >= ? ";
+            params.add(query.getMinRating());
+        }
+        return sql;
+    }
+
+    /**
+     * Appends the sort order and limit of the query to a statement built by querySql.
+     */
+    private static void finishSql(StringBuilder sql, BookQuery query, int skip, List<Object> params) {
+        if (query.getSortBy() != null) {
+            String column = sortColumn(query.getSortBy());
+            String direction = query.isDescending() ? "DESC" : "ASC";
+            sql.append("ORDER BY ").append(column).append(' ').append(direction)
+               .append(", q.book_id ").append(direction).append(' ');
+        }
+        if (query.getLimit() > 0) {
+            sql.append("LIMIT ? OFFSET ?");
+            params.add(query.getLimit());
+            params.add(skip);
+        }
+    }
+
+    private static String sortColumn(BookSortField sortBy) {
+        return switch (sortBy) {
+            case Title -> "q.title";
+            case ISBN -> "q.isbn";
+            case Publisher -> "q.publisher";
+            case Rating -> "q.avg_rating";
+            case ReviewCount -> "q.review_count";
+            case Added -> "q.book_id";
+        };
+    }
+
+    private static void bind(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    /**
+     * Streams the books matching the query batch by batch as rows are mapped.
+     * All criteria, the sort order and the limit are evaluated by one statement.
+     */
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(querySql(query, params));
+        finishSql(sql, query, 0, params);
+        executeSearch(sql.toString(), stmt -> bind(stmt, params), batchConsumer, "Error finding books: " + query,
+                     Deadline.after(deadlines.forQuery(query)));
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        List<Object> params = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM (" + querySql(query, params) + ") c";
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, Deadline.after(deadlines.forQuery(query)));
+            bind(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw selectFailed("Error counting books: " + query, e);
+        }
+    }
+
+    /**
+     * Counts all facets with one statement: the matching books are a common table expression
+     * grouped once per facet, the groups are returned together with UNION ALL as
+     * (facet, value, count) rows. Results are cached for a short time, see FacetCache.
+     */
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        BookFacets cached = facetCache.get(query);
+        if (cached != null) {
+            return cached;
+        }
+        List<Object> params = new ArrayList<>();
+        String sql = "WITH hits AS (" + querySql(query, params) + ") " +
+                     "SELECT 'genre', g.name, COUNT(*) FROM hits h " +
+                     "JOIN T_Book_Genre bg ON bg.book_id = h.book_id JOIN T_Genre g ON g.genre_id = bg.genre_id " +
+                     "GROUP BY g.genre_id, g.name " +
+                     "UNION ALL SELECT 'author', a.name, COUNT(*) FROM hits h " +
+                     "JOIN T_Book_Author ba ON ba.book_id = h.book_id JOIN T_Author a ON a.author_id = ba.author_id " +
+                     "GROUP BY a.author_id, a.name " +
+                     "UNION ALL SELECT 'publisher', h.publisher, COUNT(*) FROM hits h GROUP BY h.publisher " +
+                     "UNION ALL SELECT 'rating', CAST(LEAST(FLOOR(h.avg_rating), ?) AS CHAR), COUNT(*) FROM hits h " +
+                     "GROUP BY 2 " +
+                     "UNION ALL SELECT 'total', NULL, COUNT(*) FROM hits h";
+        params.add(BookFacets.RATING_BUCKETS.length - 1);
+
+        Map<String, Integer> genres = new HashMap<>();
+        Map<String, Integer> authors = new HashMap<>();
+        Map<String, Integer> publishers = new HashMap<>();
+        Map<String, Integer> ratings = new LinkedHashMap<>();
+        int total = 0;
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, Deadline.after(deadlines.forQuery(query)));
+            bind(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String value = rs.getString(2);
+                    int count = rs.getInt(3);
+                    switch (rs.getString(1)) {
+                        case "genre" -> genres.merge(value, count, Integer::sum);
+                        case "author" -> authors.merge(value, count, Integer::sum);
+                        case "publisher" -> publishers.merge(value, count, Integer::sum);
+                        case "rating" -> ratings.put(BookFacets.ratingBucket(Double.parseDouble(value)), count);
+                        default -> total = count;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw selectFailed("Error counting facets: " + query, e);
+        }
+        BookFacets facets = new BookFacets(total, genres, authors, publishers, ratings);
+        facetCache.put(query, facets);
+        return facets;
+    }
+
+    /**
+     * Fetches one page using a keyset condition on (sort column, book_id) with ORDER BY and LIMIT,
+     * so that only the rows of the page are read and hydrated. MySQL sorts NULL before any
+     * value, so the condition has a branch of its own for rows and cursors without a value.
+     */
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(querySql(query, params));
+        if (after != null) {
+            String column = sortColumn(query.getSortBy());
+            String cmp = query.isDescending() ? "<" : ">";
+            Object value = query.getSortBy().valueOf(after);
+            if (value == null) {
+                // ascending, the other NULLs after the cursor and then all values; descending, only NULLs
+                sql.append("AND (").append(column).append(" IS NULL AND q.book_id ").append(cmp).append(" ?")
+                   .append(query.isDescending() ? ") " : " OR " + column + " IS NOT NULL) ");
+                params.add(after.getBookId());
+            } else {
+                // descending, the NULLs come after all values
+                sql.append("AND (").append(column).append(' ').append(cmp).append(" ? OR (")
+                   .append(column).append(" = ? AND q.book_id ").append(cmp).append(" ?)")
+                   .append(query.isDescending() ? " OR " + column + " IS NULL) " : ") ");
+                params.add(value);
+                params.add(value);
+                params.add(after.getBookId());
+            }
+        }
+        finishSql(sql, query, skip, params);
+
+        List<Book> books = new ArrayList<>();
+        executeSearch(sql.toString(), stmt -> bind(stmt, params), books::addAll,
+                      "Error fetching page of books: " + query, Deadline.after(deadlines.forQuery(query)));
+        return books;
+    }
+
+    @Override
+    public void addBook(Book book) throws InsertException {
+        String insertBookSql = "INSERT INTO T_Book (isbn, title, publisher, added_by) VALUES (?, ?, ?, ?)";
+        String insertAuthorRelSql = "INSERT INTO T_Book_Author (book_id, author_id) VALUES (?, ?)";
+        String insertGenreRelSql = "INSERT INTO T_Book_Genre (book_id, genre_id) VALUES (?, ?)";
+        
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            
+            int bookId;
+            try (PreparedStatement stmt = connection.prepareStatement(insertBookSql, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setString(1, book.getIsbn());
+                stmt.setString(2, book.getTitle());
+                stmt.setString(3, book.getPublisher());
+                
+                if (book.getAddedBy() != null) {
+                    stmt.setInt(4, book.getAddedBy().getId());
+                } else {
+                    stmt.setNull(4, Types.INTEGER);
+                }
+                
+                stmt.executeUpdate(); // for INSERT, UPDATE, DELETE
+                
+                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                    if (generatedKeys.next()) {
+                        bookId = generatedKeys.getInt(1);
+                    } else {
+                        throw new SQLException("Creating book failed, no ID obtained.");
+                    }
+                }
+            }
+            
+            // Insert Author Relations
+            try (PreparedStatement stmt = connection.prepareStatement(insertAuthorRelSql)) {
+                for (Author author : book.getAuthors()) {
+                    stmt.setInt(1, bookId);
+                    stmt.setInt(2, author.getAuthorId());
+                    stmt.executeUpdate();
+                }
+            }
+            
+            // Insert Genre Relations
+            try (PreparedStatement stmt = connection.prepareStatement(insertGenreRelSql)) {
+                for (Genre genre : book.getGenres()) {
+                    stmt.setInt(1, bookId);
+                    stmt.setInt(2, genre.getGenreId());
+                    stmt.executeUpdate();
+                }
+            }
+            
+            connection.commit();
+            facetCache.clear();
+            
+        } catch (SQLException e) {
+            // the transaction is rolled back when the connection is given back
+            throw new InsertException("Error adding book: " + book.getTitle(), e);
+        }
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+        
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+        
+    }
+
+    /**
+     * Adds a review and, in the same transaction, updates the rating sum, review count
+     * and average rating stored on the book, which top-N queries sort on.
+     */
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        String sql = "INSERT INTO T_Review (book_id, user_id, rating, review_text, review_date) VALUES (?, ?, ?, ?, CURRENT_DATE)";
+        // MySQL assigns left to right, so avg_rating is computed from the updated sum and count
+        String updateRatingSql = "UPDATE T_Book SET rating_sum = rating_sum + ?, review_count = review_count + 1, " +
+                                 "avg_rating = rating_sum * 1e0 / review_count WHERE book_id = ?";
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setInt(1, book.getBookId());
+                stmt.setInt(2, user.getId());
+                stmt.setInt(3, rating);
+                if (reviewText != null) {
+                    stmt.setString(4, reviewText);
+                } else {
+                    stmt.setNull(4, Types.VARCHAR);
+                }
+                stmt.executeUpdate();
+            }
+
+            try (PreparedStatement stmt = connection.prepareStatement(updateRatingSql)) {
+                stmt.setInt(1, rating);
+                stmt.setInt(2, book.getBookId());
+                stmt.executeUpdate();
+            }
+
+            connection.commit();
+            facetCache.clear();
+        } catch (SQLException e) {
+            // the transaction is rolled back when the connection is given back
+            throw new InsertException("Error adding review for book: " + book.getTitle(), e);
+        }
+    }
+
+    /**
+     * Writes the batch in one transaction, a round trip per kind of statement with
+     * executeBatch. The write_id of every book and review added is stored with it;
+     * the writes whose write_id is found are skipped. A review is inserted from a
+     * select of its book, so the review of a book removed since is not inserted and
+     * does not count towards the ratings. Rows the database refuses for good roll
+     * the transaction back and are reported by a RejectedWritesException naming
+     * their writes, see executeBatch.
+     */
+    @Override
+    public void writeBatch(List<QueuedWrite> writes) throws InsertException {
+        List<QueuedWrite> books = new ArrayList<>();
+        List<QueuedWrite> reviews = new ArrayList<>();
+        for (QueuedWrite write : writes) {
+            (write.isReview() ? reviews : books).add(write);
+        }
+        String insertBookSql = "INSERT INTO T_Book (isbn, title, publisher, added_by, write_id) VALUES (?, ?, ?, ?, ?)";
+        String insertAuthorRelSql = "INSERT INTO T_Book_Author (book_id, author_id) VALUES (?, ?)";
+        String insertGenreRelSql = "INSERT INTO T_Book_Genre (book_id, genre_id) VALUES (?, ?)";
+        String insertReviewSql = "INSERT INTO T_Review (book_id, user_id, rating, review_text, review_date, write_id) " +
+                                 "SELECT book_id, ?, ?, ?, ?, ? FROM T_Book WHERE book_id = ?";
+        String updateRatingSql = "UPDATE T_Book SET rating_sum = rating_sum + ?, review_count = review_count + 1, " +
+                                 "avg_rating = rating_sum * 1e0 / review_count WHERE book_id = ?";
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+
+            Set<String> written = findWritten(connection, "T_Book", books);
+            books.removeIf(write -> written.contains(write.getKey()));
+            if (!books.isEmpty()) {
+                List<Integer> bookIds = new ArrayList<>(books.size());
+                try (PreparedStatement stmt = connection.prepareStatement(insertBookSql, Statement.RETURN_GENERATED_KEYS)) {
+                    for (QueuedWrite write : books) {
+                        Book book = write.getBook();
+                        stmt.setString(1, book.getIsbn());
+                        stmt.setString(2, book.getTitle());
+                        stmt.setString(3, book.getPublisher());
+                        if (book.getAddedBy() != null) {
+                            stmt.setInt(4, book.getAddedBy().getId());
+                        } else {
+                            stmt.setNull(4, Types.INTEGER);
+                        }
+                        stmt.setString(5, write.getKey());
+                        stmt.addBatch();
+                    }
+                    executeBatch(stmt, books);
+                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                        while (generatedKeys.next()) {
+                            bookIds.add(generatedKeys.getInt(1));
+                        }
+                    }
+                }
+                if (bookIds.size() != books.size()) {
+                    throw new SQLException("Adding books failed, " + bookIds.size() + " IDs obtained for " + books.size());
+                }
+                try (PreparedStatement authorStmt = connection.prepareStatement(insertAuthorRelSql);
+                     PreparedStatement genreStmt = connection.prepareStatement(insertGenreRelSql)) {
+                    // the write each row was added for
+                    List<QueuedWrite> authorRows = new ArrayList<>();
+                    List<QueuedWrite> genreRows = new ArrayList<>();
+                    for (int i = 0; i < books.size(); i++) {
+                        for (Author author : books.get(i).getBook().getAuthors()) {
+                            authorStmt.setInt(1, bookIds.get(i));
+                            authorStmt.setInt(2, author.getAuthorId());
+                            authorStmt.addBatch();
+                            authorRows.add(books.get(i));
+                        }
+                        for (Genre genre : books.get(i).getBook().getGenres()) {
+                            genreStmt.setInt(1, bookIds.get(i));
+                            genreStmt.setInt(2, genre.getGenreId());
+                            genreStmt.addBatch();
+                            genreRows.add(books.get(i));
+                        }
+                    }
+                    executeBatch(authorStmt, authorRows);
+                    executeBatch(genreStmt, genreRows);
+                }
+            }
+
+            Set<String> reviewed = findWritten(connection, "T_Review", reviews);
+            reviews.removeIf(write -> reviewed.contains(write.getKey()));
+            if (!reviews.isEmpty()) {
+                int[] inserted;
+                try (PreparedStatement stmt = connection.prepareStatement(insertReviewSql)) {
+                    for (QueuedWrite write : reviews) {
+                        Review review = write.getReview();
+                        stmt.setInt(1, review.getUser().getId());
+                        stmt.setInt(2, review.getRating());
+                        if (review.getReviewText() != null) {
+                            stmt.setString(3, review.getReviewText());
+                        } else {
+                            stmt.setNull(3, Types.VARCHAR);
+                        }
+                        stmt.setDate(4, review.getDate());
+                        stmt.setString(5, write.getKey());
+                        stmt.setInt(6, write.getBook().getBookId());
+                        stmt.addBatch();
+                    }
+                    inserted = executeBatch(stmt, reviews);
+                }
+                try (PreparedStatement stmt = connection.prepareStatement(updateRatingSql)) {
+                    List<QueuedWrite> updated = new ArrayList<>();
+                    for (int i = 0; i < reviews.size(); i++) {
+                        if (inserted[i] > 0) {
+                            stmt.setInt(1, reviews.get(i).getReview().getRating());
+                            stmt.setInt(2, reviews.get(i).getBook().getBookId());
+                            stmt.addBatch();
+                            updated.add(reviews.get(i));
+                        }
+                    }
+                    executeBatch(stmt, updated);
+                }
+            }
+
+            connection.commit();
+            facetCache.clear();
+        } catch (SQLException e) {
+            // the transaction is rolled back when the connection is given back
+            throw new InsertException("Error writing " + writes.size() + " queued books and reviews", e);
+        }
+    }
+
+    /**
+     * Execute the rows added to stmt, each added for the write at the same position
+     * of rowWrites.
+     *
+     * @throws RejectedWritesException if rows break a constraint or hold values the
+     *         column does not accept, SQLSTATE class 23 or 22, naming their writes;
+     *         the failing rows are told by the update counts, or are the first row
+     *         not counted if the driver stopped there
+     * @throws SQLException for other failures, e.g. a lost connection or a deadlock,
+     *         after which the whole batch is written again
+     */
+    private static int[] executeBatch(PreparedStatement stmt, List<QueuedWrite> rowWrites)
+            throws SQLException, RejectedWritesException {
+        try {
+            return stmt.executeBatch();
+        } catch (BatchUpdateException e) {
+            String state = e.getSQLState();
+            if (state == null || !(state.startsWith("23") || state.startsWith("22"))) {
+                throw e;
+            }
+            int[] counts = e.getUpdateCounts();
+            Set<String> rejected = new LinkedHashSet<>();
+            for (int i = 0; i < counts.length && i < rowWrites.size(); i++) {
+                if (counts[i] == Statement.EXECUTE_FAILED) {
+                    rejected.add(rowWrites.get(i).getKey());
+                }
+            }
+            if (rejected.isEmpty() && counts.length < rowWrites.size()) {
+                rejected.add(rowWrites.get(counts.length).getKey());
+            }
+            if (rejected.isEmpty()) {
+                throw e;
+            }
+            throw new RejectedWritesException("The database refused " + rejected.size() + " of the queued writes: "
+                                              + e.getMessage(), new ArrayList<>(rejected), e);
+        }
+    }
+
+    /**
+     * @return the keys of the writes whose write_id is found in the table
+     */
+    private Set<String> findWritten(Connection connection, String table, List<QueuedWrite> writes) throws SQLException {
+        if (writes.isEmpty()) {
+            return Set.of();
+        }
+        String sql = "SELECT write_id FROM " + table + " WHERE write_id IN (" +
+                     String.join(", ", Collections.nCopies(writes.size(), "?")) + ")";
+        Set<String> written = new HashSet<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < writes.size(); i++) {
+                stmt.setString(i + 1, writes.get(i).getKey());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    written.add(rs.getString(1));
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Served from the reference data, after reading the authors added since the last call.
+     */
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        referenceData.refreshAuthors(referenceLoader);
+        return new ArrayList<>(referenceData.getAuthors());
+    }
+
+    /**
+     * Served from the reference data, after reading the genres added since the last call.
+     */
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        referenceData.refreshGenres(referenceLoader);
+        return new ArrayList<>(referenceData.getGenres());
+    }
+
+    /**
+     * Reads the authors whose name starts with the prefix. LIKE with a constant prefix and
+     * no leading wildcard is a range scan of ix_author_name; the default collation of the
+     * column ignores case.
+     */
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        String sql = "SELECT a.author_id, a.name, a.birthdate, a.added_by, u.username as added_by_username " +
+                     "FROM T_Author a LEFT JOIN T_User u ON a.added_by = u.user_id " +
+                     "WHERE a.name LIKE ? ESCAPE '!' ORDER BY a.name LIMIT ?";
+        List<Author> authors = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, defaultDeadline());
+            stmt.setString(1, likePrefix(prefix));
+            stmt.setInt(2, limit);
+            IdentityMap identities = newIdentityMap();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Author author = new Author(rs.getInt("author_id"), identities.canonical(rs.getString("name")),
+                                               rs.getDate("birthdate"));
+                    int userId = rs.getInt("added_by");
+                    if (!rs.wasNull()) {
+                        author.setAddedBy(identities.user(userId, rs.getString("added_by_username")));
+                    }
+                    authors.add(author);
+                }
+            }
+            return authors;
+        } catch (SQLException e) {
+            throw selectFailed("Error searching authors: " + prefix, e);
+        }
+    }
+
+    /**
+     * Reads the genres whose name starts with the prefix, like findAuthorsByPrefix.
+     */
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        String sql = "SELECT genre_id, name FROM T_Genre WHERE name LIKE ? ESCAPE '!' ORDER BY name LIMIT ?";
+        List<Genre> genres = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            applyDeadline(stmt, defaultDeadline());
+            stmt.setString(1, likePrefix(prefix));
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    genres.add(new Genre(rs.getInt("genre_id"), rs.getString("name")));
+                }
+            }
+            return genres;
+        } catch (SQLException e) {
+            throw selectFailed("Error searching genres: " + prefix, e);
+        }
+    }
+
+    // a LIKE pattern matching the prefix literally, with '!' as the escape character
+    private static String likePrefix(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    /**
+     * Reads the authors and genres with an id above the watermark of the reference data.
+     */
+    private class ReferenceLoader implements ReferenceDataCache.Loader {
+
+        @Override
+        public List<Author> authorsAfter(int authorId) throws SelectException {
+            String sql = "SELECT a.author_id, a.name, a.birthdate, a.added_by, u.username as added_by_username " +
+                         "FROM T_Author a LEFT JOIN T_User u ON a.added_by = u.user_id " +
+                         "WHERE a.author_id > ?";
+            List<Author> authors = new ArrayList<>();
+            try (Connection connection = getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+                applyDeadline(stmt, defaultDeadline());
+                stmt.setInt(1, authorId);
+                IdentityMap identities = newIdentityMap();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Author author = new Author(rs.getInt("author_id"), identities.canonical(rs.getString("name")),
+                                                   rs.getDate("birthdate"));
+                        int userId = rs.getInt("added_by");
+                        if (!rs.wasNull()) {
+                            author.setAddedBy(identities.user(userId, rs.getString("added_by_username")));
+                        }
+                        authors.add(author);
+                    }
+                }
+                return authors;
+            } catch (SQLException e) {
+                throw selectFailed("Error fetching authors", e);
+            }
+        }
+
+        @Override
+        public List<Genre> genresAfter(int genreId) throws SelectException {
+            String sql = "SELECT genre_id, name FROM T_Genre WHERE genre_id > ?";
+            List<Genre> genres = new ArrayList<>();
+            try (Connection connection = getConnection();
+                 PreparedStatement stmt = connection.prepareStatement(sql)) {
+                applyDeadline(stmt, defaultDeadline());
+                stmt.setInt(1, genreId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        genres.add(new Genre(rs.getInt("genre_id"), rs.getString("name")));
+                    }
+                }
+                return genres;
+            } catch (SQLException e) {
+                throw selectFailed("Error fetching genres", e);
+            }
+        }
+    }
+
+    @Override
+    public void removeBook(Book book) throws Exception {
+        String sql = "DELETE FROM T_Book WHERE book_id = ?";
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, book.getBookId());
+            int rows = stmt.executeUpdate();
+            if (rows == 0) {
+                throw new Exception("Book not found");
+            }
+            facetCache.clear();
+        } catch (SQLException e) {
+            throw new Exception("Could not remove book", e);
+        }
+    }
+}
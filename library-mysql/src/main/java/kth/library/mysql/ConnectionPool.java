@@ -0,0 +1,203 @@
+package kth.library.mysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small pool of JDBC connections, so that calls made at the same time, e.g. by
+ * the requests of a library server or the lookups of OmniSearch, each use a
+ * connection of their own instead of sharing one, whose transaction and
+ * auto-commit state belong to a single caller at a time.
+ * <p>
+ * A connection is borrowed with getConnection and given back by closing it, like
+ * one from a DataSource: try (Connection connection = pool.getConnection()) { ... }.
+ * A connection given back in the middle of a transaction is rolled back, and one
+ * that is closed or broken is replaced by a new one when needed. One left idle for
+ * longer than validateAfterMillis may have been dropped by the server (wait_timeout)
+ * or the network, so it is checked with isValid before it is handed out again and
+ * replaced if it does not answer. Connections are
+ * opened on demand, at most maxSize of them; a caller finding them all in use
+ * waits for one to be given back.
+ */
+final class ConnectionPool {
+
+    // seconds an idle connection is given to answer isValid before it is replaced
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // a connection given back, and when
+    private record IdleConnection(Connection connection, long sinceNanos) {
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Semaphore permits;
+    private final long waitMillis;
+    private final long validateAfterNanos;
+    private final Deque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    /**
+     * @param maxSize the number of connections open at most
+     * @param waitMillis how long a caller waits for a connection when they are all in use
+     * @param validateAfterMillis how long a connection may be idle before it is checked when borrowed
+     */
+    ConnectionPool(String url, String user, String password, int maxSize, long waitMillis, long validateAfterMillis) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.permits = new Semaphore(maxSize, true);
+        this.waitMillis = waitMillis;
+        this.validateAfterNanos = TimeUnit.MILLISECONDS.toNanos(validateAfterMillis);
+    }
+
+    /**
+     * Borrow a connection, open a new one if none is idle.
+     *
+     * @return a connection whose statements report to CostAccounting, given back by closing it
+     * @throws SQLTransientConnectionException if none is given back in time
+     */
+    Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(waitMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLTransientConnectionException("No database connection free within " + waitMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a database connection", e);
+        }
+        try {
+            Connection connection = null;
+            IdleConnection candidate;
+            while (connection == null && (candidate = idle.pollFirst()) != null) {
+                if (alive(candidate)) {
+                    connection = candidate.connection();
+                } else {
+                    closeQuietly(candidate.connection()); // dropped by the server, replaced below
+                }
+            }
+            if (connection == null) {
+                // statements report round trips and rows read to CostAccounting
+                connection = JdbcCostProxy.wrap(DriverManager.getConnection(url, user, password));
+            }
+            return borrowed(connection);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private boolean alive(IdleConnection candidate) throws SQLException {
+        Connection connection = candidate.connection();
+        if (connection.isClosed()) {
+            return false;
+        }
+        // a connection used a moment ago is almost surely alive, and checking costs a round trip
+        return System.nanoTime() - candidate.sinceNanos() < validateAfterNanos
+            || connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Close the idle connections; those in use are closed when given back.
+     */
+    void close() throws SQLException {
+        closed = true;
+        SQLException failure = null;
+        IdleConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            try {
+                connection.connection().close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void giveBack(Connection connection) {
+        try {
+            if (!connection.isClosed()) {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                if (closed) {
+                    connection.close();
+                } else {
+                    // the most recently used one is the most likely to be alive
+                    idle.addFirst(new IdleConnection(connection, System.nanoTime()));
+                }
+            }
+        } catch (SQLException e) {
+            closeQuietly(connection); // broken, not reused
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * The connection as handed out: closing it gives it back to the pool, once.
+     */
+    private Connection borrowed(Connection connection) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean givenBack;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getDeclaringClass() == Object.class) {
+                    return switch (method.getName()) {
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        default -> "pooled " + connection;
+                    };
+                }
+                switch (method.getName()) {
+                    case "close" -> {
+                        if (!givenBack) {
+                            givenBack = true;
+                            giveBack(connection);
+                        }
+                        return null;
+                    }
+                    case "isClosed" -> {
+                        return givenBack || connection.isClosed();
+                    }
+                    default -> {
+                        if (givenBack) {
+                            throw new SQLException("The connection has been given back to the pool");
+                        }
+                    }
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+            new Class<?>[]{Connection.class}, handler);
+    }
+}
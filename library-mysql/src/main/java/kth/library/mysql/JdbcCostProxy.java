@@ -0,0 +1,81 @@
+package kth.library.mysql;
+
+import kth.library.model.CostAccounting;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Wraps a JDBC connection so that its statements report to CostAccounting:
+ * every execute, commit and rollback is one round trip, every row read from a
+ * result set a document, and the values read are counted as bytes received
+ * (string and binary values by length, others as 8 bytes), an approximation of
+ * the data transferred.
+ */
+final class JdbcCostProxy implements InvocationHandler {
+
+    private final Object target;
+
+    private JdbcCostProxy(Object target) {
+        this.target = target;
+    }
+
+    static Connection wrap(Connection connection) {
+        return proxy(connection, Connection.class);
+    }
+
+    private static <T> T proxy(T target, Class<T> type) {
+        Object proxy = Proxy.newProxyInstance(JdbcCostProxy.class.getClassLoader(),
+            new Class<?>[]{type}, new JdbcCostProxy(target));
+        return type.cast(proxy);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Object result;
+        try {
+            result = method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+        String name = method.getName();
+        if (target instanceof Statement && name.startsWith("execute")
+                || target instanceof Connection && (name.equals("commit") || name.equals("rollback"))) {
+            CostAccounting.roundTrip();
+        }
+        if (target instanceof ResultSet) {
+            countRead(name, args, result);
+        }
+        // statements and result sets created through the proxy are wrapped too
+        if (result instanceof ResultSet resultSet && !(target instanceof ResultSet)) {
+            return proxy(resultSet, ResultSet.class);
+        }
+        if (result instanceof Statement statement && target instanceof Connection) {
+            return proxy(statement, (Class<Statement>) method.getReturnType());
+        }
+        return result;
+    }
+
+    private static void countRead(String name, Object[] args, Object result) {
+        if (name.equals("next")) {
+            if (Boolean.TRUE.equals(result)) {
+                CostAccounting.documentsRead(1);
+            }
+        } else if (name.startsWith("get") && args != null && args.length == 1 && result != null
+                && (args[0] instanceof String || args[0] instanceof Integer)) {
+            if (result instanceof String value) {
+                CostAccounting.bytesReceived(value.length());
+            } else if (result instanceof byte[] value) {
+                CostAccounting.bytesReceived(value.length);
+            } else {
+                CostAccounting.bytesReceived(8);
+            }
+        }
+    }
+}
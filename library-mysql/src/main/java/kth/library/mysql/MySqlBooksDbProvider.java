@@ -0,0 +1,30 @@
+package kth.library.mysql;
+
+import kth.library.model.BooksDbProvider;
+import kth.library.model.IBooksDb;
+
+/**
+ * Registers BooksDbImpl with ServiceLoader under the name "mysql".
+ */
+public class MySqlBooksDbProvider implements BooksDbProvider {
+
+    @Override
+    public String getName() {
+        return "mysql";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "MySQL";
+    }
+
+    @Override
+    public String getDefaultUrl() {
+        return "jdbc:mysql://localhost:3306/library_db";
+    }
+
+    @Override
+    public IBooksDb create() {
+        return new BooksDbImpl();
+    }
+}
@@ -0,0 +1,10 @@
+module kth.library.mysql {
+    requires transitive kth.library.model;
+    requires java.logging;
+    requires mysql.connector.j;
+    requires jdk.jfr; // HydrationEvent
+
+    exports kth.library.mysql;
+
+    provides kth.library.model.BooksDbProvider with kth.library.mysql.MySqlBooksDbProvider;
+}
@@ -0,0 +1,222 @@
+package kth.library.mysql;
+
+import kth.library.model.Author;
+import kth.library.model.Book;
+import kth.library.model.BookQuery;
+import kth.library.model.BookSortField;
+import kth.library.model.Genre;
+import kth.library.model.QueuedWrite;
+import kth.library.model.RoundTripBudget;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.RejectedWritesException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static kth.library.mysql.FakeJdbc.row;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BooksDbImplTest {
+
+    private final FakeJdbc database = new FakeJdbc();
+    private final BooksDbImpl booksDb = new BooksDbImpl();
+
+    @AfterEach
+    void disconnect() throws Exception {
+        booksDb.disconnect();
+    }
+
+    @Test
+    void lookupsOfAnAnySearchRunAtTheSameTimeOnConnectionsOfTheirOwn() throws Exception {
+        CountDownLatch allRunning = new CountDownLatch(4);
+        database.answer("FROM T_Book b", parameters -> {
+            allRunning.countDown();
+            try {
+                // each lookup waits for the other three, which only gets through if none waits for a connection
+                assertTrue(allRunning.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            return List.of(row("book_id", 1, "isbn", "123456789", "title", "Databases Illuminated",
+                               "publisher", null, "added_by", null, "added_by_username", null,
+                               "review_count", 0, "rating_sum", 0));
+        });
+        booksDb.connect(database.url());
+
+        List<Book> found = booksDb.findBooksByAny("123456789");
+
+        assertEquals(1, found.size());
+        assertEquals("Databases Illuminated", found.getFirst().getTitle());
+        assertEquals(4, database.opened()); // the one connect checked is used by one of the lookups
+    }
+
+    @Test
+    void authorsAndGenresAreReadWithTwoQueriesPerBatchOfBooks() throws Exception {
+        List<Map<String, Object>> bookRows = new ArrayList<>();
+        for (int id = 1; id <= 120; id++) {
+            bookRows.add(row("book_id", id, "isbn", "isbn" + id, "title", "Title " + id, "publisher", "Publisher",
+                             "added_by", null, "added_by_username", null, "review_count", 0, "rating_sum", 0));
+        }
+        database.answer("FROM T_Book b", parameters -> bookRows)
+            .answer("JOIN T_Book_Author ba ON", bookIds -> {
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (Object bookId : bookIds) {
+                    // two books share an author
+                    rows.add(row("book_id", bookId, "author_id", (Integer) bookId / 2, "name", "Author " + (Integer) bookId / 2,
+                                 "birthdate", null, "added_by", 1, "added_by_username", "admin"));
+                }
+                return rows;
+            })
+            .answer("JOIN T_Book_Genre bg ON", bookIds -> {
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (Object bookId : bookIds) {
+                    rows.add(row("book_id", bookId, "genre_id", 1, "name", "Drama"));
+                }
+                return rows;
+            });
+        booksDb.connect(database.url());
+
+        // one query for the books, one each for the authors and the genres of every batch of 50
+        List<Book> found = RoundTripBudget.assertAtMost(1 + 2 * 3, () -> booksDb.findBooksByTitle("Title"));
+
+        assertEquals(120, found.size());
+        for (Book book : found) {
+            assertEquals("Author " + book.getBookId() / 2, book.getAuthors().getFirst().getName());
+            assertEquals("Drama", book.getGenres().getFirst().getName());
+        }
+        assertSame(found.get(1).getAuthors().getFirst(), found.get(2).getAuthors().getFirst()); // books 2 and 3
+        assertEquals(1 + 2 * 3, database.executed().size());
+        assertThrows(AssertionError.class, () -> RoundTripBudget.assertAtMost(2 * 3, () -> booksDb.findBooksByTitle("Title")));
+    }
+
+    @Test
+    void missingIndexesAreLoggedWithoutFailingTheWarmUp() throws Exception {
+        database.answer("information_schema.statistics", parameters -> List.of(row("index_name", "PRIMARY")));
+        List<LogRecord> logged = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                logged.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(BooksDbImpl.class.getName());
+        logger.addHandler(handler);
+        try {
+            booksDb.connect(database.url());
+            booksDb.warmUp();
+        } finally {
+            logger.removeHandler(handler);
+        }
+
+        assertEquals(1, logged.size());
+        assertEquals(Level.WARNING, logged.getFirst().getLevel());
+        assertTrue(logged.getFirst().getMessage().contains("ux_book_write_id"), logged.getFirst().getMessage());
+    }
+
+    @Test
+    void pagesByPublisherCrossTheBooksWithoutOne() throws Exception {
+        List<List<Object>> bound = new ArrayList<>();
+        database.answer("FROM T_Book b", parameters -> {
+            bound.add(parameters);
+            return List.of();
+        });
+        booksDb.connect(database.url());
+        Book withoutPublisher = new Book(4, "isbn4", "Title 4", null);
+        Book withPublisher = new Book(3, "isbn3", "Title 3", "Addison-Wesley");
+
+        // NULL sorts first: ascending, the other NULLs and then all publishers follow
+        booksDb.findBooksPage(new BookQuery().sortBy(BookSortField.Publisher, false).limit(2), withoutPublisher, 0);
+        assertTrue(database.executed().getLast()
+            .contains("AND (q.publisher IS NULL AND q.book_id > ? OR q.publisher IS NOT NULL) "));
+        assertEquals(List.of(4, 2, 0), bound.getLast());
+
+        // descending, the NULLs follow the last publisher
+        booksDb.findBooksPage(new BookQuery().sortBy(BookSortField.Publisher, true).limit(2), withPublisher, 0);
+        assertTrue(database.executed().getLast()
+            .contains("AND (q.publisher < ? OR (q.publisher = ? AND q.book_id < ?) OR q.publisher IS NULL) "));
+        assertEquals(List.of("Addison-Wesley", "Addison-Wesley", 3, 2, 0), bound.getLast());
+    }
+
+    @Test
+    void ratingSearchLeavesOutBooksWithoutReviews() throws Exception {
+        booksDb.connect(database.url());
+
+        booksDb.findBooksByRating(0);
+
+        assertTrue(database.executed().getLast().contains("q.review_count > 0 AND q.avg_rating >= ?"),
+                   database.executed().getLast());
+    }
+
+    private static List<QueuedWrite> queuedBooks(int count) {
+        List<QueuedWrite> writes = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Book book = new Book("isbn" + i, "Title " + i, "Publisher");
+            book.addAuthor(new Author(1, "Author", null));
+            book.addGenre(new Genre(1, "Drama"));
+            writes.add(QueuedWrite.ofBook("key" + i, Instant.now(), book));
+        }
+        return writes;
+    }
+
+    @Test
+    void rowsRefusedByTheDatabaseAreReportedByTheKeysOfTheirWrites() throws Exception {
+        database.failBatchRow("INSERT INTO T_Book (", 1, "23000"); // e.g. a duplicate ISBN
+        booksDb.connect(database.url());
+
+        RejectedWritesException e = assertThrows(RejectedWritesException.class,
+                                                 () -> booksDb.writeBatch(queuedBooks(3)));
+
+        assertEquals(List.of("key2"), e.getRejectedKeys());
+        assertEquals(0, database.commits());
+        assertEquals(1, database.rollbacks()); // the others are written again without it
+    }
+
+    @Test
+    void batchFailingForAWhileIsNotRejected() throws Exception {
+        database.failBatchRow("INSERT INTO T_Book (", 0, "40001"); // a deadlock
+        booksDb.connect(database.url());
+
+        InsertException e = assertThrows(InsertException.class, () -> booksDb.writeBatch(queuedBooks(3)));
+
+        assertFalse(e instanceof RejectedWritesException);
+    }
+
+    @Test
+    void batchSentAgainSkipsTheWritesAlreadyWritten() throws Exception {
+        database.answer("SELECT write_id FROM T_Book", keys -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Object key : keys) {
+                rows.add(row("write_id", key));
+            }
+            return rows;
+        });
+        booksDb.connect(database.url());
+
+        booksDb.writeBatch(queuedBooks(3));
+
+        assertTrue(database.executed().stream().noneMatch(sql -> sql.startsWith("INSERT")), database.executed().toString());
+        assertEquals(1, database.commits());
+    }
+}
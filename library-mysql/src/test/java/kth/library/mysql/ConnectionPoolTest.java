@@ -0,0 +1,141 @@
+package kth.library.mysql;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+
+    private final FakeJdbc database = new FakeJdbc();
+    private final ConnectionPool pool = new ConnectionPool(database.url(), "user", "password", 4, 200, 60_000);
+
+    @AfterEach
+    void close() throws SQLException {
+        pool.close();
+    }
+
+    @Test
+    void concurrentCallersEachGetAConnectionOfTheirOwn() throws Exception {
+        CountDownLatch allBorrowed = new CountDownLatch(4);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> callers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                callers.add(executor.submit(() -> {
+                    try (Connection connection = pool.getConnection()) {
+                        connection.setAutoCommit(false);
+                        allBorrowed.countDown();
+                        assertTrue(allBorrowed.await(5, TimeUnit.SECONDS));
+                        connection.commit();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> caller : callers) {
+                caller.get(10, TimeUnit.SECONDS);
+            }
+        }
+        assertEquals(4, database.opened()); // all four in use at the same time
+        assertEquals(4, database.commits());
+    }
+
+    @Test
+    void callerWaitsForAConnectionAndGivesUpWhenNoneIsGivenBack() throws SQLException {
+        List<Connection> borrowed = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            borrowed.add(pool.getConnection());
+        }
+        assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+
+        borrowed.getFirst().close();
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1));
+        }
+        assertEquals(4, database.opened());
+        for (Connection connection : borrowed) {
+            connection.close();
+        }
+    }
+
+    @Test
+    void unfinishedTransactionIsRolledBackAndTheConnectionReused() throws SQLException {
+        Connection first = pool.getConnection();
+        first.setAutoCommit(false);
+        first.close();
+        assertEquals(1, database.rollbacks());
+        assertTrue(first.isClosed());
+        assertThrows(SQLException.class, first::commit);
+
+        try (Connection second = pool.getConnection()) {
+            assertNotSame(first, second);
+            assertTrue(second.getAutoCommit());
+        }
+        assertEquals(1, database.opened());
+    }
+
+    @Test
+    void givingBackTwiceReleasesOneConnection() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+        List<Connection> borrowed = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            borrowed.add(pool.getConnection());
+        }
+        assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+        for (Connection each : borrowed) {
+            each.close();
+        }
+    }
+
+    @Test
+    void closingClosesIdleConnectionsAndThoseGivenBackLater() throws SQLException {
+        Connection idle = pool.getConnection();
+        Connection inUse = pool.getConnection();
+        idle.close();
+
+        pool.close();
+        assertEquals(1, database.closed());
+        inUse.close();
+        assertEquals(2, database.closed());
+        assertThrows(SQLException.class, pool::getConnection);
+    }
+
+    @Test
+    void connectionDroppedWhileIdleIsReplaced() throws SQLException {
+        ConnectionPool validating = new ConnectionPool(database.url(), "user", "password", 4, 200, 0);
+        validating.getConnection().close();
+        database.dropConnections();
+
+        try (Connection connection = validating.getConnection()) {
+            assertTrue(connection.isValid(1));
+        }
+        assertEquals(2, database.opened());
+        assertEquals(1, database.closed()); // the dropped one
+        validating.close();
+    }
+
+    @Test
+    void connectionIdleForAMomentIsNotChecked() throws SQLException {
+        pool.getConnection().close();
+
+        pool.getConnection().close();
+
+        assertEquals(0, database.validations());
+        assertEquals(1, database.opened());
+    }
+}
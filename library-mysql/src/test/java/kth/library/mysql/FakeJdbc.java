@@ -0,0 +1,404 @@
+package kth.library.mysql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * An in-process JDBC database for tests, reached through its url() like a real
+ * one. Queries are answered with rows from the answer functions, matched on a
+ * fragment of the SQL; every statement executed, connection opened and
+ * transaction ended is recorded.
+ */
+final class FakeJdbc {
+
+    private static final String PREFIX = "jdbc:fake:";
+    private static final AtomicInteger NEXT_DATABASE = new AtomicInteger();
+    private static final Map<String, FakeJdbc> DATABASES = new ConcurrentHashMap<>();
+
+    static {
+        try {
+            DriverManager.registerDriver(new FakeDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final String url = PREFIX + NEXT_DATABASE.incrementAndGet();
+    private final Map<String, Function<List<Object>, List<Map<String, Object>>>> answers = new LinkedHashMap<>();
+    private final Map<String, BatchFailure> batchFailures = new LinkedHashMap<>();
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger rollbacks = new AtomicInteger();
+    private final AtomicInteger validations = new AtomicInteger();
+    private final AtomicInteger drops = new AtomicInteger(); // connections opened before the last drop are gone
+    private final AtomicInteger nextKey = new AtomicInteger(1000);
+
+    FakeJdbc() {
+        DATABASES.put(url, this);
+    }
+
+    String url() {
+        return url;
+    }
+
+    /**
+     * Answer the queries containing sqlFragment with the rows of answer, given the
+     * parameters set; queries matching no fragment get no rows.
+     */
+    synchronized FakeJdbc answer(String sqlFragment, Function<List<Object>, List<Map<String, Object>>> answer) {
+        answers.put(sqlFragment, answer);
+        return this;
+    }
+
+    // a row of the batches of a statement that fails, with the SQLSTATE given
+    private record BatchFailure(int row, String sqlState) {
+    }
+
+    /**
+     * Fail the row at the given position of the batches executed for statements
+     * containing sqlFragment, as the MySQL driver does: the other rows are executed
+     * and a BatchUpdateException tells the failed one by its update count.
+     */
+    synchronized FakeJdbc failBatchRow(String sqlFragment, int row, String sqlState) {
+        batchFailures.put(sqlFragment, new BatchFailure(row, sqlState));
+        return this;
+    }
+
+    /**
+     * @return a row of the columns and values given in turn, in that order
+     */
+    static Map<String, Object> row(Object... columnsAndValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < columnsAndValues.length; i += 2) {
+            row.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    List<String> executed() {
+        synchronized (executed) {
+            return List.copyOf(executed);
+        }
+    }
+
+    int opened() {
+        return opened.get();
+    }
+
+    int closed() {
+        return closed.get();
+    }
+
+    int commits() {
+        return commits.get();
+    }
+
+    int rollbacks() {
+        return rollbacks.get();
+    }
+
+    int validations() {
+        return validations.get();
+    }
+
+    /**
+     * Drop the connections open now, as the server does after wait_timeout: they
+     * are not closed on the client, but no longer valid.
+     */
+    void dropConnections() {
+        drops.incrementAndGet();
+    }
+
+    private List<Map<String, Object>> rows(String sql, List<Object> parameters) {
+        Function<List<Object>, List<Map<String, Object>>> found = null;
+        synchronized (this) {
+            for (Map.Entry<String, Function<List<Object>, List<Map<String, Object>>>> answer : answers.entrySet()) {
+                if (sql.contains(answer.getKey())) {
+                    found = answer.getValue();
+                    break;
+                }
+            }
+        }
+        // applied unlocked, so that an answer may wait for queries on other connections
+        return found != null ? found.apply(parameters) : List.of();
+    }
+
+    private synchronized BatchFailure batchFailure(String sql) {
+        for (Map.Entry<String, BatchFailure> failure : batchFailures.entrySet()) {
+            if (sql.contains(failure.getKey())) {
+                return failure.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        return null;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(FakeJdbc.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private Connection connect() {
+        opened.incrementAndGet();
+        int dropsWhenOpened = drops.get();
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean autoCommit = true;
+            private boolean isClosed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                switch (method.getName()) {
+                    case "prepareStatement" -> {
+                        return statement((String) args[0]);
+                    }
+                    case "createStatement" -> {
+                        return statement(null);
+                    }
+                    case "setAutoCommit" -> autoCommit = (Boolean) args[0];
+                    case "getAutoCommit" -> {
+                        return autoCommit;
+                    }
+                    case "commit" -> commits.incrementAndGet();
+                    case "rollback" -> rollbacks.incrementAndGet();
+                    case "isValid" -> {
+                        validations.incrementAndGet();
+                        return !isClosed && drops.get() == dropsWhenOpened;
+                    }
+                    case "isClosed" -> {
+                        return isClosed;
+                    }
+                    case "close" -> {
+                        if (!isClosed) {
+                            isClosed = true;
+                            closed.incrementAndGet();
+                        }
+                    }
+                    case "hashCode" -> {
+                        return System.identityHashCode(proxy);
+                    }
+                    case "equals" -> {
+                        return proxy == args[0];
+                    }
+                    case "toString" -> {
+                        return "fake connection to " + url;
+                    }
+                    default -> {
+                        return defaultValue(method.getReturnType());
+                    }
+                }
+                return null;
+            }
+        };
+        return proxy(Connection.class, handler);
+    }
+
+    /**
+     * @param preparedSql the SQL of a prepared statement, null for a plain Statement
+     */
+    private Statement statement(String preparedSql) {
+        InvocationHandler handler = new InvocationHandler() {
+            private final List<Object> parameters = new ArrayList<>();
+            private int batched;
+            private int keys;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                    while (parameters.size() < index) {
+                        parameters.add(null);
+                    }
+                    parameters.set(index - 1, name.equals("setNull") ? null : args[1]);
+                    return null;
+                }
+                switch (name) {
+                    case "executeQuery" -> {
+                        String sql = preparedSql != null ? preparedSql : (String) args[0];
+                        executed.add(sql);
+                        return resultSet(rows(sql, new ArrayList<>(parameters))); // may hold nulls
+                    }
+                    case "executeUpdate" -> {
+                        executed.add(preparedSql != null ? preparedSql : (String) args[0]);
+                        keys = 1;
+                        return 1;
+                    }
+                    case "addBatch" -> {
+                        batched++;
+                        parameters.clear();
+                        return null;
+                    }
+                    case "executeBatch" -> {
+                        executed.add(preparedSql);
+                        int[] counts = new int[batched];
+                        Arrays.fill(counts, 1);
+                        keys = batched;
+                        batched = 0;
+                        BatchFailure failure = batchFailure(preparedSql);
+                        if (failure != null && failure.row() < counts.length) {
+                            counts[failure.row()] = Statement.EXECUTE_FAILED;
+                            keys--;
+                            throw new BatchUpdateException("Failed row " + failure.row(), failure.sqlState(), counts);
+                        }
+                        return counts;
+                    }
+                    case "getGeneratedKeys" -> {
+                        List<Map<String, Object>> generated = new ArrayList<>();
+                        for (int i = 0; i < keys; i++) {
+                            generated.add(row("GENERATED_KEY", nextKey.incrementAndGet()));
+                        }
+                        return resultSet(generated);
+                    }
+                    case "hashCode" -> {
+                        return System.identityHashCode(proxy);
+                    }
+                    case "equals" -> {
+                        return proxy == args[0];
+                    }
+                    case "toString" -> {
+                        return "fake statement " + preparedSql;
+                    }
+                    default -> {
+                        return defaultValue(method.getReturnType());
+                    }
+                }
+            }
+        };
+        return preparedSql != null ? proxy(PreparedStatement.class, handler) : proxy(Statement.class, handler);
+    }
+
+    private static ResultSet resultSet(List<Map<String, Object>> rows) {
+        InvocationHandler handler = new InvocationHandler() {
+            private int position = -1;
+            private boolean wasNull;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                String name = method.getName();
+                if (name.equals("next")) {
+                    return ++position < rows.size();
+                }
+                if (name.equals("wasNull")) {
+                    return wasNull;
+                }
+                if (name.startsWith("get") && args != null && args.length == 1) {
+                    Map<String, Object> row = rows.get(position);
+                    Object value;
+                    if (args[0] instanceof Integer index) {
+                        value = new ArrayList<>(row.values()).get(index - 1);
+                    } else if (row.containsKey((String) args[0])) {
+                        value = row.get((String) args[0]);
+                    } else {
+                        throw new SQLException("No column " + args[0]);
+                    }
+                    wasNull = value == null;
+                    if (value == null) {
+                        return defaultValue(method.getReturnType());
+                    }
+                    if (method.getReturnType() == String.class) {
+                        return value.toString();
+                    }
+                    if (method.getReturnType() == int.class) {
+                        return ((Number) value).intValue();
+                    }
+                    if (method.getReturnType() == long.class) {
+                        return ((Number) value).longValue();
+                    }
+                    if (method.getReturnType() == double.class) {
+                        return ((Number) value).doubleValue();
+                    }
+                    return value;
+                }
+                if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                }
+                return defaultValue(method.getReturnType());
+            }
+        };
+        return proxy(ResultSet.class, handler);
+    }
+
+    private static final class FakeDriver implements Driver {
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            FakeJdbc database = DATABASES.get(url);
+            if (database == null) {
+                throw new SQLException("No database " + url);
+            }
+            return database.connect();
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+}
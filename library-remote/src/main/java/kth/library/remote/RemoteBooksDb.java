@@ -0,0 +1,309 @@
+package kth.library.remote;
+
+import kth.library.model.Author;
+import kth.library.model.Book;
+import kth.library.model.BookCodec;
+import kth.library.model.BookFacets;
+import kth.library.model.BookQuery;
+import kth.library.model.BookSortField;
+import kth.library.model.Genre;
+import kth.library.model.IBooksDb;
+import kth.library.model.IdentityMap;
+import kth.library.model.ReviewCursor;
+import kth.library.model.ReviewPage;
+import kth.library.model.SearchMode;
+import kth.library.model.User;
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.SelectException;
+import kth.library.remote.Wire.Endpoint;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * IBooksDb implementation calling a library server over HTTP, see BooksServer in
+ * library-server. The server holds the only connection pool to the database and
+ * is shared by all clients, so the number of database connections does not grow
+ * with the number of clients. Calls are made with the JDK HttpClient, which keeps
+ * its connections to the server open between calls; searches are read batch by
+ * batch while the server is still sending them.
+ * <p>
+ * Errors are thrown as the exception the server caught, e.g. a QueryTimeoutException
+ * when the server's deadline for a search passed; a server that cannot be reached
+ * gives a Select- or InsertException wrapping the IOException.
+ */
+public class RemoteBooksDb implements IBooksDb {
+
+    // time allowed to open a connection to the server
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    // time allowed for the answer of one call, longer than the server's query deadlines
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private HttpClient client;
+    private URI server;
+
+    /** Writes the arguments of a call. */
+    @FunctionalInterface
+    private interface Arguments {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Reads the result of a call. */
+    @FunctionalInterface
+    private interface Result<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /** Makes the exception thrown by a call from the error it failed with. */
+    @FunctionalInterface
+    private interface Failure<E extends Exception> {
+        E wrap(IOException error);
+    }
+
+    private static final Failure<SelectException> SELECT_FAILED =
+        error -> error instanceof SelectException selectException
+            ? selectException : new SelectException("Library server call failed: " + error.getMessage(), error);
+    private static final Failure<InsertException> INSERT_FAILED =
+        error -> error instanceof InsertException insertException
+            ? insertException : new InsertException("Library server call failed: " + error.getMessage(), error);
+    private static final Failure<ConnectionException> CONNECTION_FAILED =
+        error -> error instanceof ConnectionException connectionException
+            ? connectionException : new ConnectionException("Could not reach the library server: " + error.getMessage(), error);
+
+    /**
+     * Connects to the library server and checks that it answers.
+     *
+     * @param database the address of the server, e.g. http://localhost:8080
+     */
+    @Override
+    public boolean connect(String database) throws ConnectionException {
+        server = URI.create(database);
+        client = HttpClient.newBuilder()
+            .connectTimeout(CONNECT_TIMEOUT)
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+        call(Endpoint.PING, out -> {}, in -> null, CONNECTION_FAILED);
+        return true;
+    }
+
+    @Override
+    public void disconnect() throws ConnectionException {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    @Override
+    public User login(String username, String password) throws SelectException {
+        return call(Endpoint.LOGIN, out -> {
+            Wire.writeString(out, username);
+            Wire.writeString(out, password);
+        }, in -> Wire.readUser(in, new IdentityMap()), SELECT_FAILED);
+    }
+
+    private List<Book> find(SearchMode mode, String searchFor) throws SelectException {
+        return call(Endpoint.FIND, out -> {
+            Wire.writeString(out, mode.name());
+            Wire.writeString(out, searchFor);
+        }, in -> Wire.readBooks(in, new IdentityMap()), SELECT_FAILED);
+    }
+
+    @Override
+    public List<Book> findBooksByTitle(String title) throws SelectException {
+        return find(SearchMode.Title, title);
+    }
+
+    @Override
+    public List<Book> findBooksByIsbn(String isbn) throws SelectException {
+        return find(SearchMode.ISBN, isbn);
+    }
+
+    @Override
+    public List<Book> findBooksByAuthor(String author) throws SelectException {
+        return find(SearchMode.Author, author);
+    }
+
+    @Override
+    public List<Book> findBooksByGenre(String genre) throws SelectException {
+        return find(SearchMode.Genre, genre);
+    }
+
+    @Override
+    public List<Book> findBooksByRating(int rating) throws SelectException {
+        return find(SearchMode.Rating, Integer.toString(rating));
+    }
+
+    /**
+     * The lookups run concurrently on the server, as one call.
+     */
+    @Override
+    public List<Book> findBooksByAny(String searchFor) throws SelectException {
+        return find(SearchMode.Any, searchFor);
+    }
+
+    /**
+     * Hands each batch to the consumer as soon as the server has sent it.
+     */
+    @Override
+    public void searchBooks(BookQuery query, Consumer<List<Book>> batchConsumer) throws SelectException {
+        call(Endpoint.SEARCH, out -> Wire.writeQuery(out, query), in -> {
+            // one reader for all batches, which share names and entities like a search of a backend
+            BookCodec.Reader books = new BookCodec.Reader(in, new IdentityMap());
+            for (int frame = in.readInt(); frame != Wire.END_OF_RESULT; frame = in.readInt()) {
+                if (frame == Wire.FAILED_RESULT) {
+                    throw Wire.readError(in);
+                }
+                batchConsumer.accept(books.readAll());
+            }
+            return null;
+        }, SELECT_FAILED);
+    }
+
+    @Override
+    public List<Book> findTopBooks(BookSortField orderBy, String genre, String author, int n) throws SelectException {
+        return call(Endpoint.TOP, out -> {
+            Wire.writeString(out, orderBy.name());
+            Wire.writeString(out, genre);
+            Wire.writeString(out, author);
+            out.writeInt(n);
+        }, in -> Wire.readBooks(in, new IdentityMap()), SELECT_FAILED);
+    }
+
+    @Override
+    public int countBooks(BookQuery query) throws SelectException {
+        return call(Endpoint.COUNT, out -> Wire.writeQuery(out, query), DataInputStream::readInt, SELECT_FAILED);
+    }
+
+    @Override
+    public BookFacets findFacets(BookQuery query) throws SelectException {
+        return call(Endpoint.FACETS, out -> Wire.writeQuery(out, query), Wire::readFacets, SELECT_FAILED);
+    }
+
+    @Override
+    public List<Book> findBooksPage(BookQuery query, Book after, int skip) throws SelectException {
+        return call(Endpoint.PAGE, out -> {
+            Wire.writeQuery(out, query);
+            out.writeBoolean(after != null);
+            if (after != null) {
+                Wire.writeBook(out, after);
+            }
+            out.writeInt(skip);
+        }, in -> Wire.readBooks(in, new IdentityMap()), SELECT_FAILED);
+    }
+
+    @Override
+    public ReviewPage findReviews(Book book, ReviewCursor after, int limit) throws SelectException {
+        return call(Endpoint.REVIEWS, out -> {
+            Wire.writeBook(out, book);
+            Wire.writeCursor(out, after);
+            out.writeInt(limit);
+        }, in -> Wire.readReviewPage(in, book), SELECT_FAILED);
+    }
+
+    @Override
+    public void addBook(Book book) throws InsertException {
+        call(Endpoint.ADD_BOOK, out -> Wire.writeBook(out, book), in -> null, INSERT_FAILED);
+    }
+
+    @Override
+    public void addAuthor(Author author) throws InsertException {
+        call(Endpoint.ADD_AUTHOR, out -> Wire.writeAuthor(out, author), in -> null, INSERT_FAILED);
+    }
+
+    @Override
+    public void addGenre(Genre genre) throws InsertException {
+        call(Endpoint.ADD_GENRE, out -> Wire.writeGenre(out, genre), in -> null, INSERT_FAILED);
+    }
+
+    @Override
+    public void addReview(Book book, User user, int rating, String reviewText) throws InsertException {
+        call(Endpoint.ADD_REVIEW, out -> {
+            Wire.writeBook(out, book);
+            Wire.writeUser(out, user);
+            out.writeInt(rating);
+            Wire.writeString(out, reviewText);
+        }, in -> null, INSERT_FAILED);
+    }
+
+    @Override
+    public List<Author> getAllAuthors() throws SelectException {
+        return call(Endpoint.AUTHORS, out -> {}, in -> Wire.readAuthors(in, new IdentityMap()), SELECT_FAILED);
+    }
+
+    @Override
+    public List<Genre> getAllGenres() throws SelectException {
+        return call(Endpoint.GENRES, out -> {}, in -> Wire.readGenres(in, new IdentityMap()), SELECT_FAILED);
+    }
+
+    @Override
+    public List<Author> findAuthorsByPrefix(String prefix, int limit) throws SelectException {
+        return call(Endpoint.AUTHORS_BY_PREFIX, out -> {
+            Wire.writeString(out, prefix);
+            out.writeInt(limit);
+        }, in -> Wire.readAuthors(in, new IdentityMap()), SELECT_FAILED);
+    }
+
+    @Override
+    public List<Genre> findGenresByPrefix(String prefix, int limit) throws SelectException {
+        return call(Endpoint.GENRES_BY_PREFIX, out -> {
+            Wire.writeString(out, prefix);
+            out.writeInt(limit);
+        }, in -> Wire.readGenres(in, new IdentityMap()), SELECT_FAILED);
+    }
+
+    @Override
+    public void removeBook(Book book) throws Exception {
+        call(Endpoint.REMOVE_BOOK, out -> Wire.writeBook(out, book), in -> null, SELECT_FAILED);
+    }
+
+    /**
+     * Call an endpoint and read its result while the response is arriving.
+     *
+     * @param failure makes the exception of the calling method from the error of the call
+     */
+    private <T, E extends Exception> T call(Endpoint endpoint, Arguments arguments, Result<T> result,
+                                            Failure<E> failure) throws E {
+        if (client == null) {
+            throw failure.wrap(new IOException("Not connected to a library server"));
+        }
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            arguments.write(out);
+            out.flush();
+            HttpRequest request = HttpRequest.newBuilder(server.resolve(endpoint.path()))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", Wire.CONTENT_TYPE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(response.body()))) {
+                if (response.statusCode() == Wire.STATUS_FAILED) {
+                    throw Wire.readError(in);
+                }
+                if (response.statusCode() != 200) {
+                    throw new IOException("Library server answered " + response.statusCode() + " to " + endpoint.path());
+                }
+                return result.read(in);
+            }
+        } catch (IOException e) {
+            throw failure.wrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw failure.wrap(new IOException("Interrupted while calling the library server", e));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package kth.library.remote;
+
+import kth.library.model.BooksDbProvider;
+import kth.library.model.IBooksDb;
+
+/**
+ * Registers RemoteBooksDb with ServiceLoader under the name "remote", for a
+ * client using a library server instead of a database of its own.
+ */
+public class RemoteBooksDbProvider implements BooksDbProvider {
+
+    @Override
+    public String getName() {
+        return "remote";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "library server";
+    }
+
+    @Override
+    public String getDefaultUrl() {
+        return "http://localhost:8080";
+    }
+
+    @Override
+    public IBooksDb create() {
+        return new RemoteBooksDb();
+    }
+}
@@ -0,0 +1,338 @@
+package kth.library.remote;
+
+import kth.library.model.Author;
+import kth.library.model.Book;
+import kth.library.model.BookCodec;
+import kth.library.model.BookFacets;
+import kth.library.model.BookQuery;
+import kth.library.model.BookSortField;
+import kth.library.model.Genre;
+import kth.library.model.IdentityMap;
+import kth.library.model.Review;
+import kth.library.model.ReviewCursor;
+import kth.library.model.ReviewPage;
+import kth.library.model.User;
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.InsertException;
+import kth.library.model.exceptions.QueryTimeoutException;
+import kth.library.model.exceptions.SelectException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The protocol between RemoteBooksDb and the library server: the endpoints, and
+ * how the arguments and results of IBooksDb calls are written to the request and
+ * response bodies. Every call is a POST to the path of its endpoint with the
+ * arguments as body. A successful call answers 200 with the result, a failed one
+ * 500 with the error. Searches stream their result as frames, each a batch of
+ * books, so that the client can show the first rows before the last are read.
+ * Books are encoded with BookCodec, a streamed search with one codec for all
+ * its batches, so that names and authors are only sent once per search.
+ */
+public final class Wire {
+
+    /** The media type of request and response bodies. */
+    public static final String CONTENT_TYPE = "application/x-library-wire";
+    /** Status of a call that failed, the body holds the error. */
+    public static final int STATUS_FAILED = 500;
+    /** Frame of a streamed search holding a batch of books, written by BookCodec.Writer.writeAll. */
+    public static final int BATCH_OF_RESULT = 0;
+    /** Frame of a streamed search that ends the result. */
+    public static final int END_OF_RESULT = -1;
+    /** Frame of a streamed search that ends it with an error. */
+    public static final int FAILED_RESULT = -2;
+
+    /**
+     * The calls the server answers, one per IBooksDb method used by the client.
+     */
+    public enum Endpoint {
+        PING, LOGIN, FIND, SEARCH, COUNT, FACETS, PAGE, TOP, REVIEWS,
+        ADD_BOOK, ADD_AUTHOR, ADD_GENRE, ADD_REVIEW, REMOVE_BOOK,
+        AUTHORS, GENRES, AUTHORS_BY_PREFIX, GENRES_BY_PREFIX;
+
+        /** @return the path of the endpoint, e.g. /api/add-book */
+        public String path() {
+            return "/api/" + name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    // kinds of errors, so that the client can throw the exception the server caught
+    private static final byte SELECT_FAILED = 0;
+    private static final byte QUERY_TIMEOUT = 1;
+    private static final byte INSERT_FAILED = 2;
+    private static final byte CONNECTION_FAILED = 3;
+    private static final byte OTHER_FAILURE = 4;
+
+    private Wire() {
+    }
+
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    public static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeBoolean(user != null);
+        if (user != null) {
+            out.writeInt(user.getId());
+            writeString(out, user.getUsername());
+        }
+    }
+
+    public static User readUser(DataInputStream in, IdentityMap identities) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int id = in.readInt();
+        return identities.user(id, readString(in));
+    }
+
+    public static void writeAuthor(DataOutputStream out, Author author) throws IOException {
+        out.writeInt(author.getAuthorId());
+        writeString(out, author.getName());
+        out.writeBoolean(author.getBirthdate() != null);
+        if (author.getBirthdate() != null) {
+            out.writeLong(author.getBirthdate().toLocalDate().toEpochDay());
+        }
+        writeUser(out, author.getAddedBy());
+    }
+
+    public static Author readAuthor(DataInputStream in, IdentityMap identities) throws IOException {
+        int id = in.readInt();
+        String name = identities.canonical(readString(in));
+        Date birthdate = in.readBoolean() ? Date.valueOf(LocalDate.ofEpochDay(in.readLong())) : null;
+        Author author = new Author(id, name, birthdate);
+        author.setAddedBy(readUser(in, identities));
+        return id != 0 ? identities.putAuthor(author) : author;
+    }
+
+    public static void writeAuthors(DataOutputStream out, List<Author> authors) throws IOException {
+        out.writeInt(authors.size());
+        for (Author author : authors) {
+            writeAuthor(out, author);
+        }
+    }
+
+    public static List<Author> readAuthors(DataInputStream in, IdentityMap identities) throws IOException {
+        int count = in.readInt();
+        List<Author> authors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            authors.add(readAuthor(in, identities));
+        }
+        return authors;
+    }
+
+    public static void writeGenre(DataOutputStream out, Genre genre) throws IOException {
+        out.writeInt(genre.getGenreId());
+        writeString(out, genre.getName());
+    }
+
+    public static Genre readGenre(DataInputStream in, IdentityMap identities) throws IOException {
+        int id = in.readInt();
+        String name = readString(in);
+        return id != 0 ? identities.genre(id, name) : new Genre(name);
+    }
+
+    public static void writeGenres(DataOutputStream out, List<Genre> genres) throws IOException {
+        out.writeInt(genres.size());
+        for (Genre genre : genres) {
+            writeGenre(out, genre);
+        }
+    }
+
+    public static List<Genre> readGenres(DataInputStream in, IdentityMap identities) throws IOException {
+        int count = in.readInt();
+        List<Genre> genres = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            genres.add(readGenre(in, identities));
+        }
+        return genres;
+    }
+
+    /**
+     * Write a book with its authors, genres, rating summary and the reviews it holds.
+     */
+    public static void writeBook(DataOutputStream out, Book book) throws IOException {
+        new BookCodec.Writer(out).write(book);
+    }
+
+    /**
+     * Read a book, sharing the authors, genres and users with the other books read
+     * with the same identity map.
+     */
+    public static Book readBook(DataInputStream in, IdentityMap identities) throws IOException {
+        return new BookCodec.Reader(in, identities).read();
+    }
+
+    public static void writeBooks(DataOutputStream out, List<Book> books) throws IOException {
+        new BookCodec.Writer(out).writeAll(books);
+    }
+
+    public static List<Book> readBooks(DataInputStream in, IdentityMap identities) throws IOException {
+        return new BookCodec.Reader(in, identities).readAll();
+    }
+
+    private static void writeReview(DataOutputStream out, Review review) throws IOException {
+        writeUser(out, review.getUser());
+        out.writeByte(review.getRating());
+        writeString(out, review.getReviewText());
+        out.writeLong(review.getDate().toLocalDate().toEpochDay());
+    }
+
+    public static void writeReviewPage(DataOutputStream out, ReviewPage page) throws IOException {
+        out.writeInt(page.getReviews().size());
+        for (Review review : page.getReviews()) {
+            writeReview(out, review);
+        }
+        writeCursor(out, page.getNext());
+    }
+
+    /**
+     * Read a page of reviews of the given book.
+     */
+    public static ReviewPage readReviewPage(DataInputStream in, Book book) throws IOException {
+        IdentityMap identities = new IdentityMap();
+        int count = in.readInt();
+        List<Review> reviews = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            User user = readUser(in, identities);
+            int rating = in.readByte();
+            String text = readString(in);
+            Date date = Date.valueOf(LocalDate.ofEpochDay(in.readLong()));
+            reviews.add(new Review(book, user, rating, text, date));
+        }
+        return new ReviewPage(reviews, readCursor(in));
+    }
+
+    public static void writeCursor(DataOutputStream out, ReviewCursor cursor) throws IOException {
+        out.writeBoolean(cursor != null);
+        if (cursor != null) {
+            out.writeInt(cursor.getPosition());
+            out.writeLong(cursor.getEpochDay());
+            out.writeInt(cursor.getUserId());
+        }
+    }
+
+    public static ReviewCursor readCursor(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int position = in.readInt();
+        long epochDay = in.readLong();
+        return new ReviewCursor(position, epochDay, in.readInt());
+    }
+
+    public static void writeQuery(DataOutputStream out, BookQuery query) throws IOException {
+        writeString(out, query.getTitleContains());
+        writeString(out, query.getIsbn());
+        writeString(out, query.getAuthor());
+        writeString(out, query.getGenre());
+        out.writeInt(query.getMinRating() != null ? query.getMinRating() : -1);
+        writeString(out, query.getPublisher());
+        writeString(out, query.getSortBy() != null ? query.getSortBy().name() : null);
+        out.writeBoolean(query.isDescending());
+        out.writeInt(query.getLimit());
+    }
+
+    public static BookQuery readQuery(DataInputStream in) throws IOException {
+        BookQuery query = new BookQuery()
+            .titleContains(readString(in))
+            .isbn(readString(in))
+            .author(readString(in))
+            .genre(readString(in));
+        int minRating = in.readInt();
+        query.minRating(minRating >= 0 ? minRating : null)
+            .publisher(readString(in));
+        String sortBy = readString(in);
+        boolean descending = in.readBoolean();
+        if (sortBy != null) {
+            query.sortBy(BookSortField.valueOf(sortBy), descending);
+        }
+        return query.limit(in.readInt());
+    }
+
+    public static void writeFacets(DataOutputStream out, BookFacets facets) throws IOException {
+        out.writeInt(facets.getTotal());
+        for (Map<String, Integer> group : List.of(facets.getGenres(), facets.getAuthors(),
+                                                  facets.getPublishers(), facets.getRatings())) {
+            out.writeInt(group.size());
+            for (Map.Entry<String, Integer> entry : group.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    public static BookFacets readFacets(DataInputStream in) throws IOException {
+        int total = in.readInt();
+        List<Map<String, Integer>> groups = new ArrayList<>(4);
+        for (int group = 0; group < 4; group++) {
+            int count = in.readInt();
+            Map<String, Integer> values = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                values.put(readString(in), in.readInt());
+            }
+            groups.add(values);
+        }
+        return new BookFacets(total, groups.get(0), groups.get(1), groups.get(2), groups.get(3));
+    }
+
+    /**
+     * Write an error caught by the server, keeping its kind.
+     */
+    public static void writeError(DataOutputStream out, Exception error) throws IOException {
+        byte kind;
+        if (error instanceof QueryTimeoutException) {
+            kind = QUERY_TIMEOUT;
+        } else if (error instanceof SelectException) {
+            kind = SELECT_FAILED;
+        } else if (error instanceof InsertException) {
+            kind = INSERT_FAILED;
+        } else if (error instanceof ConnectionException) {
+            kind = CONNECTION_FAILED;
+        } else {
+            kind = OTHER_FAILURE;
+        }
+        out.writeByte(kind);
+        writeString(out, error.getMessage() != null ? error.getMessage() : error.toString());
+    }
+
+    /**
+     * Read an error written by writeError.
+     *
+     * @return an exception of the kind the server caught, with its message
+     */
+    public static IOException readError(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        String message = readString(in);
+        return switch (kind) {
+            case QUERY_TIMEOUT -> new QueryTimeoutException(message);
+            case SELECT_FAILED -> new SelectException(message);
+            case INSERT_FAILED -> new InsertException(message);
+            case CONNECTION_FAILED -> new ConnectionException(message);
+            default -> new IOException(message);
+        };
+    }
+}
@@ -0,0 +1,8 @@
+module kth.library.remote {
+    requires transitive kth.library.model;
+    requires java.net.http;
+
+    exports kth.library.remote;
+
+    provides kth.library.model.BooksDbProvider with kth.library.remote.RemoteBooksDbProvider;
+}
@@ -0,0 +1,237 @@
+package kth.library.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import kth.library.model.Book;
+import kth.library.model.BookCodec;
+import kth.library.model.BookQuery;
+import kth.library.model.BookSortField;
+import kth.library.model.BooksDbProvider;
+import kth.library.model.CoalescingBooksDb;
+import kth.library.model.IBooksDb;
+import kth.library.model.IdentityMap;
+import kth.library.model.SearchMode;
+import kth.library.model.User;
+import kth.library.model.exceptions.ConnectionException;
+import kth.library.model.exceptions.SelectException;
+import kth.library.remote.Wire;
+import kth.library.remote.Wire.Endpoint;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A headless server answering the calls of RemoteBooksDb clients with one shared
+ * IBooksDb, so that all clients use the connection pool of a single backend
+ * instead of opening connections of their own. Each request is handled on a
+ * virtual thread of its own, which blocks on the database without holding a
+ * platform thread, so the number of clients served at once is bounded by the
+ * backend's connection pool rather than by threads. Identical searches running
+ * at the same time, e.g. many clients opening the same genre, share one database
+ * call through a CoalescingBooksDb.
+ * <p>
+ * Run with the backend chosen like for the client, e.g.
+ * java -Dlibrary.backend=mongo -Dlibrary.port=8080 kth.library.server.BooksServer
+ * and connect the clients with -Dlibrary.backend=remote -Dlibrary.url=http://host:8080.
+ * The server does not authenticate clients; it is meant for a trusted network.
+ */
+public class BooksServer {
+
+    /** The system property choosing the port to listen on. */
+    public static final String PORT_PROPERTY = "library.port";
+    private static final int DEFAULT_PORT = 8080;
+    // connections waiting to be accepted before new ones are refused
+    private static final int BACKLOG = 200;
+    // seconds given to running calls to finish when stopping
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    private final IBooksDb booksDb;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param booksDb the connected database shared by all clients; must allow concurrent calls
+     * @param address where to listen
+     */
+    public BooksServer(IBooksDb booksDb, InetSocketAddress address) throws IOException {
+        this.booksDb = booksDb;
+        server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(executor);
+        for (Endpoint endpoint : Endpoint.values()) {
+            server.createContext(endpoint.path(), exchange -> handle(endpoint, exchange));
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting calls and wait a moment for the running ones to finish.
+     */
+    public void stop() {
+        server.stop(STOP_DELAY_SECONDS);
+        executor.close();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handle(Endpoint endpoint, HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", Wire.CONTENT_TYPE);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(exchange.getRequestBody()));
+            if (endpoint == Endpoint.SEARCH) {
+                search(Wire.readQuery(in), exchange);
+                return;
+            }
+            // answered as a whole, so that a failure can still be sent as such
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int status = 200;
+            try {
+                answer(endpoint, in, new DataOutputStream(body));
+            } catch (Exception e) {
+                body.reset();
+                DataOutputStream out = new DataOutputStream(body);
+                Wire.writeError(out, e);
+                out.flush();
+                status = Wire.STATUS_FAILED;
+            }
+            exchange.sendResponseHeaders(status, body.size());
+            body.writeTo(exchange.getResponseBody());
+        }
+    }
+
+    /**
+     * Stream the result of a search batch by batch, as the backend decodes it.
+     */
+    private void search(BookQuery query, HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(exchange.getResponseBody()));
+        // one writer for all batches, names and entities already sent are referred to
+        BookCodec.Writer books = new BookCodec.Writer(out);
+        try {
+            booksDb.searchBooks(query, batch -> {
+                try {
+                    out.writeInt(Wire.BATCH_OF_RESULT);
+                    books.writeAll(batch);
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.writeInt(Wire.END_OF_RESULT);
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // the client went away
+        } catch (Exception e) {
+            out.writeInt(Wire.FAILED_RESULT);
+            Wire.writeError(out, e);
+        }
+        out.flush();
+    }
+
+    private void answer(Endpoint endpoint, DataInputStream in, DataOutputStream out) throws Exception {
+        IdentityMap identities = new IdentityMap();
+        switch (endpoint) {
+            case PING -> {
+            }
+            case LOGIN -> {
+                String username = Wire.readString(in);
+                Wire.writeUser(out, booksDb.login(username, Wire.readString(in)));
+            }
+            case FIND -> {
+                SearchMode mode = SearchMode.valueOf(Wire.readString(in));
+                Wire.writeBooks(out, find(mode, Wire.readString(in)));
+            }
+            case TOP -> {
+                BookSortField orderBy = BookSortField.valueOf(Wire.readString(in));
+                String genre = Wire.readString(in);
+                String author = Wire.readString(in);
+                Wire.writeBooks(out, booksDb.findTopBooks(orderBy, genre, author, in.readInt()));
+            }
+            case COUNT -> out.writeInt(booksDb.countBooks(Wire.readQuery(in)));
+            case FACETS -> Wire.writeFacets(out, booksDb.findFacets(Wire.readQuery(in)));
+            case PAGE -> {
+                BookQuery query = Wire.readQuery(in);
+                Book after = in.readBoolean() ? Wire.readBook(in, identities) : null;
+                Wire.writeBooks(out, booksDb.findBooksPage(query, after, in.readInt()));
+            }
+            case REVIEWS -> {
+                Book book = Wire.readBook(in, identities);
+                Wire.writeReviewPage(out, booksDb.findReviews(book, Wire.readCursor(in), in.readInt()));
+            }
+            case ADD_BOOK -> booksDb.addBook(Wire.readBook(in, identities));
+            case ADD_AUTHOR -> booksDb.addAuthor(Wire.readAuthor(in, identities));
+            case ADD_GENRE -> booksDb.addGenre(Wire.readGenre(in, identities));
+            case ADD_REVIEW -> {
+                Book book = Wire.readBook(in, identities);
+                User user = Wire.readUser(in, identities);
+                int rating = in.readInt();
+                booksDb.addReview(book, user, rating, Wire.readString(in));
+            }
+            case REMOVE_BOOK -> booksDb.removeBook(Wire.readBook(in, identities));
+            case AUTHORS -> Wire.writeAuthors(out, booksDb.getAllAuthors());
+            case GENRES -> Wire.writeGenres(out, booksDb.getAllGenres());
+            case AUTHORS_BY_PREFIX -> {
+                String prefix = Wire.readString(in);
+                Wire.writeAuthors(out, booksDb.findAuthorsByPrefix(prefix, in.readInt()));
+            }
+            case GENRES_BY_PREFIX -> {
+                String prefix = Wire.readString(in);
+                Wire.writeGenres(out, booksDb.findGenresByPrefix(prefix, in.readInt()));
+            }
+            case SEARCH -> throw new IllegalStateException("Searches are streamed, see search");
+        }
+        out.flush();
+    }
+
+    private List<Book> find(SearchMode mode, String searchFor) throws SelectException {
+        return switch (mode) {
+            case Title -> booksDb.findBooksByTitle(searchFor);
+            case ISBN -> booksDb.findBooksByIsbn(searchFor);
+            case Author -> booksDb.findBooksByAuthor(searchFor);
+            case Genre -> booksDb.findBooksByGenre(searchFor);
+            case Rating -> booksDb.findBooksByRating(Integer.parseInt(searchFor.trim()));
+            case Any -> booksDb.findBooksByAny(searchFor);
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        // the backend packaged with the server, chosen with -Dlibrary.backend=mongo|mysql|memory
+        BooksDbProvider backend = BooksDbProvider.configured();
+        IBooksDb booksDb = new CoalescingBooksDb(backend.create());
+        booksDb.connect(backend.getUrl());
+        try {
+            booksDb.warmUp();
+        } catch (ConnectionException e) {
+            // searches work without it, the first ones are just slower
+            System.err.println("Warm-up failed: " + e.getMessage());
+        }
+
+        int port = Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+        BooksServer server = new BooksServer(booksDb, new InetSocketAddress(port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            try {
+                booksDb.disconnect();
+            } catch (Exception e) {
+            }
+        }));
+        server.start();
+        System.out.println("Serving the " + backend.getDisplayName() + " database on port " + port);
+    }
+}
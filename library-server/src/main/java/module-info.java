@@ -0,0 +1,7 @@
+module kth.library.server {
+    requires jdk.httpserver;
+    requires transitive kth.library.model;  // the backend is found with ServiceLoader, see BooksDbProvider
+    requires kth.library.remote;
+
+    exports kth.library.server;
+}
@@ -1,5 +0,0 @@
-package kth.library.model;
-
-public enum SearchMode {
-    Title, ISBN, Author, Genre, Rating
-}